@@ -0,0 +1,332 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+
+/**
+ * <pre>
+ * Generates an <code>OFactoryChildTable</code> for the classes of a build
+ * module marked with <code>OFactoryChildType</code>, and registers it in
+ * META-INF/services so that an <code>OFactory</code> creates those classes
+ * with their constructors instead of by reflection.
+ * 
+ * The table is named GeneratedOFactoryChildTable and is put in the package of
+ * the first marked class by name.  Pass -Aofactory.childTable=name to choose
+ * the fully qualified name, for example to keep the tables of two modules
+ * that share a package apart.
+ * 
+ * A marked class that is not public, is abstract, is an inner class, has no
+ * public no argument constructor or is not an <code>OFactoryChild</code> is
+ * reported as an error.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+@SupportedAnnotationTypes(OFactoryChildTypeProcessor.CHILD_TYPE)
+@SupportedOptions(OFactoryChildTypeProcessor.TABLE_OPTION)
+public class OFactoryChildTypeProcessor extends AbstractProcessor
+{
+    /**
+     * The name of the annotation that marks a child class.
+     */
+    static final String         CHILD_TYPE   = "org.gabsocial.ofactory.OFactoryChildType";
+    
+    /**
+     * The name of the option that sets the name of the generated table.
+     */
+    static final String         TABLE_OPTION = "ofactory.childTable";
+    
+    /**
+     * The simple name of the generated table when none is given.
+     */
+    static final String         TABLE_NAME   = "GeneratedOFactoryChildTable";
+    
+    private static final String CHILD        = "org.gabsocial.ofactory.OFactoryChild";
+    
+    private static final String CHILD_TABLE  = "org.gabsocial.ofactory.OFactoryChildTable";
+    
+    /*
+     * The marked classes by binary name, which is the name given to
+     * OFactory.create(className).
+     */
+    private final Map<String, TypeElement> _children = new TreeMap<String, TypeElement>();
+    
+    /*
+     * The name of the generated table, once it is written.
+     */
+    private String                         _tableName;
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.annotation.processing.AbstractProcessor#getSupportedSourceVersion()
+     */
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return (SourceVersion.latestSupported());
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.annotation.processing.AbstractProcessor#process(java.util.Set,
+     * javax.annotation.processing.RoundEnvironment)
+     */
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations,
+            final RoundEnvironment roundEnv)
+    {
+        final TypeElement childType = this.processingEnv.getElementUtils()
+                .getTypeElement(CHILD_TYPE);
+        if (childType == null || roundEnv.processingOver())
+        {
+            return (false);
+        }
+        
+        boolean isFound = false;
+        for (final Element element : roundEnv
+                .getElementsAnnotatedWith(childType))
+        {
+            if (this.isValidChild(element))
+            {
+                final TypeElement type = (TypeElement) element;
+                this._children.put(this.processingEnv.getElementUtils()
+                        .getBinaryName(type).toString(), type);
+                isFound = true;
+            }
+        }
+        
+        if (isFound)
+        {
+            if (this._tableName == null)
+            {
+                this.writeTable();
+            }
+            else
+            {
+                // the table was written in an earlier round.
+                this.processingEnv.getMessager().printMessage(
+                        Diagnostic.Kind.ERROR,
+                        "OFactoryChildType classes generated by another processor cannot be added to "
+                                + this._tableName);
+            }
+        }
+        return (true);
+    }
+    
+    /*
+     * Reports an error and returns false if the element cannot be created by
+     * a generated table.
+     */
+    private boolean isValidChild(final Element element)
+    {
+        final String problem;
+        if (element.getKind() != ElementKind.CLASS)
+        {
+            problem = "must be a class";
+        }
+        else if (!element.getModifiers().contains(Modifier.PUBLIC))
+        {
+            problem = "must be public";
+        }
+        else if (element.getModifiers().contains(Modifier.ABSTRACT))
+        {
+            problem = "must not be abstract";
+        }
+        else if (((TypeElement) element).getNestingKind() == NestingKind.MEMBER
+                && !element.getModifiers().contains(Modifier.STATIC))
+        {
+            problem = "must be a top level or static nested class";
+        }
+        else if (!this.hasPublicNoArgumentConstructor((TypeElement) element))
+        {
+            problem = "must have a public no argument constructor";
+        }
+        else if (!this.isChild((TypeElement) element))
+        {
+            problem = "must implement " + CHILD;
+        }
+        else
+        {
+            problem = null;
+        }
+        
+        if (problem != null)
+        {
+            this.processingEnv.getMessager().printMessage(
+                    Diagnostic.Kind.ERROR,
+                    "An @OFactoryChildType class " + problem + ".", element);
+        }
+        return (problem == null);
+    }
+    
+    private boolean hasPublicNoArgumentConstructor(final TypeElement type)
+    {
+        for (final ExecutableElement constructor : ElementFilter
+                .constructorsIn(type.getEnclosedElements()))
+        {
+            if (constructor.getParameters().isEmpty()
+                    && constructor.getModifiers().contains(Modifier.PUBLIC))
+            {
+                return (true);
+            }
+        }
+        return (false);
+    }
+    
+    private boolean isChild(final TypeElement type)
+    {
+        final TypeElement child = this.processingEnv.getElementUtils()
+                .getTypeElement(CHILD);
+        return (child == null || this.processingEnv.getTypeUtils()
+                .isAssignable(type.asType(), child.asType()));
+    }
+    
+    /*
+     * Writes the table and its service registration.
+     */
+    private void writeTable()
+    {
+        String tableName = this.processingEnv.getOptions().get(TABLE_OPTION);
+        if (tableName == null || tableName.length() == 0)
+        {
+            final PackageElement packageElement = this.processingEnv
+                    .getElementUtils().getPackageOf(
+                            this._children.values().iterator().next());
+            tableName = packageElement.isUnnamed() ? TABLE_NAME
+                    : packageElement.getQualifiedName() + "." + TABLE_NAME;
+        }
+        
+        final List<Element> originating = new ArrayList<Element>(
+                this._children.values());
+        try
+        {
+            final JavaFileObject source = this.processingEnv.getFiler()
+                    .createSourceFile(tableName,
+                            originating.toArray(new Element[originating.size()]));
+            try (final Writer writer = source.openWriter())
+            {
+                final Map<String, String> names = new TreeMap<String, String>();
+                for (final Map.Entry<String, TypeElement> entry : this._children
+                        .entrySet())
+                {
+                    names.put(entry.getKey(), entry.getValue()
+                            .getQualifiedName().toString());
+                }
+                writer.write(generateSource(tableName, names));
+            }
+            
+            final FileObject services = this.processingEnv.getFiler()
+                    .createResource(StandardLocation.CLASS_OUTPUT, "",
+                            "META-INF/services/" + CHILD_TABLE,
+                            originating.toArray(new Element[originating.size()]));
+            try (final Writer writer = services.openWriter())
+            {
+                writer.write(tableName + "\n");
+            }
+            this._tableName = tableName;
+        }
+        catch (final IOException e)
+        {
+            this.processingEnv.getMessager().printMessage(
+                    Diagnostic.Kind.ERROR,
+                    "Unable to write " + tableName + " - " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Returns the source of a table that creates each child with its
+     * constructor.
+     * 
+     * @param tableName
+     *            The fully qualified name of the table.
+     * @param names
+     *            The canonical name of each child by binary name.
+     * 
+     * @return The <code>String</code> source.
+     */
+    static String generateSource(final String tableName,
+            final Map<String, String> names)
+    {
+        final int dot = tableName.lastIndexOf('.');
+        final StringBuilder builder = new StringBuilder();
+        if (dot > 0)
+        {
+            builder.append("package ").append(tableName, 0, dot)
+                    .append(";\n\n");
+        }
+        builder.append("/**\n");
+        builder.append(" * Creates the OFactoryChildType classes of this module without reflection.\n");
+        builder.append(" * Generated by ")
+                .append(OFactoryChildTypeProcessor.class.getName())
+                .append(", do not edit.\n");
+        builder.append(" */\n");
+        builder.append("public final class ")
+                .append(tableName.substring(dot + 1))
+                .append(" implements ").append(CHILD_TABLE).append("\n");
+        builder.append("{\n");
+        builder.append("    @Override\n");
+        builder.append("    public ").append(CHILD)
+                .append(" newChild(final String className)\n");
+        builder.append("    {\n");
+        builder.append("        switch (className)\n");
+        builder.append("        {\n");
+        for (final Map.Entry<String, String> entry : names.entrySet())
+        {
+            builder.append("            case \"").append(entry.getKey())
+                    .append("\":\n");
+            builder.append("                return (new ")
+                    .append(entry.getValue()).append("());\n");
+        }
+        builder.append("            default:\n");
+        builder.append("                return (null);\n");
+        builder.append("        }\n");
+        builder.append("    }\n");
+        builder.append("}\n");
+        return (builder.toString());
+    }
+}
@@ -0,0 +1,199 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceLoader;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * 
+ * Test class for the <code>OFactoryChildTypeProcessor</code>. Compiles
+ * sources with the processor against stand-ins of the OFactory types and
+ * loads the generated table.
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public class OFactoryChildTypeProcessorTest
+{
+    private static final String[] OFACTORY_SOURCES = {
+            "package org.gabsocial.ofactory; public interface OFactoryChild {}",
+            "package org.gabsocial.ofactory; public @interface OFactoryChildType {}",
+            "package org.gabsocial.ofactory; public interface OFactoryChildTable { OFactoryChild newChild(String className); }" };
+    
+    private DiagnosticCollector<JavaFileObject> _diagnostics;
+    
+    private File                                _directory;
+    
+    @Before
+    public void setup() throws IOException
+    {
+        this._diagnostics = new DiagnosticCollector<JavaFileObject>();
+        this._directory = Files.createTempDirectory("ofactory-processor")
+                .toFile();
+    }
+    
+    private boolean compile(final List<String> options,
+            final String... sources) throws IOException
+    {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assume.assumeTrue(compiler != null);
+        
+        final File classes = new File(this._directory, "classes");
+        Assert.assertTrue(classes.mkdirs());
+        final List<File> files = new ArrayList<File>();
+        final List<String> all = new ArrayList<String>(
+                Arrays.asList(OFACTORY_SOURCES));
+        all.addAll(Arrays.asList(sources));
+        for (final String source : all)
+        {
+            final String packageName = source.substring(8, source.indexOf(';'));
+            final String rest = source.substring(source.indexOf(';') + 1);
+            final String[] words = rest.trim().split("[\\s{]+");
+            String name = null;
+            for (int i = 0; i < words.length - 1 && name == null; i++)
+            {
+                if (words[i].equals("class") || words[i].equals("interface")
+                        || words[i].equals("@interface"))
+                {
+                    name = words[i + 1];
+                }
+            }
+            final File file = new File(this._directory, "src/"
+                    + packageName.replace('.', '/') + "/" + name + ".java");
+            Assert.assertTrue(file.getParentFile().isDirectory()
+                    || file.getParentFile().mkdirs());
+            Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+            files.add(file);
+        }
+        
+        final List<String> arguments = new ArrayList<String>(options);
+        arguments.addAll(Arrays.asList("-d", classes.getPath()));
+        try (final StandardJavaFileManager fileManager = compiler
+                .getStandardFileManager(null, Locale.ROOT,
+                        StandardCharsets.UTF_8))
+        {
+            final JavaCompiler.CompilationTask task = compiler.getTask(null,
+                    fileManager, this._diagnostics, arguments, null,
+                    fileManager.getJavaFileObjectsFromFiles(files));
+            task.setProcessors(Collections
+                    .singletonList(new OFactoryChildTypeProcessor()));
+            return (task.call());
+        }
+    }
+    
+    private String errors()
+    {
+        final StringBuilder builder = new StringBuilder();
+        for (final Diagnostic<? extends JavaFileObject> diagnostic : this._diagnostics
+                .getDiagnostics())
+        {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR)
+            {
+                builder.append(diagnostic.getMessage(Locale.ROOT)).append('\n');
+            }
+        }
+        return (builder.toString());
+    }
+    
+    @Test
+    public void testGeneratesTable() throws Exception
+    {
+        Assert.assertTrue(this.errors(), this.compile(
+                Collections.<String> emptyList(),
+                "package com.example; @org.gabsocial.ofactory.OFactoryChildType public class AlphaChild implements org.gabsocial.ofactory.OFactoryChild {}",
+                "package com.example; public class Outer { @org.gabsocial.ofactory.OFactoryChildType public static class Nested implements org.gabsocial.ofactory.OFactoryChild {} }",
+                "package com.example; public class PlainChild implements org.gabsocial.ofactory.OFactoryChild {}"));
+        
+        try (final URLClassLoader loader = new URLClassLoader(
+                new URL[] { new File(this._directory, "classes").toURI()
+                        .toURL() }, null))
+        {
+            final Class<?> tableType = loader
+                    .loadClass("org.gabsocial.ofactory.OFactoryChildTable");
+            final Iterator<?> tables = ServiceLoader.load(tableType, loader)
+                    .iterator();
+            Assert.assertTrue(tables.hasNext());
+            final Object table = tables.next();
+            Assert.assertTrue(!tables.hasNext());
+            Assert.assertTrue(table.getClass().getName()
+                    .equals("com.example."
+                            + OFactoryChildTypeProcessor.TABLE_NAME));
+            
+            final java.lang.reflect.Method newChild = tableType.getMethod(
+                    "newChild", String.class);
+            Assert.assertTrue(newChild.invoke(table, "com.example.AlphaChild")
+                    .getClass().getName().equals("com.example.AlphaChild"));
+            Assert.assertTrue(newChild.invoke(table, "com.example.Outer$Nested")
+                    .getClass().getName().equals("com.example.Outer$Nested"));
+            Assert.assertTrue(newChild.invoke(table, "com.example.PlainChild") == null);
+            Assert.assertTrue(newChild.invoke(table, "com.example.Missing") == null);
+        }
+    }
+    
+    @Test
+    public void testTableNameOption() throws IOException
+    {
+        Assert.assertTrue(this.errors(), this.compile(
+                Collections.singletonList("-A"
+                        + OFactoryChildTypeProcessor.TABLE_OPTION
+                        + "=com.example.tables.ExampleTable"),
+                "package com.example; @org.gabsocial.ofactory.OFactoryChildType public class AlphaChild implements org.gabsocial.ofactory.OFactoryChild {}"));
+        Assert.assertTrue(new File(this._directory,
+                "classes/com/example/tables/ExampleTable.class").isFile());
+    }
+    
+    @Test
+    public void testRejectsInvalidChildren() throws IOException
+    {
+        Assert.assertTrue(!this.compile(
+                Collections.<String> emptyList(),
+                "package com.example; @org.gabsocial.ofactory.OFactoryChildType public class HiddenChild implements org.gabsocial.ofactory.OFactoryChild { HiddenChild() {} }",
+                "package com.example; @org.gabsocial.ofactory.OFactoryChildType public abstract class AbstractChild implements org.gabsocial.ofactory.OFactoryChild {}",
+                "package com.example; @org.gabsocial.ofactory.OFactoryChildType public class NotAChild {}"));
+        final String errors = this.errors();
+        Assert.assertTrue(errors, errors.contains("public no argument constructor"));
+        Assert.assertTrue(errors, errors.contains("must not be abstract"));
+        Assert.assertTrue(errors, errors.contains("must implement"));
+    }
+}
@@ -0,0 +1,49 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+/**
+ * 
+ * An interface to implement if the state of a child is to be kept in the
+ * checkpoints of its <code>OFactory</code>, so that a restored child need not
+ * rebuild it. A child that does not implement this interface is restored
+ * by being created and initialized again.
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public abstract interface CheckpointableOFactoryChild extends OFactoryChild
+{
+    /**
+     * Returns the state of the child to be written to a checkpoint. Called
+     * while other threads may be using the child.
+     * 
+     * @return A <code>byte</code> array. May be empty.
+     */
+    public abstract byte[] checkpoint();
+    
+    /**
+     * Restores the state written to a checkpoint. Called after the child is
+     * initialized and before it is bound to its key.
+     * 
+     * @param state
+     *            The <code>byte</code> array returned by checkpoint().
+     */
+    public abstract void restore(final byte[] state);
+}
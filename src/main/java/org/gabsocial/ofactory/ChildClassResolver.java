@@ -0,0 +1,157 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * <pre>
+ * Creates children of classes loaded by one class loader, caching the no
+ * argument constructor of each class so that a class name is resolved once
+ * per loader.
+ * 
+ * The cache is held by the resolver rather than keyed by loader in a shared
+ * map, so dropping the resolver lets the loader and its classes be
+ * collected.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+final class ChildClassResolver
+{
+    private final ConcurrentMap<String, Constructor<?>> _constructors;
+    
+    private final ClassLoader                           _loader;
+    
+    ChildClassResolver(final ClassLoader loader)
+    {
+        assert (loader != null) : "ChildClassResolver() - the parameter 'loader' should not be null";
+        this._constructors = new ConcurrentHashMap<String, Constructor<?>>();
+        this._loader = loader;
+    }
+    
+    ClassLoader getClassLoader()
+    {
+        return (this._loader);
+    }
+    
+    /**
+     * Creates a child of the class.
+     * 
+     * @param className
+     *            A <code>String</code> fully qualified class name.
+     * 
+     * @return A new <code>OFactoryChild</code> instance.
+     * 
+     * @throws OFactorySysException
+     *             if the class cannot be loaded or instantiated.
+     */
+    OFactoryChild newChild(final String className)
+    {
+        final Constructor<?> constructor = this.resolve(className);
+        try
+        {
+            return ((OFactoryChild) constructor.newInstance());
+        }
+        catch (final IllegalAccessException e)
+        {
+            throw (new OFactorySysException("Illegal access to class name - "
+                    + className, e));
+        }
+        catch (final InstantiationException e)
+        {
+            throw (new OFactorySysException(
+                    "Unable to instantiate the class name - " + className, e));
+        }
+        catch (final InvocationTargetException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw ((RuntimeException) e.getCause());
+            }
+            else if (e.getCause() instanceof Error)
+            {
+                throw ((Error) e.getCause());
+            }
+            throw (new OFactorySysException(
+                    "Unable to instantiate the class name - " + className,
+                    e.getCause()));
+        }
+    }
+    
+    /**
+     * Loads and initializes the class and returns its public no argument
+     * constructor, from the cache after the first call.
+     * 
+     * @param className
+     *            A <code>String</code> fully qualified class name.
+     * 
+     * @return A <code>Constructor</code> instance.
+     * 
+     * @throws OFactorySysException
+     *             if the class cannot be loaded, is not an
+     *             <code>OFactoryChild</code> or has no public no argument
+     *             constructor.
+     */
+    Constructor<?> resolve(final String className)
+    {
+        Constructor<?> constructor = this._constructors.get(className);
+        if (constructor == null)
+        {
+            final Class<?> type;
+            try
+            {
+                type = Class.forName(className, true, this._loader);
+            }
+            catch (final ClassNotFoundException e)
+            {
+                throw (new OFactorySysException(
+                        "Unable to locate the class name - " + className, e));
+            }
+            if (!OFactoryChild.class.isAssignableFrom(type))
+            {
+                throw (new OFactorySysException("The class name - "
+                        + className + " is not an OFactoryChild of the loader of "
+                        + OFactoryChild.class.getName()));
+            }
+            try
+            {
+                constructor = type.getConstructor();
+            }
+            catch (final NoSuchMethodException e)
+            {
+                throw (new OFactorySysException(
+                        "Unable to instantiate the class name - " + className,
+                        e));
+            }
+            final Constructor<?> cached = this._constructors.putIfAbsent(
+                    className, constructor);
+            if (cached != null)
+            {
+                constructor = cached;
+            }
+        }
+        return (constructor);
+    }
+}
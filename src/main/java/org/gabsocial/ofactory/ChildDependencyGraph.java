@@ -0,0 +1,235 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * <pre>
+ * The keys each child of an <code>OFactory</code> depends on.
+ * 
+ * A dependency is declared on keys, not children, so it holds before the
+ * children are created and after they are closed and created again.  A
+ * declaration that would make a key depend on itself, directly or through
+ * other keys, is refused, so the graph is always acyclic and can be split
+ * into levels: the keys of a level depend only on keys of earlier levels.
+ * The owning factory reads and changes the graph under its child table
+ * lock.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+final class ChildDependencyGraph
+{
+    /*
+     * The keys each key depends on.
+     */
+    private final Map<String, Set<String>> _dependencies = new HashMap<String, Set<String>>();
+    
+    /**
+     * Adds the dependencies of a key, unless one of them depends on the key.
+     * 
+     * @param key
+     *            The key of the dependent child.
+     * @param dependencies
+     *            The keys of the children it depends on.
+     * 
+     * @return The first dependency that depends on the key, or null if the
+     *         dependencies were added.
+     */
+    String add(final String key, final String[] dependencies)
+    {
+        for (final String dependency : dependencies)
+        {
+            if (this.dependsOn(dependency, key))
+            {
+                return (dependency);
+            }
+        }
+        
+        Set<String> keys = this._dependencies.get(key);
+        if (keys == null)
+        {
+            keys = new LinkedHashSet<String>();
+            this._dependencies.put(key, keys);
+        }
+        Collections.addAll(keys, dependencies);
+        return (null);
+    }
+    
+    /*
+     * Returns whether the key is the other key or reaches it through its
+     * dependencies.
+     */
+    private boolean dependsOn(final String key, final String other)
+    {
+        final Set<String> visited = new HashSet<String>();
+        final List<String> pending = new ArrayList<String>();
+        pending.add(key);
+        while (!pending.isEmpty())
+        {
+            final String next = pending.remove(pending.size() - 1);
+            if (next.equals(other))
+            {
+                return (true);
+            }
+            final Set<String> keys = this._dependencies.get(next);
+            if (keys != null && visited.add(next))
+            {
+                pending.addAll(keys);
+            }
+        }
+        return (false);
+    }
+    
+    /**
+     * Drops every dependency.
+     */
+    void clear()
+    {
+        this._dependencies.clear();
+    }
+    
+    /**
+     * Returns a copy of the keys the key depends on.
+     */
+    Set<String> get(final String key)
+    {
+        final Set<String> keys = this._dependencies.get(key);
+        return ((keys == null) ? Collections.<String> emptySet()
+                : new LinkedHashSet<String>(keys));
+    }
+    
+    /**
+     * Returns whether no key has a dependency.
+     */
+    boolean isEmpty()
+    {
+        return (this._dependencies.isEmpty());
+    }
+    
+    /**
+     * Splits the keys into levels. A key is placed in the level after the
+     * last level holding a key it depends on; dependencies outside the keys
+     * are ignored. Without dependencies every key is in the first level.
+     * 
+     * @param keys
+     *            The keys to split.
+     * 
+     * @return The levels, the first depending on no other.
+     */
+    List<List<String>> levels(final Collection<String> keys)
+    {
+        final List<List<String>> levels = new ArrayList<List<String>>();
+        if (this._dependencies.isEmpty())
+        {
+            if (!keys.isEmpty())
+            {
+                levels.add(new ArrayList<String>(keys));
+            }
+            return (levels);
+        }
+        
+        // a pass over the keys in dependency order, counting down the
+        // dependencies of each key not yet placed.
+        final Map<String, Integer> pendingByKey = new HashMap<String, Integer>();
+        final Map<String, List<String>> dependentsByKey = new HashMap<String, List<String>>();
+        for (final String key : keys)
+        {
+            pendingByKey.put(key, Integer.valueOf(0));
+        }
+        List<String> level = new ArrayList<String>();
+        for (final String key : keys)
+        {
+            int pending = 0;
+            final Set<String> dependencies = this._dependencies.get(key);
+            if (dependencies != null)
+            {
+                for (final String dependency : dependencies)
+                {
+                    if (pendingByKey.containsKey(dependency))
+                    {
+                        List<String> dependents = dependentsByKey
+                                .get(dependency);
+                        if (dependents == null)
+                        {
+                            dependents = new ArrayList<String>();
+                            dependentsByKey.put(dependency, dependents);
+                        }
+                        dependents.add(key);
+                        pending++;
+                    }
+                }
+            }
+            if (pending == 0)
+            {
+                level.add(key);
+            }
+            else
+            {
+                pendingByKey.put(key, Integer.valueOf(pending));
+            }
+        }
+        
+        // the graph is acyclic, so every key is placed.
+        while (!level.isEmpty())
+        {
+            levels.add(level);
+            final List<String> next = new ArrayList<String>();
+            for (final String key : level)
+            {
+                final List<String> dependents = dependentsByKey.get(key);
+                if (dependents != null)
+                {
+                    for (final String dependent : dependents)
+                    {
+                        final int pending = pendingByKey.get(dependent)
+                                .intValue() - 1;
+                        pendingByKey.put(dependent, Integer.valueOf(pending));
+                        if (pending == 0)
+                        {
+                            next.add(dependent);
+                        }
+                    }
+                }
+            }
+            level = next;
+        }
+        return (levels);
+    }
+    
+    /**
+     * Drops the dependencies of a key. Keys that depend on it keep their
+     * dependency.
+     */
+    void remove(final String key)
+    {
+        this._dependencies.remove(key);
+    }
+}
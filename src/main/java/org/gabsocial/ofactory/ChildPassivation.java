@@ -0,0 +1,474 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The passivated children of an <code>OFactory</code>, kept as checkpoint
+ * records in a memory-mapped file, and the times the passivatable children
+ * were last got. The storage methods must be called while holding the child
+ * table lock of the factory; contains(key) and touch(key) need no lock.
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+final class ChildPassivation
+{
+    /**
+     * A passivatable child that may be passivated, with the time it was last
+     * got when it was found.
+     */
+    static final class Candidate
+    {
+        final long         _accessed;
+        
+        final OFactoryChild _child;
+        
+        final String       _key;
+        
+        final Stamp        _stamp;
+        
+        Candidate(final String key, final OFactoryChild child,
+                final Stamp stamp)
+        {
+            this._key = key;
+            this._child = child;
+            this._stamp = stamp;
+            this._accessed = stamp._accessed;
+        }
+    }
+    
+    /**
+     * The place of a record in the file.
+     */
+    static final class Slot
+    {
+        final int _length;
+        
+        final int _position;
+        
+        Slot(final int position, final int length)
+        {
+            this._position = position;
+            this._length = length;
+        }
+    }
+    
+    /**
+     * The time a passivatable child was last got.
+     */
+    static final class Stamp
+    {
+        volatile long _accessed;
+        
+        Stamp(final long accessed)
+        {
+            this._accessed = accessed;
+        }
+    }
+    
+    /*
+     * Least recently got first.
+     */
+    private static final Comparator<Candidate> LEAST_RECENT = new Comparator<Candidate>()
+    {
+        @Override
+        public int compare(final Candidate first, final Candidate second)
+        {
+            return (Long.compare(first._accessed, second._accessed));
+        }
+    };
+    
+    private static final int  INITIAL_SIZE = 1024 * 1024;
+    
+    private MappedByteBuffer                     _buffer;
+    
+    private final FileChannel                    _channel;
+    
+    private int                                  _end;
+    
+    private final Path                           _file;
+    
+    private int                                  _freed;
+    
+    private final long                           _idleNanos;
+    
+    private final int                            _maxActiveChildren;
+    
+    private final ConcurrentMap<String, Slot>    _slots;
+    
+    private final ConcurrentMap<String, Stamp>   _stamps;
+    
+    private final ScheduledExecutorService       _sweeper;
+    
+    /**
+     * Creates the storage file, replacing one left by an earlier run, and
+     * starts a daemon thread that calls the sweep every half of the idle
+     * time.
+     * 
+     * @param file
+     *            The <code>Path</code> of the storage file.
+     * @param idleNanos
+     *            The time in nanoseconds a child may go without being got
+     *            before it is passivated.
+     * @param maxActiveChildren
+     *            The number of passivatable children that may be active, or
+     *            0 for no limit.
+     * @param sweep
+     *            The <code>Runnable</code> that passivates the idle children.
+     * 
+     * @throws IOException
+     *             if the file cannot be created.
+     */
+    ChildPassivation(final Path file, final long idleNanos,
+            final int maxActiveChildren, final Runnable sweep)
+            throws IOException
+    {
+        this._file = file;
+        this._idleNanos = idleNanos;
+        this._maxActiveChildren = maxActiveChildren;
+        this._slots = new ConcurrentHashMap<String, Slot>();
+        this._stamps = new ConcurrentHashMap<String, Stamp>();
+        
+        final Path directory = file.toAbsolutePath().getParent();
+        if (directory != null)
+        {
+            Files.createDirectories(directory);
+        }
+        this._channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this._buffer = this._channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                INITIAL_SIZE);
+        
+        this._sweeper = Executors
+                .newSingleThreadScheduledExecutor(new ThreadFactory()
+                {
+                    @Override
+                    public Thread newThread(final Runnable runnable)
+                    {
+                        final Thread thread = new Thread(runnable,
+                                "ofactory-passivation");
+                        thread.setDaemon(true);
+                        return (thread);
+                    }
+                });
+        final long period = Math.max(TimeUnit.MILLISECONDS.toNanos(1),
+                idleNanos / 2);
+        this._sweeper.scheduleWithFixedDelay(sweep, period, period,
+                TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Returns the children to passivate, least recently got first: those
+     * idle for the idle time, then as many of the least recently got as keep
+     * the active children within the limit. A child not seen before starts
+     * to idle now.
+     * 
+     * @param children
+     *            The child table.
+     * 
+     * @return A <code>List</code> of <code>Candidate</code> instances.
+     */
+    List<Candidate> candidates(
+            final Map<String, ? extends OFactoryChild> children)
+    {
+        final long now = System.nanoTime();
+        final List<Candidate> passivatable = new ArrayList<Candidate>();
+        for (final Map.Entry<String, ? extends OFactoryChild> entry : children
+                .entrySet())
+        {
+            if (entry.getValue() instanceof PassivatableOFactoryChild)
+            {
+                Stamp stamp = this._stamps.get(entry.getKey());
+                if (stamp == null)
+                {
+                    stamp = new Stamp(now);
+                    final Stamp existing = this._stamps.putIfAbsent(
+                            entry.getKey(), stamp);
+                    stamp = (existing == null) ? stamp : existing;
+                }
+                passivatable.add(new Candidate(entry.getKey(), entry
+                        .getValue(), stamp));
+            }
+        }
+        Collections.sort(passivatable, LEAST_RECENT);
+        
+        final int over = (this._maxActiveChildren == 0) ? 0 : passivatable
+                .size() - this._maxActiveChildren;
+        int count = 0;
+        while (count < passivatable.size()
+                && (count < over || now
+                        - passivatable.get(count)._accessed >= this._idleNanos))
+        {
+            count++;
+        }
+        return (passivatable.subList(0, count));
+    }
+    
+    /**
+     * Stops the sweep and deletes the storage file.
+     */
+    void close()
+    {
+        this._sweeper.shutdownNow();
+        this._slots.clear();
+        this._stamps.clear();
+        try
+        {
+            this._channel.close();
+            Files.deleteIfExists(this._file);
+        }
+        catch (final IOException e)
+        {
+            throw (new OFactorySysException(
+                    "Unable to delete the passivation file " + this._file, e));
+        }
+    }
+    
+    /**
+     * Returns whether a child is passivated under the key.
+     * 
+     * @param key
+     *            A <code>String</code> key.
+     * 
+     * @return A <code>boolean</code> value.
+     */
+    boolean contains(final String key)
+    {
+        return (this._slots.containsKey(key));
+    }
+    
+    /**
+     * Forgets when a child that was closed was last got.
+     * 
+     * @param key
+     *            The <code>String</code> key of the child.
+     */
+    void forget(final String key)
+    {
+        this._stamps.remove(key);
+    }
+    
+    /**
+     * Returns the keys of the passivated children.
+     * 
+     * @return A <code>List</code> of <code>String</code> keys.
+     */
+    List<String> getKeys()
+    {
+        return (new ArrayList<String>(this._slots.keySet()));
+    }
+    
+    /**
+     * Returns the number of passivated children.
+     * 
+     * @return An <code>int</code> value 0 &lt;= x.
+     */
+    int getCount()
+    {
+        return (this._slots.size());
+    }
+    
+    /**
+     * Returns the records of the passivated children.
+     * 
+     * @return A <code>List</code> of <code>Record</code> instances.
+     */
+    List<OFactoryCheckpoint.Record> getRecords()
+    {
+        final List<OFactoryCheckpoint.Record> records = new ArrayList<OFactoryCheckpoint.Record>();
+        for (final Slot slot : this._slots.values())
+        {
+            records.add(this.read(slot));
+        }
+        return (records);
+    }
+    
+    /**
+     * Returns the slot of a passivated child.
+     * 
+     * @param key
+     *            The <code>String</code> key of the child.
+     * 
+     * @return A <code>Slot</code> instance, or null if no child is
+     *         passivated under the key.
+     */
+    Slot getSlot(final String key)
+    {
+        return (this._slots.get(key));
+    }
+    
+    /**
+     * Writes the record of a child that is passivated, and forgets when it
+     * was last got.
+     * 
+     * @param record
+     *            The <code>Record</code> of the child.
+     * 
+     * @throws OFactorySysException
+     *             if the file cannot be grown.
+     */
+    void put(final OFactoryCheckpoint.Record record)
+    {
+        final ByteBuffer encoded = OFactoryCheckpoint.writeRecord(
+                ByteBuffer.allocate(256), record);
+        encoded.flip();
+        final int length = encoded.remaining();
+        if (this._buffer.capacity() - this._end < length)
+        {
+            this.makeSpace(length);
+        }
+        this._buffer.position(this._end);
+        this._buffer.put(encoded);
+        this._slots.put(record._key, new Slot(this._end, length));
+        this._stamps.remove(record._key);
+        this._end += length;
+    }
+    
+    /**
+     * Returns the record in a slot.
+     * 
+     * @param slot
+     *            The <code>Slot</code> of a passivated child.
+     * 
+     * @return A <code>Record</code> instance.
+     */
+    OFactoryCheckpoint.Record read(final Slot slot)
+    {
+        final ByteBuffer buffer = this._buffer.duplicate();
+        buffer.position(slot._position);
+        buffer.limit(slot._position + slot._length);
+        return (OFactoryCheckpoint.readRecord(buffer));
+    }
+    
+    /**
+     * Removes the record of a child that is reactivated, and starts the
+     * child's idle time now.
+     * 
+     * @param key
+     *            The <code>String</code> key of the child.
+     */
+    void remove(final String key)
+    {
+        final Slot slot = this._slots.remove(key);
+        if (slot != null)
+        {
+            this._freed += slot._length;
+            this._stamps.put(key, new Stamp(System.nanoTime()));
+        }
+    }
+    
+    /**
+     * Records that a passivatable child was got.
+     * 
+     * @param key
+     *            The <code>String</code> key of the child.
+     */
+    void touch(final String key)
+    {
+        final Stamp stamp = this._stamps.get(key);
+        if (stamp != null)
+        {
+            stamp._accessed = System.nanoTime();
+        }
+    }
+    
+    /*
+     * Moves the records down over the space freed by reactivated children
+     * if that makes enough room, otherwise maps a larger file.
+     */
+    private void makeSpace(final int length)
+    {
+        if (this._freed > 0
+                && this._buffer.capacity() - this._end + this._freed >= length
+                && this._freed >= this._end / 2)
+        {
+            final List<Map.Entry<String, Slot>> slots = new ArrayList<Map.Entry<String, Slot>>(
+                    this._slots.entrySet());
+            Collections.sort(slots, new Comparator<Map.Entry<String, Slot>>()
+            {
+                @Override
+                public int compare(final Map.Entry<String, Slot> first,
+                        final Map.Entry<String, Slot> second)
+                {
+                    return (Integer.compare(first.getValue()._position,
+                            second.getValue()._position));
+                }
+            });
+            int end = 0;
+            for (final Map.Entry<String, Slot> entry : slots)
+            {
+                final Slot slot = entry.getValue();
+                if (slot._position != end)
+                {
+                    final byte[] bytes = new byte[slot._length];
+                    final ByteBuffer source = this._buffer.duplicate();
+                    source.position(slot._position);
+                    source.get(bytes);
+                    final ByteBuffer target = this._buffer.duplicate();
+                    target.position(end);
+                    target.put(bytes);
+                    entry.setValue(new Slot(end, slot._length));
+                }
+                end += slot._length;
+            }
+            this._end = end;
+            this._freed = 0;
+            return;
+        }
+        
+        final long size = Math.max((long) this._buffer.capacity() * 2,
+                (long) this._end + length);
+        if (size > Integer.MAX_VALUE)
+        {
+            throw (new OFactorySysException("The passivation file "
+                    + this._file + " is full."));
+        }
+        try
+        {
+            this._buffer = this._channel.map(FileChannel.MapMode.READ_WRITE,
+                    0, size);
+        }
+        catch (final IOException e)
+        {
+            throw (new OFactorySysException(
+                    "Unable to grow the passivation file " + this._file, e));
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * <pre>
+ * An index of the tags given to the children of an <code>OFactory</code>.
+ * 
+ * Each tagged child is given a dense slot number, reused once the child is
+ * closed, and each tag holds a <code>SlotBitSet</code> of the slots of its
+ * children.  A query for children carrying several tags intersects the
+ * bitsets, starting from the smallest one.
+ * 
+ * This class is not thread safe. The owning factory guards it with its child
+ * table lock.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+final class ChildTagIndex
+{
+    private static final String[]         NO_TAGS    = new String[0];
+    
+    /*
+     * The slots of closed children that can be given out again.
+     */
+    private int[]                         _freeSlots = new int[16];
+    
+    private int                           _freeSlotCount;
+    
+    /*
+     * The key held in each slot. Null for a free slot.
+     */
+    private String[]                      _keyBySlot = new String[16];
+    
+    private int                           _nextSlot;
+    
+    private final Map<String, Integer>    _slotByKey = new HashMap<String, Integer>();
+    
+    private final Map<String, SlotBitSet> _slotsByTag = new HashMap<String, SlotBitSet>();
+    
+    /*
+     * The tags held by each slot so they can be cleared when a child closes.
+     */
+    private String[][]                    _tagsBySlot = new String[16][];
+    
+    /**
+     * Gives the key a slot and adds the slot to each tag.
+     * 
+     * @param key
+     *            The key bound to the child.
+     * @param tags
+     *            The tags of the child. Must not be empty.
+     */
+    void add(final String key, final String[] tags)
+    {
+        assert (key != null) : "add() - the parameter 'key' should not be null.";
+        assert (tags != null && tags.length > 0) : "add() - the parameter 'tags' should not be null or empty.";
+        assert (!this._slotByKey.containsKey(key)) : "add() - the key is already tagged.";
+        
+        // a repeated tag is only held once.
+        final Set<String> uniqueTags = new LinkedHashSet<String>(
+                Arrays.asList(tags));
+        final int slot = this.allocateSlot();
+        this._keyBySlot[slot] = key;
+        this._tagsBySlot[slot] = uniqueTags.toArray(new String[uniqueTags
+                .size()]);
+        this._slotByKey.put(key, slot);
+        for (final String tag : uniqueTags)
+        {
+            SlotBitSet slots = this._slotsByTag.get(tag);
+            if (slots == null)
+            {
+                slots = new SlotBitSet();
+                this._slotsByTag.put(tag, slots);
+            }
+            slots.set(slot);
+        }
+    }
+    
+    private int allocateSlot()
+    {
+        if (this._freeSlotCount > 0)
+        {
+            this._freeSlotCount--;
+            return (this._freeSlots[this._freeSlotCount]);
+        }
+        final int slot = this._nextSlot++;
+        if (slot == this._keyBySlot.length)
+        {
+            this._keyBySlot = Arrays.copyOf(this._keyBySlot, slot * 2);
+            this._tagsBySlot = Arrays.copyOf(this._tagsBySlot, slot * 2);
+        }
+        return (slot);
+    }
+    
+    /**
+     * Returns the keys of the children that carry every tag.
+     * 
+     * @param tags
+     *            The tags to match. Must not be empty.
+     * @return A <code>Set</code> of <code>String</code> keys in slot order.
+     */
+    Set<String> getKeys(final String[] tags)
+    {
+        final SlotBitSet slots = this.intersect(tags);
+        if (slots == null)
+        {
+            return (new LinkedHashSet<String>());
+        }
+        final Set<String> keys = new LinkedHashSet<String>(
+                (slots.cardinality() * 4 / 3) + 1);
+        slots.forEach(new SlotBitSet.SlotVisitor()
+        {
+            @Override
+            public void visit(final int slot)
+            {
+                keys.add(ChildTagIndex.this._keyBySlot[slot]);
+            }
+        });
+        return (keys);
+    }
+    
+    /**
+     * Returns the tags of a child.
+     * 
+     * @param key
+     *            The key bound to the child.
+     * @return An array of tags. Empty if the child has no tags.
+     */
+    String[] getTags(final String key)
+    {
+        final Integer slot = this._slotByKey.get(key);
+        return ((slot == null) ? NO_TAGS : this._tagsBySlot[slot].clone());
+    }
+    
+    /**
+     * Returns the number of children that carry every tag.
+     * 
+     * @param tags
+     *            The tags to match. Must not be empty.
+     * @return An <code>int</code> value 0 &lt;= x &lt;= n.
+     */
+    int count(final String[] tags)
+    {
+        final SlotBitSet slots = this.intersect(tags);
+        return ((slots == null) ? 0 : slots.cardinality());
+    }
+    
+    /*
+     * Returns the slots that carry every tag or null when none do.
+     */
+    private SlotBitSet intersect(final String[] tags)
+    {
+        assert (tags != null && tags.length > 0) : "intersect() - the parameter 'tags' should not be null or empty.";
+        
+        final SlotBitSet[] sets = new SlotBitSet[tags.length];
+        for (int i = 0; i < tags.length; i++)
+        {
+            sets[i] = this._slotsByTag.get(tags[i]);
+            if (sets[i] == null)
+            {
+                return (null);
+            }
+        }
+        if (sets.length == 1)
+        {
+            return (sets[0]);
+        }
+        
+        // start with the smallest set so the result shrinks quickly.
+        int smallest = 0;
+        for (int i = 1; i < sets.length; i++)
+        {
+            if (sets[i].cardinality() < sets[smallest].cardinality())
+            {
+                smallest = i;
+            }
+        }
+        SlotBitSet result = sets[smallest];
+        for (int i = 0; (i < sets.length) && !result.isEmpty(); i++)
+        {
+            if (i != smallest)
+            {
+                result = SlotBitSet.and(result, sets[i]);
+            }
+        }
+        return (result);
+    }
+    
+    /**
+     * Clears the slot of the key from each of its tags and frees the slot.
+     * Does nothing if the key has no tags.
+     * 
+     * @param key
+     *            The key bound to the child.
+     */
+    void remove(final String key)
+    {
+        final Integer boxedSlot = this._slotByKey.remove(key);
+        if (boxedSlot != null)
+        {
+            final int slot = boxedSlot;
+            for (final String tag : this._tagsBySlot[slot])
+            {
+                final SlotBitSet slots = this._slotsByTag.get(tag);
+                slots.clear(slot);
+                if (slots.isEmpty())
+                {
+                    this._slotsByTag.remove(tag);
+                }
+            }
+            this._keyBySlot[slot] = null;
+            this._tagsBySlot[slot] = null;
+            if (this._freeSlotCount == this._freeSlots.length)
+            {
+                this._freeSlots = Arrays.copyOf(this._freeSlots,
+                        this._freeSlotCount * 2);
+            }
+            this._freeSlots[this._freeSlotCount++] = slot;
+        }
+    }
+    
+}
@@ -0,0 +1,253 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * <pre>
+ * An index of the children of an <code>OFactory</code> by type.
+ * 
+ * Every child is indexed under its class, each of its superclasses and every
+ * interface those implement, and the number of children of each exact class is
+ * kept for reporting.  The index is an immutable value like the child
+ * table, so a lookup returns a snapshot of the matching children without
+ * copying them.  The owning factory replaces the index under its child table
+ * lock.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+final class ChildTypeIndex<C>
+{
+    /*
+     * Computes the types a class is indexed under: the class, its
+     * superclasses and every interface those implement, less the types
+     * that are not indexed.
+     */
+    private static final class IndexedTypes extends ClassValue<Class<?>[]>
+    {
+        @Override
+        protected Class<?>[] computeValue(final Class<?> type)
+        {
+            final Set<Class<?>> types = new LinkedHashSet<Class<?>>();
+            collectTypes(type, types);
+            for (final Iterator<Class<?>> iterator = types.iterator(); iterator
+                    .hasNext();)
+            {
+                if (!isIndexed(iterator.next()))
+                {
+                    iterator.remove();
+                }
+            }
+            return (types.toArray(new Class<?>[types.size()]));
+        }
+        
+        private static void collectTypes(final Class<?> type,
+                final Set<Class<?>> types)
+        {
+            if ((type != null) && types.add(type))
+            {
+                collectTypes(type.getSuperclass(), types);
+                for (final Class<?> implemented : type.getInterfaces())
+                {
+                    collectTypes(implemented, types);
+                }
+            }
+        }
+    }
+    
+    private static final ChildTypeIndex<Object> EMPTY = new ChildTypeIndex<Object>(
+                                                        PersistentHashMap.<Class<?>, PersistentHashMap<String, Object>> empty(),
+                                                        PersistentHashMap.<String, Integer> empty());
+    
+    /*
+     * The types of each class, computed once per class.
+     */
+    private static final ClassValue<Class<?>[]> TYPES = new IndexedTypes();
+    
+    /**
+     * Returns the empty index.
+     * 
+     * @return An empty <code>ChildTypeIndex</code>.
+     */
+    @SuppressWarnings("unchecked")
+    static <C> ChildTypeIndex<C> empty()
+    {
+        // the empty index holds no child of any type.
+        return ((ChildTypeIndex<C>) (ChildTypeIndex<?>) EMPTY);
+    }
+    
+    /**
+     * Returns whether children are indexed under the type. Object and the
+     * child interfaces and base classes are held by most or all children, so
+     * indexing them would rewrite a path of the index on every create for a
+     * lookup that the child table answers as well.
+     * 
+     * @param type
+     *            The class or interface.
+     * @return True if the type is indexed.
+     */
+    static boolean isIndexed(final Class<?> type)
+    {
+        return ((type != Object.class) && (type != OFactoryChild.class)
+                && (type != PropertiedOFactoryChild.class)
+                && (type != BaseOFactoryChild.class)
+                && (type != BasePropertiedOFactoryChild.class));
+    }
+    
+    /*
+     * The children keyed by their bound keys for each indexed type.
+     */
+    private final PersistentHashMap<Class<?>, PersistentHashMap<String, C>> _byType;
+    
+    /*
+     * The number of children of each exact class keyed by class name.
+     */
+    private final PersistentHashMap<String, Integer>                       _countByClassName;
+    
+    private ChildTypeIndex(
+            final PersistentHashMap<Class<?>, PersistentHashMap<String, C>> byType,
+            final PersistentHashMap<String, Integer> countByClassName)
+    {
+        this._byType = byType;
+        this._countByClassName = countByClassName;
+    }
+    
+    /**
+     * Returns the number of children of each exact class.
+     * 
+     * @return An immutable <code>PersistentHashMap</code> of class names to
+     *         counts.
+     */
+    PersistentHashMap<String, Integer> countByClassName()
+    {
+        return (this._countByClassName);
+    }
+    
+    /**
+     * Returns the children that are instances of the type. Every child is an
+     * OFactoryChild, so the child table is returned for it and for Object;
+     * the other types that are not indexed are looked up by a scan of the
+     * child table.
+     * 
+     * @param type
+     *            The class or interface to look up.
+     * @param children
+     *            The child table the index was built from.
+     * @return An immutable <code>PersistentHashMap</code> of the bound keys to
+     *         the children.
+     */
+    PersistentHashMap<String, C> get(final Class<?> type,
+            final PersistentHashMap<String, C> children)
+    {
+        if (type.isAssignableFrom(OFactoryChild.class))
+        {
+            return (children);
+        }
+        else if (!isIndexed(type))
+        {
+            PersistentHashMap<String, C> instances = PersistentHashMap.empty();
+            for (final Map.Entry<String, C> entry : children.entrySet())
+            {
+                if (type.isInstance(entry.getValue()))
+                {
+                    instances = instances.plus(entry.getKey(),
+                            entry.getValue());
+                }
+            }
+            return (instances);
+        }
+        else
+        {
+            return (this.get(type));
+        }
+    }
+    
+    /*
+     * Returns the indexed children of the type.
+     */
+    private PersistentHashMap<String, C> get(final Class<?> type)
+    {
+        final PersistentHashMap<String, C> children = this._byType.get(type);
+        return ((children == null) ? PersistentHashMap.<String, C> empty()
+                : children);
+    }
+    
+    /**
+     * Returns an index with the child added under all of its types.
+     * 
+     * @param key
+     *            The key bound to the child.
+     * @param child
+     *            The child to index.
+     * @return A <code>ChildTypeIndex</code> that contains the child.
+     */
+    ChildTypeIndex<C> plus(final String key, final C child)
+    {
+        assert (key != null) : "plus() - the parameter 'key' should not be null.";
+        assert (child != null) : "plus() - the parameter 'child' should not be null.";
+        
+        PersistentHashMap<Class<?>, PersistentHashMap<String, C>> byType = this._byType;
+        for (final Class<?> type : TYPES.get(child.getClass()))
+        {
+            byType = byType.plus(type, this.get(type).plus(key, child));
+        }
+        final String className = child.getClass().getName();
+        final Integer count = this._countByClassName.get(className);
+        return (new ChildTypeIndex<C>(byType, this._countByClassName.plus(
+                className, (count == null) ? 1 : count + 1)));
+    }
+    
+    /**
+     * Returns an index with the child removed from all of its types.
+     * 
+     * @param key
+     *            The key bound to the child.
+     * @param child
+     *            The child to remove.
+     * @return A <code>ChildTypeIndex</code> that does not contain the child.
+     */
+    ChildTypeIndex<C> minus(final String key, final C child)
+    {
+        assert (key != null) : "minus() - the parameter 'key' should not be null.";
+        assert (child != null) : "minus() - the parameter 'child' should not be null.";
+        
+        PersistentHashMap<Class<?>, PersistentHashMap<String, C>> byType = this._byType;
+        for (final Class<?> type : TYPES.get(child.getClass()))
+        {
+            final PersistentHashMap<String, C> children = this.get(type).minus(
+                    key);
+            byType = children.isEmpty() ? byType.minus(type) : byType.plus(
+                    type, children);
+        }
+        final String className = child.getClass().getName();
+        final Integer count = this._countByClassName.get(className);
+        assert (count != null) : "minus() - the class of the child is not counted.";
+        return (new ChildTypeIndex<C>(byType, (count == 1) ? this._countByClassName
+                .minus(className) : this._countByClassName.plus(className,
+                count - 1)));
+    }
+    
+}
@@ -0,0 +1,200 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+
+/**
+ * <pre>
+ * A lock free histogram of latencies in nanoseconds.
+ * 
+ * Values are counted in log-linear buckets: every power of two is split into
+ * eight buckets, so a percentile is reported within 12.5% of the recorded
+ * value.  Recording a value is a few arithmetic operations and one atomic
+ * increment, and never allocates.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public final class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS  = 3;
+    
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    
+    private static final int BUCKET_COUNT     = (64 - SUB_BUCKET_BITS + 1)
+                                                      * SUB_BUCKET_COUNT;
+    
+    /*
+     * Keeps the larger of two values.
+     */
+    private static final LongBinaryOperator MAX = new LongBinaryOperator()
+    {
+        @Override
+        public long applyAsLong(final long left, final long right)
+        {
+            return (Math.max(left, right));
+        }
+    };
+    
+    /*
+     * Returns the bucket of a value.
+     */
+    static int bucketOf(final long value)
+    {
+        if (value < SUB_BUCKET_COUNT)
+        {
+            return ((int) Math.max(value, 0));
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS))
+                & (SUB_BUCKET_COUNT - 1);
+        return (((exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT) + subBucket);
+    }
+    
+    /*
+     * Returns the highest value counted in a bucket.
+     */
+    static long highestValueOf(final int bucket)
+    {
+        if (bucket < SUB_BUCKET_COUNT)
+        {
+            return (bucket);
+        }
+        final int exponent = (bucket / SUB_BUCKET_COUNT) + SUB_BUCKET_BITS - 1;
+        final long subBucket = bucket % SUB_BUCKET_COUNT;
+        final long lowest = (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return (lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1);
+    }
+    
+    private final AtomicLongArray _buckets = new AtomicLongArray(BUCKET_COUNT);
+    
+    private final LongAdder       _count   = new LongAdder();
+    
+    private final LongAccumulator _max     = new LongAccumulator(MAX, 0);
+    
+    private final LongAdder       _sum     = new LongAdder();
+    
+    /**
+     * Returns the number of values recorded.
+     * 
+     * @return A <code>long</code> value 0 &lt;= x &lt;= n.
+     */
+    public long getCount()
+    {
+        return (this._count.sum());
+    }
+    
+    /**
+     * Returns the largest value recorded.
+     * 
+     * @return A <code>long</code> value in nanoseconds.
+     */
+    public long getMax()
+    {
+        return (this._max.get());
+    }
+    
+    /**
+     * Returns the mean of the values recorded.
+     * 
+     * @return A <code>double</code> value in nanoseconds. Zero if no value
+     *         was recorded.
+     */
+    public double getMean()
+    {
+        final long count = this._count.sum();
+        return ((count == 0) ? 0 : (double) this._sum.sum() / count);
+    }
+    
+    /**
+     * Returns the value below which the percentage of recorded values fall.
+     * 
+     * @param percentile
+     *            A <code>double</code> value 0 &lt;= x &lt;= 100.
+     * @return A <code>long</code> value in nanoseconds. Zero if no value was
+     *         recorded.
+     */
+    public long getValueAtPercentile(final double percentile)
+    {
+        final long total = this._count.sum();
+        if (total == 0)
+        {
+            return (0);
+        }
+        final long target = Math.max(1,
+                (long) Math.ceil((Math.min(Math.max(percentile, 0), 100) / 100)
+                        * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++)
+        {
+            seen += this._buckets.get(bucket);
+            if (seen >= target)
+            {
+                return (Math.min(highestValueOf(bucket), this.getMax()));
+            }
+        }
+        return (this.getMax());
+    }
+    
+    /**
+     * Records a value.
+     * 
+     * @param nanos
+     *            A latency in nanoseconds. Negative values are counted as
+     *            zero.
+     */
+    public void record(final long nanos)
+    {
+        final long value = Math.max(nanos, 0);
+        this._buckets.incrementAndGet(bucketOf(value));
+        this._count.increment();
+        this._sum.add(value);
+        this._max.accumulate(value);
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append("LatencyHistogram [count=");
+        builder.append(this.getCount());
+        builder.append(", mean=");
+        builder.append(this.getMean());
+        builder.append(", p50=");
+        builder.append(this.getValueAtPercentile(50));
+        builder.append(", p99=");
+        builder.append(this.getValueAtPercentile(99));
+        builder.append(", max=");
+        builder.append(this.getMax());
+        builder.append("]");
+        return builder.toString();
+    }
+    
+}
@@ -0,0 +1,190 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+
+/**
+ * <pre>
+ * The time threads spent waiting for and holding one lock of an
+ * <code>OFactory</code> during one kind of operation, as recorded in lock
+ * profiling mode.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public final class LockContention
+{
+    /**
+     * The locks an <code>OFactory</code> takes.
+     */
+    public static enum Lock
+    {
+        /**
+         * The lock that guards changes to the child table and its indexes.
+         */
+        CHILD_TABLE,
+        
+        /**
+         * The lock that guards enabling and disabling passivation and slow
+         * create detection.
+         */
+        CONFIGURATION,
+        
+        /**
+         * The monitor of the factory, which guards the observers and the JMX
+         * registration.
+         */
+        MONITOR;
+    }
+    
+    /**
+     * The operations that take a lock.
+     */
+    public static enum Operation
+    {
+        CLOSE, CLOSE_CHILD, CONFIGURE, CREATE, OBSERVE, PASSIVATE, QUERY, RELOAD;
+    }
+    
+    private final long      _acquisitions;
+    
+    private final Lock      _lock;
+    
+    private final long      _maxHoldNanos;
+    
+    private final long      _maxWaitNanos;
+    
+    private final Operation _operation;
+    
+    private final long      _totalHoldNanos;
+    
+    private final long      _totalWaitNanos;
+    
+    LockContention(final Operation operation, final Lock lock,
+            final long acquisitions, final long totalWaitNanos,
+            final long maxWaitNanos, final long totalHoldNanos,
+            final long maxHoldNanos)
+    {
+        this._operation = operation;
+        this._lock = lock;
+        this._acquisitions = acquisitions;
+        this._totalWaitNanos = totalWaitNanos;
+        this._maxWaitNanos = maxWaitNanos;
+        this._totalHoldNanos = totalHoldNanos;
+        this._maxHoldNanos = maxHoldNanos;
+    }
+    
+    /**
+     * Returns the number of times the lock was taken.
+     * 
+     * @return A <code>long</code> value 0 &lt;= x &lt;= n.
+     */
+    public long getAcquisitions()
+    {
+        return (this._acquisitions);
+    }
+    
+    /**
+     * Returns the lock.
+     * 
+     * @return A <code>Lock</code> enum.
+     */
+    public Lock getLock()
+    {
+        return (this._lock);
+    }
+    
+    /**
+     * Returns the longest time the lock was held.
+     * 
+     * @return A <code>long</code> value in nanoseconds.
+     */
+    public long getMaxHoldNanos()
+    {
+        return (this._maxHoldNanos);
+    }
+    
+    /**
+     * Returns the longest time spent waiting for the lock.
+     * 
+     * @return A <code>long</code> value in nanoseconds.
+     */
+    public long getMaxWaitNanos()
+    {
+        return (this._maxWaitNanos);
+    }
+    
+    /**
+     * Returns the operation.
+     * 
+     * @return An <code>Operation</code> enum.
+     */
+    public Operation getOperation()
+    {
+        return (this._operation);
+    }
+    
+    /**
+     * Returns the total time the lock was held.
+     * 
+     * @return A <code>long</code> value in nanoseconds.
+     */
+    public long getTotalHoldNanos()
+    {
+        return (this._totalHoldNanos);
+    }
+    
+    /**
+     * Returns the total time spent waiting for the lock.
+     * 
+     * @return A <code>long</code> value in nanoseconds.
+     */
+    public long getTotalWaitNanos()
+    {
+        return (this._totalWaitNanos);
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append("LockContention [operation=");
+        builder.append(this._operation);
+        builder.append(", lock=");
+        builder.append(this._lock);
+        builder.append(", acquisitions=");
+        builder.append(this._acquisitions);
+        builder.append(", totalWaitNanos=");
+        builder.append(this._totalWaitNanos);
+        builder.append(", maxWaitNanos=");
+        builder.append(this._maxWaitNanos);
+        builder.append(", totalHoldNanos=");
+        builder.append(this._totalHoldNanos);
+        builder.append(", maxHoldNanos=");
+        builder.append(this._maxHoldNanos);
+        builder.append("]");
+        return builder.toString();
+    }
+    
+}
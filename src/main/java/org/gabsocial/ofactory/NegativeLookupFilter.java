@@ -0,0 +1,169 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+/**
+ * <pre>
+ * A counting Bloom filter over the keys of an <code>OFactory</code> used to
+ * answer lookups of keys that are not bound without probing the child table.
+ * 
+ * Each key increments one counter in each of k positions, and removing the key
+ * decrements them, so the filter follows children as they are created and
+ * closed.  A zero counter in any position means the key is definitely not
+ * bound.  Otherwise the key may be bound, with a false positive rate close to
+ * the rate the filter was sized for while the number of keys stays under the
+ * expected count.  Counters saturate at 255 and are then never decremented,
+ * which can only add false positives.
+ * 
+ * Updates must be made under the child table lock, before the child table is
+ * published.  Reads do not lock; a reader that reads the published table
+ * before the filter sees every key added before that table, and may only
+ * miss a key that is being added by another thread at the same moment.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+final class NegativeLookupFilter
+{
+    private static final int SATURATED = 0xff;
+    
+    /*
+     * The second hash, derived from the first with the murmur3 finalizer.
+     */
+    private static int mix(final int hash)
+    {
+        int h = hash;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return (h | 1);
+    }
+    
+    private final byte[] _counters;
+    
+    private final int    _expectedKeys;
+    
+    private final int    _hashCount;
+    
+    /**
+     * Creates a filter sized for a number of keys and a false positive rate.
+     * 
+     * @param expectedKeys
+     *            The number of keys the filter is sized for. Must be &gt; 0.
+     * @param falsePositiveRate
+     *            The rate of false positives, 0 &lt; x &lt; 1.
+     */
+    NegativeLookupFilter(final int expectedKeys, final double falsePositiveRate)
+    {
+        assert (expectedKeys > 0) : "NegativeLookupFilter() - the parameter 'expectedKeys' should be greater than zero.";
+        assert (falsePositiveRate > 0 && falsePositiveRate < 1) : "NegativeLookupFilter() - the parameter 'falsePositiveRate' should be between zero and one.";
+        
+        final double ln2 = Math.log(2);
+        final long size = (long) Math.ceil(-expectedKeys
+                * Math.log(falsePositiveRate) / (ln2 * ln2));
+        this._counters = new byte[(int) Math.min(Math.max(size, 64),
+                Integer.MAX_VALUE - 8)];
+        this._hashCount = Math.max(1,
+                (int) Math.round(((double) this._counters.length / expectedKeys)
+                        * ln2));
+        this._expectedKeys = expectedKeys;
+    }
+    
+    /**
+     * Adds a key.
+     * 
+     * @param key
+     *            A <code>String</code> key.
+     */
+    void add(final String key)
+    {
+        final int hash = key.hashCode();
+        final int step = mix(hash);
+        final int length = this._counters.length;
+        for (int i = 0; i < this._hashCount; i++)
+        {
+            final int index = ((hash + (i * step)) & Integer.MAX_VALUE) % length;
+            final int count = this._counters[index] & SATURATED;
+            if (count != SATURATED)
+            {
+                this._counters[index] = (byte) (count + 1);
+            }
+        }
+    }
+    
+    /**
+     * Returns the number of keys the filter is sized for.
+     * 
+     * @return An <code>int</code> value &gt; 0.
+     */
+    int getExpectedKeys()
+    {
+        return (this._expectedKeys);
+    }
+    
+    /**
+     * Returns false if the key is definitely not in the filter.
+     * 
+     * @param key
+     *            A <code>String</code> key.
+     * @return A <code>boolean</code> value. False if the key was never added
+     *         or has been removed, true if the key may be present.
+     */
+    boolean mightContain(final String key)
+    {
+        final int hash = key.hashCode();
+        final int step = mix(hash);
+        final int length = this._counters.length;
+        for (int i = 0; i < this._hashCount; i++)
+        {
+            final int index = ((hash + (i * step)) & Integer.MAX_VALUE) % length;
+            if (this._counters[index] == 0)
+            {
+                return (false);
+            }
+        }
+        return (true);
+    }
+    
+    /**
+     * Removes a key that was added.
+     * 
+     * @param key
+     *            A <code>String</code> key.
+     */
+    void remove(final String key)
+    {
+        final int hash = key.hashCode();
+        final int step = mix(hash);
+        final int length = this._counters.length;
+        for (int i = 0; i < this._hashCount; i++)
+        {
+            final int index = ((hash + (i * step)) & Integer.MAX_VALUE) % length;
+            final int count = this._counters[index] & SATURATED;
+            if ((count != SATURATED) && (count != 0))
+            {
+                this._counters[index] = (byte) (count - 1);
+            }
+        }
+    }
+    
+}
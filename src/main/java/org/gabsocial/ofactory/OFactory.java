@@ -19,11 +19,40 @@
 
 package org.gabsocial.ofactory;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import org.gabsocial.gabdev.validate.Validate;
 
@@ -52,6 +81,97 @@ import org.gabsocial.gabdev.validate.Validate;
  * Calling the removeChild(key) or the child's close() will notify observers with a 
  * REMOVE type event that the child was removed from the OFactory.
  * 
+ * The stream(), parallelStream() and forEachChild(action) methods visit the
+ * children of a snapshot of the child table without notifying observers.
+ * 
+ * The getChildrenOfType(type) and countOfType(type) methods look up children by
+ * class or interface through an index maintained as children are created and
+ * closed.
+ * 
+ * A child can be given tags, such as a region or a tier, when it is created with
+ * the create(key, className, tags) method.  The getKeysTagged(tags),
+ * getChildrenTagged(tags), countTagged(tags) and closeChildrenTagged(tags)
+ * methods act on the children that carry all of the given tags.
+ * 
+ * For lookups of keys that are mostly not bound, enable the negative lookup
+ * filter with enableNegativeLookupFilter(expectedChildren) and call
+ * tryGet(key), which answers most misses without probing the child table,
+ * throwing or notifying observers.
+ * 
+ * Set an <code>OFactoryStartupManifest</code> with setStartupManifest(manifest)
+ * to record the classes of the children created, so that the next run can
+ * load them on background threads before they are first created.
+ * 
+ * Call setChildClassLoader(loader) to load children with a plugin class loader.
+ * With an <code>OFactoryClassLoaderFactory</code> set, reload(className) loads
+ * a new version of a class in a new class loader and replaces the children of
+ * the class in place.
+ * 
+ * Call checkpoint(file) to write the keys, class names, tags and settings of
+ * the children to a file, with the state of children that implement
+ * <code>CheckpointableOFactoryChild</code>.  Call restore(file, threads) to
+ * create the children again in parallel and bind them in one step.
+ * 
+ * Set an <code>OFactoryEventJournal</code> with setEventJournal(journal) to
+ * keep the CREATE, REMOVE and CLOSE events in memory-mapped files, where they
+ * can be replayed to a late observer or used to rebuild a factory.
+ * 
+ * Call addDependencies(key, dependencies) to declare that a child needs the
+ * children of other keys, such as a client that needs a pool.  A
+ * declaration that makes a key depend on itself is refused.
+ * createAll(classNamesByKey, threads) creates children after the children
+ * they depend on, those that do not depend on each other in parallel, and
+ * close(threads) closes the children before the children they depend on.
+ * 
+ * A factory created with OFactory(parent) is a scope of the parent, such as
+ * a request scope of an application factory.  When get(key) or tryGet(key)
+ * finds no child in the scope, the parent and then its own parents are
+ * looked up.  What the enclosing factories returned, or that they returned
+ * nothing, is cached by the scope until one of them sends a CREATE, REMOVE
+ * or CLOSE event.  Closing a scope closes only its own children.
+ * 
+ * Call enablePassivation(file, idleTime, unit, maxActiveChildren) to move
+ * idle children that implement <code>PassivatableOFactoryChild</code> to a
+ * memory-mapped file.  A passivated child is reactivated by the next
+ * get(key).
+ * 
+ * Classes registered in META-INF/services/org.gabsocial.ofactory.OFactoryChild
+ * can be discovered into an <code>OFactoryChildIndex</code>.  Set the index
+ * with setChildIndex(index) to create children by the aliases given in their
+ * <code>OFactoryChildType</code> annotation.
+ * 
+ * Classes marked with <code>OFactoryChildType</code> and compiled with the
+ * ofactory-processor annotation processor are created through a generated
+ * <code>OFactoryChildTable</code> without reflection.  Other classes are
+ * created by reflection.
+ * 
+ * The tryCreate(key, className, tags) and tryCloseChild(key) methods report a
+ * closed factory, a duplicate or missing key or an invalid argument with an
+ * <code>OFactoryResult</code> instead of throwing, for callers that race with
+ * close() or with each other.  Callers of the throwing methods can call
+ * enableStacklessExceptions() so that closed and duplicate key exceptions are
+ * thrown without filling in a stack trace.
+ * 
+ * Metrics about creates, gets, closes and observer notification are recorded 
+ * once an <code>OFactoryMetrics</code> registry is set with setMetrics(metrics).
+ * Call registerMBean(name) to manage the factory through JMX.  The MBean is
+ * unregistered when the factory is closed.
+ * 
+ * When a Java Flight Recorder recording is running, the factory emits events for
+ * child creation and close, factory close and observer notification that takes
+ * longer than 10 ms.
+ * 
+ * Call enableLockProfiling() to record how long creates, closes, queries and
+ * observer changes wait for and hold the locks of the factory, then read the
+ * most contended with getLockContention().  Gets and event dispatch take no
+ * locks.
+ * 
+ * Call enableSlowCreateDetection(threshold, unit) to time the construction and
+ * initialization of each child.  A phase that runs past the threshold has the
+ * stack of the creating thread sampled and is reported to observers with a
+ * SLOW_CREATE type event that holds a <code>SlowCreateReport</code>, and is
+ * counted in the metrics.
+ * 
  * The factory's close() method will remove all children and all observers and prevent calls to
  * other factory methods. Calling the close() method will notify all observers with a CLOSE type 
  * event before the OFactory removes the observers.
@@ -72,6 +192,42 @@ public class OFactory<C extends OFactoryChild> extends Observable
      */
     public static final int CLASS_NAME_MAX_LENGTH = 2048;
     
+    /**
+     * The false positive rate the negative lookup filter is sized for.
+     */
+    public static final double NEGATIVE_LOOKUP_FALSE_POSITIVE_RATE = 0.01;
+    
+    /**
+     * The maximum length a tag can be.
+     */
+    public static final int TAG_MAX_LENGTH        = 256;
+    
+    /*
+     * The tags of a child created without tags.
+     */
+    static final String[]   NO_TAGS               = new String[0];
+    
+    /*
+     * The exception thrown by factories with stackless exceptions enabled
+     * when they are closed.
+     */
+    private static final OFactoryClosedException CLOSED_EXCEPTION = new OFactoryClosedException(
+                                                                     "This factory is closed and unable to process calls.",
+                                                                     null, true);
+    
+    /*
+     * The generated child tables, loaded when the first child is created.
+     */
+    private static final class ChildTables
+    {
+        static final OFactoryChildTable[] TABLES = loadChildTables();
+    }
+    
+    /*
+     * The observers of a factory that has none.
+     */
+    private static final Observer[] NO_OBSERVERS  = new Observer[0];
+    
     // P = parent
     // C = child
     // S = settings
@@ -88,7 +244,7 @@ public class OFactory<C extends OFactoryChild> extends Observable
     {
         public static enum Type
         {
-            CLOSE, CREATE, GET, REMOVE;
+            CLOSE, CREATE, GET, REMOVE, SLOW_CREATE;
         }
         
         /*
@@ -105,6 +261,11 @@ public class OFactory<C extends OFactoryChild> extends Observable
          */
         private String           _key;
         
+        /*
+         * The report of a SLOW_CREATE event.
+         */
+        private SlowCreateReport _slowCreateReport;
+        
         /**
          * Constructor used when the key and child will be null.
          * 
@@ -119,7 +280,7 @@ public class OFactory<C extends OFactoryChild> extends Observable
         }
         
         /**
-         * Constructor used when the key and child will be null.
+         * Constructor used for an event about a key.
          * 
          * @param eventType
          *            An enum <code>Type</code> that defined the type of event.
@@ -128,7 +289,9 @@ public class OFactory<C extends OFactoryChild> extends Observable
          *            the child instance.
          * @param child
          *            An instance that implements the <code>OFactoryChild</code>
-         *            interface.
+         *            interface. Null for a GET event of a key that is not
+         *            bound to a child, or a SLOW_CREATE event of a child that
+         *            was slow to construct.
          */
         public Event(final Event.Type eventType, final String key, final C child)
         {
@@ -137,17 +300,37 @@ public class OFactory<C extends OFactoryChild> extends Observable
             Validate.isNotNullOrEmpty(this.getClass(), key);
             Validate.isLessThanMaxLength(this.getClass(), KEY_MAX_LENGTH, key);
             
-            Validate.isNotNull(this.getClass(), child);
+            if (eventType != Event.Type.GET
+                    && eventType != Event.Type.SLOW_CREATE)
+            {
+                Validate.isNotNull(this.getClass(), child);
+            }
             
             this._key = key;
             this._child = child;
         }
         
+        /**
+         * Constructor used for a SLOW_CREATE event.
+         * 
+         * @param report
+         *            A <code>SlowCreateReport</code> instance.
+         * @param child
+         *            An instance that implements the <code>OFactoryChild</code>
+         *            interface. Null when the child was slow to construct.
+         */
+        public Event(final SlowCreateReport report, final C child)
+        {
+            this(Event.Type.SLOW_CREATE, report.getKey(), child);
+            
+            this._slowCreateReport = report;
+        }
+        
         /**
          * Returns the child
          * 
          * @return An instance that implements the <code>OFactoryChild</code>
-         *         interface.
+         *         interface. May be null for a GET event.
          */
         public C getChild()
         {
@@ -165,6 +348,17 @@ public class OFactory<C extends OFactoryChild> extends Observable
             return (this._key);
         }
         
+        /**
+         * Returns the report of a SLOW_CREATE event.
+         * 
+         * @return A <code>SlowCreateReport</code> instance. Null for other
+         *         types of event.
+         */
+        public SlowCreateReport getSlowCreateReport()
+        {
+            return (this._slowCreateReport);
+        }
+        
         /**
          * Returns the type of event.
          * 
@@ -197,7 +391,62 @@ public class OFactory<C extends OFactoryChild> extends Observable
     }
     
     /**
-     * Loads an OFactoryChild using the classname to get a new instances.
+     * Loads the child tables registered as services. A table that cannot be
+     * loaded is skipped and its classes are created by reflection.
+     * 
+     * @return An array of <code>OFactoryChildTable</code> instances. Empty
+     *         when no table is registered.
+     */
+    private static OFactoryChildTable[] loadChildTables()
+    {
+        final List<OFactoryChildTable> tables = new ArrayList<OFactoryChildTable>();
+        final Iterator<OFactoryChildTable> iterator = ServiceLoader.load(
+                OFactoryChildTable.class, OFactory.class.getClassLoader())
+                .iterator();
+        while (true)
+        {
+            try
+            {
+                if (!iterator.hasNext())
+                {
+                    break;
+                }
+                tables.add(iterator.next());
+            }
+            catch (final ServiceConfigurationError e)
+            {
+                // falls back to reflection.
+            }
+        }
+        return (tables.toArray(new OFactoryChildTable[tables.size()]));
+    }
+    
+    /**
+     * Builds a negative lookup filter that holds the keys of the children.
+     * 
+     * @param children
+     *            The child table.
+     * @param expectedChildren
+     *            The number of children to size the filter for.
+     * @return A <code>NegativeLookupFilter</code>.
+     */
+    private static NegativeLookupFilter buildNegativeLookupFilter(
+            final Map<String, ?> children, final int expectedChildren)
+    {
+        final NegativeLookupFilter filter = new NegativeLookupFilter(Math.max(
+                expectedChildren, children.size()),
+                NEGATIVE_LOOKUP_FALSE_POSITIVE_RATE);
+        for (final String key : children.keySet())
+        {
+            filter.add(key);
+        }
+        return (filter);
+    }
+    
+    /**
+     * Loads an OFactoryChild using the classname to get a new instances. A
+     * class in a generated child table is created through the table without
+     * reflection.
      * 
      * @param className
      *            A <code>String</code> value that is a fully qualified class
@@ -213,6 +462,15 @@ public class OFactory<C extends OFactoryChild> extends Observable
     {
         assert (className != null) : "loadOFactoryChild() - the parameter 'className' should not be null or empty";
         
+        for (final OFactoryChildTable table : ChildTables.TABLES)
+        {
+            final OFactoryChild child = table.newChild(className);
+            if (child != null)
+            {
+                return ((C) child);
+            }
+        }
+        
         C child;
         try
         {
@@ -237,22 +495,184 @@ public class OFactory<C extends OFactoryChild> extends Observable
     }
     
     /**
-     * A table of children created by this factory.
+     * A table of children created by this factory. The table is immutable and
+     * is replaced on every change, so readers never lock and a reference to
+     * it is a consistent snapshot.
+     */
+    private volatile PersistentHashMap<String, C> _children;
+    
+    /**
+     * The lock held while the child table is replaced.
+     */
+    private final ProfiledLock                    _childTableLock;
+    
+    /**
+     * The lock held while passivation or slow create detection is switched
+     * on or off. Kept apart from the monitor, which guards the observers.
+     */
+    private final ProfiledLock                    _configurationLock;
+    
+    /**
+     * An index of the children by tag. Guarded by the child table lock.
+     */
+    private final ChildTagIndex                   _childTagIndex;
+    
+    /**
+     * An index of the children by type. Replaced together with the child
+     * table.
      */
-    private final Map<String, C> _children;
+    private volatile ChildTypeIndex<C>            _childTypeIndex;
     
     /**
      * A flag to determine if the factory has been closed.
      */
-    private boolean              _isClosed;
+    private volatile boolean                      _isClosed;
+    
+    /**
+     * The name the JMX MBean of this factory is registered under. Null when
+     * it is not registered.
+     */
+    private ObjectName                            _mbeanName;
+    
+    /**
+     * The registry metrics are recorded in. Null when metrics are off.
+     */
+    private volatile OFactoryMetrics              _metrics;
+    
+    /**
+     * The filter of keys that are not bound. Null when the filter is not
+     * enabled. Updated under the child table lock.
+     */
+    private volatile NegativeLookupFilter         _negativeLookupFilter;
+    
+    /*
+     * Times construction and initialization of children. Null when slow
+     * create detection is off. Replaced under the configuration lock.
+     */
+    private volatile SlowCreateWatchdog           _slowCreateWatchdog;
+    
+    /*
+     * A copy of the observers, replaced under the monitor of the factory, so
+     * that events are dispatched without taking a lock.
+     */
+    private volatile Observer[]                   _observers;
+    
+    /*
+     * Creates children with the class loader set by the caller. Null when
+     * children are loaded by the class loader of the factory.
+     */
+    private volatile ChildClassResolver           _childClassResolver;
+    
+    /*
+     * Creates the class loaders of reloaded classes. Null when none is set.
+     */
+    private volatile OFactoryClassLoaderFactory   _classLoaderFactory;
+    
+    /*
+     * The resolvers of the classes that have been reloaded, by class name.
+     */
+    private final ConcurrentMap<String, ChildClassResolver> _reloadedClasses;
+    
+    /*
+     * Resolves aliases to class names. Null when no index is set.
+     */
+    private volatile OFactoryChildIndex           _childIndex;
+    
+    /*
+     * Records the classes of the children created. Null when no manifest is
+     * set.
+     */
+    private volatile OFactoryStartupManifest      _startupManifest;
+    
+    /*
+     * The journal events are appended to, or null.
+     */
+    private volatile OFactoryEventJournal         _eventJournal;
+    
+    /*
+     * The passivated children and idle times, or null. Replaced under the
+     * configuration lock.
+     */
+    private volatile ChildPassivation             _passivation;
+    
+    /*
+     * Records lock wait and hold times. Null when lock profiling is off.
+     */
+    private volatile OFactoryLockProfiler         _lockProfiler;
+    
+    /*
+     * A flag to determine if closed and duplicate key exceptions are thrown
+     * without a stack trace.
+     */
+    private volatile boolean                      _isStacklessExceptions;
+    
+    /*
+     * The keys each child depends on. Guarded by the child table lock.
+     */
+    private final ChildDependencyGraph            _childDependencies;
+    
+    /*
+     * The factory looked up when a key is not bound here, or null.
+     */
+    private final OFactory<? extends C>           _parentScope;
+    
+    /*
+     * What the enclosing factories returned for a key. Null when there is no
+     * parent.
+     */
+    private final ScopeLookupCache<C>             _scopeCache;
+    
+    /*
+     * Moved on every CREATE, REMOVE and CLOSE event, and when a child is
+     * passivated, so that scopes of this factory drop what they cached.
+     */
+    private final AtomicLong                      _scopeVersion;
     
     /*
      * initializes the children table.
      */
     public OFactory()
     {
-        this._children = new HashMap<String, C>();
+        this(null, false);
+    }
+    
+    /**
+     * Creates a scope of a parent factory. A key that is not bound in the
+     * scope is looked up in the parent, and in the parent's own parents, by
+     * get(key) and tryGet(key). Creating and closing a scope do not lock or
+     * register with the parent.
+     * 
+     * @param parent
+     *            The enclosing factory.
+     */
+    public OFactory(final OFactory<? extends C> parent)
+    {
+        this(parent, true);
+    }
+    
+    /*
+     * initializes the children table and the parent scope.
+     */
+    private OFactory(final OFactory<? extends C> parent, final boolean isScope)
+    {
+        if (isScope)
+        {
+            Validate.isNotNull(this.getClass(), parent);
+        }
+        this._children = PersistentHashMap.empty();
+        this._childTableLock = new ProfiledLock(
+                LockContention.Lock.CHILD_TABLE);
+        this._childTagIndex = new ChildTagIndex();
+        this._configurationLock = new ProfiledLock(
+                LockContention.Lock.CONFIGURATION);
+        this._childDependencies = new ChildDependencyGraph();
+        this._childTypeIndex = ChildTypeIndex.empty();
         this._isClosed = false;
+        this._observers = NO_OBSERVERS;
+        this._reloadedClasses = new ConcurrentHashMap<String, ChildClassResolver>();
+        this._parentScope = parent;
+        this._scopeCache = isScope ? new ScopeLookupCache<C>() : null;
+        this._scopeVersion = new AtomicLong();
     }
     
     /**
@@ -262,18 +682,83 @@ public class OFactory<C extends OFactoryChild> extends Observable
      *            An <code>Observer</code> instance that wants to be notified of
      *            events.
      */
-    public synchronized void addObserver(final Observer observer)
+    public void addObserver(final Observer observer)
     {
         Validate.isNotNull(this.getClass(), observer);
         
-        if (this.isClosed())
+        final OFactoryLockProfiler profiler = this._lockProfiler;
+        final long requested = OFactoryLockProfiler.now(profiler);
+        synchronized (this)
         {
-            throw (new OFactoryClosedException(
-                    "This factory is closed and unable to process calls."));
+            final long acquired = OFactoryLockProfiler.now(profiler);
+            try
+            {
+                if (this.isClosed())
+                {
+                    throw (this.newClosedException());
+                }
+                else if (!Arrays.asList(this._observers).contains(observer))
+                {
+                    super.addObserver(observer);
+                    final Observer[] observers = Arrays.copyOf(
+                            this._observers, this._observers.length + 1);
+                    observers[observers.length - 1] = observer;
+                    this._observers = observers;
+                }
+            }
+            finally
+            {
+                OFactoryLockProfiler.record(profiler,
+                        LockContention.Operation.OBSERVE,
+                        LockContention.Lock.MONITOR, requested, acquired);
+            }
         }
-        else
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.Observable#deleteObserver(java.util.Observer)
+     */
+    @Override
+    public void deleteObserver(final Observer observer)
+    {
+        final OFactoryLockProfiler profiler = this._lockProfiler;
+        final long requested = OFactoryLockProfiler.now(profiler);
+        synchronized (this)
+        {
+            final long acquired = OFactoryLockProfiler.now(profiler);
+            super.deleteObserver(observer);
+            final List<Observer> observers = new ArrayList<Observer>(
+                    Arrays.asList(this._observers));
+            if (observers.remove(observer))
+            {
+                this._observers = observers.toArray(NO_OBSERVERS);
+            }
+            OFactoryLockProfiler.record(profiler,
+                    LockContention.Operation.OBSERVE,
+                    LockContention.Lock.MONITOR, requested, acquired);
+        }
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.Observable#deleteObservers()
+     */
+    @Override
+    public void deleteObservers()
+    {
+        final OFactoryLockProfiler profiler = this._lockProfiler;
+        final long requested = OFactoryLockProfiler.now(profiler);
+        synchronized (this)
         {
-            super.addObserver(observer);
+            final long acquired = OFactoryLockProfiler.now(profiler);
+            super.deleteObservers();
+            this._observers = NO_OBSERVERS;
+            OFactoryLockProfiler.record(profiler,
+                    LockContention.Operation.OBSERVE,
+                    LockContention.Lock.MONITOR, requested, acquired);
         }
     }
     
@@ -297,105 +782,399 @@ public class OFactory<C extends OFactoryChild> extends Observable
     {
         assert ((key != null) && (key.trim().length() > 0)) : "addToChildTable() - the key was null, spaces or empty.";
         assert (child != null) : "addToChildTable() - the child was null.";
-        this._children.put(key, child);
+        final ProfiledLock.Hold hold = this._childTableLock.lock();
+        try
+        {
+            final PersistentHashMap<String, C> children = this._children.plus(
+                    key, child);
+            
+            // the filter must know the key before readers can find it.
+            final NegativeLookupFilter filter = this._negativeLookupFilter;
+            if (filter != null)
+            {
+                if (children.size() > filter.getExpectedKeys())
+                {
+                    this._negativeLookupFilter = buildNegativeLookupFilter(
+                            children, filter.getExpectedKeys() * 2);
+                }
+                else
+                {
+                    filter.add(key);
+                }
+            }
+            this._children = children;
+            this._childTypeIndex = this._childTypeIndex.plus(key, child);
+        }
+        finally
+        {
+            hold.unlock();
+        }
         return (child);
     }
     
     /**
-     * Closes the factory, and removes then closes the children. Once closed,
-     * calls to methods on the child should return a
-     * <code>OFactoryClosedException</code> exception. This method calls the
-     * OFactory.closeChild(key) method.
+     * Declares that the child of a key depends on the children of other
+     * keys. The keys do not need to be bound yet. createAll(classNamesByKey,
+     * threads) creates a child after the children it depends on and close()
+     * closes it before them.
+     * 
+     * @param key
+     *            The key of the dependent child.
+     * @param dependencies
+     *            The keys of the children it depends on.
      * 
+     * @throws OFactoryChildException
+     *             if a dependency is the key or depends on it. No dependency
+     *             is added.
      * @throws OFactoryClosedException
      *             if this method is called and the OFactory is closed.
      */
-    public void close()
+    public void addDependencies(final String key, final String... dependencies)
+            throws OFactoryChildException
     {
         if (this.isClosed())
         {
-            throw (new OFactoryClosedException(
-                    "The OFactory has been closed and may not be used."));
+            throw (this.newClosedException());
         }
         else
         {
-            
-            // close children.
-            final Set<String> keys = this.getKeys();
-            for (final String key : keys)
+            this.validateKey(key);
+            Validate.isNotNull(this.getClass(), dependencies);
+            for (final String dependency : dependencies)
             {
-                this.closeChild(key);
+                this.validateKey(dependency);
             }
-            assert (this._children.size() == 0) : "The child table should be empty.";
             
-            this._isClosed = true;
-            
-            this.notifyObservers(new Event<C>(Event.Type.CLOSE));
-            this.deleteObservers();
-            assert (this.countObservers() == 0) : "The observable table should be empty.";
+            final String cycle;
+            final ProfiledLock.Hold hold = this
+                    .lockChildTable(LockContention.Operation.CONFIGURE);
+            try
+            {
+                cycle = this._childDependencies.add(key, dependencies);
+            }
+            finally
+            {
+                hold.unlock();
+            }
+            if (cycle != null)
+            {
+                throw (new OFactoryChildException("The key='" + cycle
+                        + "' depends on the key='" + key + "'", null,
+                        this._isStacklessExceptions));
+            }
         }
     }
     
     /**
-     * Closes the child associated with the key.
-     * 
-     * @param key
-     *            The <code>String</code> key associated with a child.
-     * 
-     * @return Returns the child that was found and closed. If the key is not
-     *         associated with child then null is returned.
+     * Closes the factory, and removes then closes the children. Once closed,
+     * calls to methods on the child should return a
+     * <code>OFactoryClosedException</code> exception. The children are closed
+     * from a snapshot of the child table in the same way as the
+     * OFactory.closeChild(key) method. A call made on another thread while the
+     * factory is closing either completes as if it was made before the close
+     * or throws an <code>OFactoryClosedException</code>. A child is closed
+     * before the children it depends on.
      * 
      * @throws OFactoryClosedException
      *             if this method is called and the OFactory is closed.
      */
-    public C closeChild(final String key)
+    public void close()
     {
-        if (this.isClosed())
-        {
-            throw (new OFactoryClosedException(
-                    "This factory is closed and unable to process calls."));
-        }
-        else
-        {
-            Validate.isNotNullOrEmpty(this.getClass(), key);
-            Validate.isLessThanMaxLength(this.getClass(), KEY_MAX_LENGTH, key);
-            
-            @SuppressWarnings("unchecked")
-            final C child = (C) this._children.remove(key);
-            if (child != null)
-            {
-                child.closeWithoutRemove();
-                assert (!this._children.containsKey(child.getKey())) : "The children table still contains the factory child when the factory child was closed.";
-            }
-            this.notifyObservers(new Event<C>(Event.Type.REMOVE, key, child));
-            return (child);
-        }
+        this.close(1);
     }
     
     /**
-     * Returns a <code>boolean</code> value (true or false) if a key is
-     * associated with a <code>OFactoryChild</code>.
+     * Closes the factory as close() does, closing the children that no
+     * remaining child depends on in parallel, level by level. If a child
+     * fails to close the others are still closed and the first failure is
+     * thrown once the factory is closed.
      * 
-     * @param key
-     *            A <code>String</code> instance that is a key.
-     * @return A <code>boolean</code> value (true or false).
+     * @param threads
+     *            The number of threads to close the children with.
      * 
      * @throws OFactoryClosedException
      *             if this method is called and the OFactory is closed.
      */
-    public boolean containsChild(final String key)
+    public void close(final int threads)
     {
-        if (this.isClosed())
+        Validate.isTrue(this.getClass(), threads > 0);
+        final OFactoryMetrics metrics = this._metrics;
+        final long start = (metrics == null) ? 0L : System.nanoTime();
+        final Object recording = OFactoryFlightRecorder.beginFactoryClose();
+        
+        final Map<String, C> children;
+        final List<List<String>> levels;
+        final ProfiledLock.Hold hold = this
+                .lockChildTable(LockContention.Operation.CLOSE);
+        try
         {
-            throw (new OFactoryClosedException(
-                    "This factory is closed and unable to process calls."));
+            if (this.isClosed())
+            {
+                throw (this.newClosedException());
+            }
+            // no child can be added once the flag is set. Reads that
+            // miss while the children are removed below check the
+            // flag again with checkNotClosedAfterRead().
+            this._isClosed = true;
+            children = this._children;
+            levels = this._childDependencies.levels(children.keySet());
+            this._childDependencies.clear();
         }
-        else
+        finally
         {
-            Validate.isNotNullOrEmpty(this.getClass(), key);
-            Validate.isLessThanMaxLength(this.getClass(), KEY_MAX_LENGTH, key);
+            hold.unlock();
+        }
+        
+        // close children from the snapshot, dependents first.
+        final Throwable failure = this.closeLevels(levels, threads,
+                LockContention.Operation.CLOSE);
+        assert (this._children.size() == 0) : "The child table should be empty.";
+        final SlowCreateWatchdog watchdog;
+        final ChildPassivation passivation;
+        final ProfiledLock.Hold configurationHold = this
+                .lockConfiguration(LockContention.Operation.CLOSE);
+        try
+        {
+            // an enable has finished or will see the closed flag.
+            watchdog = this._slowCreateWatchdog;
+            this._slowCreateWatchdog = null;
+            passivation = this._passivation;
+            this._passivation = null;
+        }
+        finally
+        {
+            configurationHold.unlock();
+        }
+        if (watchdog != null)
+        {
+            watchdog.close();
+        }
+        if (passivation != null)
+        {
+            // passivated children were closed when they were passivated.
+            passivation.close();
+        }
+        
+        if (this._scopeCache != null)
+        {
+            // let go of the children of the enclosing factories.
+            this._scopeCache.clear();
+        }
+        
+        this.notifyObservers(new Event<C>(Event.Type.CLOSE));
+        this.deleteObservers();
+        assert (this.countObservers() == 0) : "The observable table should be empty.";
+        
+        this.unregisterMBean();
+        
+        if (metrics != null)
+        {
+            metrics.recordClose(System.nanoTime() - start);
+        }
+        OFactoryFlightRecorder.commitFactoryClose(recording, this,
+                children.size());
+        if (failure != null)
+        {
+            rethrow(failure, "Unable to close a child.");
+        }
+    }
+    
+    /*
+     * Closes the children of the levels from the last level to the first,
+     * on a pool when there is more than one thread. Returns the first
+     * failure, or null.
+     */
+    private Throwable closeLevels(final List<List<String>> levels,
+            final int threads, final LockContention.Operation operation)
+    {
+        int size = 0;
+        for (final List<String> level : levels)
+        {
+            size = Math.max(size, level.size());
+        }
+        ExecutorService executor = (threads > 1 && size > 1) ? newExecutor(
+                "ofactory-close-", Math.min(threads, size)) : null;
+        Throwable failure = null;
+        try
+        {
+            for (int i = levels.size() - 1; i >= 0; i--)
+            {
+                final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+                for (final String key : levels.get(i))
+                {
+                    tasks.add(new Callable<Void>()
+                    {
+                        @Override
+                        public Void call()
+                        {
+                            OFactory.this.removeAndCloseChild(key, operation);
+                            return (null);
+                        }
+                    });
+                }
+                
+                Throwable levelFailure = runAll(executor, tasks);
+                if (levelFailure instanceof InterruptedException)
+                {
+                    // finish on this thread; closed children are skipped.
+                    executor.shutdownNow();
+                    executor = null;
+                    levelFailure = runAll(null, tasks);
+                }
+                if (failure == null)
+                {
+                    failure = levelFailure;
+                }
+            }
+        }
+        finally
+        {
+            if (executor != null)
+            {
+                executor.shutdown();
+            }
+        }
+        return (failure);
+    }
+    
+    /**
+     * Closes the child associated with the key.
+     * 
+     * @param key
+     *            The <code>String</code> key associated with a child.
+     * 
+     * @return Returns the child that was found and closed. If the key is not
+     *         associated with child then null is returned.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public C closeChild(final String key)
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            this.validateKey(key);
+            
+            final C child = this.removeAndCloseChild(key,
+                    LockContention.Operation.CLOSE_CHILD);
+            if (child == null)
+            {
+                this.checkNotClosedAfterRead();
+            }
+            return (child);
+        }
+    }
+    
+    /**
+     * Returns a <code>boolean</code> value (true or false) if a key is
+     * associated with a <code>OFactoryChild</code>.
+     * 
+     * @param key
+     *            A <code>String</code> instance that is a key.
+     * @return A <code>boolean</code> value (true or false).
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public boolean containsChild(final String key)
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            this.validateKey(key);
+            
+            final boolean isContained = this._children.containsKey(key)
+                    || this.isPassivated(key);
+            if (!isContained)
+            {
+                this.checkNotClosedAfterRead();
+            }
+            return (isContained);
+        }
+    }
+    
+    /**
+     * Closes the children that carry every tag.
+     * 
+     * @param tags
+     *            One or more <code>String</code> tags.
+     * @return The number of children that were closed.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public int closeChildrenTagged(final String... tags)
+    {
+        final Set<String> keys = this.getKeysTagged(tags);
+        int count = 0;
+        for (final String key : keys)
+        {
+            if (this.removeAndCloseChild(key,
+                    LockContention.Operation.CLOSE_CHILD) != null)
+            {
+                count++;
+            }
+        }
+        return (count);
+    }
+    
+    /**
+     * Returns the number of children that carry every tag.
+     * 
+     * @param tags
+     *            One or more <code>String</code> tags.
+     * @return An integer value such that 0 &lt;= x &lt;= n is the number of
+     *         children that carry the tags.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public int countTagged(final String... tags)
+    {
+        this.validateQueryTags(tags);
+        
+        final ProfiledLock.Hold hold = this
+                .lockChildTable(LockContention.Operation.QUERY);
+        try
+        {
+            return (this._childTagIndex.count(tags));
+        }
+        finally
+        {
+            hold.unlock();
+        }
+    }
+    
+    /**
+     * Returns the number of children that are instances of the type. The
+     * count is read from the type index and does not visit the children.
+     * 
+     * @param type
+     *            A class or interface.
+     * @return An integer value such that 0 &lt;= x &lt;= n is the number of
+     *         children of the type.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public int countOfType(final Class<?> type)
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            Validate.isNotNull(this.getClass(), type);
             
-            return (this._children.containsKey(key));
+            return (this._childTypeIndex.get(type, this._children).size());
         }
     }
     
@@ -468,7 +1247,7 @@ public class OFactory<C extends OFactoryChild> extends Observable
      *            child.
      * @param className
      *            A <code>String</code> instance of the fully qualified
-     *            classname.
+     *            classname, or an alias in the child index.
      * 
      * @return A <code>OFactoryChild</code> instance bound to the key.
      * 
@@ -480,138 +1259,266 @@ public class OFactory<C extends OFactoryChild> extends Observable
     public C create(final String key, final String className)
             throws OFactoryChildException
     {
-        Validate.isNotNullOrEmpty(this.getClass(), key);
-        Validate.isLessThanMaxLength(this.getClass(), KEY_MAX_LENGTH, key);
-        Validate.isNotNullOrEmpty(this.getClass(), className);
-        Validate.isLessThanMaxLength(this.getClass(), CLASS_NAME_MAX_LENGTH,
-                className);
-        
-        final C child = this.loadAndStoreOFactoryChild(key, className);
-        child.initialize(this, key);
-        this.notifyObservers(new Event<C>(Event.Type.CREATE, key, child));
-        return child;
+        return (this.create(key, className, NO_TAGS));
     }
     
     /**
-     * Gets the child by the bounded key.
+     * Creates a child using the fully qualified classname that is associated
+     * with a key and carries tags.
      * 
      * @param key
-     *            The key that is bound to the logger.
+     *            A <code>String</code> instance. The key to bind to the new
+     *            child.
+     * @param className
+     *            A <code>String</code> instance of the fully qualified
+     *            classname, or an alias in the child index.
+     * @param tags
+     *            The <code>String</code> tags of the new child, such as a
+     *            region or a tier.
      * 
-     * @return An <code>OFactoryChild</code> child instance associated with the
-     *         key. May return null.
+     * @return A <code>OFactoryChild</code> instance bound to the key.
      * 
      * @throws OFactoryClosedException
      *             if this method is called and the OFactory is closed.
+     * @throws OFactoryChildException
+     *             Thrown when an OFactoryChild already exists with that key.
      */
-    public C get(final String key)
+    public C create(final String key, final String className,
+            final String... tags) throws OFactoryChildException
     {
-        if (this.isClosed())
-        {
-            throw (new OFactoryClosedException(
-                    "This factory is closed and unable to process calls."));
-        }
-        else
+        this.validateKey(key);
+        Validate.isNotNullOrEmpty(this.getClass(), className);
+        Validate.isLessThanMaxLength(this.getClass(), CLASS_NAME_MAX_LENGTH,
+                className);
+        this.validateTags(tags);
+        
+        return (this.createChild(key, className, tags, new Consumer<C>()
         {
-            Validate.isNotNullOrEmpty(this.getClass(), key);
-            Validate.isLessThanMaxLength(this.getClass(), KEY_MAX_LENGTH, key);
-            // TODO - can make max length check based on the max length of a registered key.
-            
-            @SuppressWarnings("unchecked")
-            final C child = (C) this._children.get(key);
-            this.notifyObservers(new Event<C>(Event.Type.GET, key, child));
-            return (child);
-            
-        }
+            @Override
+            public void accept(final C child)
+            {
+                child.initialize(OFactory.this, key);
+            }
+        }));
     }
     
     /**
-     * Returns the number of children created and managed by this Factory.
+     * Creates the children of the keys, each after the children it depends
+     * on. Children that do not depend on each other are created in
+     * parallel, level by level, and each is bound as it is created so that
+     * its dependents can get it while they initialize. Observers are
+     * notified with a CREATE type event for each child. If a child fails to
+     * be created the children already created by this call are closed,
+     * dependents first.
      * 
-     * @return An integer value such that 0 &lt;= x &lt;= n is the number of
-     *         children.
+     * @param classNamesByKey
+     *            The fully qualified class name or alias of the child of each
+     *            key.
+     * @param threads
+     *            The number of threads to create the children with.
      * 
+     * @return The number of children created.
+     * 
+     * @throws OFactoryChildException
+     *             if a key is already in use, or a key depends on a key that
+     *             is neither bound nor created by this call.
      * @throws OFactoryClosedException
      *             if this method is called and the OFactory is closed.
      */
-    public int getChildCount()
+    public int createAll(final Map<String, String> classNamesByKey,
+            final int threads) throws OFactoryChildException
     {
         if (this.isClosed())
         {
-            throw (new OFactoryClosedException(
-                    "This factory is closed and unable to process calls."));
+            throw (this.newClosedException());
         }
         else
         {
-            return (this._children.size());
+            Validate.isNotNull(this.getClass(), classNamesByKey);
+            Validate.isTrue(this.getClass(), threads > 0);
+            for (final Map.Entry<String, String> entry : classNamesByKey
+                    .entrySet())
+            {
+                this.validateKey(entry.getKey());
+                Validate.isNotNullOrEmpty(this.getClass(), entry.getValue());
+            }
+            
+            final List<List<String>> levels = this
+                    .planCreate(classNamesByKey.keySet());
+            int size = 0;
+            for (final List<String> level : levels)
+            {
+                size = Math.max(size, level.size());
+            }
+            final ExecutorService executor = (threads > 1 && size > 1) ? newExecutor(
+                    "ofactory-startup-", Math.min(threads, size)) : null;
+            final List<List<String>> created = new ArrayList<List<String>>();
+            Throwable failure = null;
+            try
+            {
+                for (int i = 0; i < levels.size() && failure == null; i++)
+                {
+                    final List<String> level = levels.get(i);
+                    final List<String> createdKeys = Collections
+                            .synchronizedList(new ArrayList<String>());
+                    final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(
+                            level.size());
+                    for (final String key : level)
+                    {
+                        tasks.add(new Callable<Void>()
+                        {
+                            @Override
+                            public Void call() throws OFactoryChildException
+                            {
+                                OFactory.this.create(key,
+                                        classNamesByKey.get(key));
+                                createdKeys.add(key);
+                                return (null);
+                            }
+                        });
+                    }
+                    failure = runAll(executor, tasks);
+                    created.add(createdKeys);
+                }
+            }
+            finally
+            {
+                if (executor != null)
+                {
+                    executor.shutdown();
+                }
+            }
+            
+            if (failure != null)
+            {
+                this.closeLevels(created, 1,
+                        LockContention.Operation.CLOSE_CHILD);
+                if (failure instanceof OFactoryChildException)
+                {
+                    throw ((OFactoryChildException) failure);
+                }
+                rethrow(failure, "Unable to create the children.");
+            }
+            return (classNamesByKey.size());
         }
     }
     
-    /**
-     * Returns a <code>Set</code> containing <code>String</code> keys.
-     * 
-     * @return A <code>Set</code> containing <code>String</code> keys.
-     * 
-     * @throws OFactoryClosedException
-     *             if this method is called and the OFactory is closed.
+    /*
+     * Splits the keys into the levels they are created in. Throws if a key
+     * depends on a key that is neither bound nor one of the keys.
      */
-    public Set<String> getKeys()
+    private List<List<String>> planCreate(final Set<String> keys)
+            throws OFactoryChildException
     {
-        if (this.isClosed())
+        final ProfiledLock.Hold hold = this
+                .lockChildTable(LockContention.Operation.QUERY);
+        try
         {
-            throw (new OFactoryClosedException(
-                    "This factory is closed and unable to process calls."));
+            for (final String key : keys)
+            {
+                for (final String dependency : this._childDependencies.get(key))
+                {
+                    if (!keys.contains(dependency)
+                            && !this._children.containsKey(dependency)
+                            && !this.isPassivated(dependency))
+                    {
+                        throw (new OFactoryChildException("The key='"
+                                + key + "' depends on the key='"
+                                + dependency + "' that is not bound",
+                                null, this._isStacklessExceptions));
+                    }
+                }
+            }
+            return (this._childDependencies.levels(keys));
         }
-        else
+        finally
         {
-            final Set<String> keys = this._children.keySet();
-            assert (keys != null) : "The set that holds the keys is null when it should not be.";
-            return (keys);
-            
+            hold.unlock();
         }
     }
     
     /**
-     * Get the current number of observers wanting to be notified of events.
+     * Checks that a child can be stored with the key before it is
+     * constructed.
      * 
-     * @return An <code>int</code> value 0 &lt;= x &lt;= n.
+     * @param key
+     *            A <code>String</code> instance. The key to bind to the new
+     *            child.
+     * @param className
+     *            A <code>String</code> instance of the fully qualified
+     *            classname.
+     * 
+     * @return Null if the child can be stored, otherwise a FACTORY_CLOSED or
+     *         DUPLICATE_KEY result.
      */
-    public int getObserverCount()
+    private OFactoryResult<C> checkCanStore(final String key,
+            final String className)
     {
+        assert (key != null && key.length() != 0) : "loadAndStoreOFactoryChild() - the parameter 'key' should not be null or empty";
+        assert (className != null && className.length() != 0) : "loadAndStoreOFactoryChild() - the parameter 'className' should not be null or empty";
+        
         if (this.isClosed())
         {
-            throw (new OFactoryClosedException(
-                    "This factory is closed and unable to process calls."));
+            return (OFactoryResult.failed(OFactoryResult.Status.FACTORY_CLOSED));
         }
-        else
+        else if (this._children.containsKey(key) || this.isPassivated(key))
         {
-            final int count = this.countObservers();
-            return (count);
+            return (OFactoryResult.failed(OFactoryResult.Status.DUPLICATE_KEY));
         }
+        return (null);
     }
     
     /**
-     * Returns a boolean (true or false) if this <code>OFactory</code> is
-     * closed.
+     * Constructs a child, timing the construction when slow create detection
+     * is on.
      * 
-     * @return A <code>boolean</code> value. True if the factory is closed,
-     *         otherwise it is false.
+     * @param key
+     *            A <code>String</code> instance. The key the child will be
+     *            bound to.
+     * @param className
+     *            A <code>String</code> instance of the fully qualified
+     *            classname.
+     * 
+     * @return A new <code>OFactoryChild</code> instance.
      */
-    public boolean isClosed()
+    private C constructChild(final String key, final String className)
     {
-        return (this._isClosed);
+        final OFactoryStartupManifest manifest = this._startupManifest;
+        if (manifest != null)
+        {
+            manifest.recordCreate(className);
+        }
+        final SlowCreateWatchdog watchdog = this._slowCreateWatchdog;
+        if (watchdog == null)
+        {
+            return (this.newChildInstance(className));
+        }
+        final SlowCreateWatchdog.Watch watch = watchdog.start(className, key,
+                SlowCreateReport.Phase.CONSTRUCT);
+        try
+        {
+            return (this.newChildInstance(className));
+        }
+        finally
+        {
+            this.reportSlowCreate(watchdog.stop(watch), null);
+        }
     }
     
     /**
-     * Loads and Stores the OFactoryChild for use.
+     * Loads and initializes a child, stores it, then notifies observers with a
+     * CREATE type event.
      * 
      * @param key
      *            A <code>String</code> instance. The key to bind to the new
      *            child.
-     * 
      * @param className
      *            A <code>String</code> instance of the fully qualified
      *            classname.
+     * @param tags
+     *            The <code>String</code> tags of the new child. May be empty.
+     * @param initializer
+     *            Calls the initialize method of the child.
      * 
      * @return A <code>OFactoryChild</code> instance bound to the key.
      * 
@@ -620,51 +1527,2567 @@ public class OFactory<C extends OFactoryChild> extends Observable
      * @throws OFactoryChildException
      *             Thrown when an OFactoryChild already exists with that key.
      */
-    protected final C loadAndStoreOFactoryChild(final String key,
-            final String className) throws OFactoryChildException
+    final C createChild(final String key, final String className,
+            final String[] tags, final Consumer<C> initializer)
+            throws OFactoryChildException
     {
-        if (this.isClosed())
+        return (this.childOrThrow(
+                this.tryCreateChild(key, className, tags, initializer), key));
+    }
+    
+    /**
+     * Loads and initializes a child, stores it, then notifies observers with a
+     * CREATE type event. The child is initialized before it is stored so that
+     * other threads never see a child that is not initialized. A child that
+     * cannot be stored because another thread bound the key or closed the
+     * factory first is closed without being removed. Records the time taken
+     * to load and initialize the child when metrics are on.
+     * 
+     * @param key
+     *            A <code>String</code> instance. The key to bind to the new
+     *            child.
+     * @param nameOrAlias
+     *            A <code>String</code> instance of the fully qualified
+     *            classname or an alias in the child index.
+     * @param tags
+     *            The <code>String</code> tags of the new child. May be empty.
+     * @param initializer
+     *            Calls the initialize method of the child.
+     * 
+     * @return A CREATED result, or a FACTORY_CLOSED or DUPLICATE_KEY result
+     *         if the child cannot be stored.
+     */
+    final OFactoryResult<C> tryCreateChild(final String key,
+            final String nameOrAlias, final String[] tags,
+            final Consumer<C> initializer)
+    {
+        final String className = this.resolveClassName(nameOrAlias);
+        final OFactoryMetrics metrics = this._metrics;
+        final long start = (metrics == null) ? 0L : System.nanoTime();
+        final Object recording = OFactoryFlightRecorder.beginChildCreated();
+        try
         {
-            throw (new OFactoryClosedException(
-                    "This factory is closed and unable to process calls."));
+            final OFactoryResult<C> failed = this.checkCanStore(key, className);
+            if (failed != null)
+            {
+                return (failed);
+            }
+            final C child = this.constructChild(key, className);
+            final SlowCreateWatchdog watchdog = this._slowCreateWatchdog;
+            if (watchdog == null)
+            {
+                initializer.accept(child);
+            }
+            else
+            {
+                final SlowCreateWatchdog.Watch watch = watchdog.start(
+                        className, key, SlowCreateReport.Phase.INITIALIZE);
+                try
+                {
+                    initializer.accept(child);
+                }
+                finally
+                {
+                    this.reportSlowCreate(watchdog.stop(watch), child);
+                }
+            }
+            final OFactoryResult<C> result = this.storeChild(key, child, tags);
+            if (!result.isSuccess())
+            {
+                // lost a race for the key or with close().
+                child.closeWithoutRemove();
+                return (result);
+            }
+            if (metrics != null)
+            {
+                metrics.recordChildCreated(className, System.nanoTime()
+                        - start);
+            }
+            OFactoryFlightRecorder.commitChildCreated(recording, key,
+                    className);
+            this.notifyObservers(new Event<C>(Event.Type.CREATE, key, child));
+            return (result);
+        }
+        catch (final RuntimeException e)
+        {
+            if (metrics != null)
+            {
+                metrics.recordException(e);
+            }
+            throw (e);
+        }
+    }
+    
+    /**
+     * Returns the child of a CREATED result or throws the exception for a
+     * failed result, recording it when metrics are on.
+     * 
+     * @param result
+     *            The result of storing a child.
+     * @param key
+     *            The <code>String</code> key of the child.
+     * 
+     * @return The <code>OFactoryChild</code> instance bound to the key.
+     * 
+     * @throws OFactoryClosedException
+     *             if the result is FACTORY_CLOSED.
+     * @throws OFactoryChildException
+     *             if the result is DUPLICATE_KEY.
+     */
+    private C childOrThrow(final OFactoryResult<C> result, final String key)
+            throws OFactoryChildException
+    {
+        if (result.isSuccess())
+        {
+            return (result.getChild());
+        }
+        
+        final OFactoryMetrics metrics = this._metrics;
+        if (result.getStatus() == OFactoryResult.Status.FACTORY_CLOSED)
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            assert (result.getStatus() == OFactoryResult.Status.DUPLICATE_KEY) : "childOrThrow() - unexpected status "
+                    + result.getStatus();
+            final String message = "A OFactoryChild already exists with that key='"
+                    + key + "'";
+            final OFactoryChildException e = new OFactoryChildException(
+                    message, null, this._isStacklessExceptions);
+            if (metrics != null)
+            {
+                metrics.recordException(e);
+            }
+            throw (e);
+        }
+    }
+    
+    /**
+     * Creates a child of the class with the loader of its last reload, the
+     * class loader set by the caller, or the class loader of the factory.
+     * 
+     * @param className
+     *            A <code>String</code> fully qualified class name.
+     * 
+     * @return A new <code>OFactoryChild</code> instance.
+     */
+    @SuppressWarnings("unchecked")
+    private C newChildInstance(final String className)
+    {
+        ChildClassResolver resolver = this._reloadedClasses.get(className);
+        if (resolver == null)
+        {
+            resolver = this._childClassResolver;
+        }
+        return ((resolver == null) ? OFactory.<C> loadOFactoryChild(className)
+                : (C) resolver.newChild(className));
+    }
+    
+    /**
+     * Initializes a child that is created again from a child of an older
+     * version of its class or from a checkpoint.
+     * 
+     * @param child
+     *            The new <code>OFactoryChild</code> instance.
+     * @param key
+     *            The <code>String</code> key the child is bound to.
+     * @param settings
+     *            The settings of the child, as returned by settingsOf(child).
+     *            Null for the children of this class.
+     */
+    void initializeChild(final C child, final String key,
+            final Object settings)
+    {
+        child.initialize(this, key);
+    }
+    
+    /**
+     * Returns the settings a child was initialized with.
+     * 
+     * @param child
+     *            An <code>OFactoryChild</code> instance.
+     * 
+     * @return Null for the children of this class.
+     */
+    Object settingsOf(final C child)
+    {
+        return (null);
+    }
+    
+    /**
+     * Loads a new version of the class in a new class loader from the class
+     * loader factory, then replaces each child of the class in place: a new
+     * child is created, initialized and bound to the key of the old child,
+     * and the old child is closed. Observers are notified with a REMOVE type
+     * event for the old child and a CREATE type event for the new one.
+     * Children created from now on use the new version. Once the callers
+     * holding old children release them, the old class loader can be
+     * collected.
+     * 
+     * @param className
+     *            A <code>String</code> fully qualified class name or an alias
+     *            in the child index.
+     * 
+     * @return The number of children replaced.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     * @throws OFactorySysException
+     *             if no class loader factory is set or the new version
+     *             cannot be loaded. The children are not changed.
+     */
+    public int reload(final String className)
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            Validate.isNotNullOrEmpty(this.getClass(), className);
+            Validate.isLessThanMaxLength(this.getClass(),
+                    CLASS_NAME_MAX_LENGTH, className);
+            
+            final OFactoryClassLoaderFactory loaderFactory = this._classLoaderFactory;
+            if (loaderFactory == null)
+            {
+                throw (new OFactorySysException(
+                        "No class loader factory is set to reload the class name - "
+                                + className));
+            }
+            final String resolved = this.resolveClassName(className);
+            final ClassLoader loader = loaderFactory.newClassLoader(resolved);
+            Validate.isNotNull(this.getClass(), loader);
+            final ChildClassResolver resolver = new ChildClassResolver(loader);
+            resolver.resolve(resolved);
+            this._reloadedClasses.put(resolved, resolver);
+            
+            int count = 0;
+            for (final Map.Entry<String, C> entry : this._children.entrySet())
+            {
+                final C child = entry.getValue();
+                if (child.getClass().getName().equals(resolved)
+                        && child.getClass().getClassLoader() != loader
+                        && this.replaceChild(entry.getKey(), child, resolved,
+                                resolver))
+                {
+                    count++;
+                }
+            }
+            return (count);
+        }
+    }
+    
+    /*
+     * Replaces a child with a new child created by the resolver, unless the
+     * child was closed or the factory closed first.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean replaceChild(final String key, final C replaced,
+            final String className, final ChildClassResolver resolver)
+    {
+        final OFactoryMetrics metrics = this._metrics;
+        final long start = (metrics == null) ? 0L : System.nanoTime();
+        final C replacement = (C) resolver.newChild(className);
+        this.initializeChild(replacement, key, this.settingsOf(replaced));
+        
+        boolean isReplaced = false;
+        final ProfiledLock.Hold hold = this
+                .lockChildTable(LockContention.Operation.RELOAD);
+        try
+        {
+            if (!this.isClosed() && this._children.get(key) == replaced)
+            {
+                this._children = this._children.plus(key, replacement);
+                this._childTypeIndex = this._childTypeIndex.minus(key,
+                        replaced).plus(key, replacement);
+                isReplaced = true;
+            }
+        }
+        finally
+        {
+            hold.unlock();
+        }
+        
+        if (!isReplaced)
+        {
+            replacement.closeWithoutRemove();
+            return (false);
+        }
+        replaced.closeWithoutRemove();
+        if (metrics != null)
+        {
+            metrics.recordChildClosed();
+            metrics.recordChildCreated(className, System.nanoTime() - start);
+        }
+        this.notifyObservers(new Event<C>(Event.Type.REMOVE, key, replaced));
+        this.notifyObservers(new Event<C>(Event.Type.CREATE, key, replacement));
+        return (true);
+    }
+    
+    /**
+     * Writes the keys, class names, tags and settings of the children to a
+     * checkpoint file, with the state of each child that implements
+     * <code>CheckpointableOFactoryChild</code>. Passivated children are
+     * written with the state they were passivated with. The file is replaced
+     * atomically, so it holds either the old or the new checkpoint. The
+     * children are read from a snapshot of the child table; children
+     * created or removed after the snapshot are not in it.
+     * 
+     * @param file
+     *            The <code>Path</code> of the checkpoint file.
+     * 
+     * @return The number of children written.
+     * 
+     * @throws IOException
+     *             if the file cannot be written.
+     * @throws OFactorySysException
+     *             if the settings of a child are not serializable.
+     * @throws OFactoryClosedException
+     *             if the factory is closed.
+     */
+    public int checkpoint(final Path file) throws IOException
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            Validate.isNotNull(this.getClass(), file);
+            
+            // the tags are read with the table they belong to.
+            final PersistentHashMap<String, C> children;
+            final List<String[]> tags = new ArrayList<String[]>();
+            final List<OFactoryCheckpoint.Record> passivated;
+            final ProfiledLock.Hold hold = this
+                    .lockChildTable(LockContention.Operation.QUERY);
+            try
+            {
+                children = this._children;
+                for (final String key : children.keySet())
+                {
+                    tags.add(this._childTagIndex.getTags(key));
+                }
+                final ChildPassivation passivation = this._passivation;
+                passivated = (passivation == null) ? Collections
+                        .<OFactoryCheckpoint.Record> emptyList()
+                        : passivation.getRecords();
+            }
+            finally
+            {
+                hold.unlock();
+            }
+            
+            final List<OFactoryCheckpoint.Record> records = new ArrayList<OFactoryCheckpoint.Record>(
+                    children.size());
+            final Iterator<String[]> childTags = tags.iterator();
+            for (final Map.Entry<String, C> entry : children.entrySet())
+            {
+                final String key = entry.getKey();
+                final C child = entry.getValue();
+                final byte[] state = (child instanceof CheckpointableOFactoryChild) ? ((CheckpointableOFactoryChild) child)
+                        .checkpoint() : null;
+                records.add(new OFactoryCheckpoint.Record(key, child
+                        .getClass().getName(), childTags.next(),
+                        OFactoryCheckpoint.serialize(this.settingsOf(child),
+                                key), state));
+            }
+            records.addAll(passivated);
+            OFactoryCheckpoint.write(file, records);
+            return (records.size());
+        }
+    }
+    
+    /**
+     * Creates the children of a checkpoint file. The children are created,
+     * initialized with their settings and restored with their state in
+     * parallel, then bound to their keys under one lock. Observers are
+     * notified with a CREATE type event for each child. No child is bound if
+     * any of the keys is already in use or a child fails to be created.
+     * 
+     * @param file
+     *            The <code>Path</code> of the checkpoint file.
+     * @param threads
+     *            The number of threads to create the children with.
+     * 
+     * @return The number of children restored.
+     * 
+     * @throws IOException
+     *             if the file cannot be read or is not a checkpoint.
+     * @throws OFactoryChildException
+     *             if a key in the checkpoint is already in use.
+     * @throws OFactoryClosedException
+     *             if the factory is closed.
+     */
+    public int restore(final Path file, final int threads) throws IOException,
+            OFactoryChildException
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            Validate.isNotNull(this.getClass(), file);
+            Validate.isTrue(this.getClass(), threads > 0);
+            
+            final List<OFactoryCheckpoint.Record> records = OFactoryCheckpoint
+                    .read(file);
+            this.checkRestorable(records);
+            final OFactoryMetrics metrics = this._metrics;
+            final long start = (metrics == null) ? 0L : System.nanoTime();
+            final List<C> children = this.newRestoredChildren(records, threads);
+            
+            boolean isStored = false;
+            try
+            {
+                this.storeRestoredChildren(records, children);
+                isStored = true;
+            }
+            finally
+            {
+                if (!isStored)
+                {
+                    for (final C child : children)
+                    {
+                        child.closeWithoutRemove();
+                    }
+                }
+            }
+            
+            final long elapsed = (metrics == null) ? 0L : (System.nanoTime()
+                    - start) / Math.max(1, records.size());
+            for (int i = 0; i < records.size(); i++)
+            {
+                final OFactoryCheckpoint.Record record = records.get(i);
+                if (metrics != null)
+                {
+                    metrics.recordChildCreated(record._className, elapsed);
+                }
+                this.notifyObservers(new Event<C>(Event.Type.CREATE,
+                        record._key, children.get(i)));
+            }
+            return (records.size());
+        }
+    }
+    
+    /*
+     * Throws if a key of the checkpoint is in use or appears twice.
+     */
+    private void checkRestorable(final List<OFactoryCheckpoint.Record> records)
+            throws OFactoryChildException
+    {
+        final PersistentHashMap<String, C> children = this._children;
+        final Set<String> keys = new LinkedHashSet<String>();
+        for (final OFactoryCheckpoint.Record record : records)
+        {
+            if (children.containsKey(record._key)
+                    || this.isPassivated(record._key) || !keys.add(record._key))
+            {
+                throw (new OFactoryChildException(
+                        "A OFactoryChild already exists with that key='"
+                                + record._key + "'", null,
+                        this._isStacklessExceptions));
+            }
+        }
+    }
+    
+    /*
+     * Creates, initializes and restores the children of the records on a
+     * pool of daemon threads. If any child fails, the others are closed.
+     */
+    private List<C> newRestoredChildren(
+            final List<OFactoryCheckpoint.Record> records, final int threads)
+    {
+        final List<C> children = new ArrayList<C>(records.size());
+        if (records.isEmpty())
+        {
+            return (children);
+        }
+        
+        final ClassLoader loader = this.getSettingsClassLoader();
+        final List<Callable<C>> tasks = new ArrayList<Callable<C>>(
+                records.size());
+        for (final OFactoryCheckpoint.Record record : records)
+        {
+            tasks.add(new Callable<C>()
+            {
+                @Override
+                public C call()
+                {
+                    return (OFactory.this.newRestoredChild(record, loader));
+                }
+            });
+        }
+        
+        final ExecutorService executor = newExecutor("ofactory-restore-",
+                Math.min(threads, records.size()));
+        Throwable failure = null;
+        try
+        {
+            for (final Future<C> future : executor.invokeAll(tasks))
+            {
+                try
+                {
+                    children.add(future.get());
+                }
+                catch (final ExecutionException e)
+                {
+                    if (failure == null)
+                    {
+                        failure = e.getCause();
+                    }
+                }
+            }
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            failure = new OFactorySysException(
+                    "Interrupted while restoring the checkpoint.", e);
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        
+        if (failure != null)
+        {
+            for (final C child : children)
+            {
+                child.closeWithoutRemove();
+            }
+            rethrow(failure, "Unable to restore the checkpoint.");
+        }
+        return (children);
+    }
+    
+    /*
+     * Creates a pool of daemon threads named with the prefix and a count.
+     */
+    private static ExecutorService newExecutor(final String prefix,
+            final int threads)
+    {
+        return (Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            private final AtomicInteger _count = new AtomicInteger();
+            
+            @Override
+            public Thread newThread(final Runnable runnable)
+            {
+                final Thread thread = new Thread(runnable, prefix
+                        + this._count.incrementAndGet());
+                thread.setDaemon(true);
+                return (thread);
+            }
+        }));
+    }
+    
+    /*
+     * Runs every task on the executor, or on this thread if there is none,
+     * and returns the first failure or null. An interrupt while waiting is
+     * returned as the failure.
+     */
+    private static Throwable runAll(final ExecutorService executor,
+            final List<Callable<Void>> tasks)
+    {
+        Throwable failure = null;
+        if (executor == null)
+        {
+            for (final Callable<Void> task : tasks)
+            {
+                try
+                {
+                    task.call();
+                }
+                catch (final Exception e)
+                {
+                    if (failure == null)
+                    {
+                        failure = e;
+                    }
+                }
+            }
+            return (failure);
+        }
+        
+        try
+        {
+            for (final Future<Void> future : executor.invokeAll(tasks))
+            {
+                try
+                {
+                    future.get();
+                }
+                catch (final ExecutionException e)
+                {
+                    if (failure == null)
+                    {
+                        failure = e.getCause();
+                    }
+                }
+            }
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            failure = e;
+        }
+        return (failure);
+    }
+    
+    /*
+     * Throws an error or runtime exception as it is, and any other failure
+     * in an OFactorySysException with the message.
+     */
+    private static void rethrow(final Throwable failure, final String message)
+    {
+        if (failure instanceof Error)
+        {
+            throw ((Error) failure);
+        }
+        throw ((failure instanceof RuntimeException) ? (RuntimeException) failure
+                : new OFactorySysException(message, failure));
+    }
+    
+    /*
+     * Returns the class loader the classes of settings are resolved with
+     * first.
+     */
+    private ClassLoader getSettingsClassLoader()
+    {
+        final ClassLoader childLoader = this.getChildClassLoader();
+        return ((childLoader == null) ? OFactory.class.getClassLoader()
+                : childLoader);
+    }
+    
+    /*
+     * Creates, initializes and restores the child of a record.
+     */
+    private C newRestoredChild(final OFactoryCheckpoint.Record record,
+            final ClassLoader loader)
+    {
+        final C child = this.newChildInstance(record._className);
+        this.initializeChild(child, record._key,
+                OFactoryCheckpoint.deserialize(record._settings, loader));
+        if (record._state != null)
+        {
+            if (!(child instanceof CheckpointableOFactoryChild))
+            {
+                child.closeWithoutRemove();
+                throw (new OFactorySysException("The class "
+                        + record._className
+                        + " cannot restore the state in the checkpoint."));
+            }
+            ((CheckpointableOFactoryChild) child).restore(record._state);
+        }
+        return (child);
+    }
+    
+    /*
+     * Binds the restored children to their keys under one lock, or none of
+     * them if the factory closed or a key was taken since the check.
+     */
+    private void storeRestoredChildren(
+            final List<OFactoryCheckpoint.Record> records, final List<C> children)
+            throws OFactoryChildException
+    {
+        final ProfiledLock.Hold hold = this
+                .lockChildTable(LockContention.Operation.CREATE);
+        try
+        {
+            // check again now that no other thread can add.
+            if (this.isClosed())
+            {
+                throw (this.newClosedException());
+            }
+            this.checkRestorable(records);
+            for (int i = 0; i < records.size(); i++)
+            {
+                final OFactoryCheckpoint.Record record = records.get(i);
+                this.addToChildTable(record._key, children.get(i));
+                if (record._tags.length > 0)
+                {
+                    this._childTagIndex.add(record._key, record._tags);
+                }
+            }
+        }
+        finally
+        {
+            hold.unlock();
+        }
+    }
+    
+    /*
+     * Returns the child bound to the key in this factory, reactivating a
+     * passivated child, without notifying observers.
+     */
+    private C findChild(final String key)
+    {
+        // the table is read first. It is published after the filter is
+        // updated, so the filter knows every key of a finished create.
+        final PersistentHashMap<String, C> children = this._children;
+        final NegativeLookupFilter filter = this._negativeLookupFilter;
+        final C found = ((filter != null) && !filter.mightContain(key)) ? null
+                : children.get(key);
+        final ChildPassivation passivation = this._passivation;
+        return ((passivation == null) ? found : this.activate(passivation,
+                key, found));
+    }
+    
+    /*
+     * Returns the child bound to the key in the closest enclosing factory,
+     * or null, through the scope cache. Passivatable children are not cached
+     * so that each get marks them as used.
+     */
+    private C findInScope(final String key)
+    {
+        final OFactory<? extends C> parent = this._parentScope;
+        long version = 0L;
+        for (OFactory<?> scope = parent; scope != null; scope = scope._parentScope)
+        {
+            version += scope._scopeVersion.get();
+        }
+        
+        final ScopeLookupCache.Entry<C> entry = this._scopeCache.get(key,
+                version);
+        if (entry != null)
+        {
+            return (entry._child);
+        }
+        
+        // the version is read first, so a change made during the lookup
+        // leaves the entry stale rather than wrong.
+        final C found = parent.findChild(key);
+        final C child = (found == null && parent._parentScope != null) ? parent
+                .findInScope(key) : found;
+        if (!(child instanceof PassivatableOFactoryChild))
+        {
+            this._scopeCache.put(key, child, version);
+        }
+        return (child);
+    }
+    
+    /*
+     * Returns the child found in the child table, or reactivates the
+     * passivated child of the key, and records that a passivatable child was
+     * got.
+     */
+    private C activate(final ChildPassivation passivation, final String key,
+            final C child)
+    {
+        if (child == null)
+        {
+            return (passivation.contains(key) ? this.reactivate(passivation,
+                    key) : null);
+        }
+        if (child instanceof PassivatableOFactoryChild)
+        {
+            passivation.touch(key);
+        }
+        return (child);
+    }
+    
+    /*
+     * Returns whether a child is passivated under the key.
+     */
+    private boolean isPassivated(final String key)
+    {
+        final ChildPassivation passivation = this._passivation;
+        return ((passivation != null) && passivation.contains(key));
+    }
+    
+    /*
+     * Writes a child to the passivation storage and drops it from the
+     * tables, unless it was got, closed or replaced since it was found.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean passivateChild(final ChildPassivation passivation,
+            final ChildPassivation.Candidate candidate)
+    {
+        final String key = candidate._key;
+        final C child = (C) candidate._child;
+        final byte[] state = ((PassivatableOFactoryChild) child).checkpoint();
+        final byte[] settings = OFactoryCheckpoint.serialize(
+                this.settingsOf(child), key);
+        
+        boolean isPassivated = false;
+        final ProfiledLock.Hold hold = this
+                .lockChildTable(LockContention.Operation.PASSIVATE);
+        try
+        {
+            if (!this.isClosed() && this._passivation == passivation
+                    && this._children.get(key) == child
+                    && candidate._stamp._accessed == candidate._accessed)
+            {
+                passivation.put(new OFactoryCheckpoint.Record(key, child
+                        .getClass().getName(), this._childTagIndex
+                        .getTags(key), settings, state));
+                this._children = this._children.minus(key);
+                this._childTypeIndex = this._childTypeIndex.minus(key, child);
+                this._childTagIndex.remove(key);
+                if (this._negativeLookupFilter != null)
+                {
+                    this._negativeLookupFilter.remove(key);
+                }
+                isPassivated = true;
+            }
+        }
+        finally
+        {
+            hold.unlock();
+        }
+        if (isPassivated)
+        {
+            this._scopeVersion.incrementAndGet();
+            child.closeWithoutRemove();
+        }
+        return (isPassivated);
+    }
+    
+    /*
+     * Creates the passivated child of a key again and binds it, unless
+     * another thread did so first. Returns the child bound to the key, or
+     * null if there is none.
+     */
+    private C reactivate(final ChildPassivation passivation, final String key)
+    {
+        while (true)
+        {
+            final ChildPassivation.Slot slot;
+            final OFactoryCheckpoint.Record record;
+            final ProfiledLock.Hold readHold = this
+                    .lockChildTable(LockContention.Operation.PASSIVATE);
+            try
+            {
+                slot = passivation.getSlot(key);
+                record = (slot == null) ? null : passivation.read(slot);
+            }
+            finally
+            {
+                readHold.unlock();
+            }
+            if (record == null)
+            {
+                return (this._children.get(key));
+            }
+            
+            final C child = this.newRestoredChild(record,
+                    this.getSettingsClassLoader());
+            boolean isBound = false;
+            final ProfiledLock.Hold bindHold = this
+                    .lockChildTable(LockContention.Operation.PASSIVATE);
+            try
+            {
+                // the slot moves if the storage is compacted.
+                if (!this.isClosed() && passivation.getSlot(key) == slot)
+                {
+                    passivation.remove(key);
+                    this.addToChildTable(key, child);
+                    if (record._tags.length > 0)
+                    {
+                        this._childTagIndex.add(key, record._tags);
+                    }
+                    isBound = true;
+                }
+            }
+            finally
+            {
+                bindHold.unlock();
+            }
+            if (isBound)
+            {
+                return (child);
+            }
+            child.closeWithoutRemove();
+            if (this.isClosed() || !passivation.contains(key))
+            {
+                return (this._children.get(key));
+            }
+        }
+    }
+    
+    /*
+     * Reactivates every child of a passivation.
+     */
+    private void reactivateAll(final ChildPassivation passivation)
+    {
+        for (final String key : passivation.getKeys())
+        {
+            this.reactivate(passivation, key);
+        }
+    }
+    
+    /*
+     * Reactivates the passivated children, stops passivating and deletes the
+     * passivation file. Called under the configuration lock.
+     */
+    private void stopPassivation()
+    {
+        assert (this._configurationLock.isHeldByCurrentThread()) : "stopPassivation() - the configuration lock is not held.";
+        final ChildPassivation passivation = this._passivation;
+        if (passivation != null)
+        {
+            this.reactivateAll(passivation);
+            final ProfiledLock.Hold hold = this
+                    .lockChildTable(LockContention.Operation.PASSIVATE);
+            try
+            {
+                this._passivation = null;
+            }
+            finally
+            {
+                hold.unlock();
+            }
+            // children passivated by a sweep that was running.
+            this.reactivateAll(passivation);
+            passivation.close();
+        }
+    }
+    
+    /**
+     * Returns the class name of an alias in the child index, or the name as
+     * it is if there is no index or it is not an alias.
+     * 
+     * @param nameOrAlias
+     *            A <code>String</code> fully qualified class name or alias.
+     * 
+     * @return A <code>String</code> fully qualified class name.
+     */
+    private String resolveClassName(final String nameOrAlias)
+    {
+        final OFactoryChildIndex index = this._childIndex;
+        if (index == null)
+        {
+            return (nameOrAlias);
+        }
+        final String className = index.resolve(nameOrAlias);
+        return ((className == null) ? nameOrAlias : className);
+    }
+    
+    /*
+     * Takes the child table lock for an operation, recording the wait and
+     * hold times while lock profiling is on.
+     */
+    private ProfiledLock.Hold lockChildTable(
+            final LockContention.Operation operation)
+    {
+        return (this._childTableLock.lock(this._lockProfiler, operation));
+    }
+    
+    /*
+     * Takes the configuration lock for an operation, recording the wait and
+     * hold times while lock profiling is on.
+     */
+    private ProfiledLock.Hold lockConfiguration(
+            final LockContention.Operation operation)
+    {
+        return (this._configurationLock.lock(this._lockProfiler, operation));
+    }
+    
+    /*
+     * Throws if the factory was closed while a read that found nothing, or a
+     * count, was made. close() sets the closed flag and then removes the
+     * children one at a time, so the read may have seen a half-emptied table
+     * and is reported as made after the close.
+     */
+    private void checkNotClosedAfterRead()
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+    }
+    
+    /**
+     * Returns the exception thrown when a method is called on a closed
+     * factory. A preallocated stackless exception is returned when stackless
+     * exceptions are enabled.
+     * 
+     * @return An <code>OFactoryClosedException</code> instance.
+     */
+    private OFactoryClosedException newClosedException()
+    {
+        final OFactoryClosedException e = this._isStacklessExceptions ? CLOSED_EXCEPTION
+                : new OFactoryClosedException(
+                        "This factory is closed and unable to process calls.");
+        final OFactoryMetrics metrics = this._metrics;
+        if (metrics != null)
+        {
+            metrics.recordException(e);
+        }
+        return (e);
+    }
+    
+    /**
+     * Stops using the negative lookup filter. Does nothing if the filter is
+     * not enabled.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public void disableNegativeLookupFilter()
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            final ProfiledLock.Hold hold = this
+                    .lockChildTable(LockContention.Operation.CONFIGURE);
+            try
+            {
+                this._negativeLookupFilter = null;
+            }
+            finally
+            {
+                hold.unlock();
+            }
+        }
+    }
+    
+    /**
+     * Stops recording lock wait and hold times. The recorded times are
+     * dropped. Does nothing if lock profiling is not enabled.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public void disableLockProfiling()
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            this._lockProfiler = null;
+        }
+    }
+    
+    /**
+     * Reactivates the passivated children, stops passivating and deletes the
+     * passivation file. Does nothing if passivation is not enabled.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public void disablePassivation()
+    {
+        final ProfiledLock.Hold configurationHold = this
+                .lockConfiguration(LockContention.Operation.PASSIVATE);
+        try
+        {
+            if (this.isClosed())
+            {
+                throw (this.newClosedException());
+            }
+            else
+            {
+                this.stopPassivation();
+            }
+        }
+        finally
+        {
+            configurationHold.unlock();
+        }
+    }
+    
+    /**
+     * Fills in the stack trace of closed and duplicate key exceptions again.
+     * Does nothing if stackless exceptions are not enabled.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public void disableStacklessExceptions()
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            this._isStacklessExceptions = false;
+        }
+    }
+    
+    /**
+     * Stops timing the construction and initialization of children. Does
+     * nothing if slow create detection is not enabled.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public void disableSlowCreateDetection()
+    {
+        final ProfiledLock.Hold configurationHold = this
+                .lockConfiguration(LockContention.Operation.CONFIGURE);
+        try
+        {
+            if (this.isClosed())
+            {
+                throw (this.newClosedException());
+            }
+            else
+            {
+                final SlowCreateWatchdog watchdog = this._slowCreateWatchdog;
+                this._slowCreateWatchdog = null;
+                if (watchdog != null)
+                {
+                    watchdog.close();
+                }
+            }
+        }
+        finally
+        {
+            configurationHold.unlock();
+        }
+    }
+    
+    /**
+     * Starts recording how long each operation waits for and holds each lock
+     * the factory takes. Calling this method again starts a new recording.
+     * Read the times with getLockContention(). Gets and event dispatch take
+     * no locks and so are not recorded.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public void enableLockProfiling()
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            this._lockProfiler = new OFactoryLockProfiler();
+        }
+    }
+    
+    /**
+     * Enables a filter over the bound keys so that lookups of keys that are
+     * not bound can be answered without probing the child table. The filter
+     * is maintained as children are created and closed, and is rebuilt at
+     * twice the size when the number of children grows past the expected
+     * count. Calling this method again rebuilds the filter.
+     * 
+     * @param expectedChildren
+     *            The number of children to size the filter for. Must be
+     *            greater than zero.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public void enableNegativeLookupFilter(final int expectedChildren)
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            Validate.isTrue(this.getClass(), expectedChildren > 0);
+            
+            final ProfiledLock.Hold hold = this
+                    .lockChildTable(LockContention.Operation.CONFIGURE);
+            try
+            {
+                this._negativeLookupFilter = buildNegativeLookupFilter(
+                        this._children, expectedChildren);
+            }
+            finally
+            {
+                hold.unlock();
+            }
+        }
+    }
+    
+    /**
+     * Throws closed and duplicate key exceptions without filling in their
+     * stack trace, for callers that use them for control flow. The closed
+     * exception is preallocated and shared, so its stack trace is empty and
+     * it does not record suppressed exceptions.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public void enableStacklessExceptions()
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            this._isStacklessExceptions = true;
+        }
+    }
+    
+    /**
+     * Times the construction and initialization of each child created from
+     * now on. When either phase takes longer than the threshold the stack of
+     * the creating thread is sampled, the slow create is counted in the
+     * metrics and observers are notified with a SLOW_CREATE type event.
+     * Calling this method again replaces the threshold.
+     * 
+     * @param threshold
+     *            The time after which a phase is slow. Must be greater than
+     *            zero.
+     * @param unit
+     *            The <code>TimeUnit</code> of the threshold.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public void enableSlowCreateDetection(final long threshold,
+            final TimeUnit unit)
+    {
+        final ProfiledLock.Hold configurationHold = this
+                .lockConfiguration(LockContention.Operation.CONFIGURE);
+        try
+        {
+            if (this.isClosed())
+            {
+                throw (this.newClosedException());
+            }
+            else
+            {
+                Validate.isNotNull(this.getClass(), unit);
+                Validate.isTrue(this.getClass(), threshold > 0);
+                
+                final SlowCreateWatchdog watchdog = this._slowCreateWatchdog;
+                this._slowCreateWatchdog = new SlowCreateWatchdog(
+                        unit.toNanos(threshold));
+                if (watchdog != null)
+                {
+                    watchdog.close();
+                }
+            }
+        }
+        finally
+        {
+            configurationHold.unlock();
+        }
+    }
+    
+    /**
+     * Passivates children that implement <code>PassivatableOFactoryChild</code>
+     * when they have not been got for the idle time, or when more than the
+     * maximum number of them are active. A passivated child is written to a
+     * memory-mapped file off the heap and dropped from the child table; the
+     * next get(key) or tryGet(key) creates it again from the file. Passivated
+     * children count as bound for create, containsChild and closeChild, and
+     * are in checkpoints, but are not in the keys, counts, streams or tag and
+     * type lookups until they are reactivated. Enabling passivation again
+     * reactivates the children of the old file first.
+     * 
+     * @param file
+     *            The <code>Path</code> of the passivation file. Replaced if it
+     *            exists, and deleted when passivation is disabled or the
+     *            factory is closed.
+     * @param idleTime
+     *            The time a child may go without being got before it is
+     *            passivated.
+     * @param unit
+     *            The <code>TimeUnit</code> of the idle time.
+     * @param maxActiveChildren
+     *            The number of passivatable children that may be active, or 0
+     *            for no limit.
+     * 
+     * @throws IOException
+     *             if the file cannot be created.
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public void enablePassivation(final Path file, final long idleTime,
+            final TimeUnit unit, final int maxActiveChildren)
+            throws IOException
+    {
+        final ProfiledLock.Hold configurationHold = this
+                .lockConfiguration(LockContention.Operation.PASSIVATE);
+        try
+        {
+            if (this.isClosed())
+            {
+                throw (this.newClosedException());
+            }
+            else
+            {
+                Validate.isNotNull(this.getClass(), file);
+                Validate.isNotNull(this.getClass(), unit);
+                Validate.isTrue(this.getClass(), idleTime > 0);
+                Validate.isTrue(this.getClass(), maxActiveChildren >= 0);
+                
+                this.stopPassivation();
+                this._passivation = new ChildPassivation(file,
+                        unit.toNanos(idleTime), maxActiveChildren,
+                        new Runnable()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                OFactory.this.sweepIdleChildren();
+                            }
+                        });
+            }
+        }
+        finally
+        {
+            configurationHold.unlock();
+        }
+    }
+    
+    /**
+     * Performs the action for each child in a snapshot of the child table.
+     * Observers are not notified.
+     * 
+     * @param action
+     *            A <code>Consumer</code> that is given each child.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public void forEachChild(final Consumer<? super C> action)
+    {
+        Validate.isNotNull(this.getClass(), action);
+        
+        this.spliterator().forEachRemaining(action);
+    }
+    
+    /**
+     * Gets the child by the bounded key. A passivated child is reactivated.
+     * 
+     * @param key
+     *            The key that is bound to the logger.
+     * 
+     * @return An <code>OFactoryChild</code> child instance associated with the
+     *         key. May return null.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public C get(final String key)
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            this.validateKey(key);
+            // TODO - can make max length check based on the max length of a registered key.
+            
+            final C found = this.findChild(key);
+            final C child = (found == null && this._parentScope != null) ? this
+                    .findInScope(key) : found;
+            if (child == null)
+            {
+                this.checkNotClosedAfterRead();
+            }
+            final OFactoryMetrics metrics = this._metrics;
+            if (metrics != null)
+            {
+                metrics.recordGet(child != null);
+            }
+            if (this._observers.length > 0)
+            {
+                this.notifyObservers(new Event<C>(Event.Type.GET, key, child));
+            }
+            return (child);
+            
+        }
+    }
+    
+    /**
+     * Returns the factory looked up when a key is not bound in this one, or
+     * null if this factory is not a scope.
+     * 
+     * @return The enclosing <code>OFactory</code> or null.
+     */
+    public OFactory<? extends C> getParentScope()
+    {
+        return (this._parentScope);
+    }
+    
+    /**
+     * Returns the number of children created and managed by this Factory.
+     * 
+     * @return An integer value such that 0 &lt;= x &lt;= n is the number of
+     *         children.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public int getChildCount()
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            final int count = this._children.size();
+            this.checkNotClosedAfterRead();
+            return (count);
+        }
+    }
+    
+    /**
+     * Returns the children that carry every tag. Observers are not notified.
+     * 
+     * @param tags
+     *            One or more <code>String</code> tags.
+     * @return A <code>List</code> of <code>OFactoryChild</code> instances.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public List<C> getChildrenTagged(final String... tags)
+    {
+        this.validateQueryTags(tags);
+        
+        final ProfiledLock.Hold hold = this
+                .lockChildTable(LockContention.Operation.QUERY);
+        try
+        {
+            final Set<String> keys = this._childTagIndex.getKeys(tags);
+            final List<C> children = new ArrayList<C>(keys.size());
+            for (final String key : keys)
+            {
+                children.add(this._children.get(key));
+            }
+            return (children);
+        }
+        finally
+        {
+            hold.unlock();
+        }
+    }
+    
+    /**
+     * Returns the number of children of each class. The counts are kept as
+     * children are created and closed, so the children are not visited.
+     * 
+     * @return An unmodifiable <code>Map</code> of fully qualified class names
+     *         to counts.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public Map<String, Integer> getChildCountsByClass()
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            return (this._childTypeIndex.countByClassName());
+        }
+    }
+    
+    /**
+     * Returns the keys the child of a key was declared to depend on.
+     * 
+     * @param key
+     *            The key of the dependent child.
+     * 
+     * @return A <code>Set</code> copy of the keys, empty if there are none.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public Set<String> getDependencies(final String key)
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            this.validateKey(key);
+            
+            final ProfiledLock.Hold hold = this
+                    .lockChildTable(LockContention.Operation.QUERY);
+            try
+            {
+                return (this._childDependencies.get(key));
+            }
+            finally
+            {
+                hold.unlock();
+            }
+        }
+    }
+    
+    /**
+     * Returns the tags the child bound to the key was created with.
+     * 
+     * @param key
+     *            The <code>String</code> key associated with a child.
+     * @return A <code>Set</code> of <code>String</code> tags. Empty if the
+     *         child has no tags or the key is not bound.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public Set<String> getChildTags(final String key)
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            this.validateKey(key);
+            
+            final String[] tags;
+            final ProfiledLock.Hold hold = this
+                    .lockChildTable(LockContention.Operation.QUERY);
+            try
+            {
+                tags = this._childTagIndex.getTags(key);
+            }
+            finally
+            {
+                hold.unlock();
+            }
+            return (Collections.unmodifiableSet(new LinkedHashSet<String>(
+                    Arrays.asList(tags))));
+        }
+    }
+    
+    /**
+     * Returns the children that are instances of the type, such as all
+     * children that implement an interface. The children are read from the
+     * type index as an immutable point-in-time view, so the cost is
+     * proportional to the number of children returned. Object, the child
+     * interfaces and base classes and marker interfaces are not indexed and
+     * are answered by a scan of the children. Observers are not notified.
+     * 
+     * @param type
+     *            A class or interface.
+     * @return An unmodifiable <code>Collection</code> of the children of the
+     *         type.
+     * 
+     * @param <T>
+     *            The type to look up.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Collection<T> getChildrenOfType(final Class<T> type)
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            Validate.isNotNull(this.getClass(), type);
+            
+            // every indexed child is an instance of the type.
+            return (Collections.unmodifiableCollection((Collection<T>) this._childTypeIndex
+                    .get(type, this._children).values()));
+        }
+    }
+    
+    /**
+     * Returns the time each operation waited for and held each lock since
+     * lock profiling was enabled, the most waited for first.
+     * 
+     * @return A <code>List</code> of <code>LockContention</code> instances.
+     *         Empty when lock profiling is not enabled.
+     */
+    public List<LockContention> getLockContention()
+    {
+        final OFactoryLockProfiler profiler = this._lockProfiler;
+        return ((profiler == null) ? Collections.<LockContention> emptyList()
+                : profiler.getContention());
+    }
+    
+    /**
+     * Returns the name the JMX MBean of this factory is registered under.
+     * 
+     * @return An <code>ObjectName</code> or null when the MBean is not
+     *         registered.
+     */
+    public synchronized ObjectName getMBeanName()
+    {
+        return (this._mbeanName);
+    }
+    
+    /**
+     * Returns the class loader children are loaded with.
+     * 
+     * @return A <code>ClassLoader</code> instance or null when children are
+     *         loaded with the class loader of the factory.
+     */
+    public ClassLoader getChildClassLoader()
+    {
+        final ChildClassResolver resolver = this._childClassResolver;
+        return ((resolver == null) ? null : resolver.getClassLoader());
+    }
+    
+    /**
+     * Returns the factory of the class loaders reloaded classes are loaded
+     * with.
+     * 
+     * @return An <code>OFactoryClassLoaderFactory</code> instance or null
+     *         when none is set.
+     */
+    public OFactoryClassLoaderFactory getClassLoaderFactory()
+    {
+        return (this._classLoaderFactory);
+    }
+    
+    /**
+     * Returns the index that resolves aliases given to the create methods.
+     * 
+     * @return An <code>OFactoryChildIndex</code> instance or null when none
+     *         is set.
+     */
+    public OFactoryChildIndex getChildIndex()
+    {
+        return (this._childIndex);
+    }
+    
+    /**
+     * Returns the journal the events of the factory are appended to.
+     * 
+     * @return An <code>OFactoryEventJournal</code> instance or null when none
+     *         is set.
+     */
+    public OFactoryEventJournal getEventJournal()
+    {
+        return (this._eventJournal);
+    }
+    
+    /**
+     * Returns the startup manifest the classes of the children created are
+     * recorded in.
+     * 
+     * @return An <code>OFactoryStartupManifest</code> instance or null when
+     *         none is set.
+     */
+    public OFactoryStartupManifest getStartupManifest()
+    {
+        return (this._startupManifest);
+    }
+    
+    /**
+     * Returns the registry metrics are recorded in.
+     * 
+     * @return An <code>OFactoryMetrics</code> instance or null when metrics
+     *         are off.
+     */
+    public OFactoryMetrics getMetrics()
+    {
+        return (this._metrics);
+    }
+    
+    /**
+     * Returns a <code>Set</code> containing <code>String</code> keys. The set
+     * is an immutable point-in-time view of the keys and is safe to iterate
+     * while children are created or closed.
+     * 
+     * @return A <code>Set</code> containing <code>String</code> keys.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public Set<String> getKeys()
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            final Set<String> keys = this._children.keySet();
+            assert (keys != null) : "The set that holds the keys is null when it should not be.";
+            return (keys);
+            
+        }
+    }
+    
+    /**
+     * Returns an immutable point-in-time view of the children keyed by their
+     * bound keys. The view is not affected by later calls to create or
+     * closeChild and is safe to iterate while other threads use the factory.
+     * 
+     * @return An unmodifiable <code>Map</code> of <code>String</code> keys to
+     *         <code>OFactoryChild</code> instances.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public Map<String, C> snapshot()
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            return (this._children);
+        }
+    }
+    
+    /**
+     * Returns the keys of the children that are instances of the type as an
+     * immutable point-in-time view.
+     * 
+     * @param type
+     *            A class or interface.
+     * @return A <code>Set</code> containing <code>String</code> keys.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public Set<String> getKeysOfType(final Class<?> type)
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            Validate.isNotNull(this.getClass(), type);
+            
+            return (this._childTypeIndex.get(type, this._children).keySet());
+        }
+    }
+    
+    /**
+     * Returns the keys of the children that carry every tag.
+     * 
+     * @param tags
+     *            One or more <code>String</code> tags.
+     * @return A <code>Set</code> containing <code>String</code> keys.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public Set<String> getKeysTagged(final String... tags)
+    {
+        this.validateQueryTags(tags);
+        
+        final ProfiledLock.Hold hold = this
+                .lockChildTable(LockContention.Operation.QUERY);
+        try
+        {
+            return (Collections.unmodifiableSet(this._childTagIndex
+                    .getKeys(tags)));
+        }
+        finally
+        {
+            hold.unlock();
+        }
+    }
+    
+    /**
+     * Returns the number of children that are passivated.
+     * 
+     * @return An <code>int</code> value 0 &lt;= x &lt;= n.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public int getPassivatedCount()
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            final ChildPassivation passivation = this._passivation;
+            return ((passivation == null) ? 0 : passivation.getCount());
+        }
+    }
+    
+    /**
+     * Get the current number of observers wanting to be notified of events.
+     * 
+     * @return An <code>int</code> value 0 &lt;= x &lt;= n.
+     */
+    public int getObserverCount()
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            return (this._observers.length);
+        }
+    }
+    
+    /**
+     * Returns a boolean (true or false) if this <code>OFactory</code> is
+     * closed.
+     * 
+     * @return A <code>boolean</code> value. True if the factory is closed,
+     *         otherwise it is false.
+     */
+    public boolean isClosed()
+    {
+        return (this._isClosed);
+    }
+    
+    /**
+     * Returns true if lock wait and hold times are recorded.
+     * 
+     * @return A <code>boolean</code> value.
+     */
+    public boolean isLockProfilingEnabled()
+    {
+        return (this._lockProfiler != null);
+    }
+    
+    /**
+     * Returns a boolean (true or false) if passivation is enabled.
+     * 
+     * @return A <code>boolean</code> value.
+     */
+    public boolean isPassivationEnabled()
+    {
+        return (this._passivation != null);
+    }
+    
+    /**
+     * Returns a boolean (true or false) if the negative lookup filter is
+     * enabled.
+     * 
+     * @return A <code>boolean</code> value.
+     */
+    public boolean isNegativeLookupFilterEnabled()
+    {
+        return (this._negativeLookupFilter != null);
+    }
+    
+    /**
+     * Returns true if closed and duplicate key exceptions are thrown without
+     * a stack trace.
+     * 
+     * @return A <code>boolean</code> value (true or false).
+     */
+    public boolean isStacklessExceptionsEnabled()
+    {
+        return (this._isStacklessExceptions);
+    }
+    
+    /**
+     * Returns true if the construction and initialization of children is
+     * timed.
+     * 
+     * @return A <code>boolean</code> value.
+     */
+    public boolean isSlowCreateDetectionEnabled()
+    {
+        return (this._slowCreateWatchdog != null);
+    }
+    
+    /**
+     * Loads and Stores the OFactoryChild for use.
+     * 
+     * @param key
+     *            A <code>String</code> instance. The key to bind to the new
+     *            child.
+     * 
+     * @param className
+     *            A <code>String</code> instance of the fully qualified
+     *            classname.
+     * 
+     * @return A <code>OFactoryChild</code> instance bound to the key.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     * @throws OFactoryChildException
+     *             Thrown when an OFactoryChild already exists with that key.
+     */
+    protected final C loadAndStoreOFactoryChild(final String key,
+            final String className) throws OFactoryChildException
+    {
+        return (this.loadAndStoreOFactoryChild(key, className, NO_TAGS));
+    }
+    
+    /**
+     * Loads and Stores the OFactoryChild for use and adds it to the index of
+     * each tag.
+     * 
+     * Unlike create(key, className), the child is bound before it is
+     * initialized, so other threads can get it before the caller initializes
+     * it. A child that cannot be bound is dropped without being closed, as it
+     * was never initialized.
+     * 
+     * @param key
+     *            A <code>String</code> instance. The key to bind to the new
+     *            child.
+     * 
+     * @param className
+     *            A <code>String</code> instance of the fully qualified
+     *            classname.
+     * 
+     * @param tags
+     *            The <code>String</code> tags of the new child. May be empty.
+     * 
+     * @return A <code>OFactoryChild</code> instance bound to the key.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     * @throws OFactoryChildException
+     *             Thrown when an OFactoryChild already exists with that key.
+     */
+    protected final C loadAndStoreOFactoryChild(final String key,
+            final String className, final String[] tags)
+            throws OFactoryChildException
+    {
+        final OFactoryResult<C> failed = this.checkCanStore(key, className);
+        if (failed != null)
+        {
+            return (this.childOrThrow(failed, key));
+        }
+        return (this.childOrThrow(this.storeChild(key,
+                this.constructChild(key, this.resolveClassName(className)),
+                tags), key));
+    }
+    
+    /**
+     * Stores the child in the child table and adds it to the index of each
+     * tag.
+     * 
+     * @param key
+     *            A <code>String</code> instance. The key to bind to the
+     *            child.
+     * @param child
+     *            The <code>OFactoryChild</code> instance to store.
+     * @param tags
+     *            The <code>String</code> tags of the child. May be empty.
+     * 
+     * @return A CREATED result holding the child, or a FACTORY_CLOSED or
+     *         DUPLICATE_KEY result.
+     */
+    private OFactoryResult<C> storeChild(final String key, final C child,
+            final String[] tags)
+    {
+        final ProfiledLock.Hold hold = this
+                .lockChildTable(LockContention.Operation.CREATE);
+        try
+        {
+            // check again now that no other thread can add.
+            if (this.isClosed())
+            {
+                return (OFactoryResult
+                        .failed(OFactoryResult.Status.FACTORY_CLOSED));
+            }
+            else if (this._children.containsKey(key) || this.isPassivated(key))
+            {
+                return (OFactoryResult
+                        .failed(OFactoryResult.Status.DUPLICATE_KEY));
+            }
+            final C stored = this.addToChildTable(key, child);
+            if (tags.length > 0)
+            {
+                this._childTagIndex.add(key, tags);
+            }
+            return (OFactoryResult.succeeded(
+                    OFactoryResult.Status.CREATED, stored));
+        }
+        finally
+        {
+            hold.unlock();
+        }
+    }
+    
+    /**
+     * Notifies the <code>Observers</code> of an event within the OFactory.
+     * The observers are read from a copy that is replaced when an observer is
+     * added or removed, so no lock is taken.
+     * 
+     * @param event
+     *            An <code>OFactory</code> event that indicates a CREATE,
+     *            REMOVE, GET, CLOSE;
+     */
+    protected void notifyObservers(final Event<C> event)
+    {
+        assert (event != null) : "notifyObservers() - The parameter 'event' must not be null.";
+        final Event.Type type = event.getType();
+        if (type != Event.Type.GET && type != Event.Type.SLOW_CREATE)
+        {
+            this._scopeVersion.incrementAndGet();
+        }
+        final OFactoryEventJournal journal = this._eventJournal;
+        if (journal != null)
+        {
+            journal.append(event);
+        }
+        final Observer[] observers = this._observers;
+        if (observers.length > 0)
+        {
+            final OFactoryMetrics metrics = this._metrics;
+            final long start = (metrics == null) ? 0L : System.nanoTime();
+            final Object recording = OFactoryFlightRecorder.beginDispatch();
+            
+            // newest first, in the same order as Observable.
+            for (int i = observers.length - 1; i >= 0; i--)
+            {
+                observers[i].update(this, event);
+            }
+            
+            if (metrics != null)
+            {
+                metrics.recordDispatch(System.nanoTime() - start);
+            }
+            OFactoryFlightRecorder.commitDispatch(recording, event,
+                    observers.length);
+        }
+    }
+    
+    /**
+     * Closes the child associated with the key without throwing. Observers
+     * are notified with a REMOVE type event when a child is closed.
+     * 
+     * @param key
+     *            The <code>String</code> key associated with a child.
+     * 
+     * @return A CHILD_CLOSED result holding the child, or a FACTORY_CLOSED,
+     *         INVALID_ARGUMENT or NOT_FOUND result.
+     */
+    public OFactoryResult<C> tryCloseChild(final String key)
+    {
+        if (this.isClosed())
+        {
+            return (OFactoryResult.failed(OFactoryResult.Status.FACTORY_CLOSED));
+        }
+        else if ((key == null) || (key.length() == 0)
+                || (key.length() > KEY_MAX_LENGTH))
+        {
+            return (OFactoryResult
+                    .failed(OFactoryResult.Status.INVALID_ARGUMENT));
+        }
+        
+        final C child = this.removeAndCloseChild(key,
+                LockContention.Operation.CLOSE_CHILD);
+        if (child != null)
+        {
+            return (OFactoryResult.succeeded(
+                    OFactoryResult.Status.CHILD_CLOSED, child));
+        }
+        // close() may have removed the child after the check above.
+        return (OFactoryResult.failed(this.isClosed() ? OFactoryResult.Status.FACTORY_CLOSED
+                : OFactoryResult.Status.NOT_FOUND));
+    }
+    
+    /**
+     * Creates a child using the fully qualified classname that is associated
+     * with a key and carries tags, without throwing when the factory is
+     * closed, the key is already bound or an argument is invalid. Observers
+     * are notified with a CREATE type event when a child is created.
+     * 
+     * @param key
+     *            A <code>String</code> instance. The key to bind to the new
+     *            child.
+     * @param className
+     *            A <code>String</code> instance of the fully qualified
+     *            classname, or an alias in the child index.
+     * @param tags
+     *            The <code>String</code> tags of the new child, such as a
+     *            region or a tier.
+     * 
+     * @return A CREATED result holding the child, or a FACTORY_CLOSED,
+     *         DUPLICATE_KEY or INVALID_ARGUMENT result.
+     * 
+     * @throws OFactorySysException
+     *             if the class cannot be loaded or instantiated.
+     */
+    public OFactoryResult<C> tryCreate(final String key,
+            final String className, final String... tags)
+    {
+        if (!this.isValidCreate(key, className, tags))
+        {
+            return (OFactoryResult
+                    .failed(OFactoryResult.Status.INVALID_ARGUMENT));
+        }
+        
+        return (this.tryCreateChild(key, className, tags, new Consumer<C>()
+        {
+            @Override
+            public void accept(final C child)
+            {
+                child.initialize(OFactory.this, key);
+            }
+        }));
+    }
+    
+    /**
+     * Gets the child by the bounded key without throwing. Returns null when
+     * the factory is closed, the key is null, empty or too long, or no child
+     * is bound to the key. When the negative lookup filter is enabled most
+     * keys that are not bound are answered by the filter alone. Observers
+     * are notified with a GET type event only when a child is found. A
+     * passivated child is reactivated.
+     * 
+     * @param key
+     *            The key that is bound to the child.
+     * 
+     * @return An <code>OFactoryChild</code> child instance associated with the
+     *         key or null.
+     */
+    public C tryGet(final String key)
+    {
+        if (this.isClosed() || (key == null) || (key.length() == 0)
+                || (key.length() > KEY_MAX_LENGTH))
+        {
+            return (null);
+        }
+        
+        final C found = this.findChild(key);
+        final C child = (found == null && this._parentScope != null) ? this
+                .findInScope(key) : found;
+        final OFactoryMetrics metrics = this._metrics;
+        if (metrics != null)
+        {
+            metrics.recordGet(child != null);
+        }
+        if (child != null && this._observers.length > 0)
+        {
+            this.notifyObservers(new Event<C>(Event.Type.GET, key, child));
+        }
+        return (child);
+    }
+    
+    /**
+     * Unregisters the JMX MBean of this factory. Does nothing if it is not
+     * registered.
+     * 
+     * @throws OFactorySysException
+     *             if the MBean cannot be unregistered.
+     */
+    public void unregisterMBean()
+    {
+        final OFactoryLockProfiler profiler = this._lockProfiler;
+        final long requested = OFactoryLockProfiler.now(profiler);
+        synchronized (this)
+        {
+            final long acquired = OFactoryLockProfiler.now(profiler);
+            try
+            {
+                this.unregisterMBeanWhileLocked();
+            }
+            finally
+            {
+                OFactoryLockProfiler.record(profiler,
+                        LockContention.Operation.CONFIGURE,
+                        LockContention.Lock.MONITOR, requested, acquired);
+            }
+        }
+    }
+    
+    /*
+     * Unregisters the MBean while holding the monitor of the factory.
+     */
+    private void unregisterMBeanWhileLocked()
+    {
+        if (this._mbeanName != null)
+        {
+            try
+            {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+                        this._mbeanName);
+            }
+            catch (final JMException e)
+            {
+                throw (new OFactorySysException(
+                        "Unable to unregister the MBean named - "
+                                + this._mbeanName, e));
+            }
+            finally
+            {
+                this._mbeanName = null;
+            }
+        }
+    }
+    
+    /**
+     * Counts a slow create and notifies observers with a SLOW_CREATE type
+     * event. Does nothing if the report is null.
+     * 
+     * @param report
+     *            A <code>SlowCreateReport</code> instance. May be null.
+     * @param child
+     *            The child. Null when the child was slow to construct.
+     */
+    private void reportSlowCreate(final SlowCreateReport report, final C child)
+    {
+        if (report != null)
+        {
+            final OFactoryMetrics metrics = this._metrics;
+            if (metrics != null)
+            {
+                metrics.recordSlowCreate(report);
+            }
+            this.notifyObservers(new Event<C>(report, child));
+        }
+    }
+    
+    /**
+     * Validates tags given to a query and that the factory is open.
+     * 
+     * @param tags
+     *            One or more <code>String</code> tags.
+     */
+    private void validateQueryTags(final String[] tags)
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
         }
         else
         {
+            Validate.isNotNull(this.getClass(), tags);
+            Validate.isTrue(this.getClass(), tags.length > 0);
+            this.validateTags(tags);
+        }
+    }
+    
+    /**
+     * Returns true if the arguments of a create are valid, without throwing.
+     * 
+     * @param key
+     *            The <code>String</code> key.
+     * @param className
+     *            The <code>String</code> fully qualified classname.
+     * @param tags
+     *            Zero or more <code>String</code> tags.
+     * 
+     * @return A <code>boolean</code> value (true or false).
+     */
+    final boolean isValidCreate(final String key, final String className,
+            final String[] tags)
+    {
+        if ((key == null) || (key.length() == 0)
+                || (key.length() > KEY_MAX_LENGTH) || (className == null)
+                || (className.length() == 0)
+                || (className.length() > CLASS_NAME_MAX_LENGTH)
+                || (tags == null))
+        {
+            return (false);
+        }
+        for (final String tag : tags)
+        {
+            if ((tag == null) || (tag.length() == 0)
+                    || (tag.length() > TAG_MAX_LENGTH))
+            {
+                return (false);
+            }
+        }
+        return (true);
+    }
+    
+    /**
+     * Validates a key. The checks are made inline so that a valid key is
+     * accepted without allocating; an invalid key is passed to
+     * <code>Validate</code> for the exception.
+     * 
+     * @param key
+     *            The <code>String</code> key.
+     */
+    final void validateKey(final String key)
+    {
+        if ((key == null) || (key.length() == 0)
+                || (key.length() > KEY_MAX_LENGTH))
+        {
+            Validate.isNotNullOrEmpty(this.getClass(), key);
+            Validate.isLessThanMaxLength(this.getClass(), KEY_MAX_LENGTH, key);
+        }
+    }
+    
+    /**
+     * Validates tags given to a create method.
+     * 
+     * @param tags
+     *            Zero or more <code>String</code> tags.
+     */
+    final void validateTags(final String[] tags)
+    {
+        Validate.isNotNull(this.getClass(), tags);
+        if (tags.length > 0)
+        {
+            Validate.isNotNullOrEmpty(this.getClass(), tags);
+            Validate.isLessThanMaxLength(this.getClass(), TAG_MAX_LENGTH, tags);
+        }
+    }
+    
+    /**
+     * Removes the child bound to the key from the child table, closes it and
+     * notifies observers with a REMOVE type event.
+     * 
+     * @param key
+     *            The <code>String</code> key associated with a child.
+     * @param operation
+     *            The operation the lock time is recorded against.
+     * 
+     * @return Returns the child that was found and closed. If the key is not
+     *         associated with child then null is returned.
+     */
+    private C removeAndCloseChild(final String key,
+            final LockContention.Operation operation)
+    {
+        final ChildPassivation passivation = this._passivation;
+        if (passivation != null && passivation.contains(key))
+        {
+            // closed as any other child, so observers are given it.
+            this.reactivate(passivation, key);
+        }
+        
+        final C child;
+        final ProfiledLock.Hold hold = this.lockChildTable(operation);
+        try
+        {
+            child = this._children.get(key);
+            if (child != null)
+            {
+                this._children = this._children.minus(key);
+                this._childTypeIndex = this._childTypeIndex.minus(key, child);
+                this._childTagIndex.remove(key);
+                if (this._negativeLookupFilter != null)
+                {
+                    this._negativeLookupFilter.remove(key);
+                }
+            }
+        }
+        finally
+        {
+            hold.unlock();
+        }
+        if (child != null)
+        {
+            if (passivation != null)
+            {
+                passivation.forget(key);
+            }
+            final OFactoryMetrics metrics = this._metrics;
+            if (metrics != null)
+            {
+                metrics.recordChildClosed();
+            }
+            final Object recording = OFactoryFlightRecorder.beginChildClosed();
+            child.closeWithoutRemove();
+            OFactoryFlightRecorder.commitChildClosed(recording, key, child);
+            assert (!this._children.containsKey(key)) : "The children table still contains the factory child when the factory child was closed.";
+            this.notifyObservers(new Event<C>(Event.Type.REMOVE, key, child));
+        }
+        return (child);
+    }
+    
+    /**
+     * Passivates the passivatable children that have not been got for the
+     * idle time, then the least recently got until no more than the maximum
+     * number of passivatable children are active. A child whose settings
+     * cannot be serialized stays active. Called every half of the idle time
+     * while passivation is enabled.
+     * 
+     * @return The number of children passivated. 0 if passivation is not
+     *         enabled.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public int passivateIdleChildren()
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            final ChildPassivation passivation = this._passivation;
+            if (passivation == null)
+            {
+                return (0);
+            }
+            int count = 0;
+            for (final ChildPassivation.Candidate candidate : passivation
+                    .candidates(this._children))
+            {
+                try
+                {
+                    if (this.passivateChild(passivation, candidate))
+                    {
+                        count++;
+                    }
+                }
+                catch (final OFactorySysException e)
+                {
+                    final OFactoryMetrics metrics = this._metrics;
+                    if (metrics != null)
+                    {
+                        metrics.recordException(e);
+                    }
+                }
+            }
+            return (count);
+        }
+    }
+    
+    /*
+     * Passivates the idle children on the passivation thread, which has no
+     * caller to throw to.
+     */
+    private void sweepIdleChildren()
+    {
+        try
+        {
+            if (!this.isClosed())
+            {
+                this.passivateIdleChildren();
+            }
+        }
+        catch (final RuntimeException e)
+        {
+            // closed or failed while sweeping; the next sweep tries again.
+            final OFactoryMetrics metrics = this._metrics;
+            if (metrics != null && !(e instanceof OFactoryClosedException))
+            {
+                // closed exceptions are counted when they are made.
+                metrics.recordException(e);
+            }
+        }
+    }
+    
+    /**
+     * Returns a parallel <code>Stream</code> over a snapshot of the child
+     * table. Observers are not notified. A child in the stream may be closed
+     * by another thread while the stream is processed.
+     * 
+     * @return A parallel <code>Stream</code> of <code>OFactoryChild</code>
+     *         instances.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public Stream<C> parallelStream()
+    {
+        return (StreamSupport.stream(this.spliterator(), true));
+    }
+    
+    /**
+     * Registers an <code>OFactoryMXBean</code> for this factory with the
+     * platform MBean server under the name
+     * org.gabsocial.ofactory:type=&lt;factory class&gt;,name=&lt;name&gt;. A
+     * metrics registry is set first if the factory has none. The MBean is
+     * unregistered when the factory is closed.
+     * 
+     * @param name
+     *            A <code>String</code> instance that names this factory.
+     * @return The <code>ObjectName</code> the MBean is registered under.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     * @throws OFactorySysException
+     *             if the MBean is already registered or cannot be registered.
+     */
+    public ObjectName registerMBean(final String name)
+    {
+        final OFactoryLockProfiler profiler = this._lockProfiler;
+        final long requested = OFactoryLockProfiler.now(profiler);
+        synchronized (this)
+        {
+            final long acquired = OFactoryLockProfiler.now(profiler);
+            try
+            {
+                return (this.registerMBeanWhileLocked(name));
+            }
+            finally
+            {
+                OFactoryLockProfiler.record(profiler,
+                        LockContention.Operation.CONFIGURE,
+                        LockContention.Lock.MONITOR, requested, acquired);
+            }
+        }
+    }
+    
+    /*
+     * Registers the MBean while holding the monitor of the factory.
+     */
+    private ObjectName registerMBeanWhileLocked(final String name)
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            Validate.isNotNullOrEmpty(this.getClass(), name);
             
-            assert (key != null && key.length() != 0) : "loadAndStoreOFactoryChild() - the parameter 'key' should not be null or empty";
-            assert (className != null && className.length() != 0) : "loadAndStoreOFactoryChild() - the parameter 'className' should not be null or empty";
-            
-            if (this.containsChild(key))
+            if (this._mbeanName != null)
             {
-                throw (new OFactoryChildException(
-                        "A OFactoryChild already exists with that key='" + key
-                                + "'"));
+                throw (new OFactorySysException(
+                        "The MBean of this factory is already registered as "
+                                + this._mbeanName));
             }
-            else
+            if (this._metrics == null)
             {
-                C child = OFactory.loadOFactoryChild(className);
-                child = this.addToChildTable(key, child);
-                return (child);
+                this._metrics = new OFactoryMetrics();
+            }
+            try
+            {
+                final ObjectName objectName = new ObjectName(
+                        "org.gabsocial.ofactory:type="
+                                + this.getClass().getSimpleName() + ",name="
+                                + ObjectName.quote(name));
+                ManagementFactory.getPlatformMBeanServer().registerMBean(
+                        new OFactoryManagement(this), objectName);
+                this._mbeanName = objectName;
+                return (objectName);
+            }
+            catch (final JMException e)
+            {
+                throw (new OFactorySysException(
+                        "Unable to register the MBean named - " + name, e));
             }
         }
     }
     
     /**
-     * Notifies the <code>Observers</code> of an event within the OFactory.
+     * Drops the dependencies declared for the child of a key. Keys that
+     * depend on the key keep their dependency.
      * 
-     * @param event
-     *            An <code>OFactory</code> event that indicates a CREATE,
-     *            REMOVE, GET, CLOSE;
+     * @param key
+     *            The key of the dependent child.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
      */
-    protected void notifyObservers(final Event<C> event)
+    public void removeDependencies(final String key)
     {
-        assert (event != null) : "notifyObservers() - The parameter 'event' must not be null.";
-        this.setChanged();
-        if (this.countObservers() > 0)
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
         {
-            super.notifyObservers(event);
+            this.validateKey(key);
+            
+            final ProfiledLock.Hold hold = this
+                    .lockChildTable(LockContention.Operation.CONFIGURE);
+            try
+            {
+                this._childDependencies.remove(key);
+            }
+            finally
+            {
+                hold.unlock();
+            }
         }
-        this.clearChanged();
     }
     
     /**
@@ -679,8 +4102,7 @@ public class OFactory<C extends OFactoryChild> extends Observable
     {
         if (this.isClosed())
         {
-            throw (new OFactoryClosedException(
-                    "This factory is closed and unable to process calls."));
+            throw (this.newClosedException());
         }
         else
         {
@@ -690,6 +4112,144 @@ public class OFactory<C extends OFactoryChild> extends Observable
         }
     }
     
+    /**
+     * Sets the registry metrics are recorded in. Children that already exist
+     * are added to the live children gauge of the registry.
+     * 
+     * @param metrics
+     *            An <code>OFactoryMetrics</code> instance, or null to turn
+     *            metrics off.
+     */
+    public void setMetrics(final OFactoryMetrics metrics)
+    {
+        final ProfiledLock.Hold hold = this
+                .lockChildTable(LockContention.Operation.CONFIGURE);
+        try
+        {
+            if (metrics != null && metrics != this._metrics)
+            {
+                // children created before now are closed as any other.
+                metrics.recordLiveChildren(this._children.size());
+            }
+            this._metrics = metrics;
+        }
+        finally
+        {
+            hold.unlock();
+        }
+    }
+    
+    /**
+     * Sets the class loader children are loaded with. Each loader has its
+     * own cache of resolved classes. Children that exist are not changed,
+     * and reloaded classes are loaded with the new class loader from now on.
+     * Generated child tables are only used by the class loader of the
+     * factory.
+     * 
+     * @param loader
+     *            A <code>ClassLoader</code> instance, or null to load children
+     *            with the class loader of the factory.
+     */
+    public void setChildClassLoader(final ClassLoader loader)
+    {
+        this._childClassResolver = (loader == null) ? null
+                : new ChildClassResolver(loader);
+        this._reloadedClasses.clear();
+    }
+    
+    /**
+     * Sets the factory of the class loaders reload(className) loads new
+     * versions of classes with.
+     * 
+     * @param loaderFactory
+     *            An <code>OFactoryClassLoaderFactory</code> instance, or null
+     *            to turn reloading off.
+     */
+    public void setClassLoaderFactory(
+            final OFactoryClassLoaderFactory loaderFactory)
+    {
+        this._classLoaderFactory = loaderFactory;
+    }
+    
+    /**
+     * Sets the index that resolves the aliases given to the create methods in
+     * place of a class name. A class name that is not an alias in the index
+     * is used as it is.
+     * 
+     * @param index
+     *            An <code>OFactoryChildIndex</code> instance, or null to stop
+     *            resolving aliases.
+     */
+    public void setChildIndex(final OFactoryChildIndex index)
+    {
+        this._childIndex = index;
+    }
+    
+    /**
+     * Sets the journal the CREATE, REMOVE and CLOSE events of the factory are
+     * appended to, before they are sent to observers. The factory does not
+     * close the journal.
+     * 
+     * @param journal
+     *            An <code>OFactoryEventJournal</code> instance, or null to
+     *            stop journaling.
+     */
+    public void setEventJournal(final OFactoryEventJournal journal)
+    {
+        this._eventJournal = journal;
+    }
+    
+    /**
+     * Sets the startup manifest the classes of the children created are
+     * recorded in.
+     * 
+     * @param manifest
+     *            An <code>OFactoryStartupManifest</code> instance, or null to
+     *            stop recording.
+     */
+    public void setStartupManifest(final OFactoryStartupManifest manifest)
+    {
+        this._startupManifest = manifest;
+    }
+    
+    /**
+     * Returns a <code>Spliterator</code> over a snapshot of the child table
+     * that splits along the nodes of the table.
+     * 
+     * @return A <code>Spliterator</code> of <code>OFactoryChild</code>
+     *         instances.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public Spliterator<C> spliterator()
+    {
+        if (this.isClosed())
+        {
+            throw (this.newClosedException());
+        }
+        else
+        {
+            return (this._children.valueSpliterator());
+        }
+    }
+    
+    /**
+     * Returns a sequential <code>Stream</code> over a snapshot of the child
+     * table. Observers are not notified. A child in the stream may be closed
+     * by another thread while the stream is processed.
+     * 
+     * @return A sequential <code>Stream</code> of <code>OFactoryChild</code>
+     *         instances.
+     * 
+     * @throws OFactoryClosedException
+     *             if this method is called and the OFactory is closed.
+     */
+    public Stream<C> stream()
+    {
+        return (StreamSupport.stream(this.spliterator(), false));
+    }
+    
     /*
      * (non-Javadoc)
      * 
@@ -0,0 +1,420 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * <pre>
+ * Reads and writes the checkpoint files of an <code>OFactory</code>.
+ * 
+ * A checkpoint file holds a header and one record per child:
+ * 
+ * header   int magic, int version, int record count
+ * record   string key, string class name, int tag count, string tags...,
+ *          bytes settings, bytes state
+ * string   int length, UTF-8 bytes
+ * bytes    int length, or -1 for none, bytes
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+final class OFactoryCheckpoint
+{
+    /**
+     * A child in a checkpoint.
+     */
+    static final class Record
+    {
+        final String   _className;
+        
+        final String   _key;
+        
+        final byte[]   _settings;
+        
+        final byte[]   _state;
+        
+        final String[] _tags;
+        
+        Record(final String key, final String className, final String[] tags,
+                final byte[] settings, final byte[] state)
+        {
+            this._key = key;
+            this._className = className;
+            this._tags = tags;
+            this._settings = settings;
+            this._state = state;
+        }
+    }
+    
+    /*
+     * An ObjectInputStream that resolves classes with a class loader first.
+     */
+    private static final class LoaderObjectInputStream extends
+            ObjectInputStream
+    {
+        private final ClassLoader _loader;
+        
+        LoaderObjectInputStream(final InputStream in, final ClassLoader loader)
+                throws IOException
+        {
+            super(in);
+            this._loader = loader;
+        }
+        
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass descriptor)
+                throws IOException, ClassNotFoundException
+        {
+            try
+            {
+                return (Class.forName(descriptor.getName(), false,
+                        this._loader));
+            }
+            catch (final ClassNotFoundException e)
+            {
+                return (super.resolveClass(descriptor));
+            }
+        }
+    }
+    
+    /*
+     * Identifies a checkpoint file, followed by its format version.
+     */
+    private static final int MAGIC   = 0x4F46434B;
+    
+    private static final int VERSION = 1;
+    
+    /*
+     * The fewest bytes of a record: the lengths of the key, class name and
+     * settings, the tag count and the length of the state.
+     */
+    private static final int MIN_RECORD_BYTES = 20;
+    
+    /**
+     * Returns the settings read from a checkpoint.
+     * 
+     * @param bytes
+     *            The serialized settings, or null.
+     * @param loader
+     *            The <code>ClassLoader</code> to resolve classes with first.
+     * 
+     * @return The settings, or null if the bytes are null.
+     * 
+     * @throws OFactorySysException
+     *             if the settings cannot be read.
+     */
+    static Object deserialize(final byte[] bytes, final ClassLoader loader)
+    {
+        if (bytes == null)
+        {
+            return (null);
+        }
+        try (final ObjectInputStream in = new LoaderObjectInputStream(
+                new ByteArrayInputStream(bytes), loader))
+        {
+            return (in.readObject());
+        }
+        catch (final IOException | ClassNotFoundException e)
+        {
+            throw (new OFactorySysException(
+                    "Unable to read the settings in the checkpoint.", e));
+        }
+    }
+    
+    /**
+     * Reads the records of a checkpoint file. The file is mapped rather than
+     * copied into the heap.
+     * 
+     * @param file
+     *            The <code>Path</code> of the checkpoint.
+     * 
+     * @return A <code>List</code> of <code>Record</code> instances.
+     * 
+     * @throws IOException
+     *             if the file cannot be read or is not a checkpoint.
+     */
+    static List<Record> read(final Path file) throws IOException
+    {
+        final FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ);
+        try
+        {
+            final MappedByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 12 || buffer.getInt() != MAGIC
+                    || buffer.getInt() != VERSION)
+            {
+                throw (new IOException("The file " + file
+                        + " is not an OFactory checkpoint."));
+            }
+            final int count = checkCount(buffer, buffer.getInt(),
+                    MIN_RECORD_BYTES);
+            final List<Record> records = new ArrayList<Record>(count);
+            for (int i = 0; i < count; i++)
+            {
+                records.add(readRecord(buffer));
+            }
+            return (records);
+        }
+        catch (final BufferUnderflowException | IllegalArgumentException e)
+        {
+            throw (new IOException("The checkpoint " + file + " is corrupt.",
+                    e));
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+    
+    /**
+     * Returns a record read from a buffer, in the format of the records of a
+     * checkpoint file.
+     * 
+     * @param buffer
+     *            The <code>ByteBuffer</code> positioned at the record.
+     * 
+     * @return A <code>Record</code> instance.
+     * 
+     * @throws BufferUnderflowException
+     *             if the buffer ends within the record.
+     * @throws IllegalArgumentException
+     *             if a count or length of the record is negative or larger
+     *             than the rest of the buffer.
+     */
+    static Record readRecord(final ByteBuffer buffer)
+    {
+        final String key = readString(buffer);
+        final String className = readString(buffer);
+        final String[] tags = new String[checkCount(buffer,
+                buffer.getInt(), 4)];
+        for (int i = 0; i < tags.length; i++)
+        {
+            tags[i] = readString(buffer);
+        }
+        return (new Record(key, className, tags, readBytes(buffer),
+                readBytes(buffer)));
+    }
+    
+    private static byte[] readBytes(final ByteBuffer buffer)
+    {
+        final int length = buffer.getInt();
+        if (length == -1)
+        {
+            return (null);
+        }
+        final byte[] bytes = new byte[checkCount(buffer, length, 1)];
+        buffer.get(bytes);
+        return (bytes);
+    }
+    
+    /*
+     * Returns the count if the rest of the buffer can hold that many items of
+     * the size. Checked before anything is allocated for the count, so a
+     * corrupt count cannot exhaust the heap.
+     */
+    private static int checkCount(final ByteBuffer buffer, final int count,
+            final int size)
+    {
+        if (count < 0 || count > buffer.remaining() / size)
+        {
+            throw (new IllegalArgumentException("The count " + count
+                    + " does not fit in the " + buffer.remaining()
+                    + " bytes left."));
+        }
+        return (count);
+    }
+    
+    private static String readString(final ByteBuffer buffer)
+    {
+        final byte[] bytes = new byte[checkCount(buffer, buffer.getInt(), 1)];
+        buffer.get(bytes);
+        return (new String(bytes, StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Returns the serialized form of the settings of a child.
+     * 
+     * @param settings
+     *            The settings, or null.
+     * @param key
+     *            The <code>String</code> key of the child.
+     * 
+     * @return A <code>byte</code> array, or null if the settings are null.
+     * 
+     * @throws OFactorySysException
+     *             if the settings are not serializable.
+     */
+    static byte[] serialize(final Object settings, final String key)
+    {
+        if (settings == null)
+        {
+            return (null);
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(settings);
+        }
+        catch (final IOException e)
+        {
+            throw (new OFactorySysException("The settings of the child key='"
+                    + key + "' are not serializable.", e));
+        }
+        return (bytes.toByteArray());
+    }
+    
+    /**
+     * Writes the records to a checkpoint file, replacing it. The file is
+     * written to a temporary file and forced to disk first, so a reader never
+     * sees a partial checkpoint.
+     * 
+     * @param file
+     *            The <code>Path</code> of the checkpoint.
+     * @param records
+     *            The <code>Record</code> instances to write.
+     * 
+     * @throws IOException
+     *             if the file cannot be written.
+     */
+    static void write(final Path file, final List<Record> records)
+            throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(records.size());
+        for (final Record record : records)
+        {
+            buffer = writeRecord(buffer, record);
+        }
+        buffer.flip();
+        
+        final Path directory = file.toAbsolutePath().getParent();
+        if (directory != null)
+        {
+            Files.createDirectories(directory);
+        }
+        final Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        final FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try
+        {
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        finally
+        {
+            channel.close();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /*
+     * Returns the buffer, or a copy twice as large or more if it does not
+     * have the space.
+     */
+    private static ByteBuffer ensureCapacity(final ByteBuffer buffer,
+            final int space)
+    {
+        if (buffer.remaining() >= space)
+        {
+            return (buffer);
+        }
+        final ByteBuffer larger = ByteBuffer.allocate(Math.max(
+                buffer.capacity() * 2, buffer.position() + space));
+        buffer.flip();
+        return (larger.put(buffer));
+    }
+    
+    private static ByteBuffer writeBytes(final ByteBuffer buffer,
+            final byte[] bytes)
+    {
+        final ByteBuffer written = ensureCapacity(buffer, 4
+                + ((bytes == null) ? 0 : bytes.length));
+        if (bytes == null)
+        {
+            written.putInt(-1);
+        }
+        else
+        {
+            written.putInt(bytes.length).put(bytes);
+        }
+        return (written);
+    }
+    
+    /**
+     * Writes a record to a buffer, in the format of the records of a
+     * checkpoint file.
+     * 
+     * @param buffer
+     *            The <code>ByteBuffer</code> to write to.
+     * @param record
+     *            The <code>Record</code> to write.
+     * 
+     * @return The buffer, or a larger copy if it did not have the space.
+     */
+    static ByteBuffer writeRecord(final ByteBuffer buffer, final Record record)
+    {
+        ByteBuffer written = writeString(buffer, record._key);
+        written = writeString(written, record._className);
+        written = ensureCapacity(written, 4);
+        written.putInt(record._tags.length);
+        for (final String tag : record._tags)
+        {
+            written = writeString(written, tag);
+        }
+        written = writeBytes(written, record._settings);
+        return (writeBytes(written, record._state));
+    }
+    
+    private static ByteBuffer writeString(final ByteBuffer buffer,
+            final String value)
+    {
+        return (writeBytes(buffer, value.getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    private OFactoryCheckpoint()
+    {
+        // static methods only.
+    }
+}
@@ -0,0 +1,494 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.gabsocial.gabdev.validate.Validate;
+
+
+/**
+ * <pre>
+ * An index of the <code>OFactoryChild</code> classes registered on a class
+ * path, by class name and by alias.
+ * 
+ * Children are registered the way <code>java.util.ServiceLoader</code>
+ * providers are: by listing their class names in
+ * META-INF/services/org.gabsocial.ofactory.OFactoryChild.  Discovery reads
+ * those files and loads each class, without initializing it, to read the
+ * aliases and settings type of its <code>OFactoryChildType</code>
+ * annotation.  No child is created.
+ * 
+ * Discovery loads every registered class, so an index can be saved to a
+ * compact file and read back on the next startup with
+ * loadOrDiscover(file, loader).  The file holds a checksum of the service
+ * files it was built from and is rebuilt when they change.
+ * 
+ * Set an index on a factory with OFactory.setChildIndex(index) to create
+ * children by alias.  Lookups by class name or alias are hash lookups.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public final class OFactoryChildIndex
+{
+    /**
+     * A child class in the index.
+     */
+    public static final class Entry
+    {
+        private final List<String> _aliases;
+        
+        private final String       _className;
+        
+        private final String       _settingsTypeName;
+        
+        Entry(final String className, final List<String> aliases,
+                final String settingsTypeName)
+        {
+            this._className = className;
+            this._aliases = aliases;
+            this._settingsTypeName = settingsTypeName;
+        }
+        
+        /**
+         * Returns the aliases of the class.
+         * 
+         * @return An unmodifiable <code>List</code> of <code>String</code>
+         *         aliases. May be empty.
+         */
+        public List<String> getAliases()
+        {
+            return (this._aliases);
+        }
+        
+        /**
+         * Returns the fully qualified name of the class.
+         * 
+         * @return A <code>String</code> class name.
+         */
+        public String getClassName()
+        {
+            return (this._className);
+        }
+        
+        /**
+         * Returns the name of the type of settings the child is initialized
+         * with.
+         * 
+         * @return A <code>String</code> class name, or null if the child
+         *         takes no settings.
+         */
+        public String getSettingsTypeName()
+        {
+            return (this._settingsTypeName);
+        }
+        
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString()
+        {
+            return ("Entry [className=" + this._className + ", aliases="
+                    + this._aliases + ", settingsTypeName="
+                    + this._settingsTypeName + "]");
+        }
+    }
+    
+    /**
+     * The resource children are registered in.
+     */
+    public static final String  SERVICES_RESOURCE = "META-INF/services/"
+                                                          + OFactoryChild.class
+                                                                  .getName();
+    
+    /*
+     * Identifies an index file, followed by its format version.
+     */
+    private static final int    MAGIC             = 0x4F464349;
+    
+    private static final int    VERSION           = 1;
+    
+    /**
+     * Builds an index of the children registered in the service files
+     * visible to the class loader.
+     * 
+     * @param loader
+     *            The <code>ClassLoader</code> to read the service files and
+     *            load the classes with.
+     * 
+     * @return An <code>OFactoryChildIndex</code> instance.
+     * 
+     * @throws OFactorySysException
+     *             if a service file cannot be read, a class cannot be loaded
+     *             or is not an <code>OFactoryChild</code>, or an alias is
+     *             invalid or taken by two classes.
+     */
+    public static OFactoryChildIndex discover(final ClassLoader loader)
+    {
+        Validate.isNotNull(OFactoryChildIndex.class, loader);
+        
+        final Set<String> classNames = new LinkedHashSet<String>();
+        final long checksum = readServiceFiles(loader, classNames);
+        final List<Entry> entries = new ArrayList<Entry>(classNames.size());
+        for (final String className : classNames)
+        {
+            final Class<?> type;
+            try
+            {
+                type = Class.forName(className, false, loader);
+            }
+            catch (final ClassNotFoundException | LinkageError e)
+            {
+                throw (new OFactorySysException(
+                        "Unable to locate the class name - " + className, e));
+            }
+            if (!OFactoryChild.class.isAssignableFrom(type))
+            {
+                throw (new OFactorySysException("The class " + className
+                        + " registered in " + SERVICES_RESOURCE
+                        + " is not an OFactoryChild."));
+            }
+            
+            final OFactoryChildType childType = type
+                    .getAnnotation(OFactoryChildType.class);
+            if (childType == null)
+            {
+                entries.add(new Entry(className,
+                        Collections.<String> emptyList(), null));
+            }
+            else
+            {
+                entries.add(new Entry(className, Collections
+                        .unmodifiableList(Arrays.asList(childType.aliases()
+                                .clone())),
+                        (childType.settings() == Void.class) ? null
+                                : childType.settings().getName()));
+            }
+        }
+        return (new OFactoryChildIndex(entries, checksum, false));
+    }
+    
+    /**
+     * Reads the index saved in the file if it was built from the service
+     * files visible to the class loader now, otherwise discovers the
+     * children and saves the index to the file. Reading a saved index loads
+     * no class.
+     * 
+     * @param file
+     *            The <code>Path</code> of the index file. Need not exist.
+     * @param loader
+     *            The <code>ClassLoader</code> to read the service files and
+     *            load the classes with.
+     * 
+     * @return An <code>OFactoryChildIndex</code> instance.
+     * 
+     * @throws IOException
+     *             if the index cannot be saved.
+     * @throws OFactorySysException
+     *             if the children cannot be discovered.
+     */
+    public static OFactoryChildIndex loadOrDiscover(final Path file,
+            final ClassLoader loader) throws IOException
+    {
+        Validate.isNotNull(OFactoryChildIndex.class, file);
+        Validate.isNotNull(OFactoryChildIndex.class, loader);
+        
+        final long checksum = readServiceFiles(loader,
+                new LinkedHashSet<String>());
+        final OFactoryChildIndex saved = read(file);
+        if (saved != null && saved._checksum == checksum)
+        {
+            return (saved);
+        }
+        
+        final OFactoryChildIndex index = discover(loader);
+        index.save(file);
+        return (index);
+    }
+    
+    /*
+     * Reads the index in the file, or returns null if it does not exist or
+     * is not an index file of this version.
+     */
+    private static OFactoryChildIndex read(final Path file)
+    {
+        try (final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file))))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+            {
+                return (null);
+            }
+            final long checksum = in.readLong();
+            final int count = in.readInt();
+            final List<Entry> entries = new ArrayList<Entry>(count);
+            for (int i = 0; i < count; i++)
+            {
+                final String className = in.readUTF();
+                final String settingsTypeName = in.readUTF();
+                final String[] aliases = new String[in.readShort()];
+                for (int j = 0; j < aliases.length; j++)
+                {
+                    aliases[j] = in.readUTF();
+                }
+                entries.add(new Entry(className, Collections
+                        .unmodifiableList(Arrays.asList(aliases)),
+                        settingsTypeName.isEmpty() ? null : settingsTypeName));
+            }
+            return (new OFactoryChildIndex(entries, checksum, true));
+        }
+        catch (final IOException | OFactorySysException e)
+        {
+            // a missing, truncated or corrupt file is rebuilt.
+            return (null);
+        }
+    }
+    
+    /*
+     * Adds the class names in the service files to the set and returns a
+     * checksum of their location, modification time and content.
+     */
+    private static long readServiceFiles(final ClassLoader loader,
+            final Set<String> classNames)
+    {
+        final CRC32 checksum = new CRC32();
+        try
+        {
+            final Enumeration<URL> resources = loader
+                    .getResources(SERVICES_RESOURCE);
+            while (resources.hasMoreElements())
+            {
+                final URL resource = resources.nextElement();
+                final URLConnection connection = resource.openConnection();
+                connection.setUseCaches(false);
+                final byte[] content;
+                try (final InputStream in = connection.getInputStream())
+                {
+                    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    final byte[] buffer = new byte[4096];
+                    int read;
+                    while ((read = in.read(buffer)) != -1)
+                    {
+                        out.write(buffer, 0, read);
+                    }
+                    content = out.toByteArray();
+                }
+                checksum.update(resource.toExternalForm().getBytes(
+                        StandardCharsets.UTF_8));
+                checksum.update(Long.toString(connection.getLastModified())
+                        .getBytes(StandardCharsets.UTF_8));
+                checksum.update(content);
+                
+                for (final String line : new String(content,
+                        StandardCharsets.UTF_8).split("\n"))
+                {
+                    final int comment = line.indexOf('#');
+                    final String className = ((comment < 0) ? line : line
+                            .substring(0, comment)).trim();
+                    if (className.length() > 0)
+                    {
+                        classNames.add(className);
+                    }
+                }
+            }
+        }
+        catch (final IOException e)
+        {
+            throw (new OFactorySysException("Unable to read "
+                    + SERVICES_RESOURCE, e));
+        }
+        return (checksum.getValue());
+    }
+    
+    /*
+     * The entries by class name and by alias.
+     */
+    private final Map<String, Entry> _byName;
+    
+    private final long               _checksum;
+    
+    private final List<Entry>        _entries;
+    
+    private final boolean            _isSaved;
+    
+    private OFactoryChildIndex(final List<Entry> entries, final long checksum,
+            final boolean isSaved)
+    {
+        this._entries = Collections.unmodifiableList(entries);
+        this._checksum = checksum;
+        this._isSaved = isSaved;
+        this._byName = new HashMap<String, Entry>(entries.size() * 4);
+        for (final Entry entry : entries)
+        {
+            this._byName.put(entry.getClassName(), entry);
+        }
+        for (final Entry entry : entries)
+        {
+            for (final String alias : entry.getAliases())
+            {
+                if (!alias.matches("[^.\\s]+"))
+                {
+                    throw (new OFactorySysException("The alias '" + alias
+                            + "' of " + entry.getClassName()
+                            + " is empty or contains a dot or white space."));
+                }
+                final Entry taken = this._byName.put(alias, entry);
+                if (taken != null && taken != entry)
+                {
+                    throw (new OFactorySysException("The alias '" + alias
+                            + "' is used by both " + taken.getClassName()
+                            + " and " + entry.getClassName()));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns the entry of the class with the name or alias.
+     * 
+     * @param nameOrAlias
+     *            A <code>String</code> fully qualified class name or alias.
+     * 
+     * @return An <code>Entry</code> instance, or null if the name is not in
+     *         the index.
+     */
+    public Entry getEntry(final String nameOrAlias)
+    {
+        return (this._byName.get(nameOrAlias));
+    }
+    
+    /**
+     * Returns the entries in the order the classes are registered.
+     * 
+     * @return An unmodifiable <code>List</code> of <code>Entry</code>
+     *         instances.
+     */
+    public List<Entry> getEntries()
+    {
+        return (this._entries);
+    }
+    
+    /**
+     * Returns true if the index was read from a saved file rather than
+     * discovered.
+     * 
+     * @return A <code>boolean</code> value (true or false).
+     */
+    public boolean isSaved()
+    {
+        return (this._isSaved);
+    }
+    
+    /**
+     * Returns the class name of a name or alias.
+     * 
+     * @param nameOrAlias
+     *            A <code>String</code> fully qualified class name or alias.
+     * 
+     * @return The <code>String</code> class name, or null if the name is not
+     *         in the index.
+     */
+    public String resolve(final String nameOrAlias)
+    {
+        final Entry entry = this._byName.get(nameOrAlias);
+        return ((entry == null) ? null : entry.getClassName());
+    }
+    
+    /**
+     * Writes the index to the file, replacing it. The file is written to a
+     * temporary file first, so a reader never sees a partial index.
+     * 
+     * @param file
+     *            The <code>Path</code> of the index file.
+     * 
+     * @throws IOException
+     *             if the file cannot be written.
+     */
+    public void save(final Path file) throws IOException
+    {
+        Validate.isNotNull(this.getClass(), file);
+        
+        final Path directory = file.toAbsolutePath().getParent();
+        if (directory != null)
+        {
+            Files.createDirectories(directory);
+        }
+        final Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporary))))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(this._checksum);
+            out.writeInt(this._entries.size());
+            for (final Entry entry : this._entries)
+            {
+                out.writeUTF(entry.getClassName());
+                out.writeUTF((entry.getSettingsTypeName() == null) ? ""
+                        : entry.getSettingsTypeName());
+                out.writeShort(entry.getAliases().size());
+                for (final String alias : entry.getAliases())
+                {
+                    out.writeUTF(alias);
+                }
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return ("OFactoryChildIndex [entries=" + this._entries + ", saved="
+                + this._isSaved + "]");
+    }
+}
@@ -0,0 +1,46 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+/**
+ * <pre>
+ * A table of <code>OFactoryChild</code> classes that creates children by
+ * class name without reflection.  Tables are generated by the
+ * ofactory-processor annotation processor for classes marked with
+ * <code>OFactoryChildType</code> and found with the
+ * <code>java.util.ServiceLoader</code> of the class loader of
+ * <code>OFactory</code>.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public interface OFactoryChildTable
+{
+    /**
+     * Creates a child of the class.
+     * 
+     * @param className
+     *            The <code>String</code> fully qualified class name.
+     * 
+     * @return A new <code>OFactoryChild</code> instance, or null if the class
+     *         is not in this table.
+     */
+    public abstract OFactoryChild newChild(final String className);
+}
@@ -0,0 +1,71 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * <pre>
+ * Marks an <code>OFactoryChild</code> class to be put in the generated child
+ * table of its build module.  With the ofactory-processor jar on the
+ * annotation processor path, the compiler generates an
+ * <code>OFactoryChildTable</code> that creates each marked class with its
+ * no argument constructor, and registers it as a service.  An
+ * <code>OFactory</code> creates marked classes through the table without
+ * reflection, and creates other classes by reflection.
+ * 
+ * The class must be public, not abstract, and have a public no argument
+ * constructor.
+ * 
+ * The aliases and settings type are read by <code>OFactoryChildIndex</code>
+ * when it discovers the class, so that the class can be created by a short
+ * alias instead of its class name.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface OFactoryChildType
+{
+    /**
+     * Returns the short names the class can be created by. An alias must not
+     * be empty or contain a dot or white space, so it cannot be taken for a
+     * class name.
+     * 
+     * @return An array of <code>String</code> aliases. Empty by default.
+     */
+    String[] aliases() default {};
+    
+    /**
+     * Returns the type of the settings a <code>PropertiedOFactoryChild</code>
+     * is initialized with.
+     * 
+     * @return A <code>Class</code> instance. Void.class if the child takes no
+     *         settings.
+     */
+    Class<?> settings() default Void.class;
+}
@@ -0,0 +1,48 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+/**
+ * <pre>
+ * Creates the class loaders an <code>OFactory</code> loads new versions of
+ * child classes with when OFactory.reload(className) is called.
+ * 
+ * Each call must return a new class loader that loads the class itself
+ * rather than delegating it to a parent that already loaded it, such as a
+ * <code>URLClassLoader</code> over the upgraded plugin jar.  The loader must
+ * delegate the org.gabsocial.ofactory classes to the loader of
+ * <code>OFactory</code>.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public interface OFactoryClassLoaderFactory
+{
+    /**
+     * Returns a new class loader to load a new version of the class with.
+     * 
+     * @param className
+     *            The <code>String</code> fully qualified name of the class to
+     *            be reloaded.
+     * 
+     * @return A new <code>ClassLoader</code> instance.
+     */
+    public abstract ClassLoader newClassLoader(final String className);
+}
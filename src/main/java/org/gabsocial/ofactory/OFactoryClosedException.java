@@ -59,6 +59,22 @@ public class OFactoryClosedException extends OFactorySysException
         super(message, throwable);
     }
     
+    /**
+     * Constructor with a message, a throwable and whether it is stackless.
+     * 
+     * @param message
+     *            A <code>String</code> message.
+     * @param throwable
+     *            An instance of <code>Throwable</code>. May be null.
+     * @param isStackless
+     *            If true the stack trace is not filled in.
+     */
+    public OFactoryClosedException(final String message, final Throwable throwable,
+            final boolean isStackless)
+    {
+        super(message, throwable, isStackless);
+    }
+    
     /**
      * Constructor with a throwable.
      * 
@@ -0,0 +1,883 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import org.gabsocial.gabdev.validate.Validate;
+
+
+/**
+ * <pre>
+ * An append-only journal of the CREATE, REMOVE and CLOSE events of an
+ * <code>OFactory</code>, kept in memory-mapped segment files in a directory.
+ * Set the journal on a factory with setEventJournal(journal).  GET and
+ * SLOW_CREATE events change nothing and are not journaled.
+ * 
+ * Each event is given an offset, counting up from 0, and is written as a
+ * record that holds its offset, time, type, key and child class name:
+ * 
+ * record   int length, int CRC-32 of the body, body
+ * body     long offset, long time, byte type, string key, string class name
+ * string   short length, or -1 for none, UTF-8 bytes
+ * 
+ * Appending copies the record into the mapped segment; no system call is
+ * made until the segment is full and a new segment is started.  A record
+ * is in the page cache once appended and survives the process dying; call
+ * flush() to write it to disk.  When the journal is opened again, a
+ * partly written record at the end is discarded.
+ * 
+ * Call replay(fromOffset, action) to feed the records from an offset to a
+ * late observer, and rebuild(factory) to create the children that were
+ * bound when the last record was appended.  Call compact() to rewrite the
+ * full segments with only the CREATE records of the keys they leave
+ * bound.  Records keep their offsets when compacted.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public final class OFactoryEventJournal implements Closeable
+{
+    /**
+     * A record of an event in the journal.
+     */
+    public static final class Record
+    {
+        private final String           _className;
+        
+        private final String           _key;
+        
+        private final long             _offset;
+        
+        private final long             _time;
+        
+        private final OFactory.Event.Type _type;
+        
+        Record(final long offset, final long time,
+                final OFactory.Event.Type type, final String key,
+                final String className)
+        {
+            this._offset = offset;
+            this._time = time;
+            this._type = type;
+            this._key = key;
+            this._className = className;
+        }
+        
+        /**
+         * Returns the class name of the child.
+         * 
+         * @return A <code>String</code> fully qualified class name. Null for
+         *         a CLOSE record.
+         */
+        public String getClassName()
+        {
+            return (this._className);
+        }
+        
+        /**
+         * Returns the key of the child.
+         * 
+         * @return A <code>String</code> key. Null for a CLOSE record.
+         */
+        public String getKey()
+        {
+            return (this._key);
+        }
+        
+        /**
+         * Returns the offset of the record in the journal.
+         * 
+         * @return A <code>long</code> value 0 &lt;= x.
+         */
+        public long getOffset()
+        {
+            return (this._offset);
+        }
+        
+        /**
+         * Returns the time the event was appended.
+         * 
+         * @return A <code>long</code> value in milliseconds since the epoch.
+         */
+        public long getTime()
+        {
+            return (this._time);
+        }
+        
+        /**
+         * Returns the type of the event.
+         * 
+         * @return A CREATE, REMOVE or CLOSE <code>Type</code>.
+         */
+        public OFactory.Event.Type getType()
+        {
+            return (this._type);
+        }
+        
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString()
+        {
+            StringBuilder builder = new StringBuilder();
+            builder.append("Record [offset=");
+            builder.append(this._offset);
+            builder.append(", time=");
+            builder.append(this._time);
+            builder.append(", type=");
+            builder.append(this._type);
+            builder.append(", key=");
+            builder.append(this._key);
+            builder.append(", className=");
+            builder.append(this._className);
+            builder.append("]");
+            return builder.toString();
+        }
+    }
+    
+    /*
+     * A segment file and its mapping. Records are read up to the end, which
+     * is published after each record is written.
+     */
+    private static final class Segment
+    {
+        final long             _baseOffset;
+        
+        final MappedByteBuffer _buffer;
+        
+        volatile int           _end;
+        
+        final Path             _file;
+        
+        volatile long          _nextOffset;
+        
+        Segment(final Path file, final long baseOffset,
+                final MappedByteBuffer buffer)
+        {
+            this._file = file;
+            this._baseOffset = baseOffset;
+            this._buffer = buffer;
+            this._nextOffset = baseOffset;
+        }
+    }
+    
+    /**
+     * The size of the segment files unless one is given.
+     */
+    public static final int     DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    
+    /**
+     * The smallest size of a segment file.
+     */
+    public static final int     MIN_SEGMENT_SIZE     = 64 * 1024;
+    
+    /*
+     * The size of a body without its strings, and of the length and CRC-32
+     * before it.
+     */
+    private static final int    BODY_FIXED_LENGTH    = 8 + 8 + 1 + 2 + 2;
+    
+    private static final int    HEADER_LENGTH        = 4 + 4;
+    
+    /*
+     * The longest a record can be, with a key and class name of the
+     * longest lengths in characters that take three UTF-8 bytes each.
+     */
+    private static final int    MAX_RECORD_LENGTH    = HEADER_LENGTH
+            + BODY_FIXED_LENGTH + 3
+            * (OFactory.KEY_MAX_LENGTH + OFactory.CLASS_NAME_MAX_LENGTH);
+    
+    private static final String SUFFIX               = ".journal";
+    
+    /*
+     * The type of the record written at the end of a compacted segment. It
+     * holds the last offset the segment covers and is not replayed.
+     */
+    private static final byte   TYPE_MARK            = 0;
+    
+    private static final byte   TYPE_CLOSE           = 1;
+    
+    private static final byte   TYPE_CREATE          = 2;
+    
+    private static final byte   TYPE_REMOVE          = 3;
+    
+    private Segment                 _active;
+    
+    private final Object            _compactionLock;
+    
+    private final CRC32             _crc;
+    
+    private final Path              _directory;
+    
+    private volatile boolean        _isClosed;
+    
+    private volatile long           _nextOffset;
+    
+    private final int               _segmentSize;
+    
+    /*
+     * Replaced, never changed, so that replays can read a snapshot.
+     */
+    private volatile List<Segment>  _segments;
+    
+    /**
+     * Opens the journal in a directory with segment files of the default
+     * size, creating the directory if it does not exist.
+     * 
+     * @param directory
+     *            The <code>Path</code> of the directory.
+     * 
+     * @throws IOException
+     *             if the directory or its segments cannot be opened.
+     */
+    public OFactoryEventJournal(final Path directory) throws IOException
+    {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+    
+    /**
+     * Opens the journal in a directory, creating the directory if it does
+     * not exist.
+     * 
+     * @param directory
+     *            The <code>Path</code> of the directory.
+     * @param segmentSize
+     *            The size in bytes of a new segment file. At least
+     *            MIN_SEGMENT_SIZE.
+     * 
+     * @throws IOException
+     *             if the directory or its segments cannot be opened.
+     */
+    public OFactoryEventJournal(final Path directory, final int segmentSize)
+            throws IOException
+    {
+        Validate.isNotNull(this.getClass(), directory);
+        Validate.isTrue(this.getClass(), segmentSize >= MIN_SEGMENT_SIZE);
+        
+        this._directory = directory;
+        this._segmentSize = segmentSize;
+        this._crc = new CRC32();
+        this._compactionLock = new Object();
+        Files.createDirectories(directory);
+        
+        final List<Segment> segments = new ArrayList<Segment>();
+        for (final Path file : listSegmentFiles(directory))
+        {
+            final Segment previous = segments.isEmpty() ? null : segments
+                    .get(segments.size() - 1);
+            final long baseOffset = baseOffsetOf(file);
+            if (previous != null && baseOffset < previous._nextOffset)
+            {
+                // left behind by a compaction that did not finish.
+                Files.delete(file);
+                continue;
+            }
+            final Segment segment = new Segment(file, baseOffset, map(file,
+                    Files.size(file)));
+            this.recover(segment);
+            segments.add(segment);
+        }
+        if (segments.isEmpty())
+        {
+            segments.add(this.newSegment(0L));
+        }
+        this._segments = Collections.unmodifiableList(segments);
+        this._active = segments.get(segments.size() - 1);
+        this._nextOffset = this._active._nextOffset;
+    }
+    
+    /*
+     * A journal that writes into one segment, for compaction.
+     */
+    private OFactoryEventJournal(final Segment segment)
+    {
+        this._directory = segment._file.getParent();
+        this._segmentSize = segment._buffer.capacity();
+        this._crc = new CRC32();
+        this._compactionLock = new Object();
+        this._segments = Collections.singletonList(segment);
+        this._active = segment;
+    }
+    
+    /*
+     * Returns the base offset in the name of a segment file.
+     */
+    private static long baseOffsetOf(final Path file)
+    {
+        final String name = file.getFileName().toString();
+        return (Long.parseLong(name.substring(0, name.length()
+                - SUFFIX.length())));
+    }
+    
+    /*
+     * Returns the bytes of a string, or null.
+     */
+    private static byte[] bytesOf(final String value)
+    {
+        return ((value == null) ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /*
+     * Returns the segment files of a directory, in offset order.
+     */
+    private static List<Path> listSegmentFiles(final Path directory)
+            throws IOException
+    {
+        final List<Path> files = new ArrayList<Path>();
+        final DirectoryStream<Path> stream = Files.newDirectoryStream(
+                directory, "*" + SUFFIX);
+        try
+        {
+            for (final Path file : stream)
+            {
+                if (file.getFileName().toString().matches("\\d+\\.journal"))
+                {
+                    files.add(file);
+                }
+            }
+        }
+        finally
+        {
+            stream.close();
+        }
+        Collections.sort(files);
+        return (files);
+    }
+    
+    private static MappedByteBuffer map(final Path file, final long size)
+            throws IOException
+    {
+        final FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try
+        {
+            return (channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+    
+    /*
+     * Returns the name of a segment file, padded so that names sort in
+     * offset order.
+     */
+    private static String nameOf(final long baseOffset)
+    {
+        return (String.format("%020d", baseOffset) + SUFFIX);
+    }
+    
+    private static String readString(final ByteBuffer buffer)
+    {
+        final short length = buffer.getShort();
+        if (length < 0)
+        {
+            return (null);
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return (new String(bytes, StandardCharsets.UTF_8));
+    }
+    
+    private static OFactory.Event.Type typeOf(final byte type)
+    {
+        switch (type)
+        {
+            case TYPE_CLOSE:
+                return (OFactory.Event.Type.CLOSE);
+            case TYPE_CREATE:
+                return (OFactory.Event.Type.CREATE);
+            case TYPE_REMOVE:
+                return (OFactory.Event.Type.REMOVE);
+            default:
+                return (null);
+        }
+    }
+    
+    private static byte typeOf(final OFactory.Event.Type type)
+    {
+        switch (type)
+        {
+            case CLOSE:
+                return (TYPE_CLOSE);
+            case CREATE:
+                return (TYPE_CREATE);
+            case REMOVE:
+                return (TYPE_REMOVE);
+            default:
+                return (TYPE_MARK);
+        }
+    }
+    
+    /*
+     * Applies a record to the keys and class names of the bound children.
+     */
+    private static void apply(final Map<String, Record> bound,
+            final Record record)
+    {
+        switch (record._type)
+        {
+            case CREATE:
+                // a key created again moves to the end.
+                bound.remove(record._key);
+                bound.put(record._key, record);
+                break;
+            case REMOVE:
+                bound.remove(record._key);
+                break;
+            default:
+                bound.clear();
+                break;
+        }
+    }
+    
+    /**
+     * Appends a CREATE, REMOVE or CLOSE event. Other events are ignored, as
+     * are events appended after the journal is closed.
+     * 
+     * @param event
+     *            The <code>Event</code> notified by the factory.
+     * 
+     * @throws OFactorySysException
+     *             if a new segment cannot be started.
+     */
+    void append(final OFactory.Event<?> event)
+    {
+        final byte type = typeOf(event.getType());
+        if (type == TYPE_MARK)
+        {
+            return;
+        }
+        final Object child = event.getChild();
+        this.append(type, System.currentTimeMillis(), bytesOf(event.getKey()),
+                bytesOf((child == null) ? null : child.getClass().getName()),
+                -1L);
+    }
+    
+    /*
+     * Appends a record to the active segment, starting a new one if it is
+     * full. A negative offset is given the next offset.
+     */
+    private synchronized void append(final byte type, final long time,
+            final byte[] key, final byte[] className, final long offset)
+    {
+        if (this._isClosed)
+        {
+            return;
+        }
+        final int length = BODY_FIXED_LENGTH
+                + ((key == null) ? 0 : key.length)
+                + ((className == null) ? 0 : className.length);
+        Segment segment = this._active;
+        if (segment._buffer.capacity() - segment._end < HEADER_LENGTH + length)
+        {
+            segment = this.roll();
+        }
+        final long recordOffset = (offset < 0) ? this._nextOffset : offset;
+        final int start = segment._end;
+        final ByteBuffer buffer = segment._buffer;
+        buffer.position(start + HEADER_LENGTH);
+        buffer.putLong(recordOffset).putLong(time).put(type);
+        this.putString(buffer, key);
+        this.putString(buffer, className);
+        
+        final ByteBuffer body = buffer.duplicate();
+        body.position(start + HEADER_LENGTH).limit(start + HEADER_LENGTH
+                + length);
+        this._crc.reset();
+        this._crc.update(body);
+        buffer.putInt(start + 4, (int) this._crc.getValue());
+        // the length is written last, so a partly written record has none.
+        buffer.putInt(start, length);
+        
+        segment._nextOffset = recordOffset + 1;
+        segment._end = start + HEADER_LENGTH + length;
+        this._nextOffset = recordOffset + 1;
+    }
+    
+    private void putString(final ByteBuffer buffer, final byte[] bytes)
+    {
+        if (bytes == null)
+        {
+            buffer.putShort((short) -1);
+        }
+        else
+        {
+            buffer.putShort((short) bytes.length).put(bytes);
+        }
+    }
+    
+    /**
+     * Flushes and closes the journal. Events appended after the journal is
+     * closed are ignored.
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (!this._isClosed)
+        {
+            this.flush();
+            this._isClosed = true;
+        }
+    }
+    
+    /**
+     * Rewrites the full segments as one segment that holds only the CREATE
+     * records of the keys bound after their last record. REMOVE and CLOSE
+     * records, and the CREATE records they undo, are dropped. The records
+     * kept have the same offsets, so replays from an offset that was
+     * compacted start at the next record kept.
+     * 
+     * @return The number of records dropped.
+     * 
+     * @throws IOException
+     *             if the compacted segment cannot be written.
+     * @throws OFactorySysException
+     *             if the journal is closed.
+     */
+    public int compact() throws IOException
+    {
+        this.checkOpen();
+        
+        synchronized (this._compactionLock)
+        {
+            return (this.compactFullSegments());
+        }
+    }
+    
+    private int compactFullSegments() throws IOException
+    {
+        final List<Segment> segments = this._segments;
+        final List<Segment> full = segments.subList(0, segments.size() - 1);
+        if (full.isEmpty())
+        {
+            return (0);
+        }
+        final Map<String, Record> bound = new LinkedHashMap<String, Record>();
+        int count = 0;
+        for (final Segment segment : full)
+        {
+            for (final Record record : this.read(segment, 0L))
+            {
+                apply(bound, record);
+                count++;
+            }
+        }
+        final Segment last = full.get(full.size() - 1);
+        if (full.size() == 1 && count == bound.size())
+        {
+            return (0);
+        }
+        
+        // the records are written to a file that replaces the first segment.
+        final Segment first = full.get(0);
+        final Path temporary = this._directory.resolve(nameOf(first._baseOffset)
+                + ".compact");
+        int size = HEADER_LENGTH + BODY_FIXED_LENGTH;
+        for (final Record record : bound.values())
+        {
+            size += HEADER_LENGTH + BODY_FIXED_LENGTH
+                    + bytesOf(record._key).length
+                    + bytesOf(record._className).length;
+        }
+        Files.deleteIfExists(temporary);
+        final Segment compacted = new Segment(first._file, first._baseOffset,
+                map(temporary, size));
+        final OFactoryEventJournal writer = new OFactoryEventJournal(compacted);
+        for (final Record record : bound.values())
+        {
+            writer.append(TYPE_CREATE, record._time, bytesOf(record._key),
+                    bytesOf(record._className), record._offset);
+        }
+        writer.append(TYPE_MARK, System.currentTimeMillis(), null, null,
+                last._nextOffset - 1);
+        compacted._buffer.force();
+        Files.move(temporary, first._file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        for (final Segment segment : full.subList(1, full.size()))
+        {
+            Files.delete(segment._file);
+        }
+        
+        synchronized (this)
+        {
+            final List<Segment> replaced = new ArrayList<Segment>(
+                    this._segments);
+            replaced.removeAll(full);
+            replaced.add(0, compacted);
+            this._segments = Collections.unmodifiableList(replaced);
+        }
+        return (count - bound.size());
+    }
+    
+    /**
+     * Writes the records appended so far to disk.
+     */
+    public void flush()
+    {
+        for (final Segment segment : this._segments)
+        {
+            segment._buffer.force();
+        }
+    }
+    
+    /**
+     * Returns the directory of the segment files.
+     * 
+     * @return A <code>Path</code> instance.
+     */
+    public Path getDirectory()
+    {
+        return (this._directory);
+    }
+    
+    /**
+     * Returns the offset the next record will be given.
+     * 
+     * @return A <code>long</code> value 0 &lt;= x.
+     */
+    public long getNextOffset()
+    {
+        return (this._nextOffset);
+    }
+    
+    /**
+     * Returns the number of segment files.
+     * 
+     * @return An <code>int</code> value 1 &lt;= x.
+     */
+    public int getSegmentCount()
+    {
+        return (this._segments.size());
+    }
+    
+    /**
+     * Returns whether the journal is closed.
+     * 
+     * @return A <code>boolean</code> value.
+     */
+    public boolean isClosed()
+    {
+        return (this._isClosed);
+    }
+    
+    /**
+     * Creates the children bound after the last record, with the keys and
+     * classes they were created with, in the order they were created.
+     * Settings and tags are not journaled; use checkpoints to keep them.
+     * Rebuild a factory before setting this journal on it, or the creates
+     * are journaled again.
+     * 
+     * @param factory
+     *            The <code>OFactory</code> to create the children in.
+     * 
+     * @return The number of children created.
+     * 
+     * @throws OFactoryChildException
+     *             if a key is already bound in the factory.
+     * @throws OFactorySysException
+     *             if the journal is closed.
+     */
+    public int rebuild(final OFactory<?> factory) throws OFactoryChildException
+    {
+        Validate.isNotNull(this.getClass(), factory);
+        
+        final Map<String, Record> bound = new LinkedHashMap<String, Record>();
+        this.replay(0L, new Consumer<Record>()
+        {
+            @Override
+            public void accept(final Record record)
+            {
+                apply(bound, record);
+            }
+        });
+        for (final Record record : bound.values())
+        {
+            factory.create(record._key, record._className);
+        }
+        return (bound.size());
+    }
+    
+    /**
+     * Passes the records from an offset to an action, in offset order. The
+     * records appended while the replay runs may or may not be passed; call
+     * again from the returned offset to pass them.
+     * 
+     * @param fromOffset
+     *            The offset of the first record to pass.
+     * @param action
+     *            The <code>Consumer</code> the records are passed to.
+     * 
+     * @return The offset after the last record passed, or fromOffset if
+     *         none were.
+     * 
+     * @throws OFactorySysException
+     *             if the journal is closed.
+     */
+    public long replay(final long fromOffset, final Consumer<Record> action)
+    {
+        Validate.isTrue(this.getClass(), fromOffset >= 0);
+        Validate.isNotNull(this.getClass(), action);
+        this.checkOpen();
+        
+        long nextOffset = fromOffset;
+        for (final Segment segment : this._segments)
+        {
+            if (segment._nextOffset > fromOffset)
+            {
+                for (final Record record : this.read(segment, fromOffset))
+                {
+                    action.accept(record);
+                    nextOffset = record._offset + 1;
+                }
+            }
+        }
+        return (nextOffset);
+    }
+    
+    private void checkOpen()
+    {
+        if (this._isClosed)
+        {
+            throw (new OFactorySysException("The event journal "
+                    + this._directory + " is closed."));
+        }
+    }
+    
+    private Segment newSegment(final long baseOffset) throws IOException
+    {
+        final Path file = this._directory.resolve(nameOf(baseOffset));
+        return (new Segment(file, baseOffset, map(file, this._segmentSize)));
+    }
+    
+    /*
+     * Returns the records of a segment from an offset, up to its published
+     * end. Mark records are skipped.
+     */
+    private List<Record> read(final Segment segment, final long fromOffset)
+    {
+        final int end = segment._end;
+        final ByteBuffer buffer = segment._buffer.duplicate();
+        final List<Record> records = new ArrayList<Record>();
+        int position = 0;
+        while (position < end)
+        {
+            final int length = buffer.getInt(position);
+            buffer.position(position + HEADER_LENGTH);
+            final long offset = buffer.getLong();
+            final long time = buffer.getLong();
+            final OFactory.Event.Type type = typeOf(buffer.get());
+            if (type != null && offset >= fromOffset)
+            {
+                records.add(new Record(offset, time, type, readString(buffer),
+                        readString(buffer)));
+            }
+            position += HEADER_LENGTH + length;
+        }
+        return (records);
+    }
+    
+    /*
+     * Finds the end of the records of a segment that was opened, and clears
+     * a partly written record after it.
+     */
+    private void recover(final Segment segment)
+    {
+        final ByteBuffer buffer = segment._buffer;
+        final int capacity = buffer.capacity();
+        int position = 0;
+        long nextOffset = segment._baseOffset;
+        while (capacity - position >= HEADER_LENGTH + BODY_FIXED_LENGTH)
+        {
+            final int length = buffer.getInt(position);
+            if (length < BODY_FIXED_LENGTH
+                    || length > capacity - position - HEADER_LENGTH)
+            {
+                break;
+            }
+            final ByteBuffer body = buffer.duplicate();
+            body.position(position + HEADER_LENGTH).limit(
+                    position + HEADER_LENGTH + length);
+            this._crc.reset();
+            this._crc.update(body);
+            final long offset = buffer.getLong(position + HEADER_LENGTH);
+            if ((int) this._crc.getValue() != buffer.getInt(position + 4)
+                    || offset < nextOffset)
+            {
+                break;
+            }
+            nextOffset = offset + 1;
+            position += HEADER_LENGTH + length;
+        }
+        final int cleared = Math.min(capacity, position + MAX_RECORD_LENGTH);
+        for (int i = position; i < cleared; i++)
+        {
+            buffer.put(i, (byte) 0);
+        }
+        segment._end = position;
+        segment._nextOffset = nextOffset;
+    }
+    
+    /*
+     * Starts a new segment at the next offset.
+     */
+    private Segment roll()
+    {
+        try
+        {
+            final Segment segment = this.newSegment(this._nextOffset);
+            final List<Segment> segments = new ArrayList<Segment>(
+                    this._segments);
+            segments.add(segment);
+            this._segments = Collections.unmodifiableList(segments);
+            this._active = segment;
+            return (segment);
+        }
+        catch (final IOException e)
+        {
+            throw (new OFactorySysException(
+                    "Unable to start a segment of the event journal "
+                            + this._directory, e));
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+
+/**
+ * <pre>
+ * The Java Flight Recorder events of the <code>OFactory</code>.
+ * 
+ * This class must only be used through <code>OFactoryFlightRecorder</code>,
+ * which checks that the jdk.jfr module is present first.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+final class OFactoryEvents
+{
+    @Name("org.gabsocial.ofactory.ChildClosed")
+    @Label("OFactory Child Closed")
+    @Description("A child was removed from an OFactory and closed.")
+    @Category("OFactory")
+    @StackTrace(false)
+    static final class ChildClosedEvent extends Event
+    {
+        @Label("Class Name")
+        String className;
+        
+        @Label("Key")
+        String key;
+    }
+    
+    @Name("org.gabsocial.ofactory.ChildCreated")
+    @Label("OFactory Child Created")
+    @Description("A child was loaded, stored and initialized by an OFactory.")
+    @Category("OFactory")
+    static final class ChildCreatedEvent extends Event
+    {
+        @Label("Class Name")
+        String className;
+        
+        @Label("Key")
+        String key;
+    }
+    
+    @Name("org.gabsocial.ofactory.ObserverDispatch")
+    @Label("OFactory Slow Observer Dispatch")
+    @Description("Observers of an OFactory took longer than the threshold to handle an event.")
+    @Category("OFactory")
+    @Threshold("10 ms")
+    static final class DispatchEvent extends Event
+    {
+        @Label("Event Type")
+        String eventType;
+        
+        @Label("Key")
+        String key;
+        
+        @Label("Observer Count")
+        int    observerCount;
+    }
+    
+    @Name("org.gabsocial.ofactory.FactoryClose")
+    @Label("OFactory Close")
+    @Description("An OFactory closed its children and observers.")
+    @Category("OFactory")
+    static final class FactoryCloseEvent extends Event
+    {
+        @Label("Child Count")
+        int    childCount;
+        
+        @Label("Factory Class")
+        String factoryClass;
+    }
+    
+    private static <E extends Event> E begin(final E event)
+    {
+        if (event.isEnabled())
+        {
+            event.begin();
+            return (event);
+        }
+        return (null);
+    }
+    
+    static Object beginChildClosed()
+    {
+        return (begin(new ChildClosedEvent()));
+    }
+    
+    static Object beginChildCreated()
+    {
+        return (begin(new ChildCreatedEvent()));
+    }
+    
+    static Object beginDispatch()
+    {
+        return (begin(new DispatchEvent()));
+    }
+    
+    static Object beginFactoryClose()
+    {
+        return (begin(new FactoryCloseEvent()));
+    }
+    
+    static void commitChildClosed(final Object recorded, final String key,
+            final String className)
+    {
+        final ChildClosedEvent event = (ChildClosedEvent) recorded;
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.key = key;
+            event.className = className;
+            event.commit();
+        }
+    }
+    
+    static void commitChildCreated(final Object recorded, final String key,
+            final String className)
+    {
+        final ChildCreatedEvent event = (ChildCreatedEvent) recorded;
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.key = key;
+            event.className = className;
+            event.commit();
+        }
+    }
+    
+    static void commitDispatch(final Object recorded, final String eventType,
+            final String key, final int observerCount)
+    {
+        final DispatchEvent event = (DispatchEvent) recorded;
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.eventType = eventType;
+            event.key = key;
+            event.observerCount = observerCount;
+            event.commit();
+        }
+    }
+    
+    static void commitFactoryClose(final Object recorded,
+            final String factoryClass, final int childCount)
+    {
+        final FactoryCloseEvent event = (FactoryCloseEvent) recorded;
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.factoryClass = factoryClass;
+            event.childCount = childCount;
+            event.commit();
+        }
+    }
+    
+    private OFactoryEvents()
+    {
+        // static methods only.
+    }
+    
+}
@@ -0,0 +1,121 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+/**
+ * <pre>
+ * The entry point for the Java Flight Recorder events of the
+ * <code>OFactory</code>.
+ * 
+ * The event classes in <code>OFactoryEvents</code> extend jdk.jfr.Event and are
+ * only loaded when the running JVM has the jdk.jfr module, so the factory works
+ * on runtimes without JFR.  Each begin method returns null unless the event is
+ * enabled in a running recording, and each commit method returns at once when
+ * given null, so the cost with recording off is a constant check.  The events
+ * are handled as <code>Object</code> so callers never reference a JFR type.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+final class OFactoryFlightRecorder
+{
+    /*
+     * True if the jdk.jfr module is present.
+     */
+    private static final boolean IS_AVAILABLE = isAvailable();
+    
+    private static boolean isAvailable()
+    {
+        try
+        {
+            Class.forName("jdk.jfr.Event");
+            return (true);
+        }
+        catch (final ClassNotFoundException | LinkageError e)
+        {
+            return (false);
+        }
+    }
+    
+    static Object beginChildClosed()
+    {
+        return (IS_AVAILABLE ? OFactoryEvents.beginChildClosed() : null);
+    }
+    
+    static Object beginChildCreated()
+    {
+        return (IS_AVAILABLE ? OFactoryEvents.beginChildCreated() : null);
+    }
+    
+    static Object beginDispatch()
+    {
+        return (IS_AVAILABLE ? OFactoryEvents.beginDispatch() : null);
+    }
+    
+    static Object beginFactoryClose()
+    {
+        return (IS_AVAILABLE ? OFactoryEvents.beginFactoryClose() : null);
+    }
+    
+    static void commitChildClosed(final Object event, final String key,
+            final OFactoryChild child)
+    {
+        if (event != null)
+        {
+            OFactoryEvents.commitChildClosed(event, key, child.getClass()
+                    .getName());
+        }
+    }
+    
+    static void commitChildCreated(final Object event, final String key,
+            final String className)
+    {
+        if (event != null)
+        {
+            OFactoryEvents.commitChildCreated(event, key, className);
+        }
+    }
+    
+    static void commitDispatch(final Object event, final OFactory.Event<?> dispatched,
+            final int observerCount)
+    {
+        if (event != null)
+        {
+            OFactoryEvents.commitDispatch(event, dispatched.getType().name(),
+                    dispatched.getKey(), observerCount);
+        }
+    }
+    
+    static void commitFactoryClose(final Object event,
+            final OFactory<?> factory, final int childCount)
+    {
+        if (event != null)
+        {
+            OFactoryEvents.commitFactoryClose(event, factory.getClass()
+                    .getName(), childCount);
+        }
+    }
+    
+    private OFactoryFlightRecorder()
+    {
+        // static methods only.
+    }
+    
+}
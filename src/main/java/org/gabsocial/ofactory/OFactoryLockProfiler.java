@@ -0,0 +1,175 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+
+/**
+ * <pre>
+ * Records the time threads wait for and hold each lock of an
+ * <code>OFactory</code>, by operation.
+ * 
+ * A lock site reads the clock before it asks for the lock and again once it
+ * has it, then records both with record(...) as it releases the lock.  The
+ * static methods do nothing when given a null profiler so that sites pay a
+ * null check when profiling is off.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+final class OFactoryLockProfiler
+{
+    /*
+     * The counters of one operation and lock.
+     */
+    private static final class Site
+    {
+        private final LongAdder       _acquisitions = new LongAdder();
+        
+        private final LongAdder       _hold         = new LongAdder();
+        
+        private final LongAccumulator _maxHold      = new LongAccumulator(MAX, 0);
+        
+        private final LongAccumulator _maxWait      = new LongAccumulator(MAX, 0);
+        
+        private final LongAdder       _wait         = new LongAdder();
+    }
+    
+    private static final int LOCKS = LockContention.Lock.values().length;
+    
+    /*
+     * Keeps the larger of two values.
+     */
+    private static final LongBinaryOperator MAX = new LongBinaryOperator()
+    {
+        @Override
+        public long applyAsLong(final long left, final long right)
+        {
+            return (Math.max(left, right));
+        }
+    };
+    
+    /**
+     * Returns the current time if the profiler is not null.
+     * 
+     * @param profiler
+     *            An <code>OFactoryLockProfiler</code>. May be null.
+     * 
+     * @return A <code>long</code> value in nanoseconds, or 0.
+     */
+    static long now(final OFactoryLockProfiler profiler)
+    {
+        return ((profiler == null) ? 0L : System.nanoTime());
+    }
+    
+    /**
+     * Records a lock that is being released. Does nothing if the profiler is
+     * null.
+     * 
+     * @param profiler
+     *            An <code>OFactoryLockProfiler</code>. May be null.
+     * @param operation
+     *            The operation that took the lock.
+     * @param lock
+     *            The lock.
+     * @param requested
+     *            The time the lock was asked for.
+     * @param acquired
+     *            The time the lock was taken.
+     */
+    static void record(final OFactoryLockProfiler profiler,
+            final LockContention.Operation operation,
+            final LockContention.Lock lock, final long requested,
+            final long acquired)
+    {
+        if (profiler != null)
+        {
+            final long hold = System.nanoTime() - acquired;
+            final long wait = acquired - requested;
+            final Site site = profiler._sites[operation.ordinal() * LOCKS
+                    + lock.ordinal()];
+            site._acquisitions.increment();
+            site._wait.add(wait);
+            site._maxWait.accumulate(wait);
+            site._hold.add(hold);
+            site._maxHold.accumulate(hold);
+        }
+    }
+    
+    private final Site[] _sites;
+    
+    OFactoryLockProfiler()
+    {
+        this._sites = new Site[LockContention.Operation.values().length
+                * LOCKS];
+        for (int i = 0; i < this._sites.length; i++)
+        {
+            this._sites[i] = new Site();
+        }
+    }
+    
+    /**
+     * Returns the recorded contention of each operation and lock that was
+     * taken, most waited for first.
+     * 
+     * @return A <code>List</code> of <code>LockContention</code> instances.
+     */
+    List<LockContention> getContention()
+    {
+        final List<LockContention> contention = new ArrayList<LockContention>();
+        for (final LockContention.Operation operation : LockContention.Operation
+                .values())
+        {
+            for (final LockContention.Lock lock : LockContention.Lock.values())
+            {
+                final Site site = this._sites[operation.ordinal() * LOCKS
+                        + lock.ordinal()];
+                final long acquisitions = site._acquisitions.sum();
+                if (acquisitions > 0)
+                {
+                    contention.add(new LockContention(operation, lock,
+                            acquisitions, site._wait.sum(), site._maxWait
+                                    .get(), site._hold.sum(), site._maxHold
+                                    .get()));
+                }
+            }
+        }
+        Collections.sort(contention, new Comparator<LockContention>()
+        {
+            @Override
+            public int compare(final LockContention a, final LockContention b)
+            {
+                final int byWait = Long.compare(b.getTotalWaitNanos(),
+                        a.getTotalWaitNanos());
+                return ((byWait != 0) ? byWait : Long.compare(
+                        b.getTotalHoldNanos(), a.getTotalHoldNanos()));
+            }
+        });
+        return (contention);
+    }
+    
+}
@@ -0,0 +1,183 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.util.Map;
+
+
+/**
+ * 
+ * The management interface of an <code>OFactory</code> registered with JMX
+ * by the OFactory.registerMBean(name) method. Counts and latencies are read
+ * from counters the factory keeps up to date, so polling does not visit the
+ * children. Latencies are in nanoseconds and rates are per second.
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public abstract interface OFactoryMXBean
+{
+    
+    /**
+     * Closes the child associated with the key.
+     * 
+     * @param key
+     *            The <code>String</code> key associated with a child.
+     * @return True if a child was found and closed.
+     */
+    public abstract boolean closeChild(final String key);
+    
+    /**
+     * Returns the keys of the children.
+     * 
+     * @return An array of <code>String</code> keys in no particular order.
+     */
+    public abstract String[] dumpKeys();
+    
+    /**
+     * Returns the lock contention recorded in lock profiling mode, the most
+     * waited for first.
+     * 
+     * @return An array of descriptions. Empty when lock profiling is off.
+     */
+    public abstract String[] dumpLockContention();
+    
+    /**
+     * Returns the keys of the children that are instances of a class or
+     * interface, matched by name in whichever class loader the child was
+     * loaded by.
+     * 
+     * @param className
+     *            A <code>String</code> instance of the fully qualified
+     *            classname.
+     * @return An array of <code>String</code> keys. Empty if no child is of
+     *         the type.
+     */
+    public abstract String[] dumpKeysOfType(final String className);
+    
+    /**
+     * Returns the number of children.
+     * 
+     * @return An <code>int</code> value 0 &lt;= x &lt;= n.
+     */
+    public abstract int getChildCount();
+    
+    /**
+     * Returns the number of children of each class keyed by class name.
+     * 
+     * @return A <code>Map</code> of class names to counts.
+     */
+    public abstract Map<String, Integer> getChildCountsByClass();
+    
+    /**
+     * Returns the number of children closed.
+     * 
+     * @return A <code>long</code> value 0 &lt;= x &lt;= n.
+     */
+    public abstract long getCloseChildCount();
+    
+    /**
+     * Returns the number of children created.
+     * 
+     * @return A <code>long</code> value 0 &lt;= x &lt;= n.
+     */
+    public abstract long getCreateCount();
+    
+    /**
+     * Returns the median time taken to load and initialize a child.
+     * 
+     * @return A <code>long</code> value in nanoseconds.
+     */
+    public abstract long getCreateLatency50thPercentile();
+    
+    /**
+     * Returns the 99th percentile of the time taken to load and initialize a
+     * child.
+     * 
+     * @return A <code>long</code> value in nanoseconds.
+     */
+    public abstract long getCreateLatency99thPercentile();
+    
+    /**
+     * Returns the longest time taken to load and initialize a child.
+     * 
+     * @return A <code>long</code> value in nanoseconds.
+     */
+    public abstract long getCreateLatencyMax();
+    
+    /**
+     * Returns the one minute moving average of children created per second.
+     * 
+     * @return A <code>double</code> value.
+     */
+    public abstract double getCreateRate();
+    
+    /**
+     * Returns the 99th percentile of the time taken to notify observers of an
+     * event.
+     * 
+     * @return A <code>long</code> value in nanoseconds.
+     */
+    public abstract long getDispatchLatency99thPercentile();
+    
+    /**
+     * Returns the number of exceptions thrown out of factory methods by
+     * exception class name.
+     * 
+     * @return A <code>Map</code> of class names to counts.
+     */
+    public abstract Map<String, Long> getExceptionCounts();
+    
+    /**
+     * Returns the number of get calls that found a child.
+     * 
+     * @return A <code>long</code> value 0 &lt;= x &lt;= n.
+     */
+    public abstract long getGetHitCount();
+    
+    /**
+     * Returns the number of get calls that did not find a child.
+     * 
+     * @return A <code>long</code> value 0 &lt;= x &lt;= n.
+     */
+    public abstract long getGetMissCount();
+    
+    /**
+     * Returns the one minute moving average of get calls per second.
+     * 
+     * @return A <code>double</code> value.
+     */
+    public abstract double getGetRate();
+    
+    /**
+     * Returns the number of observers.
+     * 
+     * @return An <code>int</code> value 0 &lt;= x &lt;= n.
+     */
+    public abstract int getObserverCount();
+    
+    /**
+     * Returns the number of constructions and initializations that took
+     * longer than the slow create threshold.
+     * 
+     * @return A <code>long</code> value 0 &lt;= x &lt;= n.
+     */
+    public abstract long getSlowCreateCount();
+    
+}
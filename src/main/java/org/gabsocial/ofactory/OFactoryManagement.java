@@ -0,0 +1,283 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * <pre>
+ * The <code>OFactoryMXBean</code> implementation registered for an
+ * <code>OFactory</code>.
+ * 
+ * Every attribute is read from the metrics registry, the type index or the
+ * size of the child table, so a poll costs the same for ten children as for
+ * ten million.  Rates are one minute exponentially weighted moving averages
+ * that are brought up to date in five second steps when they are read.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+final class OFactoryManagement implements OFactoryMXBean
+{
+    /*
+     * A one minute moving average of the growth of a counter.
+     */
+    static final class Rate
+    {
+        private static final double SECONDS_PER_TICK = 5;
+        
+        private static final double ALPHA            = 1 - Math.exp(-SECONDS_PER_TICK / 60);
+        
+        private static final long   TICK_NANOS       = TimeUnit.SECONDS.toNanos((long) SECONDS_PER_TICK);
+        
+        /*
+         * Steps beyond this many are idle and only decay the average.
+         */
+        private static final long   MAX_TICKS        = 120;
+        
+        private long                _lastCount;
+        
+        private long                _lastTick;
+        
+        private double              _rate;
+        
+        Rate(final long count, final long now)
+        {
+            this._lastCount = count;
+            this._lastTick = now;
+        }
+        
+        synchronized double update(final long count, final long now)
+        {
+            final long ticks = (now - this._lastTick) / TICK_NANOS;
+            if (ticks > 0)
+            {
+                final double perSecond = (count - this._lastCount)
+                        / (ticks * SECONDS_PER_TICK);
+                for (long i = 0; i < Math.min(ticks, MAX_TICKS); i++)
+                {
+                    this._rate += ALPHA * (perSecond - this._rate);
+                }
+                this._lastCount = count;
+                this._lastTick += ticks * TICK_NANOS;
+            }
+            return (this._rate);
+        }
+    }
+    
+    private final Rate        _createRate;
+    
+    private final OFactory<?> _factory;
+    
+    private final Rate        _getRate;
+    
+    OFactoryManagement(final OFactory<?> factory)
+    {
+        assert (factory != null) : "OFactoryManagement() - the parameter 'factory' should not be null.";
+        
+        this._factory = factory;
+        final long now = System.nanoTime();
+        this._createRate = new Rate(this.getCreateCount(), now);
+        this._getRate = new Rate(this.getGetHitCount() + this.getGetMissCount(),
+                now);
+    }
+    
+    @Override
+    public boolean closeChild(final String key)
+    {
+        return (this._factory.closeChild(key) != null);
+    }
+    
+    @Override
+    public String[] dumpKeys()
+    {
+        final Set<String> keys = this._factory.getKeys();
+        return (keys.toArray(new String[keys.size()]));
+    }
+    
+    @Override
+    public String[] dumpLockContention()
+    {
+        final List<LockContention> contention = this._factory
+                .getLockContention();
+        final String[] dump = new String[contention.size()];
+        for (int i = 0; i < dump.length; i++)
+        {
+            dump[i] = contention.get(i).toString();
+        }
+        return (dump);
+    }
+    
+    @Override
+    public String[] dumpKeysOfType(final String className)
+    {
+        // matched by name, as the type may only be loaded by a child's
+        // own class loader.
+        final List<String> keys = new ArrayList<String>();
+        for (final Map.Entry<String, ? extends OFactoryChild> entry : this._factory
+                .snapshot().entrySet())
+        {
+            if (isOfType(entry.getValue().getClass(), className))
+            {
+                keys.add(entry.getKey());
+            }
+        }
+        return (keys.toArray(new String[keys.size()]));
+    }
+    
+    /*
+     * Returns whether the class, a superclass or an interface of either has
+     * the name.
+     */
+    private static boolean isOfType(final Class<?> type, final String className)
+    {
+        if (type == null)
+        {
+            return (false);
+        }
+        if (type.getName().equals(className)
+                || isOfType(type.getSuperclass(), className))
+        {
+            return (true);
+        }
+        for (final Class<?> implemented : type.getInterfaces())
+        {
+            if (isOfType(implemented, className))
+            {
+                return (true);
+            }
+        }
+        return (false);
+    }
+    
+    @Override
+    public int getChildCount()
+    {
+        return (this._factory.getChildCount());
+    }
+    
+    @Override
+    public Map<String, Integer> getChildCountsByClass()
+    {
+        return (this._factory.getChildCountsByClass());
+    }
+    
+    @Override
+    public long getCloseChildCount()
+    {
+        final OFactoryMetrics metrics = this._factory.getMetrics();
+        return ((metrics == null) ? 0 : metrics.getChildrenClosed());
+    }
+    
+    @Override
+    public long getCreateCount()
+    {
+        final OFactoryMetrics metrics = this._factory.getMetrics();
+        return ((metrics == null) ? 0 : metrics.getChildrenCreated());
+    }
+    
+    @Override
+    public long getCreateLatency50thPercentile()
+    {
+        final OFactoryMetrics metrics = this._factory.getMetrics();
+        return ((metrics == null) ? 0 : metrics.getCreateLatency()
+                .getValueAtPercentile(50));
+    }
+    
+    @Override
+    public long getCreateLatency99thPercentile()
+    {
+        final OFactoryMetrics metrics = this._factory.getMetrics();
+        return ((metrics == null) ? 0 : metrics.getCreateLatency()
+                .getValueAtPercentile(99));
+    }
+    
+    @Override
+    public long getCreateLatencyMax()
+    {
+        final OFactoryMetrics metrics = this._factory.getMetrics();
+        return ((metrics == null) ? 0 : metrics.getCreateLatency().getMax());
+    }
+    
+    @Override
+    public double getCreateRate()
+    {
+        return (this._createRate.update(this.getCreateCount(),
+                System.nanoTime()));
+    }
+    
+    @Override
+    public long getDispatchLatency99thPercentile()
+    {
+        final OFactoryMetrics metrics = this._factory.getMetrics();
+        return ((metrics == null) ? 0 : metrics.getDispatchLatency()
+                .getValueAtPercentile(99));
+    }
+    
+    @Override
+    public Map<String, Long> getExceptionCounts()
+    {
+        final OFactoryMetrics metrics = this._factory.getMetrics();
+        return ((metrics == null) ? Collections.<String, Long> emptyMap()
+                : metrics.getExceptionCounts());
+    }
+    
+    @Override
+    public long getGetHitCount()
+    {
+        final OFactoryMetrics metrics = this._factory.getMetrics();
+        return ((metrics == null) ? 0 : metrics.getGetHits());
+    }
+    
+    @Override
+    public long getGetMissCount()
+    {
+        final OFactoryMetrics metrics = this._factory.getMetrics();
+        return ((metrics == null) ? 0 : metrics.getGetMisses());
+    }
+    
+    @Override
+    public double getGetRate()
+    {
+        return (this._getRate.update(
+                this.getGetHitCount() + this.getGetMissCount(),
+                System.nanoTime()));
+    }
+    
+    @Override
+    public int getObserverCount()
+    {
+        return (this._factory.getObserverCount());
+    }
+    
+    @Override
+    public long getSlowCreateCount()
+    {
+        final OFactoryMetrics metrics = this._factory.getMetrics();
+        return ((metrics == null) ? 0 : metrics.getSlowCreates());
+    }
+    
+}
@@ -0,0 +1,434 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.gabsocial.gabdev.validate.Validate;
+
+
+/**
+ * <pre>
+ * A registry of metrics about the work done by an <code>OFactory</code>.
+ * 
+ * Metrics are off by default.  Call OFactory.setMetrics(metrics) with an
+ * instance of this class to turn them on; while the factory has no registry
+ * no clock is read and no counter is touched.  One registry may be shared by
+ * several factories, in which case the metrics are summed.
+ * 
+ * Counters are <code>LongAdder</code> instances and latencies are recorded in
+ * lock free <code>LatencyHistogram</code> instances, so recording does not
+ * block the threads using the factory.  Call export(exporter) to publish the
+ * metrics through an <code>OFactoryMetricsExporter</code>.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public class OFactoryMetrics
+{
+    /**
+     * The prefix of every metric name.
+     */
+    public static final String                            PREFIX                = "ofactory.";
+    
+    private final LongAdder                               _childrenClosed       = new LongAdder();
+    
+    private final LongAdder                               _childrenCreated      = new LongAdder();
+    
+    private final LatencyHistogram                        _closeLatency         = new LatencyHistogram();
+    
+    private final LatencyHistogram                        _createLatency        = new LatencyHistogram();
+    
+    private final ConcurrentMap<String, LatencyHistogram> _createLatencyByClass = new ConcurrentHashMap<String, LatencyHistogram>();
+    
+    private final LatencyHistogram                        _dispatchLatency      = new LatencyHistogram();
+    
+    private final ConcurrentMap<String, LongAdder>        _exceptionsByType     = new ConcurrentHashMap<String, LongAdder>();
+    
+    private final LongAdder                               _getHits              = new LongAdder();
+    
+    private final LongAdder                               _getMisses            = new LongAdder();
+    
+    private final LongAdder                               _liveChildren         = new LongAdder();
+    
+    private final ConcurrentMap<String, LongAdder>        _slowCreatesByClass   = new ConcurrentHashMap<String, LongAdder>();
+    
+    /*
+     * Increments the counter of the name, adding it if needed.
+     */
+    private static void increment(final ConcurrentMap<String, LongAdder> counters,
+            final String name)
+    {
+        LongAdder count = counters.get(name);
+        if (count == null)
+        {
+            final LongAdder created = new LongAdder();
+            count = counters.putIfAbsent(name, created);
+            if (count == null)
+            {
+                count = created;
+            }
+        }
+        count.increment();
+    }
+    
+    /*
+     * Returns a sorted copy of the sums of the counters.
+     */
+    private static Map<String, Long> sums(
+            final ConcurrentMap<String, LongAdder> counters)
+    {
+        final Map<String, Long> sums = new TreeMap<String, Long>();
+        for (final Map.Entry<String, LongAdder> entry : counters.entrySet())
+        {
+            sums.put(entry.getKey(), entry.getValue().sum());
+        }
+        return (sums);
+    }
+    
+    /**
+     * Publishes every metric through the exporter.
+     * 
+     * @param exporter
+     *            An <code>OFactoryMetricsExporter</code> instance.
+     */
+    public void export(final OFactoryMetricsExporter exporter)
+    {
+        Validate.isNotNull(this.getClass(), exporter);
+        
+        exporter.exportCounter(PREFIX + "create", this.getChildrenCreated());
+        exporter.exportCounter(PREFIX + "get.hit", this.getGetHits());
+        exporter.exportCounter(PREFIX + "get.miss", this.getGetMisses());
+        exporter.exportCounter(PREFIX + "closeChild", this.getChildrenClosed());
+        exporter.exportGauge(PREFIX + "children", this.getLiveChildren());
+        exporter.exportHistogram(PREFIX + "close.latency", this._closeLatency);
+        exporter.exportHistogram(PREFIX + "create.latency", this._createLatency);
+        exporter.exportHistogram(PREFIX + "dispatch.latency",
+                this._dispatchLatency);
+        for (final Map.Entry<String, LatencyHistogram> entry : this._createLatencyByClass
+                .entrySet())
+        {
+            exporter.exportHistogram(PREFIX + "create.latency."
+                    + entry.getKey(), entry.getValue());
+        }
+        for (final Map.Entry<String, LongAdder> entry : this._slowCreatesByClass
+                .entrySet())
+        {
+            exporter.exportCounter(PREFIX + "create.slow." + entry.getKey(),
+                    entry.getValue().sum());
+        }
+        for (final Map.Entry<String, LongAdder> entry : this._exceptionsByType
+                .entrySet())
+        {
+            exporter.exportCounter(PREFIX + "exception." + entry.getKey(),
+                    entry.getValue().sum());
+        }
+    }
+    
+    /**
+     * Returns the number of children closed.
+     * 
+     * @return A <code>long</code> value 0 &lt;= x &lt;= n.
+     */
+    public long getChildrenClosed()
+    {
+        return (this._childrenClosed.sum());
+    }
+    
+    /**
+     * Returns the number of children created.
+     * 
+     * @return A <code>long</code> value 0 &lt;= x &lt;= n.
+     */
+    public long getChildrenCreated()
+    {
+        return (this._childrenCreated.sum());
+    }
+    
+    /**
+     * Returns the latencies of closing factories.
+     * 
+     * @return A <code>LatencyHistogram</code> instance.
+     */
+    public LatencyHistogram getCloseLatency()
+    {
+        return (this._closeLatency);
+    }
+    
+    /**
+     * Returns the latencies of loading and initializing children of all
+     * classes.
+     * 
+     * @return A <code>LatencyHistogram</code> instance.
+     */
+    public LatencyHistogram getCreateLatency()
+    {
+        return (this._createLatency);
+    }
+    
+    /**
+     * Returns the latencies of loading and initializing children of a class.
+     * 
+     * @param className
+     *            A <code>String</code> instance of the fully qualified
+     *            classname.
+     * @return A <code>LatencyHistogram</code> instance. Null if no child of
+     *         the class was created.
+     */
+    public LatencyHistogram getCreateLatency(final String className)
+    {
+        Validate.isNotNullOrEmpty(this.getClass(), className);
+        
+        return (this._createLatencyByClass.get(className));
+    }
+    
+    /**
+     * Returns the latencies of creating children keyed by class name.
+     * 
+     * @return An unmodifiable <code>Map</code> of class names to
+     *         <code>LatencyHistogram</code> instances.
+     */
+    public Map<String, LatencyHistogram> getCreateLatencies()
+    {
+        return (Collections.unmodifiableMap(this._createLatencyByClass));
+    }
+    
+    /**
+     * Returns the latencies of notifying observers of an event.
+     * 
+     * @return A <code>LatencyHistogram</code> instance.
+     */
+    public LatencyHistogram getDispatchLatency()
+    {
+        return (this._dispatchLatency);
+    }
+    
+    /**
+     * Returns the number of exceptions thrown out of factory methods by
+     * exception class name.
+     * 
+     * @return A <code>Map</code> of class names to counts.
+     */
+    public Map<String, Long> getExceptionCounts()
+    {
+        return (sums(this._exceptionsByType));
+    }
+    
+    /**
+     * Returns the number of get calls that found a child.
+     * 
+     * @return A <code>long</code> value 0 &lt;= x &lt;= n.
+     */
+    public long getGetHits()
+    {
+        return (this._getHits.sum());
+    }
+    
+    /**
+     * Returns the number of get calls that did not find a child.
+     * 
+     * @return A <code>long</code> value 0 &lt;= x &lt;= n.
+     */
+    public long getGetMisses()
+    {
+        return (this._getMisses.sum());
+    }
+    
+    /**
+     * Returns the number of children created and not yet closed.
+     * 
+     * @return A <code>long</code> value 0 &lt;= x &lt;= n.
+     */
+    public long getLiveChildren()
+    {
+        // a create racing with setMetrics(metrics) may go uncounted.
+        return (Math.max(0L, this._liveChildren.sum()));
+    }
+    
+    /**
+     * Returns the number of slow creates by child class name.
+     * 
+     * @return A <code>Map</code> of class names to counts.
+     */
+    public Map<String, Long> getSlowCreateCounts()
+    {
+        return (sums(this._slowCreatesByClass));
+    }
+    
+    /**
+     * Returns the number of constructions and initializations that took
+     * longer than the slow create threshold.
+     * 
+     * @return A <code>long</code> value 0 &lt;= x &lt;= n.
+     */
+    public long getSlowCreates()
+    {
+        long count = 0;
+        for (final LongAdder adder : this._slowCreatesByClass.values())
+        {
+            count += adder.sum();
+        }
+        return (count);
+    }
+    
+    /**
+     * Records that a child was closed.
+     */
+    void recordChildClosed()
+    {
+        this._childrenClosed.increment();
+        this._liveChildren.decrement();
+    }
+    
+    /**
+     * Records children that were created before the registry was set.
+     * 
+     * @param count
+     *            The number of children.
+     */
+    void recordLiveChildren(final long count)
+    {
+        this._liveChildren.add(count);
+    }
+    
+    /**
+     * Records that a child was created.
+     * 
+     * @param className
+     *            The class name of the child.
+     * @param nanos
+     *            The time taken to load and initialize the child.
+     */
+    void recordChildCreated(final String className, final long nanos)
+    {
+        this._childrenCreated.increment();
+        this._liveChildren.increment();
+        
+        LatencyHistogram histogram = this._createLatencyByClass.get(className);
+        if (histogram == null)
+        {
+            final LatencyHistogram created = new LatencyHistogram();
+            histogram = this._createLatencyByClass.putIfAbsent(className,
+                    created);
+            if (histogram == null)
+            {
+                histogram = created;
+            }
+        }
+        histogram.record(nanos);
+        this._createLatency.record(nanos);
+    }
+    
+    /**
+     * Records the time taken to close a factory.
+     * 
+     * @param nanos
+     *            A latency in nanoseconds.
+     */
+    void recordClose(final long nanos)
+    {
+        this._closeLatency.record(nanos);
+    }
+    
+    /**
+     * Records the time taken to notify the observers of an event.
+     * 
+     * @param nanos
+     *            A latency in nanoseconds.
+     */
+    void recordDispatch(final long nanos)
+    {
+        this._dispatchLatency.record(nanos);
+    }
+    
+    /**
+     * Records an exception thrown out of a factory method.
+     * 
+     * @param throwable
+     *            The <code>Throwable</code> that was thrown.
+     */
+    void recordException(final Throwable throwable)
+    {
+        increment(this._exceptionsByType, throwable.getClass().getName());
+    }
+    
+    /**
+     * Records the result of a get call.
+     * 
+     * @param isHit
+     *            True if a child was found.
+     */
+    void recordGet(final boolean isHit)
+    {
+        if (isHit)
+        {
+            this._getHits.increment();
+        }
+        else
+        {
+            this._getMisses.increment();
+        }
+    }
+    
+    /**
+     * Records a construction or initialization that took longer than the
+     * slow create threshold.
+     * 
+     * @param report
+     *            The <code>SlowCreateReport</code> of the slow phase.
+     */
+    void recordSlowCreate(final SlowCreateReport report)
+    {
+        increment(this._slowCreatesByClass, report.getClassName());
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append("OFactoryMetrics [created=");
+        builder.append(this.getChildrenCreated());
+        builder.append(", closed=");
+        builder.append(this.getChildrenClosed());
+        builder.append(", live=");
+        builder.append(this.getLiveChildren());
+        builder.append(", getHits=");
+        builder.append(this.getGetHits());
+        builder.append(", getMisses=");
+        builder.append(this.getGetMisses());
+        builder.append(", exceptions=");
+        builder.append(this.getExceptionCounts());
+        builder.append(", slowCreates=");
+        builder.append(this.getSlowCreates());
+        builder.append("]");
+        return builder.toString();
+    }
+    
+}
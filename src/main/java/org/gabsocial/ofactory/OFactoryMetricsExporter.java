@@ -0,0 +1,64 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+/**
+ * 
+ * An interface to implement to publish the metrics of an
+ * <code>OFactoryMetrics</code> registry to a monitoring system. The registry
+ * calls back once per metric when OFactoryMetrics.export(exporter) is called.
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public abstract interface OFactoryMetricsExporter
+{
+    
+    /**
+     * Publishes a counter, a value that only increases.
+     * 
+     * @param name
+     *            A <code>String</code> instance that is the metric name.
+     * @param value
+     *            The current count.
+     */
+    public abstract void exportCounter(final String name, final long value);
+    
+    /**
+     * Publishes a gauge, a value that can increase and decrease.
+     * 
+     * @param name
+     *            A <code>String</code> instance that is the metric name.
+     * @param value
+     *            The current value.
+     */
+    public abstract void exportGauge(final String name, final long value);
+    
+    /**
+     * Publishes a latency histogram.
+     * 
+     * @param name
+     *            A <code>String</code> instance that is the metric name.
+     * @param histogram
+     *            The <code>LatencyHistogram</code> with the recorded values.
+     */
+    public abstract void exportHistogram(final String name,
+            final LatencyHistogram histogram);
+    
+}
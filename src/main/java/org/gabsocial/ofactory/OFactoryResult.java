@@ -0,0 +1,205 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.util.Optional;
+
+
+/**
+ * <pre>
+ * The result of a tryCreate(...) or tryCloseChild(key) call on an
+ * <code>OFactory</code>.  The try methods report a closed factory, a key that
+ * is already bound, a key that is not bound or an invalid argument with a
+ * status instead of an exception.
+ * 
+ * The results of calls that fail hold no child and are shared, so a failed
+ * call does not allocate.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public final class OFactoryResult<C>
+{
+    /**
+     * The outcome of a call.
+     */
+    public static enum Status
+    {
+        /**
+         * The child was closed and removed from the factory.
+         */
+        CHILD_CLOSED,
+        
+        /**
+         * The child was created and bound to the key.
+         */
+        CREATED,
+        
+        /**
+         * A child is already bound to the key.
+         */
+        DUPLICATE_KEY,
+        
+        /**
+         * The factory is closed.
+         */
+        FACTORY_CLOSED,
+        
+        /**
+         * The key, class name or tags are null, empty or too long.
+         */
+        INVALID_ARGUMENT,
+        
+        /**
+         * No child is bound to the key.
+         */
+        NOT_FOUND;
+    }
+    
+    private static final OFactoryResult<?> DUPLICATE_KEY    = new OFactoryResult<Object>(
+                                                                    Status.DUPLICATE_KEY,
+                                                                    null);
+    
+    private static final OFactoryResult<?> FACTORY_CLOSED   = new OFactoryResult<Object>(
+                                                                    Status.FACTORY_CLOSED,
+                                                                    null);
+    
+    private static final OFactoryResult<?> INVALID_ARGUMENT = new OFactoryResult<Object>(
+                                                                    Status.INVALID_ARGUMENT,
+                                                                    null);
+    
+    private static final OFactoryResult<?> NOT_FOUND        = new OFactoryResult<Object>(
+                                                                    Status.NOT_FOUND,
+                                                                    null);
+    
+    /**
+     * Returns the shared result of a call that failed.
+     * 
+     * @param status
+     *            A failed status.
+     * 
+     * @return An <code>OFactoryResult</code> instance that holds no child.
+     */
+    @SuppressWarnings("unchecked")
+    static <C> OFactoryResult<C> failed(final Status status)
+    {
+        final OFactoryResult<?> result;
+        switch (status)
+        {
+            case DUPLICATE_KEY:
+                result = DUPLICATE_KEY;
+                break;
+            case FACTORY_CLOSED:
+                result = FACTORY_CLOSED;
+                break;
+            case INVALID_ARGUMENT:
+                result = INVALID_ARGUMENT;
+                break;
+            case NOT_FOUND:
+                result = NOT_FOUND;
+                break;
+            default:
+                throw (new IllegalArgumentException("Not a failed status - "
+                        + status));
+        }
+        return ((OFactoryResult<C>) result);
+    }
+    
+    /**
+     * Returns the result of a call that succeeded.
+     * 
+     * @param status
+     *            Either CREATED or CHILD_CLOSED.
+     * @param child
+     *            The child that was created or closed.
+     * 
+     * @return An <code>OFactoryResult</code> instance.
+     */
+    static <C> OFactoryResult<C> succeeded(final Status status, final C child)
+    {
+        assert (status == Status.CREATED || status == Status.CHILD_CLOSED) : "succeeded() - the parameter 'status' should be CREATED or CHILD_CLOSED";
+        assert (child != null) : "succeeded() - the parameter 'child' should not be null";
+        return (new OFactoryResult<C>(status, child));
+    }
+    
+    private final C      _child;
+    
+    private final Status _status;
+    
+    private OFactoryResult(final Status status, final C child)
+    {
+        this._status = status;
+        this._child = child;
+    }
+    
+    /**
+     * Returns the child that was created or closed.
+     * 
+     * @return An <code>OFactoryChild</code> instance, or null if the call
+     *         failed.
+     */
+    public C getChild()
+    {
+        return (this._child);
+    }
+    
+    /**
+     * Returns the outcome of the call.
+     * 
+     * @return A <code>Status</code> value.
+     */
+    public Status getStatus()
+    {
+        return (this._status);
+    }
+    
+    /**
+     * Returns true if the child was created or closed.
+     * 
+     * @return A <code>boolean</code> value (true or false).
+     */
+    public boolean isSuccess()
+    {
+        return (this._child != null);
+    }
+    
+    /**
+     * Returns the child that was created or closed as an
+     * <code>Optional</code>.
+     * 
+     * @return An <code>Optional</code> that is empty if the call failed.
+     */
+    public Optional<C> toOptional()
+    {
+        return (Optional.ofNullable(this._child));
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return ("OFactoryResult [status=" + this._status + ", child="
+                + this._child + "]");
+    }
+}
@@ -0,0 +1,1010 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.gabsocial.gabdev.validate.Validate;
+
+
+/**
+ * <pre>
+ * A directory of child definitions - key, class name and tags - in a
+ * memory-mapped file that the JVMs on one host share.  One process opens the
+ * file as the writer with create(file, maxDefinitions, dataSize); any number
+ * open it as readers with open(file).  Readers take no lock: each read is
+ * retried if the writer changed the file while it ran, as with a seqlock.
+ * 
+ * The writer can publish(factory) the children of a factory, or be added as
+ * an observer of a factory to follow its CREATE and REMOVE events.  A reader
+ * can createChildren(factory) to create the children defined in the file.
+ * 
+ * The file holds a header, a table of slots and the records of the
+ * definitions:
+ * 
+ * header   int magic, int version, int slot count, int data size,
+ *          long sequence, int definition count, int used slots, int data end,
+ *          int unused
+ * slot     int key hash, int record position, int record length
+ *          (0 for an empty slot, -1 for a removed definition)
+ * record   string key, string class name, short tag count, string tags...,
+ *          long time
+ * string   short length, UTF-8 bytes
+ * 
+ * The sequence is odd while the writer changes the file.  The writer
+ * creates a new file and moves it over the old one, so readers must open
+ * the file after the writer has created it.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public final class OFactorySharedRegistry implements Closeable, Observer
+{
+    /**
+     * A child definition read from the registry.
+     */
+    public static final class Definition
+    {
+        private final String   _className;
+        
+        private final String   _key;
+        
+        private final String[] _tags;
+        
+        private final long     _time;
+        
+        Definition(final String key, final String className,
+                final String[] tags, final long time)
+        {
+            this._key = key;
+            this._className = className;
+            this._tags = tags;
+            this._time = time;
+        }
+        
+        /**
+         * Returns the class name of the child.
+         * 
+         * @return A <code>String</code> fully qualified class name.
+         */
+        public String getClassName()
+        {
+            return (this._className);
+        }
+        
+        /**
+         * Returns the key of the child.
+         * 
+         * @return A <code>String</code> key.
+         */
+        public String getKey()
+        {
+            return (this._key);
+        }
+        
+        /**
+         * Returns the tags of the child.
+         * 
+         * @return An unmodifiable <code>List</code> of <code>String</code>
+         *         tags. Empty if the child has none.
+         */
+        public List<String> getTags()
+        {
+            return (Collections.unmodifiableList(Arrays.asList(this._tags)));
+        }
+        
+        /**
+         * Returns the time the definition was written.
+         * 
+         * @return A <code>long</code> value in milliseconds since the epoch.
+         */
+        public long getTime()
+        {
+            return (this._time);
+        }
+        
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString()
+        {
+            StringBuilder builder = new StringBuilder();
+            builder.append("Definition [key=");
+            builder.append(this._key);
+            builder.append(", className=");
+            builder.append(this._className);
+            builder.append(", tags=");
+            builder.append(Arrays.toString(this._tags));
+            builder.append(", time=");
+            builder.append(this._time);
+            builder.append("]");
+            return builder.toString();
+        }
+    }
+    
+    /*
+     * A read of the file that is retried while the writer changes it.
+     */
+    private static interface Read<T>
+    {
+        T read();
+    }
+    
+    private static final int    MAGIC             = 0x4F465352;
+    
+    private static final int    VERSION           = 1;
+    
+    /*
+     * The positions of the header fields.
+     */
+    private static final int    SLOT_COUNT        = 8;
+    
+    private static final int    DATA_SIZE         = 12;
+    
+    private static final int    SEQUENCE          = 16;
+    
+    private static final int    DEFINITION_COUNT  = 24;
+    
+    private static final int    USED_SLOTS        = 28;
+    
+    private static final int    DATA_END          = 32;
+    
+    private static final int    HEADER_LENGTH     = 40;
+    
+    private static final int    SLOT_LENGTH       = 12;
+    
+    private static final int    REMOVED           = -1;
+    
+    /*
+     * How long a reader waits for a writer that stopped in the middle of a
+     * change.
+     */
+    private static final long   MAX_READ_NANOS    = TimeUnit.SECONDS
+                                                          .toNanos(5);
+    
+    /*
+     * Order the reads and writes of the file. Java 8 has no public fence, so
+     * the fences of sun.misc.Unsafe are looked up once. Null when they are
+     * not there, and a volatile write, a full fence in HotSpot, is used.
+     */
+    private static final MethodHandle LOAD_FENCE  = findFence("loadFence");
+    
+    private static final MethodHandle STORE_FENCE = findFence("storeFence");
+    
+    private static volatile int       s_fence;
+    
+    private final ByteBuffer    _buffer;
+    
+    private final int           _dataStart;
+    
+    private final Path          _file;
+    
+    private final FileLock      _lock;
+    
+    private final FileChannel   _lockChannel;
+    
+    private final int           _maxDefinitions;
+    
+    private final int           _slotCount;
+    
+    private volatile boolean    _isClosed;
+    
+    private OFactorySharedRegistry(final Path file, final ByteBuffer buffer,
+            final FileChannel lockChannel, final FileLock lock)
+            throws IOException
+    {
+        buffer.order(ByteOrder.nativeOrder());
+        if (buffer.capacity() < HEADER_LENGTH || buffer.getInt(0) != MAGIC
+                || buffer.getInt(4) != VERSION)
+        {
+            throw (new IOException("The file " + file
+                    + " is not an OFactory shared registry."));
+        }
+        this._file = file;
+        this._buffer = buffer;
+        this._lockChannel = lockChannel;
+        this._lock = lock;
+        this._slotCount = buffer.getInt(SLOT_COUNT);
+        this._maxDefinitions = this._slotCount / 2;
+        this._dataStart = HEADER_LENGTH + this._slotCount * SLOT_LENGTH;
+        if (this._slotCount <= 0
+                || Integer.bitCount(this._slotCount) != 1
+                || (long) this._dataStart + buffer.getInt(DATA_SIZE) > buffer
+                        .capacity())
+        {
+            throw (new IOException("The shared registry " + file
+                    + " is corrupt."));
+        }
+    }
+    
+    /**
+     * Creates the registry file as its writer, replacing the file if it
+     * exists. Only one process can be the writer of a file at a time.
+     * 
+     * @param file
+     *            The <code>Path</code> of the registry file.
+     * @param maxDefinitions
+     *            The number of definitions the registry can hold.
+     * @param dataSize
+     *            The number of bytes the records of the definitions can take.
+     * 
+     * @return A writable <code>OFactorySharedRegistry</code> instance.
+     * 
+     * @throws IOException
+     *             if the file cannot be created.
+     * @throws OFactorySysException
+     *             if another writer has the file open.
+     */
+    public static OFactorySharedRegistry create(final Path file,
+            final int maxDefinitions, final int dataSize) throws IOException
+    {
+        Validate.isNotNull(OFactorySharedRegistry.class, file);
+        Validate.isTrue(OFactorySharedRegistry.class, maxDefinitions > 0
+                && maxDefinitions <= (1 << 24));
+        Validate.isTrue(OFactorySharedRegistry.class, dataSize > 0);
+        
+        final Path directory = file.toAbsolutePath().getParent();
+        if (directory != null)
+        {
+            Files.createDirectories(directory);
+        }
+        final FileChannel lockChannel = FileChannel.open(
+                file.resolveSibling(file.getFileName() + ".lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock = null;
+        try
+        {
+            lock = lockChannel.tryLock();
+        }
+        catch (final OverlappingFileLockException e)
+        {
+            // held by this process.
+        }
+        if (lock == null)
+        {
+            lockChannel.close();
+            throw (new OFactorySysException(
+                    "Another writer has the shared registry open - " + file));
+        }
+        
+        try
+        {
+            final int slotCount = Integer.highestOneBit(maxDefinitions * 2 - 1) << 1;
+            final long size = HEADER_LENGTH + (long) slotCount * SLOT_LENGTH
+                    + dataSize;
+            Validate.isTrue(OFactorySharedRegistry.class,
+                    size <= Integer.MAX_VALUE);
+            
+            // readers of the old file keep it until they close.
+            final Path temporary = file.resolveSibling(file.getFileName()
+                    + ".tmp");
+            Files.deleteIfExists(temporary);
+            final FileChannel channel = FileChannel.open(temporary,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            try
+            {
+                final MappedByteBuffer buffer = channel.map(
+                        FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.order(ByteOrder.nativeOrder());
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(SLOT_COUNT, slotCount);
+                buffer.putInt(DATA_SIZE, dataSize);
+                buffer.force();
+            }
+            finally
+            {
+                channel.close();
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            final FileChannel fileChannel = FileChannel.open(file,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try
+            {
+                return (new OFactorySharedRegistry(file, fileChannel.map(
+                        FileChannel.MapMode.READ_WRITE, 0, size), lockChannel,
+                        lock));
+            }
+            finally
+            {
+                fileChannel.close();
+            }
+        }
+        catch (final IOException | RuntimeException e)
+        {
+            lock.release();
+            lockChannel.close();
+            throw (e);
+        }
+    }
+    
+    /**
+     * Opens the registry file as a reader.
+     * 
+     * @param file
+     *            The <code>Path</code> of the registry file.
+     * 
+     * @return A read-only <code>OFactorySharedRegistry</code> instance.
+     * 
+     * @throws IOException
+     *             if the file cannot be read or is not a registry.
+     */
+    public static OFactorySharedRegistry open(final Path file)
+            throws IOException
+    {
+        Validate.isNotNull(OFactorySharedRegistry.class, file);
+        
+        final FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ);
+        try
+        {
+            return (new OFactorySharedRegistry(file, channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, channel.size()), null,
+                    null));
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+    
+    private static void fence(final MethodHandle fence)
+    {
+        if (fence == null)
+        {
+            s_fence = 0;
+            return;
+        }
+        try
+        {
+            fence.invokeExact();
+        }
+        catch (final Throwable e)
+        {
+            // the fences throw nothing.
+            throw (new AssertionError(e));
+        }
+    }
+    
+    /*
+     * Returns a fence of sun.misc.Unsafe bound to its instance, or null if
+     * it cannot be found.
+     */
+    private static MethodHandle findFence(final String name)
+    {
+        try
+        {
+            final Class<?> type = Class.forName("sun.misc.Unsafe");
+            final Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return (MethodHandles.lookup()
+                    .findVirtual(type, name, MethodType.methodType(void.class))
+                    .bindTo(field.get(null)));
+        }
+        catch (final ReflectiveOperationException | RuntimeException e)
+        {
+            return (null);
+        }
+    }
+    
+    /*
+     * Keeps the reads of the file before the fence from moving after it.
+     */
+    private static void loadFence()
+    {
+        fence(LOAD_FENCE);
+    }
+    
+    /*
+     * Keeps the writes of the file before the fence from moving after it.
+     */
+    private static void storeFence()
+    {
+        fence(STORE_FENCE);
+    }
+    
+    private static int hashOf(final String key)
+    {
+        // spread the bits, as HashMap does.
+        final int hash = key.hashCode();
+        return (hash ^ (hash >>> 16));
+    }
+    
+    private static String readString(final ByteBuffer buffer)
+    {
+        final byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return (new String(bytes, StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Closes the registry. The writer releases the file to the next writer;
+     * the definitions stay in the file for readers.
+     * 
+     * @throws IOException
+     *             if the writer lock cannot be released.
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (!this._isClosed)
+        {
+            this._isClosed = true;
+            if (this._lock != null)
+            {
+                ((MappedByteBuffer) this._buffer).force();
+                this._lock.release();
+                this._lockChannel.close();
+            }
+        }
+    }
+    
+    /**
+     * Creates the children defined in the registry that are not bound in the
+     * factory, with their class names and tags.
+     * 
+     * @param factory
+     *            The <code>OFactory</code> to create the children in.
+     * 
+     * @return The number of children created.
+     * 
+     * @throws OFactoryChildException
+     *             if a child is bound to a key in the meantime.
+     */
+    public int createChildren(final OFactory<?> factory)
+            throws OFactoryChildException
+    {
+        Validate.isNotNull(this.getClass(), factory);
+        
+        int count = 0;
+        for (final Definition definition : this.getDefinitions())
+        {
+            if (!factory.containsChild(definition._key))
+            {
+                factory.create(definition._key, definition._className,
+                        definition._tags);
+                count++;
+            }
+        }
+        return (count);
+    }
+    
+    /**
+     * Returns the definition of a key.
+     * 
+     * @param key
+     *            A <code>String</code> key.
+     * 
+     * @return A <code>Definition</code> instance, or null if the key is not
+     *         defined.
+     * 
+     * @throws OFactorySysException
+     *             if the registry is closed or the writer stopped in the
+     *             middle of a change.
+     */
+    public Definition get(final String key)
+    {
+        Validate.isNotNullOrEmpty(this.getClass(), key);
+        
+        final int hash = hashOf(key);
+        return (this.read(new Read<Definition>()
+        {
+            @Override
+            public Definition read()
+            {
+                final int slot = OFactorySharedRegistry.this.find(key, hash);
+                return ((slot < 0) ? null : OFactorySharedRegistry.this
+                        .readDefinition(slot));
+            }
+        }));
+    }
+    
+    /**
+     * Returns the definitions in the registry, all as of one version.
+     * 
+     * @return A <code>List</code> of <code>Definition</code> instances.
+     * 
+     * @throws OFactorySysException
+     *             if the registry is closed or the writer stopped in the
+     *             middle of a change.
+     */
+    public List<Definition> getDefinitions()
+    {
+        return (this.read(new Read<List<Definition>>()
+        {
+            @Override
+            public List<Definition> read()
+            {
+                final List<Definition> definitions = new ArrayList<Definition>();
+                for (int slot = 0; slot < OFactorySharedRegistry.this._slotCount; slot++)
+                {
+                    if (OFactorySharedRegistry.this.lengthOf(slot) > 0)
+                    {
+                        definitions.add(OFactorySharedRegistry.this
+                                .readDefinition(slot));
+                    }
+                }
+                return (definitions);
+            }
+        }));
+    }
+    
+    /**
+     * Returns the path of the registry file.
+     * 
+     * @return A <code>Path</code> instance.
+     */
+    public Path getFile()
+    {
+        return (this._file);
+    }
+    
+    /**
+     * Returns the number of changes the writer has made to the registry.
+     * 
+     * @return A <code>long</code> value 0 &lt;= x.
+     */
+    public long getVersion()
+    {
+        return (this._buffer.getLong(SEQUENCE) / 2);
+    }
+    
+    /**
+     * Returns whether this process is the writer of the registry.
+     * 
+     * @return A <code>boolean</code> value.
+     */
+    public boolean isWriter()
+    {
+        return (this._lock != null);
+    }
+    
+    /**
+     * Writes the children of the factory to the registry.
+     * 
+     * @param factory
+     *            The <code>OFactory</code> whose children are written.
+     * 
+     * @return The number of definitions written.
+     * 
+     * @throws OFactorySysException
+     *             if this process is not the writer or the registry is full.
+     */
+    public int publish(final OFactory<?> factory)
+    {
+        Validate.isNotNull(this.getClass(), factory);
+        
+        final int[] count = new int[1];
+        factory.forEachChild(new Consumer<OFactoryChild>()
+        {
+            @Override
+            public void accept(final OFactoryChild child)
+            {
+                final String key = child.getKey();
+                final Set<String> tags = factory.getChildTags(key);
+                OFactorySharedRegistry.this.put(key, child.getClass()
+                        .getName(), tags.toArray(new String[tags.size()]));
+                count[0]++;
+            }
+        });
+        return (count[0]);
+    }
+    
+    /**
+     * Writes the definition of a key, replacing the definition it had.
+     * 
+     * @param key
+     *            A <code>String</code> key.
+     * @param className
+     *            A <code>String</code> fully qualified class name.
+     * @param tags
+     *            The <code>String</code> tags of the child. May be empty.
+     * 
+     * @throws OFactorySysException
+     *             if this process is not the writer or the registry is full.
+     */
+    public synchronized void put(final String key, final String className,
+            final String... tags)
+    {
+        Validate.isNotNullOrEmpty(this.getClass(), key);
+        Validate.isNotNullOrEmpty(this.getClass(), className);
+        Validate.isNotNull(this.getClass(), tags);
+        this.checkWriter();
+        
+        final ByteBuffer record = ByteBuffer.allocate(8 + 2 * 3
+                + 3 * (key.length() + className.length()) + 2
+                + tags.length * (2 + 3 * OFactory.TAG_MAX_LENGTH));
+        this.putString(record, key);
+        this.putString(record, className);
+        record.putShort((short) tags.length);
+        for (final String tag : tags)
+        {
+            this.putString(record, tag);
+        }
+        record.putLong(System.currentTimeMillis());
+        record.flip();
+        
+        final int hash = hashOf(key);
+        this.beginWrite();
+        try
+        {
+            int slot = this.find(key, hash);
+            final boolean isNew = (slot < 0);
+            if (isNew)
+            {
+                if (this._buffer.getInt(DEFINITION_COUNT) >= this._maxDefinitions)
+                {
+                    throw (new OFactorySysException("The shared registry "
+                            + this._file + " is full."));
+                }
+                if (this._buffer.getInt(USED_SLOTS) >= this._maxDefinitions
+                        + this._maxDefinitions / 2)
+                {
+                    this.compact(0);
+                }
+            }
+            if (this._buffer.getInt(DATA_SIZE)
+                    - this._buffer.getInt(DATA_END) < record.remaining())
+            {
+                this.compact(record.remaining());
+            }
+            if (isNew)
+            {
+                slot = this.freeSlot(hash);
+            }
+            this.writeRecord(slot, hash, record, isNew);
+        }
+        finally
+        {
+            this.endWrite();
+        }
+    }
+    
+    /**
+     * Removes the definition of a key.
+     * 
+     * @param key
+     *            A <code>String</code> key.
+     * 
+     * @return A <code>boolean</code> value true if the key was defined.
+     * 
+     * @throws OFactorySysException
+     *             if this process is not the writer.
+     */
+    public synchronized boolean remove(final String key)
+    {
+        Validate.isNotNullOrEmpty(this.getClass(), key);
+        this.checkWriter();
+        
+        final int slot = this.find(key, hashOf(key));
+        if (slot < 0)
+        {
+            return (false);
+        }
+        this.beginWrite();
+        try
+        {
+            this._buffer.putInt(this.slotPosition(slot) + 8, REMOVED);
+            this._buffer.putInt(DEFINITION_COUNT,
+                    this._buffer.getInt(DEFINITION_COUNT) - 1);
+        }
+        finally
+        {
+            this.endWrite();
+        }
+        return (true);
+    }
+    
+    /**
+     * Follows the CREATE and REMOVE events of an <code>OFactory</code> this
+     * registry is added to as an observer. Only a writer can be added.
+     * 
+     * @param observable
+     *            The <code>OFactory</code> that sent the event.
+     * @param arg
+     *            The <code>OFactory.Event</code>.
+     */
+    @Override
+    public void update(final Observable observable, final Object arg)
+    {
+        if (arg instanceof OFactory.Event)
+        {
+            final OFactory.Event<?> event = (OFactory.Event<?>) arg;
+            if (event.getType() == OFactory.Event.Type.CREATE)
+            {
+                final Set<String> tags = ((OFactory<?>) observable)
+                        .getChildTags(event.getKey());
+                this.put(event.getKey(), event.getChild().getClass()
+                        .getName(), tags.toArray(new String[tags.size()]));
+            }
+            else if (event.getType() == OFactory.Event.Type.REMOVE)
+            {
+                this.remove(event.getKey());
+            }
+        }
+    }
+    
+    private void beginWrite()
+    {
+        this._buffer.putLong(SEQUENCE, this._buffer.getLong(SEQUENCE) + 1);
+        storeFence();
+    }
+    
+    private void checkWriter()
+    {
+        if (this._lock == null)
+        {
+            throw (new OFactorySysException("The shared registry "
+                    + this._file + " was opened as a reader."));
+        }
+        if (this._isClosed)
+        {
+            throw (new OFactorySysException("The shared registry "
+                    + this._file + " is closed."));
+        }
+    }
+    
+    /*
+     * Rewrites the live records from the start of the data and the slots
+     * without removed definitions, so that space is left for a record.
+     */
+    private void compact(final int space)
+    {
+        final List<int[]> slots = new ArrayList<int[]>();
+        final List<byte[]> records = new ArrayList<byte[]>();
+        for (int slot = 0; slot < this._slotCount; slot++)
+        {
+            final int length = this.lengthOf(slot);
+            if (length > 0)
+            {
+                final byte[] bytes = new byte[length];
+                final ByteBuffer data = this._buffer.duplicate();
+                data.position(this._dataStart
+                        + this._buffer.getInt(this.slotPosition(slot) + 4));
+                data.get(bytes);
+                slots.add(new int[] { slot,
+                        this._buffer.getInt(this.slotPosition(slot)) });
+                records.add(bytes);
+            }
+        }
+        int end = 0;
+        for (final byte[] bytes : records)
+        {
+            end += bytes.length;
+        }
+        if (this._buffer.getInt(DATA_SIZE) - end < space)
+        {
+            throw (new OFactorySysException("The shared registry "
+                    + this._file + " is full."));
+        }
+        
+        for (int slot = 0; slot < this._slotCount; slot++)
+        {
+            this._buffer.putInt(this.slotPosition(slot) + 8, 0);
+        }
+        this._buffer.putInt(USED_SLOTS, 0);
+        this._buffer.putInt(DEFINITION_COUNT, 0);
+        this._buffer.putInt(DATA_END, 0);
+        for (int i = 0; i < records.size(); i++)
+        {
+            this.writeRecord(this.freeSlot(slots.get(i)[1]), slots.get(i)[1],
+                    ByteBuffer.wrap(records.get(i)), true);
+        }
+    }
+    
+    private void endWrite()
+    {
+        storeFence();
+        this._buffer.putLong(SEQUENCE, this._buffer.getLong(SEQUENCE) + 1);
+    }
+    
+    /*
+     * Returns the slot of a key, or -1 if the key is not defined.
+     */
+    private int find(final String key, final int hash)
+    {
+        final int mask = this._slotCount - 1;
+        for (int i = 0, slot = hash & mask; i < this._slotCount; i++, slot = (slot + 1)
+                & mask)
+        {
+            final int length = this.lengthOf(slot);
+            if (length == 0)
+            {
+                return (-1);
+            }
+            if (length > 0
+                    && this._buffer.getInt(this.slotPosition(slot)) == hash)
+            {
+                final ByteBuffer data = this.recordOf(slot);
+                if (readString(data).equals(key))
+                {
+                    return (slot);
+                }
+            }
+        }
+        return (-1);
+    }
+    
+    /*
+     * Returns the first empty or removed slot for a hash.
+     */
+    private int freeSlot(final int hash)
+    {
+        final int mask = this._slotCount - 1;
+        int slot = hash & mask;
+        while (this.lengthOf(slot) > 0)
+        {
+            slot = (slot + 1) & mask;
+        }
+        return (slot);
+    }
+    
+    private int lengthOf(final int slot)
+    {
+        return (this._buffer.getInt(this.slotPosition(slot) + 8));
+    }
+    
+    private void putString(final ByteBuffer buffer, final String value)
+    {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+    
+    /*
+     * Runs a read until the writer did not change the file while it ran.
+     * A read that sees a change in progress may fail or loop on torn data,
+     * so it is bounded and its failures are retried.
+     */
+    private <T> T read(final Read<T> read)
+    {
+        if (this._isClosed)
+        {
+            throw (new OFactorySysException("The shared registry "
+                    + this._file + " is closed."));
+        }
+        final long start = System.nanoTime();
+        while (true)
+        {
+            final long sequence = this._buffer.getLong(SEQUENCE);
+            if ((sequence & 1) == 0)
+            {
+                loadFence();
+                T result = null;
+                try
+                {
+                    result = read.read();
+                }
+                catch (final RuntimeException e)
+                {
+                    // torn by a change, or corrupt if the sequence held.
+                    loadFence();
+                    if (this._buffer.getLong(SEQUENCE) == sequence)
+                    {
+                        throw (new OFactorySysException("The shared registry "
+                                + this._file + " is corrupt.", e));
+                    }
+                    continue;
+                }
+                loadFence();
+                if (this._buffer.getLong(SEQUENCE) == sequence)
+                {
+                    return (result);
+                }
+            }
+            if (System.nanoTime() - start > MAX_READ_NANOS)
+            {
+                throw (new OFactorySysException("The writer of the shared registry "
+                        + this._file + " stopped in the middle of a change."));
+            }
+            Thread.yield();
+        }
+    }
+    
+    private Definition readDefinition(final int slot)
+    {
+        final ByteBuffer data = this.recordOf(slot);
+        final String key = readString(data);
+        final String className = readString(data);
+        final String[] tags = new String[data.getShort()];
+        for (int i = 0; i < tags.length; i++)
+        {
+            tags[i] = readString(data);
+        }
+        return (new Definition(key, className, tags, data.getLong()));
+    }
+    
+    /*
+     * Returns a buffer over the record of a slot, bounded so that torn
+     * positions fail rather than read outside the data.
+     */
+    private ByteBuffer recordOf(final int slot)
+    {
+        final int position = this._buffer.getInt(this.slotPosition(slot) + 4);
+        final int length = this.lengthOf(slot);
+        final ByteBuffer data = this._buffer.duplicate();
+        data.position(this._dataStart + position);
+        data.limit(this._dataStart + position + length);
+        return (data.slice());
+    }
+    
+    private int slotPosition(final int slot)
+    {
+        return (HEADER_LENGTH + slot * SLOT_LENGTH);
+    }
+    
+    /*
+     * Appends a record to the data and points a slot at it.
+     */
+    private void writeRecord(final int slot, final int hash,
+            final ByteBuffer record, final boolean isNew)
+    {
+        final int end = this._buffer.getInt(DATA_END);
+        final int length = record.remaining();
+        final ByteBuffer data = this._buffer.duplicate();
+        data.position(this._dataStart + end);
+        data.put(record);
+        
+        final int position = this.slotPosition(slot);
+        if (isNew && this.lengthOf(slot) == 0)
+        {
+            this._buffer.putInt(USED_SLOTS,
+                    this._buffer.getInt(USED_SLOTS) + 1);
+        }
+        this._buffer.putInt(position, hash);
+        this._buffer.putInt(position + 4, end);
+        this._buffer.putInt(position + 8, length);
+        this._buffer.putInt(DATA_END, end + length);
+        if (isNew)
+        {
+            this._buffer.putInt(DEFINITION_COUNT,
+                    this._buffer.getInt(DEFINITION_COUNT) + 1);
+        }
+    }
+}
@@ -0,0 +1,488 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.gabsocial.gabdev.validate.Validate;
+
+
+/**
+ * <pre>
+ * A record of the child classes an application creates, kept in a file from
+ * one run to the next so that the classes can be loaded before they are
+ * needed.
+ * 
+ * On startup, create a manifest for the file and call preload(threads).  The
+ * classes named in the file are loaded, initialized and have their no
+ * argument constructor looked up on background threads, so the first create
+ * of each does not load and link the class on the request thread.  Then call
+ * OFactory.setStartupManifest(manifest) on each factory; the classes the
+ * factories create are recorded in order of their first create.  Call
+ * save() once the application is warmed up to write the recorded classes to
+ * the file for the next run.
+ * 
+ * getReport() tells how many classes were preloaded, how many first creates
+ * found their class already preloaded and the loading time those creates
+ * were saved.  One manifest may be shared by several factories.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public final class OFactoryStartupManifest
+{
+    /**
+     * A snapshot of the work done by the preload and the creates it served.
+     */
+    public static final class Report
+    {
+        private final List<String> _failedClassNames;
+        
+        private final int          _hits;
+        
+        private final int          _misses;
+        
+        private final long         _preloadNanos;
+        
+        private final int          _preloaded;
+        
+        private final long         _savedNanos;
+        
+        private final long         _wallNanos;
+        
+        Report(final int preloaded, final List<String> failedClassNames,
+                final long preloadNanos, final long wallNanos, final int hits,
+                final int misses, final long savedNanos)
+        {
+            this._preloaded = preloaded;
+            this._failedClassNames = failedClassNames;
+            this._preloadNanos = preloadNanos;
+            this._wallNanos = wallNanos;
+            this._hits = hits;
+            this._misses = misses;
+            this._savedNanos = savedNanos;
+        }
+        
+        /**
+         * Returns the names in the manifest that could not be preloaded,
+         * such as classes that have been removed.
+         * 
+         * @return An unmodifiable <code>List</code> of <code>String</code>
+         *         class names.
+         */
+        public List<String> getFailedClassNames()
+        {
+            return (this._failedClassNames);
+        }
+        
+        /**
+         * Returns the number of first creates of a class that found the class
+         * preloaded.
+         * 
+         * @return An <code>int</code> count.
+         */
+        public int getHits()
+        {
+            return (this._hits);
+        }
+        
+        /**
+         * Returns the number of first creates of a class that found the class
+         * not preloaded, because it was not in the manifest or its preload
+         * had not finished.
+         * 
+         * @return An <code>int</code> count.
+         */
+        public int getMisses()
+        {
+            return (this._misses);
+        }
+        
+        /**
+         * Returns the number of classes preloaded.
+         * 
+         * @return An <code>int</code> count.
+         */
+        public int getPreloaded()
+        {
+            return (this._preloaded);
+        }
+        
+        /**
+         * Returns the time the background threads spent preloading, summed
+         * over the classes.
+         * 
+         * @param unit
+         *            The <code>TimeUnit</code> of the returned time.
+         * 
+         * @return A <code>long</code> time.
+         */
+        public long getPreloadTime(final TimeUnit unit)
+        {
+            return (unit.convert(this._preloadNanos, TimeUnit.NANOSECONDS));
+        }
+        
+        /**
+         * Returns the loading time taken off the threads that created
+         * children: the preload time of each class whose first create found
+         * it preloaded.
+         * 
+         * @param unit
+         *            The <code>TimeUnit</code> of the returned time.
+         * 
+         * @return A <code>long</code> time.
+         */
+        public long getSavedTime(final TimeUnit unit)
+        {
+            return (unit.convert(this._savedNanos, TimeUnit.NANOSECONDS));
+        }
+        
+        /**
+         * Returns the time from the start to the end of the preload, or the
+         * time so far if it has not ended.
+         * 
+         * @param unit
+         *            The <code>TimeUnit</code> of the returned time.
+         * 
+         * @return A <code>long</code> time.
+         */
+        public long getWallTime(final TimeUnit unit)
+        {
+            return (unit.convert(this._wallNanos, TimeUnit.NANOSECONDS));
+        }
+        
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString()
+        {
+            StringBuilder builder = new StringBuilder();
+            builder.append("Report [preloaded=");
+            builder.append(this._preloaded);
+            builder.append(", failed=");
+            builder.append(this._failedClassNames);
+            builder.append(", preloadMillis=");
+            builder.append(this.getPreloadTime(TimeUnit.MILLISECONDS));
+            builder.append(", wallMillis=");
+            builder.append(this.getWallTime(TimeUnit.MILLISECONDS));
+            builder.append(", hits=");
+            builder.append(this._hits);
+            builder.append(", misses=");
+            builder.append(this._misses);
+            builder.append(", savedMillis=");
+            builder.append(this.getSavedTime(TimeUnit.MILLISECONDS));
+            builder.append("]");
+            return builder.toString();
+        }
+    }
+    
+    /**
+     * The first line of a manifest file. Lines that start with # are
+     * ignored.
+     */
+    static final String                          HEADER            = "# OFactory startup manifest - one child class name per line.";
+    
+    private final Path                           _file;
+    
+    private final ConcurrentLinkedQueue<String>  _failedClassNames = new ConcurrentLinkedQueue<String>();
+    
+    private final LongAdder                      _hits             = new LongAdder();
+    
+    private final LongAdder                      _misses           = new LongAdder();
+    
+    /*
+     * The preload time of each preloaded class.
+     */
+    private final ConcurrentMap<String, Long>    _preloadNanos     = new ConcurrentHashMap<String, Long>();
+    
+    /*
+     * The classes created, in order of their first create.
+     */
+    private final ConcurrentLinkedQueue<String>  _recorded         = new ConcurrentLinkedQueue<String>();
+    
+    private final ConcurrentMap<String, Boolean> _recordedSet      = new ConcurrentHashMap<String, Boolean>();
+    
+    private final LongAdder                      _savedNanos       = new LongAdder();
+    
+    private volatile long                        _preloadEnd;
+    
+    private volatile long                        _preloadStart;
+    
+    /*
+     * Reads the class names in a manifest file, or none if it does not
+     * exist.
+     */
+    private static List<String> read(final Path file) throws IOException
+    {
+        final List<String> classNames = new ArrayList<String>();
+        if (Files.exists(file))
+        {
+            for (final String line : Files.readAllLines(file,
+                    StandardCharsets.UTF_8))
+            {
+                final String className = line.trim();
+                if (className.length() > 0 && !className.startsWith("#"))
+                {
+                    classNames.add(className);
+                }
+            }
+        }
+        return (classNames);
+    }
+    
+    /**
+     * Constructor with the file the manifest is read from and saved to.
+     * 
+     * @param file
+     *            A <code>Path</code> instance. The file need not exist.
+     */
+    public OFactoryStartupManifest(final Path file)
+    {
+        Validate.isNotNull(this.getClass(), file);
+        this._file = file;
+    }
+    
+    /**
+     * Returns the file the manifest is read from and saved to.
+     * 
+     * @return A <code>Path</code> instance.
+     */
+    public Path getFile()
+    {
+        return (this._file);
+    }
+    
+    /**
+     * Returns the class names recorded so far, in order of their first
+     * create.
+     * 
+     * @return A <code>List</code> of <code>String</code> class names.
+     */
+    public List<String> getRecordedClassNames()
+    {
+        return (new ArrayList<String>(this._recorded));
+    }
+    
+    /**
+     * Returns a snapshot of the work done by the preload and the creates it
+     * served.
+     * 
+     * @return A <code>Report</code> instance.
+     */
+    public Report getReport()
+    {
+        long preloadNanos = 0L;
+        for (final Long nanos : this._preloadNanos.values())
+        {
+            preloadNanos += nanos;
+        }
+        final long start = this._preloadStart;
+        final long end = this._preloadEnd;
+        final long wallNanos = (start == 0L) ? 0L : ((end == 0L) ? System
+                .nanoTime() : end) - start;
+        return (new Report(this._preloadNanos.size(),
+                Collections.unmodifiableList(new ArrayList<String>(
+                        this._failedClassNames)), preloadNanos, wallNanos,
+                this._hits.intValue(), this._misses.intValue(),
+                this._savedNanos.sum()));
+    }
+    
+    /**
+     * Reads the class names in the file and preloads the classes on
+     * background daemon threads: each class is loaded and initialized with
+     * the class loader of <code>OFactory</code> and its no argument
+     * constructor is looked up. No child is created. A name that cannot be
+     * loaded is listed in the report as failed. Does nothing if the file
+     * does not exist.
+     * 
+     * @param threads
+     *            The number of background threads. Must be greater than
+     *            zero.
+     * 
+     * @return A <code>CompletableFuture</code> that is completed with a
+     *         report once every class has been preloaded.
+     * 
+     * @throws IOException
+     *             if the file exists and cannot be read.
+     */
+    public CompletableFuture<Report> preload(final int threads)
+            throws IOException
+    {
+        Validate.isTrue(this.getClass(), threads > 0);
+        
+        final List<String> classNames = read(this._file);
+        this._preloadStart = System.nanoTime();
+        this._preloadEnd = 0L;
+        if (classNames.isEmpty())
+        {
+            this._preloadEnd = System.nanoTime();
+            return (CompletableFuture.completedFuture(this.getReport()));
+        }
+        
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(threads, classNames.size()), new ThreadFactory()
+                {
+                    private final AtomicInteger _count = new AtomicInteger();
+                    
+                    @Override
+                    public Thread newThread(final Runnable runnable)
+                    {
+                        final Thread thread = new Thread(runnable,
+                                "ofactory-preload-"
+                                        + this._count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return (thread);
+                    }
+                });
+        final ClassLoader loader = OFactory.class.getClassLoader();
+        final List<CompletableFuture<Void>> preloads = new ArrayList<CompletableFuture<Void>>();
+        for (final String className : classNames)
+        {
+            preloads.add(CompletableFuture.runAsync(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    OFactoryStartupManifest.this.preloadClass(className,
+                            loader);
+                }
+            }, executor));
+        }
+        executor.shutdown();
+        
+        return (CompletableFuture.allOf(
+                preloads.toArray(new CompletableFuture<?>[preloads.size()]))
+                .thenApply(new Function<Void, Report>()
+                {
+                    @Override
+                    public Report apply(final Void ignored)
+                    {
+                        OFactoryStartupManifest.this._preloadEnd = System
+                                .nanoTime();
+                        return (OFactoryStartupManifest.this.getReport());
+                    }
+                }));
+    }
+    
+    /*
+     * Loads and initializes a class and looks up its constructor, recording
+     * the time taken.
+     */
+    private void preloadClass(final String className, final ClassLoader loader)
+    {
+        final long start = System.nanoTime();
+        try
+        {
+            Class.forName(className, true, loader).getDeclaredConstructor();
+            this._preloadNanos.put(className, System.nanoTime() - start);
+        }
+        catch (final ClassNotFoundException | LinkageError
+                | NoSuchMethodException | RuntimeException e)
+        {
+            this._failedClassNames.add(className);
+        }
+    }
+    
+    /**
+     * Records the first create of a class and whether the class was
+     * preloaded. Called by <code>OFactory</code> for every child it
+     * constructs.
+     * 
+     * @param className
+     *            The <code>String</code> class name of the child.
+     */
+    void recordCreate(final String className)
+    {
+        if (!this._recordedSet.containsKey(className)
+                && this._recordedSet.putIfAbsent(className, Boolean.TRUE) == null)
+        {
+            this._recorded.add(className);
+            final Long nanos = this._preloadNanos.get(className);
+            if (nanos == null)
+            {
+                this._misses.increment();
+            }
+            else
+            {
+                this._hits.increment();
+                this._savedNanos.add(nanos);
+            }
+        }
+    }
+    
+    /**
+     * Writes the recorded class names to the file, replacing it. The file is
+     * written to a temporary file first, so a reader never sees a partial
+     * manifest.
+     * 
+     * @throws IOException
+     *             if the file cannot be written.
+     */
+    public void save() throws IOException
+    {
+        final List<String> lines = new ArrayList<String>();
+        lines.add(HEADER);
+        lines.addAll(this._recorded);
+        
+        final Path directory = this._file.toAbsolutePath().getParent();
+        if (directory != null)
+        {
+            Files.createDirectories(directory);
+        }
+        final Path temporary = this._file.resolveSibling(this._file
+                .getFileName() + ".tmp");
+        Files.write(temporary, lines, StandardCharsets.UTF_8);
+        Files.move(temporary, this._file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return ("OFactoryStartupManifest [file=" + this._file + ", "
+                + this.getReport() + "]");
+    }
+}
@@ -56,7 +56,27 @@ public class OFactorySysException extends RuntimeException
      */
     public OFactorySysException(final String message, final Throwable throwable)
     {
-        super(message, null);
+        super(message, throwable);
+    }
+    
+    /**
+     * Constructor with a message and a throwable that can skip filling in
+     * the stack trace. A stackless exception is cheap to create and, having
+     * suppression disabled as well, can be preallocated and thrown more than
+     * once for control flow.
+     * 
+     * @param message
+     *            A <code>String</code> message.
+     * @param throwable
+     *            An instance of <code>Throwable</code>. May be null.
+     * @param isStackless
+     *            If true the stack trace is not filled in and suppressed
+     *            exceptions are not recorded.
+     */
+    protected OFactorySysException(final String message, final Throwable throwable,
+            final boolean isStackless)
+    {
+        super(message, throwable, !isStackless, !isStackless);
     }
     
     /**
@@ -0,0 +1,37 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+/**
+ * 
+ * An interface to implement if a child may be passivated by its
+ * <code>OFactory</code> when it is idle. A passivated child is written to
+ * storage with its checkpoint() state, closed with closeWithoutRemove() and
+ * dropped from the child table. The next get(key) creates a new child,
+ * initializes it with the settings of the old one and passes the state to
+ * restore(state), rather than having the child build its state again.
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public abstract interface PassivatableOFactoryChild extends
+        CheckpointableOFactoryChild
+{
+    // the checkpoint() and restore(state) methods hold the state.
+}
@@ -0,0 +1,781 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+
+/**
+ * <pre>
+ * An immutable hash array mapped trie (HAMT) used by the <code>OFactory</code>
+ * to hold its children.
+ *
+ * Every instance is a point-in-time value.  The plus(key, value) and
+ * minus(key) methods return a new map that shares all untouched nodes with the
+ * original, so an update costs O(log32 n) and handing out the current map as
+ * a snapshot costs O(1).  Iterating an instance is never affected by later
+ * updates.
+ *
+ * The valueSpliterator() method returns a spliterator that splits along the
+ * nodes of the trie so the values can be processed by a parallel stream.
+ *
+ * The <code>Map</code> mutators inherited from <code>AbstractMap</code> throw
+ * an <code>UnsupportedOperationException</code>.  Null keys are not supported.
+ * </pre>
+ *
+ * @author Gregory Brown (sysdevone)
+ */
+final class PersistentHashMap<K, V> extends AbstractMap<K, V>
+{
+    /**
+     * A trie node. The array holds key/value pairs. In a bitmap node a null
+     * key marks that the value slot holds a sub node.
+     */
+    abstract static class Node
+    {
+        abstract Object[] array();
+
+        abstract Node assoc(int shift, int hash, Object key, Object value,
+                boolean[] isAdded);
+
+        abstract Object find(int shift, int hash, Object key);
+
+        abstract Node without(int shift, int hash, Object key);
+    }
+
+    /*
+     * A node that holds up to 32 slots selected by five bits of the hash.
+     */
+    static final class BitmapNode extends Node
+    {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final Object[]  _array;
+        private final int       _bitmap;
+
+        BitmapNode(final int bitmap, final Object[] array)
+        {
+            this._bitmap = bitmap;
+            this._array = array;
+        }
+
+        @Override
+        Object[] array()
+        {
+            return (this._array);
+        }
+
+        @Override
+        Node assoc(final int shift, final int hash, final Object key,
+                final Object value, final boolean[] isAdded)
+        {
+            final int bit = bitpos(hash, shift);
+            final int index = 2 * this.index(bit);
+
+            if ((this._bitmap & bit) == 0)
+            {
+                final Object[] array = new Object[this._array.length + 2];
+                System.arraycopy(this._array, 0, array, 0, index);
+                array[index] = key;
+                array[index + 1] = value;
+                System.arraycopy(this._array, index, array, index + 2,
+                        this._array.length - index);
+                isAdded[0] = true;
+                return (new BitmapNode(this._bitmap | bit, array));
+            }
+
+            final Object existingKey = this._array[index];
+            final Object existingValue = this._array[index + 1];
+            if (existingKey == null)
+            {
+                final Node node = ((Node) existingValue).assoc(shift + 5, hash,
+                        key, value, isAdded);
+                if (node == existingValue)
+                {
+                    return (this);
+                }
+                return (new BitmapNode(this._bitmap, cloneAndSet(this._array,
+                        index + 1, node)));
+            }
+            else if (key.equals(existingKey))
+            {
+                if (value == existingValue)
+                {
+                    return (this);
+                }
+                return (new BitmapNode(this._bitmap, cloneAndSet(this._array,
+                        index + 1, value)));
+            }
+            else
+            {
+                isAdded[0] = true;
+                final Node node = createNode(shift + 5, existingKey,
+                        existingValue, hash, key, value);
+                final Object[] array = cloneAndSet(this._array, index, null);
+                array[index + 1] = node;
+                return (new BitmapNode(this._bitmap, array));
+            }
+        }
+
+        @Override
+        Object find(final int shift, final int hash, final Object key)
+        {
+            final int bit = bitpos(hash, shift);
+            if ((this._bitmap & bit) == 0)
+            {
+                return (NOT_FOUND);
+            }
+            final int index = 2 * this.index(bit);
+            final Object existingKey = this._array[index];
+            final Object existingValue = this._array[index + 1];
+            if (existingKey == null)
+            {
+                return (((Node) existingValue).find(shift + 5, hash, key));
+            }
+            else if (key.equals(existingKey))
+            {
+                return (existingValue);
+            }
+            else
+            {
+                return (NOT_FOUND);
+            }
+        }
+
+        @Override
+        Node without(final int shift, final int hash, final Object key)
+        {
+            final int bit = bitpos(hash, shift);
+            if ((this._bitmap & bit) == 0)
+            {
+                return (this);
+            }
+            final int index = 2 * this.index(bit);
+            final Object existingKey = this._array[index];
+            final Object existingValue = this._array[index + 1];
+            if (existingKey == null)
+            {
+                final Node node = ((Node) existingValue).without(shift + 5,
+                        hash, key);
+                if (node == existingValue)
+                {
+                    return (this);
+                }
+                else if (node != null)
+                {
+                    return (new BitmapNode(this._bitmap, cloneAndSet(
+                            this._array, index + 1, node)));
+                }
+                else if (this._bitmap == bit)
+                {
+                    return (null);
+                }
+                else
+                {
+                    return (new BitmapNode(this._bitmap ^ bit, removePair(
+                            this._array, index)));
+                }
+            }
+            else if (key.equals(existingKey))
+            {
+                if (this._bitmap == bit)
+                {
+                    return (null);
+                }
+                return (new BitmapNode(this._bitmap ^ bit, removePair(
+                        this._array, index)));
+            }
+            else
+            {
+                return (this);
+            }
+        }
+
+        private int index(final int bit)
+        {
+            return (Integer.bitCount(this._bitmap & (bit - 1)));
+        }
+    }
+
+    /*
+     * A node that holds pairs whose keys share the full 32 bit hash.
+     */
+    static final class CollisionNode extends Node
+    {
+        private final Object[] _array;
+        private final int      _hash;
+
+        CollisionNode(final int hash, final Object[] array)
+        {
+            this._hash = hash;
+            this._array = array;
+        }
+
+        @Override
+        Object[] array()
+        {
+            return (this._array);
+        }
+
+        @Override
+        Node assoc(final int shift, final int hash, final Object key,
+                final Object value, final boolean[] isAdded)
+        {
+            if (hash == this._hash)
+            {
+                final int index = this.indexOf(key);
+                if (index == -1)
+                {
+                    final Object[] array = new Object[this._array.length + 2];
+                    System.arraycopy(this._array, 0, array, 0,
+                            this._array.length);
+                    array[this._array.length] = key;
+                    array[this._array.length + 1] = value;
+                    isAdded[0] = true;
+                    return (new CollisionNode(this._hash, array));
+                }
+                else if (this._array[index + 1] == value)
+                {
+                    return (this);
+                }
+                else
+                {
+                    return (new CollisionNode(this._hash, cloneAndSet(
+                            this._array, index + 1, value)));
+                }
+            }
+            else
+            {
+                // nest this collision node in a bitmap node and retry.
+                return (new BitmapNode(bitpos(this._hash, shift), new Object[] {
+                        null, this }).assoc(shift, hash, key, value, isAdded));
+            }
+        }
+
+        @Override
+        Object find(final int shift, final int hash, final Object key)
+        {
+            final int index = this.indexOf(key);
+            return ((index == -1) ? NOT_FOUND : this._array[index + 1]);
+        }
+
+        @Override
+        Node without(final int shift, final int hash, final Object key)
+        {
+            final int index = this.indexOf(key);
+            if (index == -1)
+            {
+                return (this);
+            }
+            else if (this._array.length == 2)
+            {
+                return (null);
+            }
+            else
+            {
+                return (new CollisionNode(this._hash, removePair(this._array,
+                        index)));
+            }
+        }
+
+        private int indexOf(final Object key)
+        {
+            for (int i = 0; i < this._array.length; i += 2)
+            {
+                if (key.equals(this._array[i]))
+                {
+                    return (i);
+                }
+            }
+            return (-1);
+        }
+    }
+
+    /*
+     * Walks the trie depth first with an explicit stack of node arrays.
+     */
+    static final class EntryIterator<K, V> implements Iterator<Entry<K, V>>
+    {
+        // 7 levels of 5 bits plus a collision node.
+        private final Object[][] _arrays  = new Object[8][];
+        private int              _depth   = -1;
+        private final int[]      _indexes = new int[8];
+        private Object           _nextKey;
+        private Object           _nextValue;
+
+        EntryIterator(final Node root)
+        {
+            if (root != null)
+            {
+                this.push(root.array());
+                this.advance();
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return (this._nextKey != null);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Entry<K, V> next()
+        {
+            if (this._nextKey == null)
+            {
+                throw (new NoSuchElementException());
+            }
+            final Entry<K, V> entry = new SimpleImmutableEntry<K, V>(
+                    (K) this._nextKey, (V) this._nextValue);
+            this.advance();
+            return (entry);
+        }
+
+        /*
+         * Returns the next value without creating an entry.
+         */
+        @SuppressWarnings("unchecked")
+        V nextValue()
+        {
+            if (this._nextKey == null)
+            {
+                throw (new NoSuchElementException());
+            }
+            final V value = (V) this._nextValue;
+            this.advance();
+            return (value);
+        }
+
+        @Override
+        public void remove()
+        {
+            throw (new UnsupportedOperationException(
+                    "A PersistentHashMap may not be modified."));
+        }
+
+        private void advance()
+        {
+            this._nextKey = null;
+            this._nextValue = null;
+            while (this._depth >= 0)
+            {
+                final Object[] array = this._arrays[this._depth];
+                final int index = this._indexes[this._depth];
+                if (index >= array.length)
+                {
+                    this._arrays[this._depth] = null;
+                    this._depth--;
+                    continue;
+                }
+                this._indexes[this._depth] = index + 2;
+                if (array[index] == null)
+                {
+                    this.push(((Node) array[index + 1]).array());
+                }
+                else
+                {
+                    this._nextKey = array[index];
+                    this._nextValue = array[index + 1];
+                    return;
+                }
+            }
+        }
+
+        private void push(final Object[] array)
+        {
+            this._depth++;
+            this._arrays[this._depth] = array;
+            this._indexes[this._depth] = 0;
+        }
+    }
+
+    /*
+     * Splits the values of a trie by dividing the slots of a node array in
+     * half, and descends into a sub node when a single slot is left.
+     */
+    static final class ValueSpliterator<V> implements Spliterator<V>
+    {
+        private Object[]            _array;
+        private long                _estimate;
+        private int                 _fence;
+        private int                 _index;
+        private boolean             _isSized;
+        private EntryIterator<?, V> _nested;
+
+        ValueSpliterator(final Object[] array, final int index,
+                final int fence, final long estimate, final boolean isSized)
+        {
+            this._array = array;
+            this._index = index;
+            this._fence = fence;
+            this._estimate = estimate;
+            this._isSized = isSized;
+        }
+
+        @Override
+        public int characteristics()
+        {
+            final int characteristics = Spliterator.DISTINCT
+                    | Spliterator.IMMUTABLE | Spliterator.NONNULL;
+            return (this._isSized ? characteristics | Spliterator.SIZED
+                    : characteristics);
+        }
+
+        @Override
+        public long estimateSize()
+        {
+            return (this._estimate);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void forEachRemaining(final Consumer<? super V> action)
+        {
+            if (this._nested != null)
+            {
+                while (this._nested.hasNext())
+                {
+                    action.accept(this._nested.nextValue());
+                }
+                this._nested = null;
+            }
+            final Object[] array = this._array;
+            final int fence = this._fence;
+            int index = this._index;
+            this._index = fence;
+            for (; index < fence; index += 2)
+            {
+                if (array[index] == null)
+                {
+                    forEachValue(((Node) array[index + 1]).array(), action);
+                }
+                else
+                {
+                    action.accept((V) array[index + 1]);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public boolean tryAdvance(final Consumer<? super V> action)
+        {
+            while (true)
+            {
+                if (this._nested != null)
+                {
+                    if (this._nested.hasNext())
+                    {
+                        action.accept(this._nested.nextValue());
+                        return (true);
+                    }
+                    this._nested = null;
+                }
+                if (this._index >= this._fence)
+                {
+                    return (false);
+                }
+                final Object key = this._array[this._index];
+                final Object value = this._array[this._index + 1];
+                this._index += 2;
+                if (key != null)
+                {
+                    action.accept((V) value);
+                    return (true);
+                }
+                this._nested = new EntryIterator<Object, V>((Node) value);
+            }
+        }
+
+        @Override
+        public Spliterator<V> trySplit()
+        {
+            if (this._nested != null)
+            {
+                return (null);
+            }
+
+            // descend while a single sub node is left.
+            while ((this._fence - this._index) == 2
+                    && this._array[this._index] == null)
+            {
+                this._array = ((Node) this._array[this._index + 1]).array();
+                this._index = 0;
+                this._fence = this._array.length;
+            }
+
+            final int pairs = (this._fence - this._index) / 2;
+            if (pairs < 2)
+            {
+                return (null);
+            }
+            final int middle = this._index + ((pairs / 2) * 2);
+            final long estimate = this._estimate / 2;
+            final ValueSpliterator<V> prefix = new ValueSpliterator<V>(
+                    this._array, this._index, middle, estimate, false);
+            this._index = middle;
+            this._estimate -= estimate;
+            this._isSized = false;
+            return (prefix);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <V> void forEachValue(final Object[] array,
+                final Consumer<? super V> action)
+        {
+            for (int index = 0; index < array.length; index += 2)
+            {
+                if (array[index] == null)
+                {
+                    forEachValue(((Node) array[index + 1]).array(), action);
+                }
+                else
+                {
+                    action.accept((V) array[index + 1]);
+                }
+            }
+        }
+    }
+
+    /*
+     * Marker returned by find() when a key is not present.
+     */
+    static final Object                         NOT_FOUND = new Object();
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentHashMap      EMPTY     = new PersistentHashMap(
+                                                                  null, 0);
+
+    private static int bitpos(final int hash, final int shift)
+    {
+        return (1 << ((hash >>> shift) & 0x1f));
+    }
+
+    private static Object[] cloneAndSet(final Object[] array, final int index,
+            final Object value)
+    {
+        final Object[] clone = array.clone();
+        clone[index] = value;
+        return (clone);
+    }
+
+    private static Node createNode(final int shift, final Object key1,
+            final Object value1, final int hash2, final Object key2,
+            final Object value2)
+    {
+        final int hash1 = hash(key1);
+        if (hash1 == hash2)
+        {
+            return (new CollisionNode(hash1, new Object[] { key1, value1, key2,
+                    value2 }));
+        }
+        final boolean[] isAdded = new boolean[1];
+        return (BitmapNode.EMPTY.assoc(shift, hash1, key1, value1, isAdded)
+                .assoc(shift, hash2, key2, value2, isAdded));
+    }
+
+    /**
+     * Returns the empty map.
+     *
+     * @return An empty <code>PersistentHashMap</code>.
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentHashMap<K, V> empty()
+    {
+        return (EMPTY);
+    }
+
+    static int hash(final Object key)
+    {
+        final int h = key.hashCode();
+        return (h ^ (h >>> 16));
+    }
+
+    private static Object[] removePair(final Object[] array, final int index)
+    {
+        final Object[] removed = new Object[array.length - 2];
+        System.arraycopy(array, 0, removed, 0, index);
+        System.arraycopy(array, index + 2, removed, index, array.length - index
+                - 2);
+        return (removed);
+    }
+
+    /*
+     * The root of the trie. Null when the map is empty.
+     */
+    private final Node _root;
+
+    /*
+     * The number of entries, kept so size() is O(1).
+     */
+    private final int  _size;
+
+    private PersistentHashMap(final Node root, final int size)
+    {
+        this._root = root;
+        this._size = size;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.AbstractMap#containsKey(java.lang.Object)
+     */
+    @Override
+    public boolean containsKey(final Object key)
+    {
+        return ((key != null) && (this.find(key) != NOT_FOUND));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.AbstractMap#entrySet()
+     */
+    @Override
+    public Set<Entry<K, V>> entrySet()
+    {
+        return (new AbstractSet<Entry<K, V>>()
+        {
+            @Override
+            public Iterator<Entry<K, V>> iterator()
+            {
+                return (new EntryIterator<K, V>(PersistentHashMap.this._root));
+            }
+
+            @Override
+            public int size()
+            {
+                return (PersistentHashMap.this._size);
+            }
+        });
+    }
+
+    private Object find(final Object key)
+    {
+        if (this._root == null)
+        {
+            return (NOT_FOUND);
+        }
+        return (this._root.find(0, hash(key), key));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.AbstractMap#get(java.lang.Object)
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public V get(final Object key)
+    {
+        if (key == null)
+        {
+            return (null);
+        }
+        final Object value = this.find(key);
+        return ((value == NOT_FOUND) ? null : (V) value);
+    }
+
+    /**
+     * Returns a map without the key.
+     *
+     * @param key
+     *            The key to remove.
+     * @return A <code>PersistentHashMap</code> without the key. Returns this
+     *         instance when the key is not present.
+     */
+    PersistentHashMap<K, V> minus(final Object key)
+    {
+        assert (key != null) : "minus() - the parameter 'key' should not be null.";
+
+        if (this._root == null)
+        {
+            return (this);
+        }
+        final Node root = this._root.without(0, hash(key), key);
+        if (root == this._root)
+        {
+            return (this);
+        }
+        else if (root == null)
+        {
+            return (PersistentHashMap.<K, V> empty());
+        }
+        return (new PersistentHashMap<K, V>(root, this._size - 1));
+    }
+
+    /**
+     * Returns a map with the key bound to the value.
+     *
+     * @param key
+     *            The key to bind.
+     * @param value
+     *            The value bound to the key.
+     * @return A <code>PersistentHashMap</code> containing the binding.
+     */
+    PersistentHashMap<K, V> plus(final K key, final V value)
+    {
+        assert (key != null) : "plus() - the parameter 'key' should not be null.";
+
+        final boolean[] isAdded = new boolean[1];
+        final Node root = ((this._root == null) ? BitmapNode.EMPTY
+                : this._root).assoc(0, hash(key), key, value, isAdded);
+        if (root == this._root)
+        {
+            return (this);
+        }
+        return (new PersistentHashMap<K, V>(root, isAdded[0] ? this._size + 1
+                : this._size));
+    }
+
+    /**
+     * Returns a spliterator over the values of this map. The spliterator
+     * splits along the nodes of the trie and is not affected by later updates.
+     *
+     * @return A <code>Spliterator</code> over the values.
+     */
+    Spliterator<V> valueSpliterator()
+    {
+        final Object[] array = (this._root == null) ? BitmapNode.EMPTY.array()
+                : this._root.array();
+        return (new ValueSpliterator<V>(array, 0, array.length, this._size,
+                true));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.AbstractMap#size()
+     */
+    @Override
+    public int size()
+    {
+        return (this._size);
+    }
+
+}
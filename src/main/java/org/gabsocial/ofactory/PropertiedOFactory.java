@@ -19,6 +19,8 @@
 
 package org.gabsocial.ofactory;
 
+import java.util.function.Consumer;
+
 import org.gabsocial.gabdev.validate.Validate;
 
 
@@ -55,6 +57,26 @@ public class PropertiedOFactory<C extends PropertiedOFactoryChild, S> extends
     // C = child
     // S = settings
     
+    /**
+     * Creates a factory that is not a scope.
+     */
+    public PropertiedOFactory()
+    {
+        super();
+    }
+    
+    /**
+     * Creates a scope of a parent factory. A key that is not bound in the
+     * scope is looked up in the parent by get(key) and tryGet(key).
+     * 
+     * @param parent
+     *            The enclosing factory.
+     */
+    public PropertiedOFactory(final PropertiedOFactory<? extends C, S> parent)
+    {
+        super(parent);
+    }
+    
     /**
      * Creates a child whose key is the classname.
      * 
@@ -137,18 +159,116 @@ public class PropertiedOFactory<C extends PropertiedOFactoryChild, S> extends
     public C create(final String key, final String className, final S settings)
             throws OFactoryChildException
     {
-        Validate.isNotNullOrEmpty(this.getClass(), key);
-        Validate.isLessThanMaxLength(this.getClass(), KEY_MAX_LENGTH, key);
+        return (this.create(key, className, settings, NO_TAGS));
+    }
+    
+    /**
+     * Creates a child associated with a key that carries tags. This child will
+     * be initialized with a provided properties object.
+     * 
+     * @param key
+     *            A <code>String</code> instance. The key to bind to the new
+     *            child.
+     * @param className
+     *            A <code>String</code> instance. The configuration setup.
+     * @param settings
+     *            An object that holds data used to initialize the child after
+     *            it is created.
+     * @param tags
+     *            The <code>String</code> tags of the new child, such as a
+     *            region or a tier.
+     * @return A <code>OFactoryChild</code> instance bound to the key.
+     * 
+     * @throws OFactoryChildException
+     *             Thrown when an OFactoryChild already exists with that key.
+     */
+    public C create(final String key, final String className,
+            final S settings, final String... tags)
+            throws OFactoryChildException
+    {
+        this.validateKey(key);
         Validate.isNotNullOrEmpty(this.getClass(), className);
         Validate.isLessThanMaxLength(this.getClass(), CLASS_NAME_MAX_LENGTH,
                 className);
         Validate.isNotNull(this.getClass(), settings);
+        this.validateTags(tags);
         
         // other methods do parameter validation.
-        final C child = this.loadAndStoreOFactoryChild(key, className);
-        child.initialize(this, key, settings);
-        this.notifyObservers(new Event(Event.Type.CREATE, key, child));
-        return child;
+        return (this.createChild(key, className, tags, new Consumer<C>()
+        {
+            @Override
+            public void accept(final C child)
+            {
+                child.initialize(PropertiedOFactory.this, key, settings);
+            }
+        }));
+    }
+    
+    /**
+     * Creates a child using the fully qualified classname that is associated
+     * with a key, is initialized with settings and carries tags, without
+     * throwing when the factory is closed, the key is already bound or an
+     * argument is invalid.
+     * 
+     * @param key
+     *            A <code>String</code> instance. The key to bind to the new
+     *            child.
+     * @param className
+     *            A <code>String</code> instance. The configuration setup.
+     * @param settings
+     *            An object that holds data used to initialize the child after
+     *            it is created.
+     * @param tags
+     *            The <code>String</code> tags of the new child, such as a
+     *            region or a tier.
+     * @return A CREATED result holding the child, or a FACTORY_CLOSED,
+     *         DUPLICATE_KEY or INVALID_ARGUMENT result.
+     * 
+     * @throws OFactorySysException
+     *             if the class cannot be loaded or instantiated.
+     */
+    public OFactoryResult<C> tryCreate(final String key,
+            final String className, final S settings, final String... tags)
+    {
+        if (settings == null || !this.isValidCreate(key, className, tags))
+        {
+            return (OFactoryResult
+                    .failed(OFactoryResult.Status.INVALID_ARGUMENT));
+        }
+        
+        return (this.tryCreateChild(key, className, tags, new Consumer<C>()
+        {
+            @Override
+            public void accept(final C child)
+            {
+                child.initialize(PropertiedOFactory.this, key, settings);
+            }
+        }));
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.gabsocial.ofactory.OFactory#initializeChild(org.gabsocial.
+     * ofactory.OFactoryChild, java.lang.String, java.lang.Object)
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    void initializeChild(final C child, final String key, final Object settings)
+    {
+        child.initialize(this, key, (S) settings);
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.gabsocial.ofactory.OFactory#settingsOf(org.gabsocial.ofactory.
+     * OFactoryChild)
+     */
+    @Override
+    Object settingsOf(final C child)
+    {
+        return (child.getSettings());
     }
     
 }
@@ -0,0 +1,110 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * <pre>
+ * The children a scoped <code>OFactory</code> found in its enclosing
+ * factories, and the keys it did not find there, by key.
+ * 
+ * Each entry holds the sum of the scope versions of the enclosing factories
+ * when it was looked up.  An enclosing factory moves its version on every
+ * CREATE, REMOVE and CLOSE event, so an entry whose version no longer
+ * matches is looked up again instead of being cleared by a listener.  This
+ * keeps a scope free to create and drop without registering with its
+ * parent.  The cache is cleared when it holds too many keys.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+final class ScopeLookupCache<C>
+{
+    /*
+     * A child, or null for a key that was not found, and the version it was
+     * looked up at.
+     */
+    static final class Entry<C>
+    {
+        final C    _child;
+        
+        final long _version;
+        
+        Entry(final C child, final long version)
+        {
+            this._child = child;
+            this._version = version;
+        }
+    }
+    
+    /**
+     * The number of keys held before the cache is cleared.
+     */
+    static final int                                  MAX_ENTRIES = 4096;
+    
+    private final ConcurrentHashMap<String, Entry<C>> _entries;
+    
+    ScopeLookupCache()
+    {
+        // the table is not allocated until the first put.
+        this._entries = new ConcurrentHashMap<String, Entry<C>>();
+    }
+    
+    /**
+     * Returns the entry of the key if it was looked up at the version, or
+     * null.
+     */
+    Entry<C> get(final String key, final long version)
+    {
+        final Entry<C> entry = this._entries.get(key);
+        return (((entry != null) && (entry._version == version)) ? entry : null);
+    }
+    
+    /**
+     * Holds the child found for the key, or null if none was, at the
+     * version.
+     */
+    void put(final String key, final C child, final long version)
+    {
+        if (this._entries.size() >= MAX_ENTRIES)
+        {
+            this._entries.clear();
+        }
+        this._entries.put(key, new Entry<C>(child, version));
+    }
+    
+    /**
+     * Returns the number of keys held, including stale ones.
+     */
+    int size()
+    {
+        return (this._entries.size());
+    }
+    
+    /**
+     * Drops every entry.
+     */
+    void clear()
+    {
+        this._entries.clear();
+    }
+}
@@ -0,0 +1,268 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.util.Arrays;
+
+
+/**
+ * <pre>
+ * A compressed set of child slots used by the tag index of an
+ * <code>OFactory</code>.
+ * 
+ * The slots are split into chunks of 1024.  Only chunks that contain a slot
+ * are stored, as 16 words each, and the chunks are kept sorted by chunk
+ * number.  Setting or clearing a slot is a binary search over the chunks, and
+ * an intersection only visits chunks present in both sets, so the cost of a
+ * query follows the size of the bitsets and not the number of children.
+ * 
+ * This class is not thread safe.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+final class SlotBitSet
+{
+    /**
+     * A callback given each slot in a set.
+     */
+    interface SlotVisitor
+    {
+        void visit(int slot);
+    }
+    
+    private static final int CHUNK_BITS  = 10;
+    
+    private static final int CHUNK_WORDS = (1 << CHUNK_BITS) >>> 6;
+    
+    /**
+     * Returns the slots present in both sets.
+     * 
+     * @param first
+     *            A <code>SlotBitSet</code>.
+     * @param second
+     *            A <code>SlotBitSet</code>.
+     * @return A new <code>SlotBitSet</code> with the intersection.
+     */
+    static SlotBitSet and(final SlotBitSet first, final SlotBitSet second)
+    {
+        final SlotBitSet result = new SlotBitSet();
+        int i = 0;
+        int j = 0;
+        while ((i < first._chunkCount) && (j < second._chunkCount))
+        {
+            final int firstId = first._chunkIds[i];
+            final int secondId = second._chunkIds[j];
+            if (firstId < secondId)
+            {
+                i++;
+            }
+            else if (firstId > secondId)
+            {
+                j++;
+            }
+            else
+            {
+                final long[] words = new long[CHUNK_WORDS];
+                int cardinality = 0;
+                for (int w = 0; w < CHUNK_WORDS; w++)
+                {
+                    words[w] = first._chunks[i][w] & second._chunks[j][w];
+                    cardinality += Long.bitCount(words[w]);
+                }
+                if (cardinality > 0)
+                {
+                    result.appendChunk(firstId, words);
+                    result._cardinality += cardinality;
+                }
+                i++;
+                j++;
+            }
+        }
+        return (result);
+    }
+    
+    private int      _cardinality;
+    
+    private int      _chunkCount;
+    
+    private int[]    _chunkIds = new int[4];
+    
+    private long[][] _chunks   = new long[4][];
+    
+    private void appendChunk(final int chunkId, final long[] words)
+    {
+        this.insertChunk(this._chunkCount, chunkId, words);
+    }
+    
+    /**
+     * Returns the number of slots in the set.
+     * 
+     * @return An <code>int</code> value 0 &lt;= x &lt;= n.
+     */
+    int cardinality()
+    {
+        return (this._cardinality);
+    }
+    
+    /**
+     * Removes a slot from the set.
+     * 
+     * @param slot
+     *            A slot number 0 &lt;= x.
+     */
+    void clear(final int slot)
+    {
+        final int index = Arrays.binarySearch(this._chunkIds, 0,
+                this._chunkCount, slot >>> CHUNK_BITS);
+        if (index >= 0)
+        {
+            final long[] words = this._chunks[index];
+            final int word = (slot >>> 6) & (CHUNK_WORDS - 1);
+            final long mask = 1L << slot;
+            if ((words[word] & mask) != 0)
+            {
+                words[word] &= ~mask;
+                this._cardinality--;
+                if (isEmpty(words))
+                {
+                    this.removeChunk(index);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Visits each slot in the set in ascending order.
+     * 
+     * @param visitor
+     *            The <code>SlotVisitor</code> given each slot.
+     */
+    void forEach(final SlotVisitor visitor)
+    {
+        for (int i = 0; i < this._chunkCount; i++)
+        {
+            final int base = this._chunkIds[i] << CHUNK_BITS;
+            final long[] words = this._chunks[i];
+            for (int w = 0; w < CHUNK_WORDS; w++)
+            {
+                long word = words[w];
+                while (word != 0)
+                {
+                    visitor.visit(base + (w << 6)
+                            + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns true if the slot is in the set.
+     * 
+     * @param slot
+     *            A slot number 0 &lt;= x.
+     * @return A <code>boolean</code> value.
+     */
+    boolean get(final int slot)
+    {
+        final int index = Arrays.binarySearch(this._chunkIds, 0,
+                this._chunkCount, slot >>> CHUNK_BITS);
+        return ((index >= 0) && ((this._chunks[index][(slot >>> 6)
+                & (CHUNK_WORDS - 1)] & (1L << slot)) != 0));
+    }
+    
+    private void insertChunk(final int index, final int chunkId,
+            final long[] words)
+    {
+        if (this._chunkCount == this._chunkIds.length)
+        {
+            this._chunkIds = Arrays.copyOf(this._chunkIds,
+                    this._chunkCount * 2);
+            this._chunks = Arrays.copyOf(this._chunks, this._chunkCount * 2);
+        }
+        System.arraycopy(this._chunkIds, index, this._chunkIds, index + 1,
+                this._chunkCount - index);
+        System.arraycopy(this._chunks, index, this._chunks, index + 1,
+                this._chunkCount - index);
+        this._chunkIds[index] = chunkId;
+        this._chunks[index] = words;
+        this._chunkCount++;
+    }
+    
+    private static boolean isEmpty(final long[] words)
+    {
+        for (final long word : words)
+        {
+            if (word != 0)
+            {
+                return (false);
+            }
+        }
+        return (true);
+    }
+    
+    /**
+     * Returns true if the set has no slots.
+     * 
+     * @return A <code>boolean</code> value.
+     */
+    boolean isEmpty()
+    {
+        return (this._cardinality == 0);
+    }
+    
+    private void removeChunk(final int index)
+    {
+        System.arraycopy(this._chunkIds, index + 1, this._chunkIds, index,
+                this._chunkCount - index - 1);
+        System.arraycopy(this._chunks, index + 1, this._chunks, index,
+                this._chunkCount - index - 1);
+        this._chunkCount--;
+        this._chunks[this._chunkCount] = null;
+    }
+    
+    /**
+     * Adds a slot to the set.
+     * 
+     * @param slot
+     *            A slot number 0 &lt;= x.
+     */
+    void set(final int slot)
+    {
+        final int chunkId = slot >>> CHUNK_BITS;
+        int index = Arrays.binarySearch(this._chunkIds, 0, this._chunkCount,
+                chunkId);
+        if (index < 0)
+        {
+            index = -(index + 1);
+            this.insertChunk(index, chunkId, new long[CHUNK_WORDS]);
+        }
+        final long[] words = this._chunks[index];
+        final int word = (slot >>> 6) & (CHUNK_WORDS - 1);
+        final long mask = 1L << slot;
+        if ((words[word] & mask) == 0)
+        {
+            words[word] |= mask;
+            this._cardinality++;
+        }
+    }
+    
+}
@@ -0,0 +1,160 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * <pre>
+ * A report of a child that took longer than the slow create threshold of an
+ * <code>OFactory</code> to be constructed or initialized.
+ * 
+ * The stack is the stack of the creating thread, sampled by the watchdog while
+ * the slow phase was still running.  The stack is empty when the phase
+ * finished before it could be sampled.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public final class SlowCreateReport
+{
+    /**
+     * The phase of a create that was slow.
+     */
+    public static enum Phase
+    {
+        CONSTRUCT, INITIALIZE;
+    }
+    
+    private final String              _className;
+    
+    private final long                _durationNanos;
+    
+    private final String              _key;
+    
+    private final Phase               _phase;
+    
+    private final StackTraceElement[] _stack;
+    
+    private final String              _threadName;
+    
+    SlowCreateReport(final String className, final String key,
+            final Phase phase, final long durationNanos,
+            final String threadName, final StackTraceElement[] stack)
+    {
+        this._className = className;
+        this._key = key;
+        this._phase = phase;
+        this._durationNanos = durationNanos;
+        this._threadName = threadName;
+        this._stack = stack;
+    }
+    
+    /**
+     * Returns the class name of the child.
+     * 
+     * @return A <code>String</code> instance.
+     */
+    public String getClassName()
+    {
+        return (this._className);
+    }
+    
+    /**
+     * Returns the time the phase took.
+     * 
+     * @param unit
+     *            The <code>TimeUnit</code> of the returned value.
+     * 
+     * @return A <code>long</code> value.
+     */
+    public long getDuration(final TimeUnit unit)
+    {
+        return (unit.convert(this._durationNanos, TimeUnit.NANOSECONDS));
+    }
+    
+    /**
+     * Returns the key of the child.
+     * 
+     * @return A <code>String</code> instance.
+     */
+    public String getKey()
+    {
+        return (this._key);
+    }
+    
+    /**
+     * Returns the phase that was slow.
+     * 
+     * @return A <code>Phase</code> enum.
+     */
+    public Phase getPhase()
+    {
+        return (this._phase);
+    }
+    
+    /**
+     * Returns a copy of the sampled stack of the creating thread.
+     * 
+     * @return An array of <code>StackTraceElement</code>. May be empty.
+     */
+    public StackTraceElement[] getStack()
+    {
+        return (this._stack.clone());
+    }
+    
+    /**
+     * Returns the name of the creating thread.
+     * 
+     * @return A <code>String</code> instance.
+     */
+    public String getThreadName()
+    {
+        return (this._threadName);
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append("SlowCreateReport [className=");
+        builder.append(this._className);
+        builder.append(", key=");
+        builder.append(this._key);
+        builder.append(", phase=");
+        builder.append(this._phase);
+        builder.append(", durationMillis=");
+        builder.append(this.getDuration(TimeUnit.MILLISECONDS));
+        builder.append(", thread=");
+        builder.append(this._threadName);
+        builder.append(", stack=");
+        builder.append(Arrays.toString(this._stack));
+        builder.append("]");
+        return builder.toString();
+    }
+    
+}
@@ -0,0 +1,269 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * <pre>
+ * Times the construction and initialization of children and samples the stack
+ * of the creating thread once a phase runs past the threshold.
+ * 
+ * A create only registers a watch in a concurrent set and removes it again, so
+ * fast creates pay two set operations and two clock reads.  A single daemon
+ * thread, started with the first watchdog, scans the set at a quarter of the
+ * smallest threshold of the watchdogs that are not closed and samples the
+ * stack of each watch that is over its threshold and not yet sampled.  The
+ * thread ends when the last watchdog is closed.
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+final class SlowCreateWatchdog
+{
+    /**
+     * A construction or initialization in progress.
+     */
+    static final class Watch
+    {
+        private final String                         _className;
+        
+        private final String                         _key;
+        
+        private final SlowCreateReport.Phase         _phase;
+        
+        private volatile StackTraceElement[]         _stack;
+        
+        private final long                           _start;
+        
+        private final Thread                         _thread;
+        
+        private final long                           _thresholdNanos;
+        
+        private Watch(final String className, final String key,
+                final SlowCreateReport.Phase phase, final long thresholdNanos)
+        {
+            this._className = className;
+            this._key = key;
+            this._phase = phase;
+            this._thresholdNanos = thresholdNanos;
+            this._thread = Thread.currentThread();
+            this._start = System.nanoTime();
+        }
+        
+        private void sample(final long now)
+        {
+            if (this._stack == null && now - this._start >= this._thresholdNanos)
+            {
+                this._stack = this._thread.getStackTrace();
+            }
+        }
+    }
+    
+    /*
+     * The smallest interval between scans.
+     */
+    private static final long       MIN_SCAN_NANOS = TimeUnit.MILLISECONDS
+                                                           .toNanos(1);
+    
+    private static final StackTraceElement[] NO_STACK = new StackTraceElement[0];
+    
+    /*
+     * The watches of every factory.
+     */
+    private static final Set<Watch> WATCHES        = ConcurrentHashMap
+                                                           .newKeySet();
+    
+    /*
+     * The number of open watchdogs of each threshold. Guarded by the class.
+     */
+    private static final SortedMap<Long, Integer> THRESHOLDS = new TreeMap<Long, Integer>();
+    
+    private static Thread           s_sampler;
+    
+    private static void scan()
+    {
+        while (true)
+        {
+            final long scanNanos;
+            synchronized (SlowCreateWatchdog.class)
+            {
+                if (THRESHOLDS.isEmpty())
+                {
+                    s_sampler = null;
+                    return;
+                }
+                scanNanos = Math.max(MIN_SCAN_NANOS,
+                        THRESHOLDS.firstKey() / 4);
+            }
+            // unparked early when the thresholds change.
+            LockSupport.parkNanos(scanNanos);
+            
+            final long now = System.nanoTime();
+            for (final Watch watch : WATCHES)
+            {
+                watch.sample(now);
+            }
+        }
+    }
+    
+    private static synchronized void stopSampler(final long thresholdNanos)
+    {
+        final Integer count = THRESHOLDS.get(thresholdNanos);
+        assert (count != null) : "stopSampler() - the threshold is not open.";
+        if (count == 1)
+        {
+            THRESHOLDS.remove(thresholdNanos);
+        }
+        else
+        {
+            THRESHOLDS.put(thresholdNanos, count - 1);
+        }
+        if (s_sampler != null)
+        {
+            LockSupport.unpark(s_sampler);
+        }
+    }
+    
+    private static synchronized void startSampler(final long thresholdNanos)
+    {
+        final Integer count = THRESHOLDS.get(thresholdNanos);
+        THRESHOLDS.put(thresholdNanos, (count == null) ? 1 : count + 1);
+        if (s_sampler != null)
+        {
+            LockSupport.unpark(s_sampler);
+        }
+        else
+        {
+            s_sampler = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    scan();
+                }
+            }, "ofactory-slow-create-watchdog");
+            s_sampler.setDaemon(true);
+            s_sampler.start();
+        }
+    }
+    
+    private boolean    _isClosed;
+    
+    private final long _thresholdNanos;
+    
+    /**
+     * Constructor.
+     * 
+     * @param thresholdNanos
+     *            The time after which a phase is slow. Greater than zero.
+     */
+    SlowCreateWatchdog(final long thresholdNanos)
+    {
+        assert (thresholdNanos > 0) : "SlowCreateWatchdog() - the parameter 'thresholdNanos' must be greater than zero.";
+        this._thresholdNanos = thresholdNanos;
+        startSampler(thresholdNanos);
+    }
+    
+    /**
+     * Stops counting the threshold of this watchdog when the scan interval
+     * is chosen, and ends the sampler thread if no other watchdog is open.
+     * Watches already started are still reported by stop(watch).
+     */
+    synchronized void close()
+    {
+        if (!this._isClosed)
+        {
+            this._isClosed = true;
+            stopSampler(this._thresholdNanos);
+        }
+    }
+    
+    /**
+     * Returns whether the sampler thread is running. For tests.
+     * 
+     * @return True if the thread is running.
+     */
+    static synchronized boolean isSampling()
+    {
+        return (s_sampler != null);
+    }
+    
+    /**
+     * Returns the threshold.
+     * 
+     * @return A <code>long</code> value in nanoseconds.
+     */
+    long getThresholdNanos()
+    {
+        return (this._thresholdNanos);
+    }
+    
+    /**
+     * Starts timing a phase on the current thread.
+     * 
+     * @param className
+     *            The class name of the child.
+     * @param key
+     *            The key of the child.
+     * @param phase
+     *            The phase that is starting.
+     * 
+     * @return A <code>Watch</code> to pass to stop(watch).
+     */
+    Watch start(final String className, final String key,
+            final SlowCreateReport.Phase phase)
+    {
+        final Watch watch = new Watch(className, key, phase,
+                this._thresholdNanos);
+        WATCHES.add(watch);
+        return (watch);
+    }
+    
+    /**
+     * Stops timing a phase.
+     * 
+     * @param watch
+     *            The <code>Watch</code> returned by start.
+     * 
+     * @return A <code>SlowCreateReport</code> if the phase took longer than
+     *         the threshold, otherwise null.
+     */
+    SlowCreateReport stop(final Watch watch)
+    {
+        WATCHES.remove(watch);
+        final long duration = System.nanoTime() - watch._start;
+        if (duration < this._thresholdNanos)
+        {
+            return (null);
+        }
+        final StackTraceElement[] stack = watch._stack;
+        return (new SlowCreateReport(watch._className, watch._key,
+                watch._phase, duration, watch._thread.getName(),
+                (stack == null) ? NO_STACK : stack));
+    }
+    
+}
@@ -0,0 +1,185 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * 
+ * Checks that a concurrent history of calls is linearizable against a
+ * sequential model, in the manner of Wing and Gong. A call may be linearized
+ * next if no other pending call responded before it was invoked. States
+ * already explored are remembered so that histories of a dozen calls are
+ * checked quickly.
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+final class LinearizabilityChecker
+{
+    /**
+     * A completed call with the result observed and the times it was invoked
+     * and responded.
+     */
+    static final class Call
+    {
+        final long   _invoked;
+        
+        final String _operation;
+        
+        final long   _responded;
+        
+        final String _result;
+        
+        final int    _thread;
+        
+        Call(final int thread, final String operation, final String result,
+                final long invoked, final long responded)
+        {
+            this._thread = thread;
+            this._operation = operation;
+            this._result = result;
+            this._invoked = invoked;
+            this._responded = responded;
+        }
+        
+        @Override
+        public String toString()
+        {
+            return ("[thread=" + this._thread + ", " + this._operation + " -> "
+                    + this._result + ", invoked=" + this._invoked
+                    + ", responded=" + this._responded + "]");
+        }
+    }
+    
+    /**
+     * A sequential specification of the object under test.
+     */
+    interface Model
+    {
+        /**
+         * Applies an operation and returns the result the sequential object
+         * would give.
+         */
+        String apply(String operation);
+        
+        /**
+         * Returns a copy of this model.
+         */
+        Model copy();
+        
+        /**
+         * Returns a value that is equal for equal states.
+         */
+        String state();
+    }
+    
+    /**
+     * Returns the calls in an order that is linearizable, or null if there is
+     * no such order.
+     * 
+     * @param calls
+     *            The completed calls of every thread.
+     * @param model
+     *            The model in its initial state.
+     * 
+     * @return A <code>List</code> of the calls in linearized order or null.
+     */
+    static List<Call> linearize(final List<Call> calls, final Model model)
+    {
+        final List<Call> order = new ArrayList<Call>();
+        if (search(calls, new BitSet(calls.size()), model, order,
+                new HashSet<String>()))
+        {
+            return (order);
+        }
+        return (null);
+    }
+    
+    private static boolean search(final List<Call> calls, final BitSet done,
+            final Model model, final List<Call> order, final Set<String> seen)
+    {
+        if (done.cardinality() == calls.size())
+        {
+            return (true);
+        }
+        if (!seen.add(done.toString() + model.state()))
+        {
+            return (false);
+        }
+        
+        long firstResponse = Long.MAX_VALUE;
+        for (int i = done.nextClearBit(0); i < calls.size(); i = done
+                .nextClearBit(i + 1))
+        {
+            firstResponse = Math.min(firstResponse, calls.get(i)._responded);
+        }
+        
+        for (int i = done.nextClearBit(0); i < calls.size(); i = done
+                .nextClearBit(i + 1))
+        {
+            final Call call = calls.get(i);
+            if (call._invoked <= firstResponse)
+            {
+                final Model next = model.copy();
+                if (call._result.equals(next.apply(call._operation)))
+                {
+                    done.set(i);
+                    order.add(call);
+                    if (search(calls, done, next, order, seen))
+                    {
+                        return (true);
+                    }
+                    order.remove(order.size() - 1);
+                    done.clear(i);
+                }
+            }
+        }
+        return (false);
+    }
+    
+    /**
+     * Returns the calls sorted by invocation time, for reporting.
+     */
+    static List<Call> byInvocation(final List<Call> calls)
+    {
+        final List<Call> sorted = new ArrayList<Call>(calls);
+        Collections.sort(sorted, new Comparator<Call>()
+        {
+            @Override
+            public int compare(final Call call, final Call other)
+            {
+                return (Long.compare(call._invoked, other._invoked));
+            }
+        });
+        return (sorted);
+    }
+    
+    private LinearizabilityChecker()
+    {
+        // static methods only.
+    }
+}
@@ -0,0 +1,69 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * 
+ * Test class for the <code>NegativeLookupFilter</code>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public class NegativeLookupFilterTest
+{
+    
+    @Test
+    public void testAddAndRemove()
+    {
+        final NegativeLookupFilter filter = new NegativeLookupFilter(10000,
+                0.01);
+        for (int i = 0; i < 10000; i++)
+        {
+            filter.add("key-" + i);
+        }
+        for (int i = 0; i < 10000; i++)
+        {
+            Assert.assertTrue(filter.mightContain("key-" + i));
+        }
+        
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++)
+        {
+            if (filter.mightContain("missing-" + i))
+            {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("false positives=" + falsePositives,
+                falsePositives < 300);
+        
+        for (int i = 0; i < 10000; i++)
+        {
+            filter.remove("key-" + i);
+        }
+        for (int i = 0; i < 10000; i++)
+        {
+            Assert.assertFalse(filter.mightContain("key-" + i));
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.lang.management.ManagementFactory;
+
+import org.gabsocial.ofactory.impl.MockOFactoryChildImpl;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * 
+ * Allocation budget tests for the hot paths of the <code>OFactory</code>. Each
+ * path is run until it is compiled and then the bytes allocated by the
+ * current thread are counted over many calls. A path declared allocation
+ * free fails if a change adds garbage per call.
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public class OFactoryAllocationTest
+{
+    /**
+     * A call on a hot path.
+     */
+    interface HotPath
+    {
+        int call();
+    }
+    
+    /*
+     * The number of calls measured.
+     */
+    private static final int  CALLS      = 100000;
+    
+    /*
+     * The bytes allowed over all calls for the counters themselves. One byte
+     * per call would exceed it.
+     */
+    private static final long SLACK      = 4096;
+    
+    /*
+     * The number of calls made to compile the path before measuring.
+     */
+    private static final int  WARMUP     = 200000;
+    
+    /*
+     * The number of times the measurement is tried, since compilation may
+     * finish after the warm up.
+     */
+    private static final int  ATTEMPTS   = 5;
+    
+    private static com.sun.management.ThreadMXBean threadBean()
+    {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory
+                .getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        return (threadBean);
+    }
+    
+    /*
+     * Returns the fewest bytes allocated over CALLS calls in ATTEMPTS tries.
+     */
+    private static long allocatedBytes(final HotPath path)
+    {
+        final com.sun.management.ThreadMXBean bean = threadBean();
+        final long thread = Thread.currentThread().getId();
+        
+        int sink = 0;
+        for (int i = 0; i < WARMUP; i++)
+        {
+            sink += path.call();
+        }
+        
+        long fewest = Long.MAX_VALUE;
+        for (int attempt = 0; attempt < ATTEMPTS && fewest > SLACK; attempt++)
+        {
+            final long before = bean.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < CALLS; i++)
+            {
+                sink += path.call();
+            }
+            fewest = Math.min(fewest, bean.getThreadAllocatedBytes(thread)
+                    - before);
+        }
+        Assert.assertTrue(sink != 0);
+        return (fewest);
+    }
+    
+    private static void assertAllocationFree(final String name,
+            final HotPath path)
+    {
+        final long bytes = allocatedBytes(path);
+        Assert.assertTrue(name + " allocated " + bytes + " bytes in " + CALLS
+                + " calls", bytes <= SLACK);
+    }
+    
+    OFactory<MockOFactoryChildImpl> _ofactory;
+    
+    @Before
+    public void setup() throws OFactoryChildException
+    {
+        this._ofactory = new OFactory<MockOFactoryChildImpl>();
+        for (int i = 0; i < 1000; i++)
+        {
+            this._ofactory.create("test-mock-" + i,
+                    "org.gabsocial.ofactory.impl.MockOFactoryChildImpl");
+        }
+    }
+    
+    @Test
+    public void testContainsChild()
+    {
+        assertAllocationFree("containsChild(key)", new HotPath()
+        {
+            @Override
+            public int call()
+            {
+                return (OFactoryAllocationTest.this._ofactory
+                        .containsChild("test-mock-7") ? 1 : 0);
+            }
+        });
+    }
+    
+    @Test
+    public void testDispatchWithoutObservers()
+    {
+        final MockOFactoryChildImpl child = this._ofactory.get("test-mock-7");
+        final OFactory.Event<MockOFactoryChildImpl> event = new OFactory.Event<MockOFactoryChildImpl>(
+                OFactory.Event.Type.GET, "test-mock-7", child);
+        assertAllocationFree("notifyObservers(event)", new HotPath()
+        {
+            @Override
+            public int call()
+            {
+                OFactoryAllocationTest.this._ofactory.notifyObservers(event);
+                return (1);
+            }
+        });
+    }
+    
+    @Test
+    public void testGet()
+    {
+        assertAllocationFree("get(key)", new HotPath()
+        {
+            @Override
+            public int call()
+            {
+                return ((OFactoryAllocationTest.this._ofactory
+                        .get("test-mock-7") != null) ? 1 : 0);
+            }
+        });
+        assertAllocationFree("get(missing key)", new HotPath()
+        {
+            @Override
+            public int call()
+            {
+                return ((OFactoryAllocationTest.this._ofactory
+                        .get("test-missing") == null) ? 1 : 0);
+            }
+        });
+    }
+    
+    @Test
+    public void testGetChildCount()
+    {
+        assertAllocationFree("getChildCount()", new HotPath()
+        {
+            @Override
+            public int call()
+            {
+                return (OFactoryAllocationTest.this._ofactory.getChildCount());
+            }
+        });
+    }
+    
+    @Test
+    public void testTryGet()
+    {
+        this._ofactory.enableNegativeLookupFilter(1000);
+        assertAllocationFree("tryGet(key)", new HotPath()
+        {
+            @Override
+            public int call()
+            {
+                return ((OFactoryAllocationTest.this._ofactory
+                        .tryGet("test-mock-7") != null) ? 1 : 0);
+            }
+        });
+        assertAllocationFree("tryGet(missing key)", new HotPath()
+        {
+            @Override
+            public int call()
+            {
+                return ((OFactoryAllocationTest.this._ofactory
+                        .tryGet("test-missing") == null) ? 1 : 0);
+            }
+        });
+    }
+}
@@ -0,0 +1,205 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Properties;
+
+import org.gabsocial.ofactory.impl.MockCheckpointableOFactoryChildImpl;
+import org.gabsocial.ofactory.impl.MockOFactoryChildImpl;
+import org.gabsocial.ofactory.impl.MockPropertiedOFactoryChildImpl;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * 
+ * Test class for the checkpoints of the <code>OFactory</code>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public class OFactoryCheckpointTest
+{
+    private Path _file;
+    
+    @Before
+    public void setup() throws IOException
+    {
+        this._file = Files.createTempDirectory("ofactory-checkpoint").resolve(
+                "children.checkpoint");
+    }
+    
+    @Test
+    public void testCheckpointAndRestore() throws IOException,
+            OFactoryChildException
+    {
+        final OFactory<OFactoryChild> factory = new OFactory<OFactoryChild>();
+        final MockCheckpointableOFactoryChildImpl counter = (MockCheckpointableOFactoryChildImpl) factory
+                .create("counter",
+                        MockCheckpointableOFactoryChildImpl.class.getName());
+        counter.setCount(42);
+        factory.create("tagged", MockOFactoryChildImpl.class.getName(), "red",
+                "blue");
+        for (int i = 0; i < 100; i++)
+        {
+            factory.create("test-" + i, MockOFactoryChildImpl.class.getName());
+        }
+        Assert.assertTrue(factory.checkpoint(this._file) == 102);
+        factory.close();
+        
+        final OFactory<OFactoryChild> restored = new OFactory<OFactoryChild>();
+        final List<String> created = new ArrayList<String>();
+        restored.addObserver(new Observer()
+        {
+            @SuppressWarnings("unchecked")
+            @Override
+            public void update(final Observable observable, final Object arg)
+            {
+                created.add(((OFactory.Event<OFactoryChild>) arg).getKey());
+            }
+        });
+        Assert.assertTrue(restored.restore(this._file, 4) == 102);
+        Assert.assertTrue(restored.getChildCount() == 102);
+        Assert.assertTrue(created.size() == 102);
+        Assert.assertTrue(new HashSet<String>(created).equals(restored
+                .getKeys()));
+        Assert.assertTrue(((MockCheckpointableOFactoryChildImpl) restored
+                .get("counter")).getCount() == 42);
+        Assert.assertTrue(restored.getChildTags("tagged").equals(
+                new HashSet<String>(Arrays.asList("red", "blue"))));
+        Assert.assertTrue(restored.getKeysTagged("red").equals(
+                new HashSet<String>(Arrays.asList("tagged"))));
+        Assert.assertTrue(restored.get("test-7") instanceof MockOFactoryChildImpl);
+        restored.close();
+    }
+    
+    @Test
+    public void testRestoreDuplicateKey() throws IOException,
+            OFactoryChildException
+    {
+        final OFactory<OFactoryChild> factory = new OFactory<OFactoryChild>();
+        factory.create("test-1", MockOFactoryChildImpl.class.getName());
+        factory.create("test-2", MockOFactoryChildImpl.class.getName());
+        factory.checkpoint(this._file);
+        factory.close();
+        
+        final OFactory<OFactoryChild> restored = new OFactory<OFactoryChild>();
+        restored.create("test-2", MockOFactoryChildImpl.class.getName());
+        try
+        {
+            restored.restore(this._file, 2);
+            Assert.fail();
+        }
+        catch (final OFactoryChildException e)
+        {
+            // no child of the checkpoint is bound.
+            Assert.assertTrue(restored.getChildCount() == 1);
+            Assert.assertTrue(!restored.containsChild("test-1"));
+        }
+        restored.close();
+    }
+    
+    @Test
+    public void testRestoreNotACheckpoint() throws IOException,
+            OFactoryChildException
+    {
+        Files.write(this._file, "not a checkpoint".getBytes(
+                StandardCharsets.UTF_8));
+        final OFactory<OFactoryChild> factory = new OFactory<OFactoryChild>();
+        try
+        {
+            factory.restore(this._file, 1);
+            Assert.fail();
+        }
+        catch (final IOException e)
+        {
+            Assert.assertTrue(factory.getChildCount() == 0);
+        }
+        factory.close();
+    }
+    
+    @Test
+    public void testRestoreCorruptCheckpoint() throws IOException,
+            OFactoryChildException
+    {
+        final OFactory<OFactoryChild> factory = new OFactory<OFactoryChild>();
+        factory.create("test-1", MockOFactoryChildImpl.class.getName());
+        factory.checkpoint(this._file);
+        factory.close();
+        final byte[] bytes = Files.readAllBytes(this._file);
+        
+        // a record count larger than the file.
+        ByteBuffer.wrap(bytes).putInt(8, Integer.MAX_VALUE);
+        Files.write(this._file, bytes);
+        this.assertCorrupt();
+        
+        // a negative key length.
+        ByteBuffer.wrap(bytes).putInt(8, 1).putInt(12, -1);
+        Files.write(this._file, bytes);
+        this.assertCorrupt();
+    }
+    
+    private void assertCorrupt() throws OFactoryChildException
+    {
+        final OFactory<OFactoryChild> factory = new OFactory<OFactoryChild>();
+        try
+        {
+            factory.restore(this._file, 1);
+            Assert.fail();
+        }
+        catch (final IOException e)
+        {
+            Assert.assertTrue(e.getMessage().endsWith(" is corrupt."));
+            Assert.assertTrue(factory.getChildCount() == 0);
+        }
+        factory.close();
+    }
+    
+    @Test
+    public void testCheckpointAndRestoreSettings() throws IOException,
+            OFactoryChildException
+    {
+        final PropertiedOFactory<MockPropertiedOFactoryChildImpl, Properties> factory = new PropertiedOFactory<MockPropertiedOFactoryChildImpl, Properties>();
+        final Properties properties = new Properties();
+        properties.setProperty("name", "value");
+        factory.create("test-1",
+                MockPropertiedOFactoryChildImpl.class.getName(), properties);
+        Assert.assertTrue(factory.checkpoint(this._file) == 1);
+        factory.close();
+        
+        final PropertiedOFactory<MockPropertiedOFactoryChildImpl, Properties> restored = new PropertiedOFactory<MockPropertiedOFactoryChildImpl, Properties>();
+        Assert.assertTrue(restored.restore(this._file, 1) == 1);
+        final Properties settings = restored.get("test-1").getSettings();
+        Assert.assertTrue(settings != properties);
+        Assert.assertTrue(settings.equals(properties));
+        restored.close();
+    }
+}
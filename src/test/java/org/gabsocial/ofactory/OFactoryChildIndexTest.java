@@ -0,0 +1,165 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.gabsocial.ofactory.impl.MockAliasClashOFactoryChildImpl;
+import org.gabsocial.ofactory.impl.MockOFactoryChildImpl;
+import org.gabsocial.ofactory.impl.MockPropertiedOFactoryChildImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * 
+ * Test class for the <code>OFactoryChildIndex</code>. The mock children are
+ * registered in src/test/resources.
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public class OFactoryChildIndexTest
+{
+    private static final ClassLoader LOADER = OFactoryChildIndexTest.class
+                                                    .getClassLoader();
+    
+    @Test
+    public void testDiscover()
+    {
+        final OFactoryChildIndex index = OFactoryChildIndex.discover(LOADER);
+        Assert.assertTrue(!index.isSaved());
+        Assert.assertTrue(index.getEntries().size() == 2);
+        
+        Assert.assertTrue(MockOFactoryChildImpl.class.getName().equals(
+                index.resolve("mock")));
+        Assert.assertTrue(MockOFactoryChildImpl.class.getName().equals(
+                index.resolve(MockOFactoryChildImpl.class.getName())));
+        Assert.assertTrue(index.resolve("missing") == null);
+        
+        final OFactoryChildIndex.Entry propertied = index
+                .getEntry("settings-mock");
+        Assert.assertTrue(propertied.getClassName().equals(
+                MockPropertiedOFactoryChildImpl.class.getName()));
+        Assert.assertTrue(propertied.getAliases().equals(
+                Arrays.asList("propertied", "settings-mock")));
+        Assert.assertTrue(Properties.class.getName().equals(
+                propertied.getSettingsTypeName()));
+        Assert.assertTrue(index.getEntry("mock").getSettingsTypeName() == null);
+    }
+    
+    @Test
+    public void testLoadOrDiscover() throws IOException
+    {
+        final Path file = Files.createTempDirectory("ofactory-index").resolve(
+                "children.index");
+        
+        final OFactoryChildIndex discovered = OFactoryChildIndex
+                .loadOrDiscover(file, LOADER);
+        Assert.assertTrue(!discovered.isSaved());
+        Assert.assertTrue(Files.isRegularFile(file));
+        
+        final OFactoryChildIndex saved = OFactoryChildIndex.loadOrDiscover(
+                file, LOADER);
+        Assert.assertTrue(saved.isSaved());
+        Assert.assertTrue(saved.toString().replace("saved=true", "").equals(
+                discovered.toString().replace("saved=false", "")));
+        
+        // a corrupt file is rebuilt.
+        Files.write(file, new byte[] { 1, 2, 3 });
+        Assert.assertTrue(!OFactoryChildIndex.loadOrDiscover(file, LOADER)
+                .isSaved());
+        Assert.assertTrue(OFactoryChildIndex.loadOrDiscover(file, LOADER)
+                .isSaved());
+        
+        // a changed service file is rediscovered.
+        final File services = this.servicesDirectory(MockAliasClashOFactoryChildImpl.class
+                .getName().replace("Alias", "Missing"));
+        try (final URLClassLoader loader = new URLClassLoader(
+                new URL[] { services.toURI().toURL() }, LOADER))
+        {
+            OFactoryChildIndex.loadOrDiscover(file, loader);
+            Assert.fail("A missing class should not be indexed.");
+        }
+        catch (final OFactorySysException e)
+        {
+            Assert.assertTrue(e.getCause() instanceof ClassNotFoundException);
+        }
+    }
+    
+    @Test
+    public void testAliasClash() throws IOException
+    {
+        final File services = this
+                .servicesDirectory(MockAliasClashOFactoryChildImpl.class
+                        .getName());
+        try (final URLClassLoader loader = new URLClassLoader(
+                new URL[] { services.toURI().toURL() }, LOADER))
+        {
+            OFactoryChildIndex.discover(loader);
+            Assert.fail("Two classes should not share an alias.");
+        }
+        catch (final OFactorySysException e)
+        {
+            Assert.assertTrue(e.getMessage(),
+                    e.getMessage().contains("'mock' is used by both"));
+        }
+    }
+    
+    @Test
+    public void testCreateByAlias() throws OFactoryChildException
+    {
+        final OFactory<OFactoryChild> factory = new OFactory<OFactoryChild>();
+        factory.setChildIndex(OFactoryChildIndex.discover(LOADER));
+        
+        Assert.assertTrue(factory.create("test-mock", "mock") instanceof MockOFactoryChildImpl);
+        Assert.assertTrue(factory.tryCreate("test-mock-2", "mock").getChild() instanceof MockOFactoryChildImpl);
+        Assert.assertTrue(factory.create("test-mock-3",
+                MockOFactoryChildImpl.class.getName()) instanceof MockOFactoryChildImpl);
+        
+        final PropertiedOFactory<PropertiedOFactoryChild, Properties> propertied = new PropertiedOFactory<PropertiedOFactoryChild, Properties>();
+        propertied.setChildIndex(factory.getChildIndex());
+        Assert.assertTrue(propertied.create("test-propertied", "propertied",
+                new Properties()) instanceof MockPropertiedOFactoryChildImpl);
+        
+        factory.close();
+        propertied.close();
+    }
+    
+    /*
+     * Returns a directory holding a service file that registers the class.
+     */
+    private File servicesDirectory(final String className) throws IOException
+    {
+        final Path directory = Files.createTempDirectory("ofactory-services");
+        final Path services = directory
+                .resolve(OFactoryChildIndex.SERVICES_RESOURCE);
+        Files.createDirectories(services.getParent());
+        Files.write(services, Arrays.asList(className), StandardCharsets.UTF_8);
+        return (directory.toFile());
+    }
+}
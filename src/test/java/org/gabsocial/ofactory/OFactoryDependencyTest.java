@@ -0,0 +1,247 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+
+import org.gabsocial.ofactory.impl.MockOFactoryChildImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * 
+ * Test class for the dependencies between <code>OFactory</code> children
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public class OFactoryDependencyTest
+{
+    /*
+     * Records the keys of the events of a type and the threads they were
+     * sent on.
+     */
+    private static final class EventRecorder implements Observer
+    {
+        private final List<String>        _keys    = Collections
+                                                           .synchronizedList(new ArrayList<String>());
+        
+        private final List<String>        _threads = Collections
+                                                           .synchronizedList(new ArrayList<String>());
+        
+        private final OFactory.Event.Type _type;
+        
+        EventRecorder(final OFactory.Event.Type type)
+        {
+            this._type = type;
+        }
+        
+        @Override
+        public void update(final Observable factory, final Object argument)
+        {
+            final OFactory.Event<?> event = (OFactory.Event<?>) argument;
+            if (event.getType() == this._type)
+            {
+                this._keys.add(event.getKey());
+                this._threads.add(Thread.currentThread().getName());
+            }
+        }
+    }
+    
+    private static Map<String, String> classNames(final String... keys)
+    {
+        final Map<String, String> classNamesByKey = new LinkedHashMap<String, String>();
+        for (final String key : keys)
+        {
+            classNamesByKey.put(key, MockOFactoryChildImpl.class.getName());
+        }
+        return (classNamesByKey);
+    }
+    
+    private static OFactory<OFactoryChild> newFactory()
+            throws OFactoryChildException
+    {
+        final OFactory<OFactoryChild> factory = new OFactory<OFactoryChild>();
+        factory.addDependencies("test-client", "test-pool");
+        factory.addDependencies("test-pool", "test-config");
+        return (factory);
+    }
+    
+    @Test
+    public void testCycleRejected() throws OFactoryChildException
+    {
+        final OFactory<OFactoryChild> factory = newFactory();
+        try
+        {
+            factory.addDependencies("test-config", "test-other",
+                    "test-client");
+            Assert.fail("A cycle should be refused.");
+        }
+        catch (final OFactoryChildException e)
+        {
+            // test-client depends on test-config.
+        }
+        Assert.assertTrue(factory.getDependencies("test-config").isEmpty());
+        
+        try
+        {
+            factory.addDependencies("test-config", "test-config");
+            Assert.fail("A key should not depend on itself.");
+        }
+        catch (final OFactoryChildException e)
+        {
+            // a cycle of one key.
+        }
+        
+        factory.addDependencies("test-client", "test-config");
+        Assert.assertTrue(factory.getDependencies("test-client").size() == 2);
+        factory.removeDependencies("test-pool");
+        factory.addDependencies("test-config", "test-pool");
+        Assert.assertTrue(factory.getDependencies("test-config").contains(
+                "test-pool"));
+        factory.close();
+    }
+    
+    @Test
+    public void testCreateAllInDependencyOrder() throws OFactoryChildException
+    {
+        final OFactory<OFactoryChild> factory = newFactory();
+        final EventRecorder creates = new EventRecorder(
+                OFactory.Event.Type.CREATE);
+        factory.addObserver(creates);
+        
+        final int created = factory.createAll(classNames("test-client",
+                "test-pool", "test-1", "test-2", "test-3", "test-config"), 4);
+        Assert.assertTrue(created == 6);
+        Assert.assertTrue(factory.getChildCount() == 6);
+        
+        final List<String> keys = creates._keys;
+        Assert.assertTrue(keys.size() == 6);
+        Assert.assertTrue(keys.indexOf("test-config") < keys.indexOf("test-pool"));
+        Assert.assertTrue(keys.indexOf("test-pool") < keys.indexOf("test-client"));
+        for (final String thread : creates._threads)
+        {
+            Assert.assertTrue(thread.startsWith("ofactory-startup-"));
+        }
+        factory.close();
+    }
+    
+    @Test
+    public void testCloseInReverseOrder() throws OFactoryChildException
+    {
+        for (final int threads : new int[] { 1, 4 })
+        {
+            final OFactory<OFactoryChild> factory = newFactory();
+            // created out of order and bound before the dependencies.
+            factory.create("test-client", MockOFactoryChildImpl.class.getName());
+            factory.create("test-1", MockOFactoryChildImpl.class.getName());
+            factory.create("test-config", MockOFactoryChildImpl.class.getName());
+            factory.create("test-2", MockOFactoryChildImpl.class.getName());
+            factory.create("test-pool", MockOFactoryChildImpl.class.getName());
+            final EventRecorder removes = new EventRecorder(
+                    OFactory.Event.Type.REMOVE);
+            factory.addObserver(removes);
+            
+            factory.close(threads);
+            Assert.assertTrue(factory.isClosed());
+            final List<String> keys = removes._keys;
+            Assert.assertTrue(keys.size() == 5);
+            Assert.assertTrue(keys.indexOf("test-client") < keys.indexOf("test-pool"));
+            Assert.assertTrue(keys.indexOf("test-pool") < keys.indexOf("test-config"));
+        }
+    }
+    
+    @Test
+    public void testCloseLongChain() throws OFactoryChildException
+    {
+        final int count = 50000;
+        final OFactory<OFactoryChild> factory = new OFactory<OFactoryChild>();
+        for (int i = 0; i < count; i++)
+        {
+            factory.create("test-" + i, MockOFactoryChildImpl.class.getName());
+            factory.addDependencies("test-" + i, "test-" + (i + 1));
+        }
+        final EventRecorder removes = new EventRecorder(
+                OFactory.Event.Type.REMOVE);
+        factory.addObserver(removes);
+        
+        // deeper than the stack a recursive walk of the chain could use.
+        factory.close();
+        Assert.assertTrue(removes._keys.size() == count);
+        Assert.assertTrue(removes._keys.get(0).equals("test-0"));
+        Assert.assertTrue(removes._keys.get(count - 1).equals(
+                "test-" + (count - 1)));
+    }
+    
+    @Test
+    public void testCreateAllMissingDependency() throws OFactoryChildException
+    {
+        final OFactory<OFactoryChild> factory = newFactory();
+        try
+        {
+            factory.createAll(classNames("test-client", "test-pool"), 2);
+            Assert.fail("test-config is neither bound nor created.");
+        }
+        catch (final OFactoryChildException e)
+        {
+            Assert.assertTrue(factory.getChildCount() == 0);
+        }
+        
+        // a bound dependency is enough.
+        factory.create("test-config", MockOFactoryChildImpl.class.getName());
+        Assert.assertTrue(factory.createAll(
+                classNames("test-client", "test-pool"), 2) == 2);
+        factory.close();
+    }
+    
+    @Test
+    public void testCreateAllClosesCreatedOnFailure()
+            throws OFactoryChildException
+    {
+        final OFactory<OFactoryChild> factory = newFactory();
+        final OFactoryChild bound = factory.create("test-client",
+                MockOFactoryChildImpl.class.getName());
+        final EventRecorder removes = new EventRecorder(
+                OFactory.Event.Type.REMOVE);
+        factory.addObserver(removes);
+        try
+        {
+            factory.createAll(
+                    classNames("test-config", "test-pool", "test-client"), 2);
+            Assert.fail("test-client is already bound.");
+        }
+        catch (final OFactoryChildException e)
+        {
+            // the children created by the call are closed.
+        }
+        Assert.assertTrue(factory.getChildCount() == 1);
+        Assert.assertTrue(factory.get("test-client") == bound);
+        Assert.assertTrue(removes._keys.size() == 2);
+        Assert.assertTrue(removes._keys.indexOf("test-pool") < removes._keys
+                .indexOf("test-config"));
+        factory.close();
+    }
+}
@@ -0,0 +1,240 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.gabsocial.ofactory.impl.MockOFactoryChildImpl;
+import org.gabsocial.ofactory.impl.MockRunnableOFactoryChildImpl;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * 
+ * Test class for the <code>OFactoryEventJournal</code>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public class OFactoryEventJournalTest
+{
+    private Path _directory;
+    
+    @Before
+    public void setup() throws IOException
+    {
+        this._directory = Files.createTempDirectory("ofactory-journal");
+    }
+    
+    @Test
+    public void testAppendAndReplay() throws IOException,
+            OFactoryChildException
+    {
+        final OFactoryEventJournal journal = new OFactoryEventJournal(
+                this._directory);
+        final OFactory<OFactoryChild> factory = new OFactory<OFactoryChild>();
+        factory.setEventJournal(journal);
+        Assert.assertTrue(factory.getEventJournal() == journal);
+        factory.create("test-1", MockOFactoryChildImpl.class.getName());
+        factory.create("test-2", MockRunnableOFactoryChildImpl.class.getName());
+        factory.get("test-2");
+        factory.closeChild("test-1");
+        factory.close();
+        
+        // gets are not journaled, close removes test-2 before the CLOSE.
+        Assert.assertTrue(journal.getNextOffset() == 5);
+        final List<OFactoryEventJournal.Record> records = replay(journal, 0L);
+        Assert.assertTrue(records.size() == 5);
+        Assert.assertTrue(records.get(0).getType() == OFactory.Event.Type.CREATE);
+        Assert.assertTrue(records.get(0).getKey().equals("test-1"));
+        Assert.assertTrue(records.get(0).getClassName().equals(
+                MockOFactoryChildImpl.class.getName()));
+        Assert.assertTrue(records.get(1).getClassName().equals(
+                MockRunnableOFactoryChildImpl.class.getName()));
+        Assert.assertTrue(records.get(2).getType() == OFactory.Event.Type.REMOVE);
+        Assert.assertTrue(records.get(3).getKey().equals("test-2"));
+        Assert.assertTrue(records.get(4).getType() == OFactory.Event.Type.CLOSE);
+        Assert.assertTrue(records.get(4).getKey() == null);
+        Assert.assertTrue(records.get(4).getOffset() == 4);
+        Assert.assertTrue(records.get(4).getTime() >= records.get(0)
+                .getTime());
+        
+        // a late observer picks up from an offset.
+        final List<OFactoryEventJournal.Record> late = replay(journal, 2L);
+        Assert.assertTrue(late.size() == 3);
+        Assert.assertTrue(late.get(0).getOffset() == 2);
+        Assert.assertTrue(journal.replay(5L,
+                new Consumer<OFactoryEventJournal.Record>()
+                {
+                    @Override
+                    public void accept(final OFactoryEventJournal.Record record)
+                    {
+                        Assert.fail();
+                    }
+                }) == 5L);
+        journal.close();
+    }
+    
+    @Test
+    public void testReopenAndRebuild() throws IOException,
+            OFactoryChildException
+    {
+        final OFactoryEventJournal journal = new OFactoryEventJournal(
+                this._directory);
+        final OFactory<OFactoryChild> factory = new OFactory<OFactoryChild>();
+        factory.setEventJournal(journal);
+        factory.create("test-1", MockOFactoryChildImpl.class.getName());
+        factory.create("test-2", MockOFactoryChildImpl.class.getName());
+        factory.create("test-3", MockRunnableOFactoryChildImpl.class.getName());
+        factory.closeChild("test-2");
+        journal.close();
+        Assert.assertTrue(journal.isClosed());
+        
+        final OFactoryEventJournal reopened = new OFactoryEventJournal(
+                this._directory);
+        Assert.assertTrue(reopened.getNextOffset() == 4);
+        final OFactory<OFactoryChild> rebuilt = new OFactory<OFactoryChild>();
+        Assert.assertTrue(reopened.rebuild(rebuilt) == 2);
+        Assert.assertTrue(rebuilt.getKeys().equals(
+                new HashSet<String>(Arrays.asList("test-1", "test-3"))));
+        Assert.assertTrue(rebuilt.get("test-3") instanceof MockRunnableOFactoryChildImpl);
+        
+        // the factory is journaled again after a close.
+        rebuilt.setEventJournal(reopened);
+        rebuilt.close();
+        Assert.assertTrue(reopened.rebuild(new OFactory<OFactoryChild>()) == 0);
+        reopened.close();
+        factory.close();
+    }
+    
+    @Test
+    public void testRollAndCompact() throws IOException,
+            OFactoryChildException
+    {
+        final OFactoryEventJournal journal = new OFactoryEventJournal(
+                this._directory, OFactoryEventJournal.MIN_SEGMENT_SIZE);
+        final OFactory<OFactoryChild> factory = new OFactory<OFactoryChild>();
+        factory.setEventJournal(journal);
+        for (int i = 0; i < 2000; i++)
+        {
+            factory.create("test-" + i, MockOFactoryChildImpl.class.getName());
+            if (i % 10 != 0)
+            {
+                factory.closeChild("test-" + i);
+            }
+        }
+        final int segments = journal.getSegmentCount();
+        Assert.assertTrue(segments > 2);
+        final long nextOffset = journal.getNextOffset();
+        Assert.assertTrue(nextOffset == 3800);
+        
+        final int dropped = journal.compact();
+        Assert.assertTrue(dropped > 0);
+        Assert.assertTrue(journal.getSegmentCount() == 2);
+        Assert.assertTrue(journal.compact() == 0);
+        
+        // the records kept have their offsets.
+        final List<OFactoryEventJournal.Record> records = replay(journal, 0L);
+        Assert.assertTrue(records.get(0).getKey().equals("test-0"));
+        Assert.assertTrue(records.get(0).getOffset() == 0);
+        Assert.assertTrue(records.get(1).getKey().equals("test-10"));
+        Assert.assertTrue(records.get(1).getOffset() == 19);
+        Assert.assertTrue(records.get(records.size() - 1).getOffset() == nextOffset - 1);
+        
+        journal.close();
+        final OFactoryEventJournal reopened = new OFactoryEventJournal(
+                this._directory, OFactoryEventJournal.MIN_SEGMENT_SIZE);
+        Assert.assertTrue(reopened.getNextOffset() == nextOffset);
+        Assert.assertTrue(reopened.getSegmentCount() == 2);
+        final OFactory<OFactoryChild> rebuilt = new OFactory<OFactoryChild>();
+        Assert.assertTrue(reopened.rebuild(rebuilt) == 200);
+        Assert.assertTrue(rebuilt.getKeys().equals(factory.getKeys()));
+        reopened.close();
+        factory.close();
+    }
+    
+    @Test
+    public void testTornRecordDiscarded() throws IOException,
+            OFactoryChildException
+    {
+        final OFactoryEventJournal journal = new OFactoryEventJournal(
+                this._directory, OFactoryEventJournal.MIN_SEGMENT_SIZE);
+        final OFactory<OFactoryChild> factory = new OFactory<OFactoryChild>();
+        factory.setEventJournal(journal);
+        factory.create("test-1", MockOFactoryChildImpl.class.getName());
+        factory.create("test-2", MockOFactoryChildImpl.class.getName());
+        journal.close();
+        factory.close();
+        
+        // damage the last byte of the second record.
+        final Path segment = this._directory.resolve(String.format("%020d",
+                0) + ".journal");
+        try (final FileChannel channel = FileChannel.open(segment,
+                StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            final ByteBuffer length = ByteBuffer.allocate(4);
+            channel.read(length, 0);
+            final int second = 8 + length.getInt(0);
+            length.clear();
+            channel.read(length, second);
+            channel.write(ByteBuffer.wrap(new byte[] { 1 }), second + 8
+                    + length.getInt(0) - 1);
+        }
+        
+        final OFactoryEventJournal reopened = new OFactoryEventJournal(
+                this._directory, OFactoryEventJournal.MIN_SEGMENT_SIZE);
+        Assert.assertTrue(reopened.getNextOffset() == 1);
+        final OFactory<OFactoryChild> rebuilt = new OFactory<OFactoryChild>();
+        rebuilt.setEventJournal(reopened);
+        rebuilt.create("test-3", MockOFactoryChildImpl.class.getName());
+        final List<OFactoryEventJournal.Record> records = replay(reopened, 0L);
+        Assert.assertTrue(records.size() == 2);
+        Assert.assertTrue(records.get(1).getKey().equals("test-3"));
+        Assert.assertTrue(records.get(1).getOffset() == 1);
+        reopened.close();
+        rebuilt.close();
+    }
+    
+    private static List<OFactoryEventJournal.Record> replay(
+            final OFactoryEventJournal journal, final long fromOffset)
+    {
+        final List<OFactoryEventJournal.Record> records = new ArrayList<OFactoryEventJournal.Record>();
+        journal.replay(fromOffset, new Consumer<OFactoryEventJournal.Record>()
+        {
+            @Override
+            public void accept(final OFactoryEventJournal.Record record)
+            {
+                records.add(record);
+            }
+        });
+        return (records);
+    }
+}
@@ -0,0 +1,109 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.gabsocial.ofactory.impl.MockOFactoryChildImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * 
+ * Test class for the Java Flight Recorder events of the <code>OFactory</code>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public class OFactoryFlightRecorderTest
+{
+    
+    @Test
+    public void testEventsRecorded() throws IOException, OFactoryChildException
+    {
+        final String className = "org.gabsocial.ofactory.impl.MockOFactoryChildImpl";
+        final File file = File.createTempFile("ofactory", ".jfr");
+        file.deleteOnExit();
+        
+        try (final Recording recording = new Recording())
+        {
+            recording.enable("org.gabsocial.ofactory.ChildCreated");
+            recording.enable("org.gabsocial.ofactory.ChildClosed");
+            recording.enable("org.gabsocial.ofactory.FactoryClose");
+            recording.start();
+            
+            final OFactory<MockOFactoryChildImpl> factory = new OFactory<MockOFactoryChildImpl>();
+            factory.create("test-mock-1", className);
+            factory.create("test-mock-2", className);
+            factory.closeChild("test-mock-1");
+            factory.close();
+            
+            recording.stop();
+            recording.dump(file.toPath());
+        }
+        
+        final Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (final RecordedEvent event : RecordingFile.readAllEvents(file
+                .toPath()))
+        {
+            final String name = event.getEventType().getName();
+            final Integer count = counts.get(name);
+            counts.put(name, (count == null) ? 1 : count + 1);
+            
+            if (name.equals("org.gabsocial.ofactory.ChildCreated"))
+            {
+                Assert.assertTrue(className.equals(event
+                        .getString("className")));
+                Assert.assertTrue(event.getString("key").startsWith(
+                        "test-mock-"));
+            }
+            else if (name.equals("org.gabsocial.ofactory.FactoryClose"))
+            {
+                Assert.assertTrue(event.getInt("childCount") == 1);
+            }
+        }
+        
+        Assert.assertTrue(Integer.valueOf(2).equals(
+                counts.get("org.gabsocial.ofactory.ChildCreated")));
+        Assert.assertTrue(Integer.valueOf(2).equals(
+                counts.get("org.gabsocial.ofactory.ChildClosed")));
+        Assert.assertTrue(Integer.valueOf(1).equals(
+                counts.get("org.gabsocial.ofactory.FactoryClose")));
+        
+        Assert.assertTrue(file.delete());
+    }
+    
+    @Test
+    public void testNoRecording()
+    {
+        Assert.assertTrue(OFactoryFlightRecorder.beginChildCreated() == null);
+        Assert.assertTrue(OFactoryFlightRecorder.beginDispatch() == null);
+        OFactoryFlightRecorder.commitChildCreated(null, "test-mock-1",
+                "org.gabsocial.ofactory.impl.MockOFactoryChildImpl");
+    }
+    
+}
@@ -0,0 +1,115 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import org.gabsocial.ofactory.impl.MockOFactoryChildImpl;
+import org.gabsocial.ofactory.impl.MockPropertiedOFactoryChildImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * 
+ * Test class for the <code>OFactoryMXBean</code>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public class OFactoryMXBeanTest
+{
+    
+    @Test
+    public void testAttributesAndOperations() throws JMException
+    {
+        final String className = "org.gabsocial.ofactory.impl.MockOFactoryChildImpl";
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final OFactory<MockOFactoryChildImpl> ofactory = new OFactory<MockOFactoryChildImpl>();
+        
+        try
+        {
+            final ObjectName name = ofactory.registerMBean("test-attributes");
+            Assert.assertTrue(server.isRegistered(name));
+            Assert.assertTrue(ofactory.getMetrics() != null);
+            
+            ofactory.create("test-mock-1", className);
+            ofactory.create("test-mock-2", className);
+            ofactory.get("test-mock-1");
+            
+            Assert.assertEquals(2, server.getAttribute(name, "ChildCount"));
+            Assert.assertEquals(2L, server.getAttribute(name, "CreateCount"));
+            Assert.assertEquals(1L, server.getAttribute(name, "GetHitCount"));
+            Assert.assertTrue((Long) server.getAttribute(name,
+                    "CreateLatency99thPercentile") > 0);
+            final TabularData counts = (TabularData) server.getAttribute(name,
+                    "ChildCountsByClass");
+            Assert.assertTrue(counts.get(new Object[] { className }) != null);
+            
+            final String[] keys = (String[]) server.invoke(name, "dumpKeys",
+                    new Object[0], new String[0]);
+            Assert.assertTrue(keys.length == 2);
+            final String[] ofType = (String[]) server.invoke(name,
+                    "dumpKeysOfType", new Object[] { className },
+                    new String[] { String.class.getName() });
+            Assert.assertTrue(ofType.length == 2);
+            
+            Assert.assertEquals(Boolean.TRUE, server.invoke(name, "closeChild",
+                    new Object[] { "test-mock-1" },
+                    new String[] { String.class.getName() }));
+            Assert.assertTrue(ofactory.getChildCount() == 1);
+            
+            ofactory.close();
+            Assert.assertFalse(server.isRegistered(name));
+        }
+        catch (final OFactoryChildException e)
+        {
+            Assert.fail(e.toString());
+        }
+    }
+    
+    @Test
+    public void testPropertiedOFactory()
+    {
+        final PropertiedOFactory<MockPropertiedOFactoryChildImpl, Properties> ofactory = new PropertiedOFactory<MockPropertiedOFactoryChildImpl, Properties>();
+        final ObjectName name = ofactory.registerMBean("test-propertied");
+        Assert.assertTrue(name.toString().contains("type=PropertiedOFactory"));
+        
+        try
+        {
+            ofactory.registerMBean("test-propertied-again");
+            Assert.fail();
+        }
+        catch (final OFactorySysException e)
+        {
+            Assert.assertTrue(true);
+        }
+        
+        ofactory.unregisterMBean();
+        Assert.assertTrue(ofactory.getMBeanName() == null);
+        Assert.assertFalse(ManagementFactory.getPlatformMBeanServer()
+                .isRegistered(name));
+    }
+}
@@ -0,0 +1,225 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+
+import org.gabsocial.ofactory.impl.MockOFactoryChildImpl;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * 
+ * Test class for the <code>OFactoryMetrics</code>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public class OFactoryMetricsTest
+{
+    
+    OFactoryMetrics                _metrics;
+    
+    OFactory<MockOFactoryChildImpl> _ofactory;
+    
+    @Before
+    public void setup()
+    {
+        this._ofactory = new OFactory<MockOFactoryChildImpl>();
+        this._metrics = new OFactoryMetrics();
+        this._ofactory.setMetrics(this._metrics);
+    }
+    
+    @Test
+    public void testCounters()
+    {
+        final String className = "org.gabsocial.ofactory.impl.MockOFactoryChildImpl";
+        
+        try
+        {
+            this._ofactory.addObserver(new Observer()
+            {
+                @Override
+                public void update(Observable o, Object arg)
+                {
+                    // void for now.
+                }
+            });
+            
+            this._ofactory.create("test-mock-1", className);
+            this._ofactory.create("test-mock-2", className);
+            this._ofactory.get("test-mock-1");
+            this._ofactory.get("test-mock-missing");
+            this._ofactory.tryGet("test-mock-missing");
+            this._ofactory.closeChild("test-mock-2");
+            
+            try
+            {
+                this._ofactory.create("test-mock-1", className);
+                Assert.fail();
+            }
+            catch (final OFactoryChildException e)
+            {
+                Assert.assertTrue(true);
+            }
+            
+            Assert.assertTrue(this._metrics.getChildrenCreated() == 2);
+            Assert.assertTrue(this._metrics.getChildrenClosed() == 1);
+            Assert.assertTrue(this._metrics.getLiveChildren() == 1);
+            Assert.assertTrue(this._metrics.getGetHits() == 1);
+            Assert.assertTrue(this._metrics.getGetMisses() == 2);
+            Assert.assertTrue(this._metrics.getCreateLatency(className)
+                    .getCount() == 2);
+            Assert.assertTrue(this._metrics.getDispatchLatency().getCount() > 0);
+            Assert.assertTrue(this._metrics.getExceptionCounts()
+                    .get(OFactoryChildException.class.getName()) == 1);
+            
+            this._ofactory.close();
+            Assert.assertTrue(this._metrics.getCloseLatency().getCount() == 1);
+            Assert.assertTrue(this._metrics.getLiveChildren() == 0);
+        }
+        catch (final OFactoryChildException e)
+        {
+            Assert.fail(e.toString());
+        }
+    }
+    
+    @Test
+    public void testDisabled()
+    {
+        final String className = "org.gabsocial.ofactory.impl.MockOFactoryChildImpl";
+        
+        try
+        {
+            this._ofactory.setMetrics(null);
+            this._ofactory.create("test-mock-1", className);
+            this._ofactory.get("test-mock-1");
+            Assert.assertTrue(this._ofactory.getMetrics() == null);
+            Assert.assertTrue(this._metrics.getChildrenCreated() == 0);
+            Assert.assertTrue(this._metrics.getGetHits() == 0);
+        }
+        catch (final OFactoryChildException e)
+        {
+            Assert.fail(e.toString());
+        }
+    }
+    
+    @Test
+    public void testSetAfterCreate()
+    {
+        final String className = "org.gabsocial.ofactory.impl.MockOFactoryChildImpl";
+        
+        try
+        {
+            final OFactory<MockOFactoryChildImpl> ofactory = new OFactory<MockOFactoryChildImpl>();
+            ofactory.create("test-mock-1", className);
+            ofactory.create("test-mock-2", className);
+            ofactory.setMetrics(this._metrics);
+            Assert.assertTrue(this._metrics.getLiveChildren() == 2);
+            
+            ofactory.closeChild("test-mock-1");
+            Assert.assertTrue(this._metrics.getLiveChildren() == 1);
+            ofactory.close();
+            Assert.assertTrue(this._metrics.getLiveChildren() == 0);
+            
+            try
+            {
+                ofactory.get("test-mock-1");
+                Assert.fail();
+            }
+            catch (final OFactoryClosedException e)
+            {
+                Assert.assertTrue(this._metrics.getExceptionCounts()
+                        .get(OFactoryClosedException.class.getName()) == 1);
+            }
+        }
+        catch (final OFactoryChildException e)
+        {
+            Assert.fail(e.toString());
+        }
+    }
+    
+    @Test
+    public void testExport()
+    {
+        final String className = "org.gabsocial.ofactory.impl.MockOFactoryChildImpl";
+        final Map<String, Long> exported = new HashMap<String, Long>();
+        
+        try
+        {
+            this._ofactory.create("test-mock-1", className);
+            this._metrics.export(new OFactoryMetricsExporter()
+            {
+                @Override
+                public void exportCounter(final String name, final long value)
+                {
+                    exported.put(name, value);
+                }
+                
+                @Override
+                public void exportGauge(final String name, final long value)
+                {
+                    exported.put(name, value);
+                }
+                
+                @Override
+                public void exportHistogram(final String name,
+                        final LatencyHistogram histogram)
+                {
+                    exported.put(name, histogram.getCount());
+                }
+            });
+            
+            Assert.assertTrue(exported.get("ofactory.create") == 1);
+            Assert.assertTrue(exported.get("ofactory.children") == 1);
+            Assert.assertTrue(exported.get("ofactory.create.latency."
+                    + className) == 1);
+        }
+        catch (final OFactoryChildException e)
+        {
+            Assert.fail(e.toString());
+        }
+    }
+    
+    @Test
+    public void testLatencyHistogram()
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++)
+        {
+            histogram.record(i * 1000);
+        }
+        Assert.assertTrue(histogram.getCount() == 1000);
+        Assert.assertTrue(histogram.getMax() == 1000000);
+        Assert.assertEquals(500500, histogram.getMean(), 0.001);
+        
+        // within the 12.5% bucket precision.
+        final long median = histogram.getValueAtPercentile(50);
+        Assert.assertTrue("p50=" + median, median >= 500000 && median <= 562500);
+        final long p99 = histogram.getValueAtPercentile(99);
+        Assert.assertTrue("p99=" + p99, p99 >= 990000 && p99 <= 1000000);
+        Assert.assertTrue(histogram.getValueAtPercentile(100) == 1000000);
+        Assert.assertTrue(new LatencyHistogram().getValueAtPercentile(50) == 0);
+    }
+}
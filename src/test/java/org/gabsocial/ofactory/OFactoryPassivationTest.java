@@ -0,0 +1,197 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.TimeUnit;
+
+import org.gabsocial.ofactory.impl.MockOFactoryChildImpl;
+import org.gabsocial.ofactory.impl.MockPassivatableOFactoryChildImpl;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * 
+ * Test class for the passivation of <code>OFactory</code> children
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public class OFactoryPassivationTest
+{
+    private Path _file;
+    
+    @Before
+    public void setup() throws IOException
+    {
+        this._file = Files.createTempDirectory("ofactory-passivation").resolve(
+                "children.passivated");
+    }
+    
+    @Test
+    public void testPassivateIdleAndReactivate() throws IOException,
+            InterruptedException, OFactoryChildException
+    {
+        final OFactory<OFactoryChild> factory = new OFactory<OFactoryChild>();
+        final MockPassivatableOFactoryChildImpl idle = (MockPassivatableOFactoryChildImpl) factory
+                .create("test-1",
+                        MockPassivatableOFactoryChildImpl.class.getName(),
+                        "red");
+        idle.setCount(7);
+        factory.create("test-2", MockOFactoryChildImpl.class.getName());
+        factory.enablePassivation(this._file, 20, TimeUnit.MILLISECONDS, 0);
+        Assert.assertTrue(factory.isPassivationEnabled());
+        
+        // the sweep passivates the idle child.
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (factory.getPassivatedCount() == 0
+                && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(factory.getPassivatedCount() == 1);
+        Assert.assertTrue(factory.getChildCount() == 1);
+        Assert.assertTrue(factory.containsChild("test-1"));
+        Assert.assertTrue(factory.getKeysTagged("red").isEmpty());
+        Assert.assertTrue(Files.exists(this._file));
+        try
+        {
+            idle.getKey();
+            Assert.fail();
+        }
+        catch (final OFactoryClosedException e)
+        {
+            // closed when passivated.
+        }
+        Assert.assertTrue(!factory.tryCreate("test-1",
+                MockPassivatableOFactoryChildImpl.class.getName())
+                .isSuccess());
+        
+        final MockPassivatableOFactoryChildImpl reactivated = (MockPassivatableOFactoryChildImpl) factory
+                .get("test-1");
+        Assert.assertTrue(reactivated != idle);
+        Assert.assertTrue(reactivated.getCount() == 7);
+        Assert.assertTrue(reactivated.getKey().equals("test-1"));
+        Assert.assertTrue(factory.getKeysTagged("red").equals(
+                new HashSet<String>(Arrays.asList("test-1"))));
+        
+        factory.close();
+        Assert.assertTrue(!Files.exists(this._file));
+    }
+    
+    @Test
+    public void testMaxActiveChildren() throws IOException,
+            OFactoryChildException
+    {
+        final OFactory<OFactoryChild> factory = new OFactory<OFactoryChild>();
+        for (int i = 0; i < 5; i++)
+        {
+            factory.create("test-" + i,
+                    MockPassivatableOFactoryChildImpl.class.getName());
+        }
+        factory.enablePassivation(this._file, 1, TimeUnit.HOURS, 2);
+        Assert.assertTrue(factory.passivateIdleChildren() == 3);
+        Assert.assertTrue(factory.getChildCount() == 2);
+        Assert.assertTrue(factory.passivateIdleChildren() == 0);
+        
+        // the child got last stays active.
+        final List<String> passivated = new ArrayList<String>();
+        for (int i = 0; i < 5; i++)
+        {
+            if (!factory.getKeys().contains("test-" + i))
+            {
+                passivated.add("test-" + i);
+            }
+        }
+        final String key = passivated.get(0);
+        Assert.assertTrue(factory.tryGet(key) != null);
+        Assert.assertTrue(factory.getPassivatedCount() == 2);
+        Assert.assertTrue(factory.passivateIdleChildren() == 1);
+        Assert.assertTrue(factory.getKeys().contains(key));
+        
+        factory.disablePassivation();
+        Assert.assertTrue(!factory.isPassivationEnabled());
+        Assert.assertTrue(factory.getChildCount() == 5);
+        Assert.assertTrue(!Files.exists(this._file));
+        factory.close();
+    }
+    
+    @Test
+    public void testCloseAndCheckpointPassivated() throws IOException,
+            OFactoryChildException
+    {
+        final OFactory<OFactoryChild> factory = new OFactory<OFactoryChild>();
+        for (int i = 0; i < 3; i++)
+        {
+            ((MockPassivatableOFactoryChildImpl) factory.create("test-" + i,
+                    MockPassivatableOFactoryChildImpl.class.getName()))
+                    .setCount(i);
+        }
+        factory.enablePassivation(this._file, 1, TimeUnit.HOURS, 1);
+        Assert.assertTrue(factory.passivateIdleChildren() == 2);
+        
+        // a checkpoint holds the passivated children too.
+        final Path checkpoint = this._file.resolveSibling("children.checkpoint");
+        Assert.assertTrue(factory.checkpoint(checkpoint) == 3);
+        final OFactory<OFactoryChild> restored = new OFactory<OFactoryChild>();
+        Assert.assertTrue(restored.restore(checkpoint, 2) == 3);
+        Assert.assertTrue(((MockPassivatableOFactoryChildImpl) restored
+                .get("test-2")).getCount() == 2);
+        restored.close();
+        
+        // closing a passivated child gives observers the child.
+        final List<OFactoryChild> removed = new ArrayList<OFactoryChild>();
+        factory.addObserver(new Observer()
+        {
+            @SuppressWarnings("unchecked")
+            @Override
+            public void update(final Observable observable, final Object arg)
+            {
+                final OFactory.Event<OFactoryChild> event = (OFactory.Event<OFactoryChild>) arg;
+                if (event.getType() == OFactory.Event.Type.REMOVE)
+                {
+                    removed.add(event.getChild());
+                }
+            }
+        });
+        int closed = 0;
+        for (int i = 0; i < 3; i++)
+        {
+            if (factory.closeChild("test-" + i) != null)
+            {
+                closed++;
+            }
+        }
+        Assert.assertTrue(closed == 3);
+        Assert.assertTrue(removed.size() == 3);
+        Assert.assertTrue(factory.getPassivatedCount() == 0);
+        Assert.assertTrue(!factory.containsChild("test-0"));
+        factory.close();
+    }
+}
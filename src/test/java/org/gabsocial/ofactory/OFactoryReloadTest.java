@@ -0,0 +1,246 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * 
+ * Test class for loading children with a class loader and reloading them.
+ * Two versions of a plugin child are compiled into their own directories.
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public class OFactoryReloadTest
+{
+    private static final String CLASS_NAME = "org.gabsocial.ofactory.plugin.PluginChild";
+    
+    private File                _version1;
+    
+    private File                _version2;
+    
+    /*
+     * Compiles a version of the plugin child whose toString() returns the
+     * version.
+     */
+    private static File compileVersion(final String version)
+            throws IOException
+    {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assume.assumeTrue(compiler != null);
+        
+        final Path directory = Files.createTempDirectory("ofactory-" + version);
+        final Path source = directory.resolve("PluginChild.java");
+        Files.write(source, ("package org.gabsocial.ofactory.plugin;\n"
+                + "public class PluginChild extends org.gabsocial.ofactory.BaseOFactoryChild\n"
+                + "{\n" + "    @Override\n" + "    public String toString()\n"
+                + "    {\n" + "        return (\"" + version + "\");\n"
+                + "    }\n" + "}\n").getBytes(StandardCharsets.UTF_8));
+        final String classPath = new File(OFactory.class.getProtectionDomain()
+                .getCodeSource().getLocation().getPath()).getPath();
+        Assert.assertTrue(compiler.run(null, null, null, "-nowarn", "-cp",
+                classPath, "-d", directory.toString(), source.toString()) == 0);
+        return (directory.toFile());
+    }
+    
+    private static ClassLoader loader(final File directory)
+            throws MalformedURLException
+    {
+        return (new URLClassLoader(new URL[] { directory.toURI().toURL() },
+                OFactory.class.getClassLoader()));
+    }
+    
+    @Before
+    public void setup() throws IOException
+    {
+        this._version1 = compileVersion("v1");
+        this._version2 = compileVersion("v2");
+    }
+    
+    @Test
+    public void testChildClassLoader() throws IOException,
+            OFactoryChildException
+    {
+        final OFactory<OFactoryChild> factory = new OFactory<OFactoryChild>();
+        try
+        {
+            factory.create("test-plugin", CLASS_NAME);
+            Assert.fail("The plugin is not on the class path of the factory.");
+        }
+        catch (final OFactorySysException e)
+        {
+            Assert.assertTrue(e.getCause() instanceof ClassNotFoundException);
+        }
+        
+        final ClassLoader loader = loader(this._version1);
+        factory.setChildClassLoader(loader);
+        Assert.assertTrue(factory.getChildClassLoader() == loader);
+        final OFactoryChild child = factory.create("test-plugin", CLASS_NAME);
+        Assert.assertTrue(child.getClass().getClassLoader() == loader);
+        Assert.assertTrue("v1".equals(child.toString()));
+        Assert.assertTrue(factory.create("test-plugin-2", CLASS_NAME)
+                .getClass() == child.getClass());
+        
+        // classes on the class path of the factory are still found.
+        Assert.assertTrue(factory.create("test-mock",
+                "org.gabsocial.ofactory.impl.MockOFactoryChildImpl") != null);
+        
+        // the plugin class is only known to its own loader.
+        final OFactoryMXBean management = new OFactoryManagement(factory);
+        Assert.assertTrue(management.dumpKeysOfType(CLASS_NAME).length == 2);
+        Assert.assertTrue(management.dumpKeysOfType(OFactoryChild.class
+                .getName()).length == 3);
+        factory.close();
+    }
+    
+    @Test
+    public void testReload() throws IOException, OFactoryChildException
+    {
+        final OFactory<OFactoryChild> factory = new OFactory<OFactoryChild>();
+        factory.setChildClassLoader(loader(this._version1));
+        final OFactoryChild old1 = factory.create("test-plugin-1", CLASS_NAME);
+        final OFactoryChild old2 = factory.create("test-plugin-2", CLASS_NAME,
+                "eu");
+        factory.create("test-mock",
+                "org.gabsocial.ofactory.impl.MockOFactoryChildImpl");
+        
+        try
+        {
+            factory.reload(CLASS_NAME);
+            Assert.fail("A reload needs a class loader factory.");
+        }
+        catch (final OFactorySysException e)
+        {
+            Assert.assertTrue(e.getMessage().contains(CLASS_NAME));
+        }
+        
+        final List<WeakReference<ClassLoader>> loaders = new ArrayList<WeakReference<ClassLoader>>();
+        factory.setClassLoaderFactory(new OFactoryClassLoaderFactory()
+        {
+            @Override
+            public ClassLoader newClassLoader(final String className)
+            {
+                try
+                {
+                    final ClassLoader loader = loader(OFactoryReloadTest.this._version2);
+                    loaders.add(new WeakReference<ClassLoader>(loader));
+                    return (loader);
+                }
+                catch (final MalformedURLException e)
+                {
+                    throw (new AssertionError(e));
+                }
+            }
+        });
+        final List<String> events = new ArrayList<String>();
+        factory.addObserver(new Observer()
+        {
+            @Override
+            public void update(final Observable observable, final Object arg)
+            {
+                final OFactory.Event<?> event = (OFactory.Event<?>) arg;
+                events.add(event.getType() + " " + event.getKey());
+            }
+        });
+        
+        Assert.assertTrue(factory.reload(CLASS_NAME) == 2);
+        Assert.assertTrue("v2".equals(factory.get("test-plugin-1").toString()));
+        Assert.assertTrue("v2".equals(factory.get("test-plugin-2").toString()));
+        Assert.assertTrue(factory.getKeysTagged("eu").contains("test-plugin-2"));
+        Assert.assertTrue(factory.getChildCount() == 3);
+        Assert.assertTrue(events.contains("REMOVE test-plugin-1"));
+        Assert.assertTrue(events.contains("CREATE test-plugin-1"));
+        try
+        {
+            old1.getKey();
+            Assert.fail("The replaced child should be closed.");
+        }
+        catch (final OFactoryClosedException e)
+        {
+            Assert.assertTrue(e != null);
+        }
+        Assert.assertTrue(factory.getChildrenOfType(old2.getClass()).isEmpty());
+        Assert.assertTrue(factory.getChildrenOfType(OFactoryChild.class).size() == 3);
+        Assert.assertTrue("v2".equals(factory.create("test-plugin-3",
+                CLASS_NAME).toString()));
+        
+        // a second reload releases the loader of the first.
+        Assert.assertTrue(factory.reload(CLASS_NAME) == 3);
+        Assert.assertTrue(loaders.size() == 2);
+        for (int i = 0; i < 50 && loaders.get(0).get() != null; i++)
+        {
+            System.gc();
+        }
+        Assert.assertTrue(loaders.get(0).get() == null);
+        factory.close();
+    }
+    
+    @Test
+    public void testFailedReloadKeepsChildren() throws IOException,
+            OFactoryChildException
+    {
+        final OFactory<OFactoryChild> factory = new OFactory<OFactoryChild>();
+        factory.setChildClassLoader(loader(this._version1));
+        final OFactoryChild child = factory.create("test-plugin", CLASS_NAME);
+        factory.setClassLoaderFactory(new OFactoryClassLoaderFactory()
+        {
+            @Override
+            public ClassLoader newClassLoader(final String className)
+            {
+                // a loader without the plugin.
+                return (new URLClassLoader(new URL[0], OFactory.class
+                        .getClassLoader()));
+            }
+        });
+        try
+        {
+            factory.reload(CLASS_NAME);
+            Assert.fail("The plugin cannot be found.");
+        }
+        catch (final OFactorySysException e)
+        {
+            Assert.assertTrue(factory.get("test-plugin") == child);
+            Assert.assertTrue("v1".equals(factory.create("test-plugin-2",
+                    CLASS_NAME).toString()));
+        }
+        factory.close();
+    }
+}
@@ -0,0 +1,323 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+
+import org.gabsocial.ofactory.impl.MockOFactoryChildImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * 
+ * Measures how the <code>OFactory</code> scales with the number of children
+ * and threads: create throughput, get latency, close() time and heap bytes
+ * per child. Each result is appended as a JSON line to the results file so
+ * that versions can be compared. This benchmark is slow and only runs with
+ * the benchmark profile:
+ * 
+ * <pre>
+ * mvn test -P benchmark
+ *     [-Dofactory.benchmark.children=1000,10000,100000,1000000,10000000]
+ *     [-Dofactory.benchmark.threads=1,2,4,8]
+ *     [-Dofactory.benchmark.gets=1000000]
+ *     [-Dofactory.benchmark.heap=-Xmx8g]
+ *     [-Dofactory.benchmark.output=target/benchmark/scaling.jsonl]
+ * </pre>
+ * 
+ * Heap per child is the growth of the used heap after full collections,
+ * divided by the number of children. It includes the child table entry, the
+ * key <code>String</code>, the child and the factory indexes.
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public class OFactoryScalingBenchmark
+{
+    /**
+     * The result of one child count and thread count.
+     */
+    static final class Result
+    {
+        long   _bytesPerChild = -1;
+        
+        int    _childCount;
+        
+        double _closeMillis;
+        
+        double _createOpsPerSecond;
+        
+        double _getMeanNanos;
+        
+        long   _getP50Nanos;
+        
+        long   _getP99Nanos;
+        
+        int    _threads;
+        
+        String toJson()
+        {
+            return (String.format(Locale.ROOT,
+                    "{\"version\":\"%s\",\"java\":\"%s\",\"children\":%d,"
+                            + "\"threads\":%d,\"createOpsPerSecond\":%.1f,"
+                            + "\"getMeanNanos\":%.1f,\"getP50Nanos\":%d,"
+                            + "\"getP99Nanos\":%d,\"closeMillis\":%.3f,"
+                            + "\"bytesPerChild\":%d}", VERSION,
+                    System.getProperty("java.version"), this._childCount,
+                    this._threads, this._createOpsPerSecond,
+                    this._getMeanNanos, this._getP50Nanos, this._getP99Nanos,
+                    this._closeMillis, this._bytesPerChild));
+        }
+    }
+    
+    private static final String CLASS_NAME   = "org.gabsocial.ofactory.impl.MockOFactoryChildImpl";
+    
+    /*
+     * One get in this many is timed on its own for the percentiles.
+     */
+    private static final int    SAMPLE_EVERY = 64;
+    
+    private static final String VERSION      = System.getProperty(
+                                                     "ofactory.version",
+                                                     "unknown");
+    
+    private static int[] intList(final String property,
+            final String defaultValue)
+    {
+        final String[] values = System.getProperty(property, defaultValue)
+                .split(",");
+        final int[] ints = new int[values.length];
+        for (int i = 0; i < values.length; i++)
+        {
+            ints[i] = Integer.parseInt(values[i].trim());
+        }
+        return (ints);
+    }
+    
+    private static String key(final int i)
+    {
+        return ("child-" + i);
+    }
+    
+    /*
+     * Runs the task on each of the threads, released together, and returns
+     * the elapsed nanoseconds.
+     */
+    private static long runTogether(final int threads, final ThreadTask task)
+            throws InterruptedException
+    {
+        final CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        for (int t = 0; t < threads; t++)
+        {
+            final int thread = t;
+            new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        barrier.await();
+                        task.run(thread);
+                    }
+                    catch (final Throwable e)
+                    {
+                        synchronized (failures)
+                        {
+                            failures.add(e);
+                        }
+                    }
+                    finally
+                    {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        try
+        {
+            barrier.await();
+        }
+        catch (final Exception e)
+        {
+            throw (new AssertionError(e));
+        }
+        final long start = System.nanoTime();
+        done.await();
+        final long elapsed = System.nanoTime() - start;
+        if (!failures.isEmpty())
+        {
+            throw (new AssertionError(failures.get(0)));
+        }
+        return (elapsed);
+    }
+    
+    private static long usedHeap() throws InterruptedException
+    {
+        for (int i = 0; i < 4; i++)
+        {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return (ManagementFactory.getMemoryMXBean().getHeapMemoryUsage()
+                .getUsed());
+    }
+    
+    /**
+     * A unit of work run by each benchmark thread.
+     */
+    interface ThreadTask
+    {
+        void run(int thread) throws Exception;
+    }
+    
+    /*
+     * Measures one child count and thread count.
+     */
+    private Result measure(final int childCount, final int threads,
+            final int gets, final boolean isMeasuringHeap)
+            throws InterruptedException
+    {
+        final Result result = new Result();
+        result._childCount = childCount;
+        result._threads = threads;
+        
+        final long heapBefore = isMeasuringHeap ? usedHeap() : 0;
+        final OFactory<MockOFactoryChildImpl> factory = new OFactory<MockOFactoryChildImpl>();
+        final long createNanos = runTogether(threads, new ThreadTask()
+        {
+            @Override
+            public void run(final int thread) throws Exception
+            {
+                for (int i = thread; i < childCount; i += threads)
+                {
+                    factory.create(key(i), CLASS_NAME);
+                }
+            }
+        });
+        result._createOpsPerSecond = childCount * 1e9 / createNanos;
+        if (isMeasuringHeap)
+        {
+            // -1 when the growth is lost in the noise of small counts.
+            result._bytesPerChild = Math.max(-1, (usedHeap() - heapBefore)
+                    / childCount);
+        }
+        Assert.assertTrue(factory.getChildCount() == childCount);
+        
+        final String[] keys = new String[Math.min(childCount, 1 << 16)];
+        final Random random = new Random(childCount);
+        for (int i = 0; i < keys.length; i++)
+        {
+            keys[i] = key(random.nextInt(childCount));
+        }
+        final LatencyHistogram latency = new LatencyHistogram();
+        final long getNanos = runTogether(threads, new ThreadTask()
+        {
+            @Override
+            public void run(final int thread)
+            {
+                final int mask = Integer.highestOneBit(keys.length) - 1;
+                int found = 0;
+                for (int i = 0; i < gets; i++)
+                {
+                    final String key = keys[(i + thread * 7919) & mask];
+                    if (i % SAMPLE_EVERY == 0)
+                    {
+                        final long start = System.nanoTime();
+                        found += (factory.get(key) != null) ? 1 : 0;
+                        latency.record(System.nanoTime() - start);
+                    }
+                    else
+                    {
+                        found += (factory.get(key) != null) ? 1 : 0;
+                    }
+                }
+                Assert.assertTrue(found == gets);
+            }
+        });
+        result._getMeanNanos = (double) getNanos / gets;
+        result._getP50Nanos = latency.getValueAtPercentile(50);
+        result._getP99Nanos = latency.getValueAtPercentile(99);
+        
+        final long closeStart = System.nanoTime();
+        factory.close();
+        result._closeMillis = (System.nanoTime() - closeStart) / 1e6;
+        return (result);
+    }
+    
+    @Test
+    public void runBenchmark() throws InterruptedException, IOException
+    {
+        final int[] childCounts = intList("ofactory.benchmark.children",
+                "1000,10000,100000,1000000");
+        final int[] threadCounts = intList("ofactory.benchmark.threads", "1,"
+                + Math.max(2, Runtime.getRuntime().availableProcessors()));
+        final int gets = Integer.getInteger("ofactory.benchmark.gets",
+                1000000);
+        final File output = new File(System.getProperty(
+                "ofactory.benchmark.output",
+                "target/benchmark/ofactory-scaling.jsonl"));
+        output.getAbsoluteFile().getParentFile().mkdirs();
+        
+        // warm up the create, get and close paths.
+        for (int i = 0; i < 5; i++)
+        {
+            this.measure(10000, 1, gets / 10, false);
+        }
+        
+        try (final PrintWriter writer = new PrintWriter(new FileWriter(output,
+                true)))
+        {
+            System.out.println(String.format(Locale.ROOT,
+                    "%10s %7s %14s %9s %8s %8s %10s %9s", "children",
+                    "threads", "create ops/s", "get ns", "get p50", "get p99",
+                    "close ms", "bytes"));
+            for (final int childCount : childCounts)
+            {
+                for (final int threads : threadCounts)
+                {
+                    final Result result = this.measure(childCount, threads,
+                            gets, threads == threadCounts[0]);
+                    writer.println(result.toJson());
+                    writer.flush();
+                    System.out.println(String.format(Locale.ROOT,
+                            "%10d %7d %14.0f %9.1f %8d %8d %10.3f %9s",
+                            childCount, threads, result._createOpsPerSecond,
+                            result._getMeanNanos, result._getP50Nanos,
+                            result._getP99Nanos, result._closeMillis,
+                            (result._bytesPerChild < 0) ? "-" : String
+                                    .valueOf(result._bytesPerChild)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import org.gabsocial.ofactory.impl.MockOFactoryChildImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * 
+ * Test class for <code>OFactory</code> scopes
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public class OFactoryScopeTest
+{
+    @Test
+    public void testGetFallsBackToParent() throws OFactoryChildException
+    {
+        final OFactory<OFactoryChild> application = new OFactory<OFactoryChild>();
+        final OFactoryChild shared = application.create("test-1",
+                MockOFactoryChildImpl.class.getName());
+        final OFactoryChild shadowed = application.create("test-2",
+                MockOFactoryChildImpl.class.getName());
+        
+        final OFactory<OFactoryChild> request = new OFactory<OFactoryChild>(
+                application);
+        Assert.assertTrue(request.getParentScope() == application);
+        Assert.assertTrue(application.getParentScope() == null);
+        final OFactoryChild own = request.create("test-2",
+                MockOFactoryChildImpl.class.getName());
+        
+        Assert.assertTrue(request.get("test-1") == shared);
+        Assert.assertTrue(request.tryGet("test-1") == shared);
+        Assert.assertTrue(request.get("test-2") == own);
+        Assert.assertTrue(request.get("test-2") != shadowed);
+        Assert.assertTrue(request.get("test-3") == null);
+        Assert.assertTrue(request.tryGet("test-3") == null);
+        
+        // only the scope's own children are counted.
+        Assert.assertTrue(request.getChildCount() == 1);
+        Assert.assertTrue(!request.containsChild("test-1"));
+        
+        request.close();
+        application.close();
+    }
+    
+    @Test
+    public void testCacheDroppedOnParentEvents() throws OFactoryChildException
+    {
+        final OFactory<OFactoryChild> application = new OFactory<OFactoryChild>();
+        final OFactory<OFactoryChild> session = new OFactory<OFactoryChild>(
+                application);
+        final OFactory<OFactoryChild> request = new OFactory<OFactoryChild>(
+                session);
+        
+        // the miss is cached, then dropped by the CREATE.
+        Assert.assertTrue(request.tryGet("test-1") == null);
+        Assert.assertTrue(request.tryGet("test-1") == null);
+        final OFactoryChild created = application.create("test-1",
+                MockOFactoryChildImpl.class.getName());
+        Assert.assertTrue(request.tryGet("test-1") == created);
+        Assert.assertTrue(session.tryGet("test-1") == created);
+        
+        // a closer scope shadows the application.
+        final OFactoryChild shadowing = session.create("test-1",
+                MockOFactoryChildImpl.class.getName());
+        Assert.assertTrue(request.get("test-1") == shadowing);
+        
+        session.closeChild("test-1");
+        Assert.assertTrue(request.get("test-1") == created);
+        
+        // the hit is cached, then dropped by the REMOVE.
+        created.close();
+        Assert.assertTrue(request.get("test-1") == null);
+        
+        final OFactoryChild recreated = application.create("test-1",
+                MockOFactoryChildImpl.class.getName());
+        Assert.assertTrue(request.get("test-1") == recreated);
+        
+        request.close();
+        session.close();
+        application.close();
+    }
+    
+    @Test
+    public void testCloseClosesOnlyOwnChildren() throws OFactoryChildException
+    {
+        final OFactory<OFactoryChild> application = new OFactory<OFactoryChild>();
+        final OFactoryChild shared = application.create("test-1",
+                MockOFactoryChildImpl.class.getName());
+        final int observers = application.getObserverCount();
+        
+        for (int i = 0; i < 1000; i++)
+        {
+            final OFactory<OFactoryChild> request = new OFactory<OFactoryChild>(
+                    application);
+            final OFactoryChild own = request.create("test-2",
+                    MockOFactoryChildImpl.class.getName());
+            Assert.assertTrue(request.get("test-1") == shared);
+            request.close();
+            Assert.assertTrue(request.isClosed());
+            try
+            {
+                own.getKey();
+                Assert.fail();
+            }
+            catch (final OFactoryClosedException e)
+            {
+                // closed with the scope.
+            }
+        }
+        
+        // the scopes did not register with or close the application.
+        Assert.assertTrue(shared.getKey().equals("test-1"));
+        Assert.assertTrue(application.getChildCount() == 1);
+        Assert.assertTrue(application.getObserverCount() == observers);
+        application.close();
+    }
+    
+    @Test
+    public void testParentClosed() throws OFactoryChildException
+    {
+        final OFactory<OFactoryChild> application = new OFactory<OFactoryChild>();
+        application.create("test-1", MockOFactoryChildImpl.class.getName());
+        final OFactory<OFactoryChild> request = new OFactory<OFactoryChild>(
+                application);
+        Assert.assertTrue(request.get("test-1") != null);
+        
+        application.close();
+        Assert.assertTrue(request.get("test-1") == null);
+        Assert.assertTrue(request.tryGet("test-1") == null);
+        Assert.assertTrue(!request.isClosed());
+        request.close();
+    }
+    
+    @Test
+    public void testNullParent()
+    {
+        try
+        {
+            new OFactory<OFactoryChild>(null);
+            Assert.fail();
+        }
+        catch (final IllegalArgumentException e)
+        {
+            // a scope needs a parent.
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.nio.file.Paths;
+
+
+/**
+ * 
+ * The main class of the reader JVMs launched by
+ * <code>OFactorySharedRegistryTest</code>. Opens the registry, waits for a
+ * key to be defined, creates the defined children and prints them.
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public final class OFactorySharedRegistryProbe
+{
+    /**
+     * The prefix of the printed child lines.
+     */
+    static final String CHILD = "ofactory-child";
+    
+    /**
+     * Prints a line for each child created from the registry:
+     * 
+     * <pre>
+     * ofactory-child &lt;key&gt; &lt;class name&gt; &lt;tags&gt;
+     * </pre>
+     * 
+     * @param args
+     *            The registry file and the key to wait for.
+     * 
+     * @throws Exception
+     *             if the registry cannot be read or the key is not defined
+     *             in time.
+     */
+    public static void main(final String[] args) throws Exception
+    {
+        try (final OFactorySharedRegistry registry = OFactorySharedRegistry
+                .open(Paths.get(args[0])))
+        {
+            final long deadline = System.currentTimeMillis() + 10000;
+            while (registry.get(args[1]) == null)
+            {
+                if (System.currentTimeMillis() > deadline)
+                {
+                    throw (new IllegalStateException("The key " + args[1]
+                            + " was not defined."));
+                }
+                Thread.sleep(10);
+            }
+            
+            final OFactory<OFactoryChild> factory = new OFactory<OFactoryChild>();
+            registry.createChildren(factory);
+            for (final String key : factory.getKeys())
+            {
+                System.out.println(CHILD + " " + key + " "
+                        + factory.get(key).getClass().getName() + " "
+                        + factory.getChildTags(key));
+            }
+            factory.close();
+        }
+    }
+    
+    private OFactorySharedRegistryProbe()
+    {
+        // main only.
+    }
+}
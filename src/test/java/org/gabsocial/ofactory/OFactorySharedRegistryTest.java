@@ -0,0 +1,280 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.gabsocial.gabdev.validate.Validate;
+import org.gabsocial.ofactory.impl.MockOFactoryChildImpl;
+import org.gabsocial.ofactory.impl.MockRunnableOFactoryChildImpl;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * 
+ * Test class for the <code>OFactorySharedRegistry</code>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public class OFactorySharedRegistryTest
+{
+    private Path _file;
+    
+    @Before
+    public void setup() throws IOException
+    {
+        this._file = Files.createTempDirectory("ofactory-registry").resolve(
+                "children.registry");
+    }
+    
+    @Test
+    public void testWriterAndReader() throws IOException,
+            OFactoryChildException
+    {
+        try (final OFactorySharedRegistry writer = OFactorySharedRegistry
+                .create(this._file, 16, 4096))
+        {
+            Assert.assertTrue(writer.isWriter());
+            final OFactory<OFactoryChild> factory = new OFactory<OFactoryChild>();
+            factory.create("test-1", MockOFactoryChildImpl.class.getName(),
+                    "red");
+            Assert.assertTrue(writer.publish(factory) == 1);
+            
+            // the registry follows the factory as an observer.
+            factory.addObserver(writer);
+            factory.create("test-2",
+                    MockRunnableOFactoryChildImpl.class.getName());
+            factory.create("test-3", MockOFactoryChildImpl.class.getName());
+            factory.closeChild("test-3");
+            
+            try (final OFactorySharedRegistry reader = OFactorySharedRegistry
+                    .open(this._file))
+            {
+                Assert.assertTrue(!reader.isWriter());
+                Assert.assertTrue(reader.getVersion() == writer.getVersion());
+                final OFactorySharedRegistry.Definition definition = reader
+                        .get("test-1");
+                Assert.assertTrue(definition.getClassName().equals(
+                        MockOFactoryChildImpl.class.getName()));
+                Assert.assertTrue(definition.getTags().equals(
+                        Arrays.asList("red")));
+                Assert.assertTrue(reader.get("test-3") == null);
+                Assert.assertTrue(reader.getDefinitions().size() == 2);
+                
+                final OFactory<OFactoryChild> sibling = new OFactory<OFactoryChild>();
+                Assert.assertTrue(reader.createChildren(sibling) == 2);
+                Assert.assertTrue(sibling.get("test-2") instanceof MockRunnableOFactoryChildImpl);
+                Assert.assertTrue(sibling.getChildTags("test-1").contains(
+                        "red"));
+                sibling.close();
+                
+                try
+                {
+                    reader.put("test-4", MockOFactoryChildImpl.class.getName());
+                    Assert.fail();
+                }
+                catch (final OFactorySysException e)
+                {
+                    // readers cannot write.
+                }
+            }
+            factory.close();
+        }
+    }
+    
+    @Test
+    public void testOneWriter() throws IOException
+    {
+        try (final OFactorySharedRegistry writer = OFactorySharedRegistry
+                .create(this._file, 16, 4096))
+        {
+            try
+            {
+                OFactorySharedRegistry.create(this._file, 16, 4096);
+                Assert.fail();
+            }
+            catch (final OFactorySysException e)
+            {
+                Assert.assertTrue(writer.isWriter());
+            }
+        }
+        OFactorySharedRegistry.create(this._file, 16, 4096).close();
+    }
+    
+    @Test
+    public void testReplaceAndCompact() throws IOException
+    {
+        try (final OFactorySharedRegistry writer = OFactorySharedRegistry
+                .create(this._file, 8, 1024))
+        {
+            // many more records than fit, so the data is compacted.
+            for (int i = 0; i < 1000; i++)
+            {
+                writer.put("test-" + (i % 8), "org.gabsocial.Child" + i);
+                if (i % 3 == 0)
+                {
+                    writer.remove("test-" + (i % 8));
+                }
+            }
+            final OFactorySharedRegistry reader = OFactorySharedRegistry
+                    .open(this._file);
+            Assert.assertTrue(reader.get("test-6").getClassName().equals(
+                    "org.gabsocial.Child998"));
+            Assert.assertTrue(reader.get("test-7") == null);
+            try
+            {
+                for (int i = 0; i < 9; i++)
+                {
+                    writer.put("key-" + i, "org.gabsocial.Child");
+                }
+                Assert.fail();
+            }
+            catch (final OFactorySysException e)
+            {
+                // full.
+            }
+            reader.close();
+        }
+    }
+    
+    @Test
+    public void testReadsWhileWriting() throws IOException,
+            InterruptedException
+    {
+        try (final OFactorySharedRegistry writer = OFactorySharedRegistry
+                .create(this._file, 64, 8192);
+                final OFactorySharedRegistry reader = OFactorySharedRegistry
+                        .open(this._file))
+        {
+            final AtomicBoolean isDone = new AtomicBoolean();
+            final AtomicReference<String> failure = new AtomicReference<String>();
+            final Thread readerThread = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    while (!isDone.get())
+                    {
+                        // each version holds keys and class names that match.
+                        for (final OFactorySharedRegistry.Definition definition : reader
+                                .getDefinitions())
+                        {
+                            if (!definition.getClassName().endsWith(
+                                    "." + definition.getKey()))
+                            {
+                                failure.set(definition.toString());
+                            }
+                        }
+                    }
+                }
+            });
+            readerThread.start();
+            for (int i = 0; i < 20000; i++)
+            {
+                final String key = "test" + (i % 50);
+                writer.put(key, "org.gabsocial.v" + i + "." + key);
+                if (i % 7 == 0)
+                {
+                    writer.remove(key);
+                }
+            }
+            isDone.set(true);
+            readerThread.join();
+            Assert.assertTrue(failure.get(), failure.get() == null);
+        }
+    }
+    
+    @Test
+    public void testReaderProcess() throws IOException, InterruptedException
+    {
+        try (final OFactorySharedRegistry writer = OFactorySharedRegistry
+                .create(this._file, 16, 4096))
+        {
+            final List<String> command = new ArrayList<String>();
+            command.add(System.getProperty("java.home") + File.separator
+                    + "bin" + File.separator + "java");
+            command.add("-cp");
+            command.add(classPathOf(OFactory.class) + File.pathSeparator
+                    + classPathOf(OFactorySharedRegistryProbe.class)
+                    + File.pathSeparator + classPathOf(Validate.class));
+            command.add(OFactorySharedRegistryProbe.class.getName());
+            command.add(this._file.toString());
+            command.add("test-2");
+            final Process process = new ProcessBuilder(command)
+                    .redirectErrorStream(true).start();
+            
+            // the reader is running before the keys are defined.
+            writer.put("test-1", MockOFactoryChildImpl.class.getName(), "red");
+            writer.put("test-2", MockRunnableOFactoryChildImpl.class.getName());
+            
+            final List<String> children = new ArrayList<String>();
+            final StringBuilder output = new StringBuilder();
+            try (final BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(),
+                            StandardCharsets.UTF_8)))
+            {
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    output.append(line).append('\n');
+                    if (line.startsWith(OFactorySharedRegistryProbe.CHILD))
+                    {
+                        children.add(line);
+                    }
+                }
+            }
+            Assert.assertTrue(output.toString(), process.waitFor() == 0);
+            Assert.assertTrue(output.toString(), children.contains(
+                    OFactorySharedRegistryProbe.CHILD + " test-1 "
+                            + MockOFactoryChildImpl.class.getName() + " [red]"));
+            Assert.assertTrue(output.toString(), children.contains(
+                    OFactorySharedRegistryProbe.CHILD + " test-2 "
+                            + MockRunnableOFactoryChildImpl.class.getName()
+                            + " []"));
+        }
+    }
+    
+    private static String classPathOf(final Class<?> type)
+    {
+        try
+        {
+            return (new File(type.getProtectionDomain().getCodeSource()
+                    .getLocation().toURI()).getPath());
+        }
+        catch (final URISyntaxException e)
+        {
+            throw (new AssertionError(e));
+        }
+    }
+}
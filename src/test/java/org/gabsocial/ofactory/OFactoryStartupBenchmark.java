@@ -0,0 +1,360 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.gabsocial.gabdev.validate.Validate;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+
+/**
+ * 
+ * Measures the time for a fresh JVM to bootstrap an <code>OFactory</code>
+ * with N children, each of its own class, so that each child is loaded with
+ * Class.forName, instantiated reflectively and initialized. For each child
+ * count, child classes are generated and compiled, then JVMs are launched
+ * running <code>OFactoryStartupProbe</code> under three conditions:
+ * 
+ * <pre>
+ * cold    class data sharing off (-Xshare:off), so every JDK and factory
+ *         class is loaded and verified from its jar or directory.
+ * warm    default class data sharing, after a discarded launch has brought
+ *         the class files into the file cache.
+ * appcds  as warm, with an application class data sharing archive of the
+ *         factory and child classes.  Skipped when the JVM cannot create one.
+ * </pre>
+ * 
+ * The file cache of the operating system cannot be dropped from here, so the
+ * cold condition measures a JVM without class data sharing rather than a
+ * machine that has just started.  Class data sharing archives only classes
+ * loaded from jars, so the factory, the probe and the generated children are
+ * packaged into jars for every condition.
+ * 
+ * Each result is appended as a JSON line to the results file.  This
+ * benchmark is slow and only runs with the benchmark profile:
+ * 
+ * <pre>
+ * mvn test -P benchmark -Dtest=OFactoryStartupBenchmark
+ *     [-Dofactory.startup.children=100,1000,5000]
+ *     [-Dofactory.startup.runs=5]
+ *     [-Dofactory.startup.java=/path/to/jdk/bin/java]
+ *     [-Dofactory.startup.output=target/benchmark/ofactory-startup.jsonl]
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public class OFactoryStartupBenchmark
+{
+    /**
+     * The timings of one launched JVM.
+     */
+    static final class Launch
+    {
+        final double _bootstrapMillis;
+        
+        final double _readyMillis;
+        
+        final long   _uptimeMillis;
+        
+        Launch(final double readyMillis, final double bootstrapMillis,
+                final long uptimeMillis)
+        {
+            this._readyMillis = readyMillis;
+            this._bootstrapMillis = bootstrapMillis;
+            this._uptimeMillis = uptimeMillis;
+        }
+    }
+    
+    private static final String VERSION = System.getProperty(
+                                                "ofactory.version", "unknown");
+    
+    private static String classPathOf(final Class<?> type)
+    {
+        try
+        {
+            return (new File(type.getProtectionDomain().getCodeSource()
+                    .getLocation().toURI()).getPath());
+        }
+        catch (final URISyntaxException e)
+        {
+            throw (new AssertionError(e));
+        }
+    }
+    
+    /*
+     * Generates and compiles one child class per child into the directory.
+     */
+    private static void generateChildren(final File directory,
+            final int children, final String classPath) throws IOException
+    {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assume.assumeTrue(compiler != null);
+        
+        final File sources = new File(directory, "src");
+        final File packageDirectory = new File(sources,
+                OFactoryStartupProbe.PACKAGE.replace('.', File.separatorChar));
+        Assert.assertTrue(packageDirectory.mkdirs());
+        
+        final List<String> arguments = new ArrayList<String>(Arrays.asList(
+                "-nowarn", "-source", "1.8", "-target", "1.8", "-cp",
+                classPath, "-d", new File(directory, "classes").getPath()));
+        Assert.assertTrue(new File(directory, "classes").mkdirs());
+        for (int i = 0; i < children; i++)
+        {
+            final String name = OFactoryStartupProbe.CLASS_PREFIX + i;
+            final File source = new File(packageDirectory, name + ".java");
+            Files.write(source.toPath(), ("package "
+                    + OFactoryStartupProbe.PACKAGE + ";\n" + "public class "
+                    + name + " extends org.gabsocial.ofactory.BaseOFactoryChild\n"
+                    + "{\n" + "    static final String ID = \"" + name
+                    + "\";\n" + "    @Override\n"
+                    + "    public String toString()\n" + "    {\n"
+                    + "        return (ID + super.toString());\n" + "    }\n"
+                    + "}\n").getBytes(StandardCharsets.UTF_8));
+            arguments.add(source.getPath());
+        }
+        Assert.assertTrue(compiler.run(null, null, null,
+                arguments.toArray(new String[arguments.size()])) == 0);
+    }
+    
+    /*
+     * Packages the class files under the directory, or only the given
+     * classes when any are given, into a jar.
+     */
+    private static String jar(final File directory, final File jar,
+            final Class<?>... only) throws IOException
+    {
+        final Path root = directory.toPath();
+        try (final JarOutputStream out = new JarOutputStream(
+                new FileOutputStream(jar));
+                final Stream<Path> files = Files.walk(root))
+        {
+            final Iterator<Path> iterator = files.iterator();
+            while (iterator.hasNext())
+            {
+                final Path file = iterator.next();
+                final String name = root.relativize(file).toString()
+                        .replace(File.separatorChar, '/');
+                boolean isIncluded = Files.isRegularFile(file);
+                if (isIncluded && only.length > 0)
+                {
+                    isIncluded = false;
+                    for (final Class<?> type : only)
+                    {
+                        final String prefix = type.getName().replace('.', '/');
+                        isIncluded |= name.equals(prefix + ".class")
+                                || name.startsWith(prefix + "$");
+                    }
+                }
+                if (isIncluded)
+                {
+                    out.putNextEntry(new JarEntry(name));
+                    Files.copy(file, out);
+                    out.closeEntry();
+                }
+            }
+        }
+        return (jar.getPath());
+    }
+    
+    private static double median(final List<Double> values)
+    {
+        final List<Double> sorted = new ArrayList<Double>(values);
+        Collections.sort(sorted);
+        return (sorted.get(sorted.size() / 2));
+    }
+    
+    private static int[] intList(final String property,
+            final String defaultValue)
+    {
+        final String[] values = System.getProperty(property, defaultValue)
+                .split(",");
+        final int[] ints = new int[values.length];
+        for (int i = 0; i < values.length; i++)
+        {
+            ints[i] = Integer.parseInt(values[i].trim());
+        }
+        return (ints);
+    }
+    
+    /*
+     * Launches a JVM running the probe and returns its timings, or null if
+     * the JVM did not print a result.
+     */
+    private static Launch launch(final String java, final String classPath,
+            final int children, final String... options) throws IOException,
+            InterruptedException
+    {
+        final List<String> command = new ArrayList<String>();
+        command.add(java);
+        command.addAll(Arrays.asList(options));
+        command.add("-cp");
+        command.add(classPath);
+        command.add(OFactoryStartupProbe.class.getName());
+        command.add(String.valueOf(children));
+        
+        final long start = System.nanoTime();
+        final Process process = new ProcessBuilder(command).redirectErrorStream(
+                true).start();
+        Launch launch = null;
+        try (final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(),
+                        StandardCharsets.UTF_8)))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                if (launch == null
+                        && line.startsWith(OFactoryStartupProbe.READY + " "))
+                {
+                    final double readyMillis = (System.nanoTime() - start) / 1e6;
+                    final String[] parts = line.split(" ");
+                    launch = new Launch(readyMillis,
+                            Long.parseLong(parts[1]) / 1e6,
+                            Long.parseLong(parts[2]));
+                }
+            }
+        }
+        return ((process.waitFor() == 0) ? launch : null);
+    }
+    
+    /*
+     * Launches the JVM the given number of times and appends the medians.
+     */
+    private static void measure(final PrintWriter writer, final String java,
+            final String classPath, final int children, final int runs,
+            final String condition, final String... options)
+            throws IOException, InterruptedException
+    {
+        final List<Double> ready = new ArrayList<Double>();
+        final List<Double> bootstrap = new ArrayList<Double>();
+        final List<Double> uptime = new ArrayList<Double>();
+        for (int run = 0; run < runs; run++)
+        {
+            final Launch launch = launch(java, classPath, children, options);
+            Assert.assertTrue("The " + condition + " JVM failed.",
+                    launch != null);
+            ready.add(launch._readyMillis);
+            bootstrap.add(launch._bootstrapMillis);
+            uptime.add((double) launch._uptimeMillis);
+        }
+        
+        writer.println(String.format(Locale.ROOT,
+                "{\"version\":\"%s\",\"java\":\"%s\",\"condition\":\"%s\","
+                        + "\"children\":%d,\"runs\":%d,\"readyMillis\":%.2f,"
+                        + "\"uptimeMillis\":%.0f,\"bootstrapMillis\":%.2f}",
+                VERSION, java, condition, children, runs, median(ready),
+                median(uptime), median(bootstrap)));
+        writer.flush();
+        System.out.println(String.format(Locale.ROOT,
+                "%8d %-7s ready %9.2f ms  bootstrap %9.2f ms", children,
+                condition, median(ready), median(bootstrap)));
+    }
+    
+    @Test
+    public void runBenchmark() throws IOException, InterruptedException
+    {
+        final int[] childCounts = intList("ofactory.startup.children",
+                "100,1000");
+        final int runs = Integer.getInteger("ofactory.startup.runs", 5);
+        final String java = System.getProperty("ofactory.startup.java",
+                System.getProperty("java.home") + File.separator + "bin"
+                        + File.separator + "java");
+        final File output = new File(System.getProperty(
+                "ofactory.startup.output",
+                "target/benchmark/ofactory-startup.jsonl"));
+        output.getAbsoluteFile().getParentFile().mkdirs();
+        
+        final File jars = Files.createTempDirectory("ofactory-startup-jars")
+                .toFile();
+        final String baseClassPath = jar(new File(classPathOf(OFactory.class)),
+                new File(jars, "ofactory.jar"))
+                + File.pathSeparator
+                + classPathOf(Validate.class)
+                + File.pathSeparator
+                + jar(new File(classPathOf(OFactoryStartupProbe.class)),
+                        new File(jars, "probe.jar"),
+                        OFactoryStartupProbe.class);
+        
+        try (final PrintWriter writer = new PrintWriter(new FileWriter(output,
+                true)))
+        {
+            for (final int children : childCounts)
+            {
+                final File directory = Files.createTempDirectory(
+                        "ofactory-startup").toFile();
+                generateChildren(directory, children, baseClassPath);
+                final String classPath = baseClassPath
+                        + File.pathSeparator
+                        + jar(new File(directory, "classes"), new File(
+                                directory, "children.jar"));
+                
+                measure(writer, java, classPath, children, runs, "cold",
+                        "-Xshare:off");
+                
+                // brings the class files into the file cache.
+                launch(java, classPath, children);
+                measure(writer, java, classPath, children, runs, "warm");
+                
+                final File archive = new File(directory, "app.jsa");
+                final String archiveOption = "-XX:SharedArchiveFile="
+                        + archive.getPath();
+                if (launch(java, classPath, children,
+                        "-XX:ArchiveClassesAtExit=" + archive.getPath()) != null
+                        && archive.isFile())
+                {
+                    measure(writer, java, classPath, children, runs, "appcds",
+                            archiveOption);
+                }
+                else
+                {
+                    System.out.println(String.format(Locale.ROOT,
+                            "%8d %-7s skipped, %s cannot create an archive",
+                            children, "appcds", java));
+                }
+            }
+        }
+    }
+}
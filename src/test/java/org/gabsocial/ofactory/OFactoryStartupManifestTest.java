@@ -0,0 +1,109 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.gabsocial.ofactory.impl.MockOFactoryChildImpl;
+import org.gabsocial.ofactory.impl.MockRunnableOFactoryChildImpl;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * 
+ * Test class for the <code>OFactoryStartupManifest</code>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public class OFactoryStartupManifestTest
+{
+    private Path _file;
+    
+    @Before
+    public void setup() throws IOException
+    {
+        this._file = Files.createTempDirectory("ofactory-manifest").resolve(
+                "startup.manifest");
+    }
+    
+    @Test
+    public void testRecordSaveAndPreload() throws IOException,
+            InterruptedException, ExecutionException, OFactoryChildException
+    {
+        final String first = MockRunnableOFactoryChildImpl.class.getName();
+        final String second = MockOFactoryChildImpl.class.getName();
+        
+        // first run: nothing to preload, every first create is a miss.
+        final OFactoryStartupManifest recording = new OFactoryStartupManifest(
+                this._file);
+        Assert.assertTrue(recording.preload(2).get().getPreloaded() == 0);
+        final OFactory<OFactoryChild> factory = new OFactory<OFactoryChild>();
+        factory.setStartupManifest(recording);
+        Assert.assertTrue(factory.getStartupManifest() == recording);
+        factory.create("test-1", first);
+        factory.create("test-2", second);
+        factory.create("test-3", first);
+        Assert.assertTrue(recording.getRecordedClassNames().equals(
+                Arrays.asList(first, second)));
+        Assert.assertTrue(recording.getReport().getMisses() == 2);
+        Assert.assertTrue(recording.getReport().getHits() == 0);
+        recording.save();
+        factory.close();
+        
+        final List<String> lines = Files.readAllLines(this._file,
+                StandardCharsets.UTF_8);
+        Assert.assertTrue(lines.equals(Arrays.asList(
+                OFactoryStartupManifest.HEADER, first, second)));
+        Files.write(this._file,
+                Arrays.asList("org.gabsocial.ofactory.impl.Removed"),
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        
+        // next run: the recorded classes are preloaded.
+        final OFactoryStartupManifest preloading = new OFactoryStartupManifest(
+                this._file);
+        final OFactoryStartupManifest.Report preloaded = preloading.preload(2)
+                .get();
+        Assert.assertTrue(preloaded.getPreloaded() == 2);
+        Assert.assertTrue(preloaded.getFailedClassNames().equals(
+                Arrays.asList("org.gabsocial.ofactory.impl.Removed")));
+        Assert.assertTrue(preloaded.getPreloadTime(TimeUnit.NANOSECONDS) > 0);
+        
+        final OFactory<OFactoryChild> next = new OFactory<OFactoryChild>();
+        next.setStartupManifest(preloading);
+        next.create("test-1", second);
+        next.create("test-2", first);
+        final OFactoryStartupManifest.Report served = preloading.getReport();
+        Assert.assertTrue(served.toString(), served.getHits() == 2);
+        Assert.assertTrue(served.getMisses() == 0);
+        Assert.assertTrue(served.getSavedTime(TimeUnit.NANOSECONDS) == preloaded
+                .getPreloadTime(TimeUnit.NANOSECONDS));
+        next.close();
+    }
+}
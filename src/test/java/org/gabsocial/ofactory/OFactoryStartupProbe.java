@@ -0,0 +1,84 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.lang.management.ManagementFactory;
+
+
+/**
+ * 
+ * The main class of the JVMs launched by <code>OFactoryStartupBenchmark</code>.
+ * Creates a factory with one child of each generated class and prints the
+ * time taken once the factory is ready.
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public final class OFactoryStartupProbe
+{
+    /**
+     * The package of the generated child classes.
+     */
+    static final String PACKAGE      = "org.gabsocial.ofactory.startup";
+    
+    /**
+     * The prefix of the printed result line.
+     */
+    static final String READY        = "ofactory-ready";
+    
+    /**
+     * The simple name prefix of the generated child classes.
+     */
+    static final String CLASS_PREFIX = "GeneratedChild";
+    
+    /**
+     * Creates the children and prints the result line:
+     * 
+     * <pre>
+     * ofactory-ready &lt;bootstrap nanos&gt; &lt;JVM uptime millis&gt;
+     * </pre>
+     * 
+     * @param args
+     *            The number of children to create.
+     * 
+     * @throws OFactoryChildException
+     *             if a child cannot be created.
+     */
+    public static void main(final String[] args) throws OFactoryChildException
+    {
+        final int children = Integer.parseInt(args[0]);
+        
+        final long start = System.nanoTime();
+        final OFactory<OFactoryChild> factory = new OFactory<OFactoryChild>();
+        for (int i = 0; i < children; i++)
+        {
+            factory.create("child-" + i, PACKAGE + "." + CLASS_PREFIX + i);
+        }
+        final long bootstrapNanos = System.nanoTime() - start;
+        
+        System.out.println(READY + " " + bootstrapNanos + " "
+                + ManagementFactory.getRuntimeMXBean().getUptime());
+        factory.close();
+    }
+    
+    private OFactoryStartupProbe()
+    {
+        // main only.
+    }
+}
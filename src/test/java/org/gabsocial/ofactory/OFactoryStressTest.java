@@ -0,0 +1,472 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.gabsocial.ofactory.LinearizabilityChecker.Call;
+import org.gabsocial.ofactory.impl.MockOFactoryChildImpl;
+import org.gabsocial.ofactory.impl.MockPropertiedOFactoryChildImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * 
+ * Multi-threaded stress and linearizability tests for the
+ * <code>OFactory</code>. These tests are slow and only run with the stress
+ * profile:
+ * 
+ * <pre>
+ * mvn test -P stress [-Dofactory.stress.rounds=20000]
+ * </pre>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public class OFactoryStressTest
+{
+    /**
+     * The sequential specification of an <code>OFactory</code>.
+     */
+    static final class FactoryModel implements LinearizabilityChecker.Model
+    {
+        private boolean               _isClosed;
+        
+        private final TreeSet<String> _keys;
+        
+        private int                   _observerCount;
+        
+        FactoryModel()
+        {
+            this._keys = new TreeSet<String>();
+        }
+        
+        private FactoryModel(final FactoryModel model)
+        {
+            this._keys = new TreeSet<String>(model._keys);
+            this._isClosed = model._isClosed;
+            this._observerCount = model._observerCount;
+        }
+        
+        @Override
+        public String apply(final String operation)
+        {
+            if (this._isClosed)
+            {
+                return (CLOSED);
+            }
+            
+            final String[] parts = operation.split(" ");
+            switch (parts[0])
+            {
+                case "addObserver":
+                    this._observerCount++;
+                    return ("ok");
+                case "close":
+                    this._isClosed = true;
+                    this._keys.clear();
+                    this._observerCount = 0;
+                    return ("ok");
+                case "closeChild":
+                    return (this._keys.remove(parts[1]) ? "removed" : "missing");
+                case "containsChild":
+                    return (String.valueOf(this._keys.contains(parts[1])));
+                case "create":
+                    return (this._keys.add(parts[1]) ? "ok" : "exists");
+                case "get":
+                    return (this._keys.contains(parts[1]) ? "hit" : "miss");
+                case "getChildCount":
+                    return (String.valueOf(this._keys.size()));
+                case "getObserverCount":
+                    return (String.valueOf(this._observerCount));
+                default:
+                    throw (new IllegalArgumentException(operation));
+            }
+        }
+        
+        @Override
+        public LinearizabilityChecker.Model copy()
+        {
+            return (new FactoryModel(this));
+        }
+        
+        @Override
+        public String state()
+        {
+            return (this._isClosed + " " + this._keys + " "
+                    + this._observerCount);
+        }
+    }
+    
+    private static final String CLASS_NAME = "org.gabsocial.ofactory.impl.MockOFactoryChildImpl";
+    
+    private static final String CLOSED     = "closed";
+    
+    private static final String[] KEYS       = { "a", "b" };
+    
+    private static final String[] OPERATIONS = { "addObserver", "close",
+            "closeChild", "containsChild", "create", "create", "get",
+            "getChildCount", "getObserverCount" };
+    
+    private static final int    ROUNDS     = Integer.getInteger(
+                                                   "ofactory.stress.rounds",
+                                                   5000);
+    
+    private static final int    THREADS    = Math.max(4, Runtime
+                                                   .getRuntime()
+                                                   .availableProcessors());
+    
+    /*
+     * Calls the operation on the factory and returns the result in the form
+     * the model gives.
+     */
+    private static String call(final OFactory<MockOFactoryChildImpl> factory,
+            final String operation)
+    {
+        final String[] parts = operation.split(" ");
+        try
+        {
+            switch (parts[0])
+            {
+                case "addObserver":
+                    factory.addObserver(new Observer()
+                    {
+                        @Override
+                        public void update(Observable o, Object arg)
+                        {
+                            // void for now.
+                        }
+                    });
+                    return ("ok");
+                case "close":
+                    factory.close();
+                    return ("ok");
+                case "closeChild":
+                    return ((factory.closeChild(parts[1]) != null) ? "removed"
+                            : "missing");
+                case "containsChild":
+                    return (String.valueOf(factory.containsChild(parts[1])));
+                case "create":
+                    factory.create(parts[1], CLASS_NAME);
+                    return ("ok");
+                case "get":
+                    return ((factory.get(parts[1]) != null) ? "hit" : "miss");
+                case "getChildCount":
+                    return (String.valueOf(factory.getChildCount()));
+                case "getObserverCount":
+                    return (String.valueOf(factory.getObserverCount()));
+                default:
+                    throw (new IllegalArgumentException(operation));
+            }
+        }
+        catch (final OFactoryClosedException e)
+        {
+            return (CLOSED);
+        }
+        catch (final OFactoryChildException e)
+        {
+            return ("exists");
+        }
+    }
+    
+    private static String randomOperation(final Random random)
+    {
+        final String name = OPERATIONS[random.nextInt(OPERATIONS.length)];
+        switch (name)
+        {
+            case "closeChild":
+            case "containsChild":
+            case "create":
+            case "get":
+                return (name + " " + KEYS[random.nextInt(KEYS.length)]);
+            default:
+                return (name);
+        }
+    }
+    
+    /*
+     * Runs each task on its own thread, released together, and rethrows the
+     * first failure.
+     */
+    private static void runTogether(final List<Runnable> tasks)
+            throws InterruptedException
+    {
+        final CyclicBarrier barrier = new CyclicBarrier(tasks.size());
+        final CountDownLatch done = new CountDownLatch(tasks.size());
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        for (final Runnable task : tasks)
+        {
+            new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        barrier.await();
+                        task.run();
+                    }
+                    catch (final Throwable t)
+                    {
+                        failure.compareAndSet(null, t);
+                    }
+                    finally
+                    {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        done.await();
+        if (failure.get() != null)
+        {
+            throw (new AssertionError(failure.get()));
+        }
+    }
+    
+    @Test
+    public void testCloseWhileCreating() throws InterruptedException
+    {
+        for (int round = 0; round < ROUNDS / 50; round++)
+        {
+            final OFactory<MockOFactoryChildImpl> factory = new OFactory<MockOFactoryChildImpl>();
+            final List<Runnable> tasks = new ArrayList<Runnable>();
+            final AtomicInteger created = new AtomicInteger();
+            for (int t = 0; t < THREADS; t++)
+            {
+                final int thread = t;
+                tasks.add(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            for (int i = 0; i < 1000; i++)
+                            {
+                                final String key = "t" + thread + "-" + i;
+                                factory.create(key, CLASS_NAME);
+                                created.incrementAndGet();
+                                Assert.assertTrue(factory.get(key) != null);
+                            }
+                        }
+                        catch (final OFactoryClosedException e)
+                        {
+                            // expected once the factory closes.
+                        }
+                        catch (final OFactoryChildException e)
+                        {
+                            throw (new AssertionError(e));
+                        }
+                    }
+                });
+            }
+            tasks.add(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    while (created.get() < 100)
+                    {
+                        Thread.yield();
+                    }
+                    factory.close();
+                }
+            });
+            runTogether(tasks);
+            
+            Assert.assertTrue(factory.isClosed());
+            Assert.assertTrue(factory.tryGet("t0-0") == null);
+        }
+    }
+    
+    @Test
+    public void testConcurrentCreatesOfSameKeys() throws InterruptedException
+    {
+        final int keyCount = 2000;
+        final OFactory<MockOFactoryChildImpl> factory = new OFactory<MockOFactoryChildImpl>();
+        final ConcurrentMap<String, AtomicInteger> createEvents = new ConcurrentHashMap<String, AtomicInteger>();
+        factory.addObserver(new Observer()
+        {
+            @SuppressWarnings("unchecked")
+            @Override
+            public void update(Observable o, Object arg)
+            {
+                final OFactory.Event<MockOFactoryChildImpl> event = (OFactory.Event<MockOFactoryChildImpl>) arg;
+                if (event.getType() == OFactory.Event.Type.CREATE)
+                {
+                    createEvents.putIfAbsent(event.getKey(),
+                            new AtomicInteger());
+                    createEvents.get(event.getKey()).incrementAndGet();
+                }
+            }
+        });
+        
+        final ConcurrentMap<String, MockOFactoryChildImpl> winners = new ConcurrentHashMap<String, MockOFactoryChildImpl>();
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        for (int t = 0; t < THREADS; t++)
+        {
+            final long seed = t;
+            tasks.add(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    final List<Integer> order = new ArrayList<Integer>();
+                    for (int i = 0; i < keyCount; i++)
+                    {
+                        order.add(i);
+                    }
+                    Collections.shuffle(order, new Random(seed));
+                    for (final int i : order)
+                    {
+                        final String key = "key-" + i;
+                        try
+                        {
+                            final MockOFactoryChildImpl child = factory
+                                    .create(key, CLASS_NAME);
+                            Assert.assertTrue(winners.putIfAbsent(key, child) == null);
+                        }
+                        catch (final OFactoryChildException e)
+                        {
+                            // another thread won.
+                        }
+                        Assert.assertTrue(factory.get(key) != null);
+                    }
+                }
+            });
+        }
+        runTogether(tasks);
+        
+        Assert.assertTrue(winners.size() == keyCount);
+        Assert.assertTrue(factory.getChildCount() == keyCount);
+        Assert.assertTrue(createEvents.size() == keyCount);
+        for (final String key : winners.keySet())
+        {
+            Assert.assertTrue(factory.get(key) == winners.get(key));
+            Assert.assertTrue(createEvents.get(key).get() == 1);
+        }
+        factory.close();
+    }
+    
+    @Test
+    public void testConcurrentPropertiedCreates() throws InterruptedException
+    {
+        final int keyCount = 1000;
+        final PropertiedOFactory<MockPropertiedOFactoryChildImpl, Properties> factory = new PropertiedOFactory<MockPropertiedOFactoryChildImpl, Properties>();
+        final AtomicInteger wins = new AtomicInteger();
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        for (int t = 0; t < THREADS; t++)
+        {
+            tasks.add(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (int i = 0; i < keyCount; i++)
+                    {
+                        try
+                        {
+                            factory.create("key-" + i,
+                                    MockPropertiedOFactoryChildImpl.class,
+                                    new Properties());
+                            wins.incrementAndGet();
+                        }
+                        catch (final OFactoryChildException e)
+                        {
+                            // another thread won.
+                        }
+                        factory.closeChild("key-" + i);
+                    }
+                }
+            });
+        }
+        runTogether(tasks);
+        
+        Assert.assertTrue(wins.get() >= keyCount);
+        Assert.assertTrue(factory.getChildCount() == 0);
+        factory.close();
+    }
+    
+    @Test
+    public void testLinearizableHistories() throws InterruptedException
+    {
+        final int threads = 3;
+        final int callsPerThread = 4;
+        final Random random = new Random(42);
+        
+        for (int round = 0; round < ROUNDS; round++)
+        {
+            final OFactory<MockOFactoryChildImpl> factory = new OFactory<MockOFactoryChildImpl>();
+            final List<List<Call>> histories = new ArrayList<List<Call>>();
+            final List<Runnable> tasks = new ArrayList<Runnable>();
+            for (int t = 0; t < threads; t++)
+            {
+                final int thread = t;
+                final List<Call> history = new ArrayList<Call>();
+                final String[] operations = new String[callsPerThread];
+                for (int i = 0; i < callsPerThread; i++)
+                {
+                    operations[i] = randomOperation(random);
+                }
+                histories.add(history);
+                tasks.add(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        for (final String operation : operations)
+                        {
+                            final long invoked = System.nanoTime();
+                            final String result = call(factory, operation);
+                            history.add(new Call(thread, operation, result,
+                                    invoked, System.nanoTime()));
+                        }
+                    }
+                });
+            }
+            runTogether(tasks);
+            
+            final List<Call> calls = new ArrayList<Call>();
+            for (final List<Call> history : histories)
+            {
+                calls.addAll(history);
+            }
+            if (LinearizabilityChecker.linearize(calls, new FactoryModel()) == null)
+            {
+                Assert.fail("History is not linearizable: "
+                        + LinearizabilityChecker.byInvocation(calls));
+            }
+        }
+    }
+}
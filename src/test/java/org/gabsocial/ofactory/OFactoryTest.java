@@ -19,7 +19,21 @@
 
 package org.gabsocial.ofactory;
 
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
 import org.gabsocial.ofactory.impl.MockOFactoryChildImpl;
+import org.gabsocial.ofactory.impl.MockRunnableOFactoryChildImpl;
+import org.gabsocial.ofactory.impl.MockTabledOFactoryChildImpl;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -306,4 +320,544 @@ public class OFactoryTest
             Assert.assertTrue(true);
         }
     }
+    
+    @Test
+    public void testGetKeysIsSnapshot()
+    {
+        final String className = "org.gabsocial.ofactory.impl.MockOFactoryChildImpl";
+        
+        try
+        {
+            this._ofactory.create("test-mock-1", className);
+            this._ofactory.create("test-mock-2", className);
+            
+            final Set<String> keys = this._ofactory.getKeys();
+            Assert.assertTrue(keys.size() == 2);
+            
+            // changes after the call are not visible in the returned keys.
+            for (final String key : keys)
+            {
+                this._ofactory.closeChild(key);
+                this._ofactory.create(key + "-new", className);
+            }
+            Assert.assertTrue(keys.size() == 2);
+            Assert.assertTrue(keys.contains("test-mock-1"));
+            Assert.assertTrue(keys.contains("test-mock-2"));
+            Assert.assertTrue(this._ofactory.containsChild("test-mock-1-new"));
+            Assert.assertTrue(this._ofactory.getChildCount() == 2);
+        }
+        catch (final OFactoryChildException e)
+        {
+            Assert.fail(e.toString());
+        }
+    }
+    
+    @Test
+    public void testSnapshot()
+    {
+        final String className = "org.gabsocial.ofactory.impl.MockOFactoryChildImpl";
+        
+        try
+        {
+            final MockOFactoryChildImpl child = this._ofactory.create(
+                    "test-mock-o", className);
+            final Map<String, MockOFactoryChildImpl> snapshot = this._ofactory
+                    .snapshot();
+            this._ofactory.create("test-mock-later", className);
+            
+            Assert.assertTrue(snapshot.size() == 1);
+            Assert.assertTrue(snapshot.get("test-mock-o") == child);
+            Assert.assertFalse(snapshot.containsKey("test-mock-later"));
+            
+            try
+            {
+                snapshot.remove("test-mock-o");
+                Assert.fail();
+            }
+            catch (final UnsupportedOperationException e)
+            {
+                Assert.assertTrue(this._ofactory.containsChild("test-mock-o"));
+            }
+        }
+        catch (final OFactoryChildException e)
+        {
+            Assert.fail(e.toString());
+        }
+    }
+    
+    @Test
+    public void testOFactoryCloseWithChildren()
+    {
+        final String className = "org.gabsocial.ofactory.impl.MockOFactoryChildImpl";
+        
+        try
+        {
+            for (int i = 0; i < 100; i++)
+            {
+                this._ofactory.create("test-mock-" + i, className);
+            }
+            Assert.assertTrue(this._ofactory.getChildCount() == 100);
+            
+            this._ofactory.close();
+            Assert.assertTrue(this._ofactory.isClosed());
+        }
+        catch (final OFactoryChildException e)
+        {
+            Assert.fail(e.toString());
+        }
+    }
+    
+    @Test
+    public void testStream()
+    {
+        final String className = "org.gabsocial.ofactory.impl.MockOFactoryChildImpl";
+        
+        try
+        {
+            for (int i = 0; i < 10000; i++)
+            {
+                this._ofactory.create("test-mock-" + i, className);
+            }
+            
+            Assert.assertTrue(this._ofactory.stream().count() == 10000);
+            Assert.assertTrue(this._ofactory.parallelStream().distinct()
+                    .count() == 10000);
+            Assert.assertTrue(this._ofactory.parallelStream()
+                    .filter(new Predicate<MockOFactoryChildImpl>()
+                    {
+                        @Override
+                        public boolean test(final MockOFactoryChildImpl child)
+                        {
+                            return (child.getKey().endsWith("7"));
+                        }
+                    }).count() == 1000);
+        }
+        catch (final OFactoryChildException e)
+        {
+            Assert.fail(e.toString());
+        }
+    }
+    
+    @Test
+    public void testForEachChildDoesNotNotify()
+    {
+        final String className = "org.gabsocial.ofactory.impl.MockOFactoryChildImpl";
+        
+        try
+        {
+            this._ofactory.create("test-mock-1", className);
+            this._ofactory.create("test-mock-2", className);
+            
+            this._ofactory.addObserver(new Observer()
+            {
+                @Override
+                public void update(Observable o, Object arg)
+                {
+                    Assert.fail("observer should not be called.");
+                }
+            });
+            
+            final AtomicInteger count = new AtomicInteger();
+            this._ofactory.forEachChild(new Consumer<MockOFactoryChildImpl>()
+            {
+                @Override
+                public void accept(final MockOFactoryChildImpl child)
+                {
+                    count.incrementAndGet();
+                }
+            });
+            Assert.assertTrue(count.get() == 2);
+        }
+        catch (final OFactoryChildException e)
+        {
+            Assert.fail(e.toString());
+        }
+    }
+    
+    @Test
+    public void testChildrenOfType()
+    {
+        final OFactory<OFactoryChild> ofactory = new OFactory<OFactoryChild>();
+        final String className = "org.gabsocial.ofactory.impl.MockOFactoryChildImpl";
+        final String runnableClassName = "org.gabsocial.ofactory.impl.MockRunnableOFactoryChildImpl";
+        
+        try
+        {
+            ofactory.create("test-mock-1", className);
+            ofactory.create("test-mock-2", className);
+            ofactory.create("test-runnable-1", runnableClassName);
+            ofactory.create("test-runnable-2", runnableClassName);
+            ofactory.create("test-runnable-3", runnableClassName);
+            
+            Assert.assertTrue(ofactory.countOfType(Runnable.class) == 3);
+            Assert.assertTrue(ofactory.countOfType(MockOFactoryChildImpl.class) == 2);
+            Assert.assertTrue(ofactory.countOfType(BaseOFactoryChild.class) == 5);
+            Assert.assertTrue(ofactory.countOfType(OFactoryChild.class) == 5);
+            Assert.assertTrue(ofactory.countOfType(Object.class) == 5);
+            Assert.assertTrue(ofactory.countOfType(Comparable.class) == 0);
+            // a marker interface is indexed; the catch-all types are not.
+            Assert.assertTrue(ChildTypeIndex.isIndexed(Serializable.class));
+            Assert.assertFalse(ChildTypeIndex.isIndexed(OFactoryChild.class));
+            
+            for (final Runnable runnable : ofactory
+                    .getChildrenOfType(Runnable.class))
+            {
+                Assert.assertTrue(runnable instanceof MockRunnableOFactoryChildImpl);
+            }
+            Assert.assertTrue(ofactory.getKeysOfType(Runnable.class).contains(
+                    "test-runnable-2"));
+            
+            ofactory.closeChild("test-runnable-2");
+            Assert.assertTrue(ofactory.countOfType(Runnable.class) == 2);
+            Assert.assertFalse(ofactory.getKeysOfType(Runnable.class)
+                    .contains("test-runnable-2"));
+            Assert.assertTrue(ofactory.getChildrenOfType(
+                    MockRunnableOFactoryChildImpl.class).size() == 2);
+        }
+        catch (final OFactoryChildException e)
+        {
+            Assert.fail(e.toString());
+        }
+    }
+    
+    @Test
+    public void testTags()
+    {
+        final String className = "org.gabsocial.ofactory.impl.MockOFactoryChildImpl";
+        
+        try
+        {
+            for (int i = 0; i < 3000; i++)
+            {
+                final String region = (i % 2 == 0) ? "eu" : "us";
+                if (i % 3 == 0)
+                {
+                    this._ofactory.create("test-mock-" + i, className, region,
+                            "premium");
+                }
+                else
+                {
+                    this._ofactory.create("test-mock-" + i, className, region);
+                }
+            }
+            this._ofactory.create("test-mock-untagged", className);
+            
+            Assert.assertTrue(this._ofactory.countTagged("eu") == 1500);
+            Assert.assertTrue(this._ofactory.countTagged("premium") == 1000);
+            Assert.assertTrue(this._ofactory.countTagged("eu", "premium") == 500);
+            Assert.assertTrue(this._ofactory.countTagged("eu", "us") == 0);
+            Assert.assertTrue(this._ofactory.countTagged("missing") == 0);
+            Assert.assertTrue(this._ofactory.getKeysTagged("eu", "premium")
+                    .contains("test-mock-6"));
+            Assert.assertTrue(this._ofactory.getChildTags("test-mock-3")
+                    .contains("premium"));
+            Assert.assertTrue(this._ofactory.getChildTags("test-mock-untagged")
+                    .isEmpty());
+            
+            for (final MockOFactoryChildImpl child : this._ofactory
+                    .getChildrenTagged("us", "premium"))
+            {
+                Assert.assertTrue(this._ofactory.getChildTags(child.getKey())
+                        .contains("us"));
+            }
+            
+            Assert.assertTrue(this._ofactory.closeChildrenTagged("eu",
+                    "premium") == 500);
+            Assert.assertTrue(this._ofactory.getChildCount() == 2501);
+            Assert.assertTrue(this._ofactory.countTagged("premium") == 500);
+            Assert.assertFalse(this._ofactory.containsChild("test-mock-6"));
+            
+            // the slots of closed children are reused.
+            this._ofactory.create("test-mock-6", className, "eu", "premium");
+            Assert.assertTrue(this._ofactory.countTagged("eu", "premium") == 1);
+        }
+        catch (final OFactoryChildException e)
+        {
+            Assert.fail(e.toString());
+        }
+    }
+    
+    @Test
+    public void testGetMissingKey()
+    {
+        Assert.assertTrue(this._ofactory.get("test-mock-missing") == null);
+        Assert.assertTrue(this._ofactory.tryGet("test-mock-missing") == null);
+        Assert.assertTrue(this._ofactory.tryGet(null) == null);
+        Assert.assertTrue(this._ofactory.tryGet("") == null);
+    }
+    
+    @Test
+    public void testTryCreateAndTryCloseChild()
+    {
+        final String className = "org.gabsocial.ofactory.impl.MockOFactoryChildImpl";
+        
+        final OFactoryResult<MockOFactoryChildImpl> created = this._ofactory
+                .tryCreate("test-mock", className, "eu");
+        Assert.assertTrue(created.getStatus() == OFactoryResult.Status.CREATED);
+        Assert.assertTrue(created.isSuccess());
+        Assert.assertTrue(created.getChild() == this._ofactory.get("test-mock"));
+        Assert.assertTrue(this._ofactory.countTagged("eu") == 1);
+        
+        Assert.assertTrue(this._ofactory.tryCreate("test-mock", className)
+                .getStatus() == OFactoryResult.Status.DUPLICATE_KEY);
+        Assert.assertTrue(this._ofactory.tryCreate("", className).getStatus() == OFactoryResult.Status.INVALID_ARGUMENT);
+        Assert.assertTrue(this._ofactory.tryCreate("test-mock-2", null)
+                .getStatus() == OFactoryResult.Status.INVALID_ARGUMENT);
+        Assert.assertTrue(!this._ofactory.tryCreate("test-mock-2", className,
+                (String) null).toOptional().isPresent());
+        
+        final OFactoryResult<MockOFactoryChildImpl> closed = this._ofactory
+                .tryCloseChild("test-mock");
+        Assert.assertTrue(closed.getStatus() == OFactoryResult.Status.CHILD_CLOSED);
+        Assert.assertTrue(closed.getChild() == created.getChild());
+        Assert.assertTrue(!this._ofactory.containsChild("test-mock"));
+        Assert.assertTrue(this._ofactory.tryCloseChild("test-mock")
+                .getStatus() == OFactoryResult.Status.NOT_FOUND);
+        
+        this._ofactory.close();
+        Assert.assertTrue(this._ofactory.tryCreate("test-mock", className)
+                .getStatus() == OFactoryResult.Status.FACTORY_CLOSED);
+        Assert.assertTrue(this._ofactory.tryCloseChild("test-mock")
+                .getStatus() == OFactoryResult.Status.FACTORY_CLOSED);
+    }
+    
+    @Test
+    public void testStacklessExceptions()
+    {
+        final String className = "org.gabsocial.ofactory.impl.MockOFactoryChildImpl";
+        this._ofactory.enableStacklessExceptions();
+        Assert.assertTrue(this._ofactory.isStacklessExceptionsEnabled());
+        
+        try
+        {
+            this._ofactory.create("test-mock", className);
+            this._ofactory.create("test-mock", className);
+            Assert.fail("A duplicate key should throw.");
+        }
+        catch (final OFactoryChildException e)
+        {
+            Assert.assertTrue(e.getStackTrace().length == 0);
+            Assert.assertTrue(e.getMessage().contains("test-mock"));
+        }
+        
+        this._ofactory.close();
+        OFactoryClosedException first = null;
+        for (int i = 0; i < 2; i++)
+        {
+            try
+            {
+                this._ofactory.get("test-mock");
+                Assert.fail("A closed factory should throw.");
+            }
+            catch (final OFactoryClosedException e)
+            {
+                Assert.assertTrue(e.getStackTrace().length == 0);
+                Assert.assertTrue(first == null || first == e);
+                first = e;
+            }
+        }
+    }
+    
+    @Test
+    public void testExceptionKeepsCause()
+    {
+        final Exception cause = new IllegalStateException("cause");
+        Assert.assertTrue(new OFactoryChildException("child", cause).getCause() == cause);
+        Assert.assertTrue(new OFactoryClosedException("closed", cause)
+                .getCause() == cause);
+        Assert.assertTrue(new OFactoryClosedException(cause).getCause() == cause);
+        Assert.assertTrue(new OFactoryClosedException("closed", null, false)
+                .getStackTrace().length > 0);
+    }
+    
+    @Test
+    public void testCreateThroughChildTable() throws OFactoryChildException
+    {
+        // the constructor is not public, so reflection would fail.
+        final OFactoryChild child = this._ofactory.create("test-tabled",
+                "org.gabsocial.ofactory.impl.MockTabledOFactoryChildImpl");
+        Assert.assertTrue(child instanceof MockTabledOFactoryChildImpl);
+        Assert.assertTrue(this._ofactory.get("test-tabled") == child);
+        
+        // classes missing from the table are created by reflection.
+        Assert.assertTrue(this._ofactory.create("test-mock",
+                "org.gabsocial.ofactory.impl.MockOFactoryChildImpl") != null);
+    }
+    
+    @Test
+    public void testTryGetWithNegativeLookupFilter()
+    {
+        final String className = "org.gabsocial.ofactory.impl.MockOFactoryChildImpl";
+        
+        try
+        {
+            this._ofactory.create("test-mock-0", className);
+            this._ofactory.enableNegativeLookupFilter(16);
+            Assert.assertTrue(this._ofactory.isNegativeLookupFilterEnabled());
+            
+            // grows past the expected count.
+            for (int i = 1; i < 100; i++)
+            {
+                this._ofactory.create("test-mock-" + i, className);
+            }
+            for (int i = 0; i < 100; i++)
+            {
+                Assert.assertTrue(this._ofactory.tryGet("test-mock-" + i) != null);
+                Assert.assertTrue(this._ofactory.get("test-mock-" + i) != null);
+            }
+            
+            this._ofactory.closeChild("test-mock-5");
+            Assert.assertTrue(this._ofactory.tryGet("test-mock-5") == null);
+            Assert.assertTrue(this._ofactory.get("test-mock-5") == null);
+            
+            final Observer observer = new Observer()
+            {
+                @Override
+                public void update(Observable o, Object arg)
+                {
+                    Assert.fail("observer should not be called.");
+                }
+            };
+            this._ofactory.addObserver(observer);
+            for (int i = 0; i < 1000; i++)
+            {
+                Assert.assertTrue(this._ofactory.tryGet("test-missing-" + i) == null);
+            }
+            this._ofactory.removeObserver(observer);
+            
+            this._ofactory.disableNegativeLookupFilter();
+            Assert.assertFalse(this._ofactory.isNegativeLookupFilterEnabled());
+            
+            this._ofactory.close();
+            Assert.assertTrue(this._ofactory.tryGet("test-mock-1") == null);
+        }
+        catch (final OFactoryChildException e)
+        {
+            Assert.fail(e.toString());
+        }
+    }
+    
+    @Test
+    public void testSlowCreateDetection() throws InterruptedException
+    {
+        final AtomicReference<SlowCreateReport> reported = new AtomicReference<SlowCreateReport>();
+        final OFactoryMetrics metrics = new OFactoryMetrics();
+        this._ofactory.setMetrics(metrics);
+        this._ofactory.addObserver(new Observer()
+        {
+            @SuppressWarnings("unchecked")
+            @Override
+            public void update(Observable o, Object arg)
+            {
+                final OFactory.Event<MockOFactoryChildImpl> event = (OFactory.Event<MockOFactoryChildImpl>) arg;
+                if (event.getType() == OFactory.Event.Type.SLOW_CREATE)
+                {
+                    Assert.assertTrue(event.getChild() != null);
+                    Assert.assertTrue(reported.compareAndSet(null,
+                            event.getSlowCreateReport()));
+                }
+            }
+        });
+        
+        try
+        {
+            this._ofactory.enableSlowCreateDetection(50, TimeUnit.MILLISECONDS);
+            Assert.assertTrue(this._ofactory.isSlowCreateDetectionEnabled());
+            
+            this._ofactory.create("test-mock-fast",
+                    "org.gabsocial.ofactory.impl.MockOFactoryChildImpl");
+            Assert.assertTrue(reported.get() == null);
+            
+            this._ofactory.create("test-mock-slow",
+                    "org.gabsocial.ofactory.impl.MockSlowOFactoryChildImpl");
+            final SlowCreateReport report = reported.get();
+            Assert.assertTrue(report != null);
+            Assert.assertTrue(report.getKey().equals("test-mock-slow"));
+            Assert.assertTrue(report.getClassName().equals(
+                    "org.gabsocial.ofactory.impl.MockSlowOFactoryChildImpl"));
+            Assert.assertTrue(report.getPhase() == SlowCreateReport.Phase.INITIALIZE);
+            Assert.assertTrue(report.getDuration(TimeUnit.MILLISECONDS) >= 50);
+            
+            boolean isSampledInInitialize = false;
+            for (final StackTraceElement element : report.getStack())
+            {
+                isSampledInInitialize |= element.getClassName().equals(
+                        "org.gabsocial.ofactory.impl.MockSlowOFactoryChildImpl");
+            }
+            Assert.assertTrue(isSampledInInitialize);
+            Assert.assertTrue(metrics.getSlowCreates() == 1);
+            
+            this._ofactory.disableSlowCreateDetection();
+            Assert.assertFalse(this._ofactory.isSlowCreateDetectionEnabled());
+            
+            // the sampler thread ends with the last watchdog.
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (SlowCreateWatchdog.isSampling()
+                    && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(10);
+            }
+            Assert.assertFalse(SlowCreateWatchdog.isSampling());
+            this._ofactory.create("test-mock-slow-2",
+                    "org.gabsocial.ofactory.impl.MockSlowOFactoryChildImpl");
+            Assert.assertTrue(metrics.getSlowCreates() == 1);
+        }
+        catch (final OFactoryChildException e)
+        {
+            Assert.fail(e.toString());
+        }
+    }
+    
+    @Test
+    public void testLockProfiling()
+    {
+        final String className = "org.gabsocial.ofactory.impl.MockOFactoryChildImpl";
+        
+        try
+        {
+            Assert.assertTrue(this._ofactory.getLockContention().isEmpty());
+            this._ofactory.enableLockProfiling();
+            Assert.assertTrue(this._ofactory.isLockProfilingEnabled());
+            
+            for (int i = 0; i < 10; i++)
+            {
+                this._ofactory.create("test-mock-" + i, className);
+            }
+            this._ofactory.closeChild("test-mock-0");
+            this._ofactory.get("test-mock-1");
+            final Observer observer = new Observer()
+            {
+                @Override
+                public void update(Observable o, Object arg)
+                {
+                    // void for now.
+                }
+            };
+            this._ofactory.addObserver(observer);
+            this._ofactory.removeObserver(observer);
+            
+            final Map<String, Long> acquisitions = new HashMap<String, Long>();
+            for (final LockContention contention : this._ofactory
+                    .getLockContention())
+            {
+                Assert.assertTrue(contention.getTotalWaitNanos() >= 0);
+                Assert.assertTrue(contention.getMaxHoldNanos() <= contention
+                        .getTotalHoldNanos());
+                acquisitions.put(contention.getOperation() + " "
+                        + contention.getLock(), contention.getAcquisitions());
+            }
+            Assert.assertTrue(acquisitions.get("CREATE CHILD_TABLE") == 10);
+            Assert.assertTrue(acquisitions.get("CLOSE_CHILD CHILD_TABLE") == 1);
+            Assert.assertTrue(acquisitions.get("OBSERVE MONITOR") == 2);
+            Assert.assertTrue(acquisitions.size() == 3);
+            
+            this._ofactory.disableLockProfiling();
+            Assert.assertFalse(this._ofactory.isLockProfilingEnabled());
+            Assert.assertTrue(this._ofactory.getLockContention().isEmpty());
+        }
+        catch (final OFactoryChildException e)
+        {
+            Assert.fail(e.toString());
+        }
+    }
 }
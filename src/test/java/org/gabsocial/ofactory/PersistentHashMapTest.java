@@ -0,0 +1,190 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.StreamSupport;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * 
+ * Test class for the <code>PersistentHashMap</code>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public class PersistentHashMapTest
+{
+    
+    /*
+     * A key with a chosen hash code so that collisions can be forced.
+     */
+    static final class CollidingKey
+    {
+        private final int    _hash;
+        private final String _name;
+        
+        CollidingKey(final String name, final int hash)
+        {
+            this._name = name;
+            this._hash = hash;
+        }
+        
+        @Override
+        public boolean equals(final Object obj)
+        {
+            return ((obj instanceof CollidingKey) && ((CollidingKey) obj)._name
+                    .equals(this._name));
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return (this._hash);
+        }
+    }
+    
+    @Test
+    public void testCollisions()
+    {
+        PersistentHashMap<CollidingKey, String> map = PersistentHashMap.empty();
+        for (int i = 0; i < 10; i++)
+        {
+            map = map.plus(new CollidingKey("key-" + i, 42), "value-" + i);
+        }
+        map = map.plus(new CollidingKey("other", 43), "other");
+        Assert.assertTrue(map.size() == 11);
+        Assert.assertEquals("value-7", map.get(new CollidingKey("key-7", 42)));
+        
+        map = map.minus(new CollidingKey("key-7", 42));
+        Assert.assertTrue(map.size() == 10);
+        Assert.assertFalse(map.containsKey(new CollidingKey("key-7", 42)));
+        Assert.assertEquals("other", map.get(new CollidingKey("other", 43)));
+        
+        int count = 0;
+        for (final Map.Entry<CollidingKey, String> entry : map.entrySet())
+        {
+            Assert.assertEquals(entry.getValue(), map.get(entry.getKey()));
+            count++;
+        }
+        Assert.assertTrue(count == 10);
+    }
+    
+    @Test
+    public void testMatchesHashMap()
+    {
+        final Random random = new Random(7);
+        final Map<String, Integer> expected = new HashMap<String, Integer>();
+        PersistentHashMap<String, Integer> map = PersistentHashMap.empty();
+        
+        for (int i = 0; i < 20000; i++)
+        {
+            final String key = "key-" + random.nextInt(2000);
+            if (random.nextBoolean())
+            {
+                expected.put(key, i);
+                map = map.plus(key, i);
+            }
+            else
+            {
+                expected.remove(key);
+                map = map.minus(key);
+            }
+            Assert.assertTrue(map.size() == expected.size());
+        }
+        Assert.assertEquals(expected, map);
+        Assert.assertEquals(expected.keySet(), map.keySet());
+    }
+    
+    @Test
+    public void testUpdatesDoNotChangeOldVersions()
+    {
+        final PersistentHashMap<String, String> empty = PersistentHashMap
+                .empty();
+        final PersistentHashMap<String, String> one = empty.plus("a", "1");
+        final PersistentHashMap<String, String> two = one.plus("b", "2");
+        final PersistentHashMap<String, String> removed = two.minus("a");
+        
+        Assert.assertTrue(empty.isEmpty());
+        Assert.assertTrue(one.size() == 1 && "1".equals(one.get("a")));
+        Assert.assertTrue(two.size() == 2 && "2".equals(two.get("b")));
+        Assert.assertTrue(removed.size() == 1 && !removed.containsKey("a"));
+        Assert.assertTrue(two.minus("missing") == two);
+    }
+    
+    @Test
+    public void testValueSpliterator()
+    {
+        PersistentHashMap<String, Integer> map = PersistentHashMap.empty();
+        long sum = 0;
+        for (int i = 0; i < 5000; i++)
+        {
+            map = map.plus("key-" + i, i);
+            sum += i;
+        }
+        
+        final Spliterator<Integer> spliterator = map.valueSpliterator();
+        Assert.assertTrue(spliterator.getExactSizeIfKnown() == 5000);
+        final Spliterator<Integer> prefix = spliterator.trySplit();
+        Assert.assertTrue(prefix != null);
+        
+        final long[] count = new long[1];
+        final Consumer<Integer> counter = new Consumer<Integer>()
+        {
+            @Override
+            public void accept(final Integer value)
+            {
+                count[0]++;
+            }
+        };
+        prefix.forEachRemaining(counter);
+        while (spliterator.tryAdvance(counter))
+        {
+            // advance one at a time.
+        }
+        Assert.assertTrue(count[0] == 5000);
+        
+        Assert.assertTrue(StreamSupport.stream(map.valueSpliterator(), true)
+                .mapToLong(new ToLongFunction<Integer>()
+                {
+                    @Override
+                    public long applyAsLong(final Integer value)
+                    {
+                        return (value.longValue());
+                    }
+                }).sum() == sum);
+        Assert.assertFalse(PersistentHashMap.<String, Integer> empty()
+                .valueSpliterator().tryAdvance(new Consumer<Integer>()
+                {
+                    @Override
+                    public void accept(final Integer value)
+                    {
+                        Assert.fail();
+                    }
+                }));
+    }
+}
@@ -186,4 +186,29 @@ public class PropertiedOFactoryTest
     }
     
     // TODO - test close
+    
+    @Test
+    public void testCreateChildWithTags()
+    {
+        final String className = "org.gabsocial.ofactory.impl.MockPropertiedOFactoryChildImpl";
+        
+        try
+        {
+            final Properties properties = new Properties();
+            this._propertiedOFactory.create("test-mock-1", className,
+                    properties, "eu", "premium");
+            this._propertiedOFactory.create("test-mock-2", className,
+                    properties, "eu");
+            
+            Assert.assertTrue(this._propertiedOFactory.countTagged("eu") == 2);
+            Assert.assertTrue(this._propertiedOFactory.getKeysTagged("eu",
+                    "premium").contains("test-mock-1"));
+            Assert.assertTrue(this._propertiedOFactory.get("test-mock-1")
+                    .getSettings() == properties);
+        }
+        catch (final OFactoryChildException e)
+        {
+            Assert.fail(e.toString());
+        }
+    }
 }
@@ -0,0 +1,100 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * 
+ * Test class for the <code>SlotBitSet</code>
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public class SlotBitSetTest
+{
+    
+    private static void assertSame(final BitSet expected, final SlotBitSet actual)
+    {
+        Assert.assertTrue(expected.cardinality() == actual.cardinality());
+        final BitSet visited = new BitSet();
+        actual.forEach(new SlotBitSet.SlotVisitor()
+        {
+            @Override
+            public void visit(final int slot)
+            {
+                visited.set(slot);
+            }
+        });
+        Assert.assertEquals(expected, visited);
+    }
+    
+    @Test
+    public void testMatchesBitSet()
+    {
+        final Random random = new Random(11);
+        final BitSet first = new BitSet();
+        final BitSet second = new BitSet();
+        final SlotBitSet firstSlots = new SlotBitSet();
+        final SlotBitSet secondSlots = new SlotBitSet();
+        
+        for (int i = 0; i < 20000; i++)
+        {
+            final int slot = random.nextInt(50000);
+            if (random.nextInt(4) == 0)
+            {
+                first.clear(slot);
+                firstSlots.clear(slot);
+            }
+            else
+            {
+                first.set(slot);
+                firstSlots.set(slot);
+            }
+            final int other = random.nextInt(50000);
+            second.set(other);
+            secondSlots.set(other);
+        }
+        assertSame(first, firstSlots);
+        assertSame(second, secondSlots);
+        
+        final BitSet both = (BitSet) first.clone();
+        both.and(second);
+        assertSame(both, SlotBitSet.and(firstSlots, secondSlots));
+        Assert.assertTrue(firstSlots.get(first.nextSetBit(0)));
+    }
+    
+    @Test
+    public void testClearRemovesEmptyChunks()
+    {
+        final SlotBitSet slots = new SlotBitSet();
+        slots.set(5);
+        slots.set(100000);
+        slots.clear(5);
+        slots.clear(100000);
+        slots.clear(100001);
+        Assert.assertTrue(slots.isEmpty());
+        Assert.assertFalse(slots.get(100000));
+    }
+}
@@ -0,0 +1,36 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory.impl;
+
+import org.gabsocial.ofactory.BaseOFactoryChild;
+import org.gabsocial.ofactory.OFactoryChildType;
+
+/**
+ * 
+ * A Mock object for testing the OFactoryChildIndex. Takes the alias of
+ * <code>MockOFactoryChildImpl</code>.
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+@OFactoryChildType(aliases = { "mock" })
+public class MockAliasClashOFactoryChildImpl extends BaseOFactoryChild
+{
+    // void for now.
+}
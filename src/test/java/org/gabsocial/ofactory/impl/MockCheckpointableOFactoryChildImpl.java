@@ -0,0 +1,58 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory.impl;
+
+import java.nio.ByteBuffer;
+
+import org.gabsocial.ofactory.CheckpointableOFactoryChild;
+
+/**
+ * 
+ * A Mock object with state for testing the OFactory checkpoints.
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public class MockCheckpointableOFactoryChildImpl extends MockOFactoryChildImpl
+        implements CheckpointableOFactoryChild
+{
+    private volatile long _count;
+    
+    @Override
+    public byte[] checkpoint()
+    {
+        return (ByteBuffer.allocate(8).putLong(this._count).array());
+    }
+    
+    public long getCount()
+    {
+        return (this._count);
+    }
+    
+    @Override
+    public void restore(final byte[] state)
+    {
+        this._count = ByteBuffer.wrap(state).getLong();
+    }
+    
+    public void setCount(final long count)
+    {
+        this._count = count;
+    }
+}
@@ -20,6 +20,7 @@
 package org.gabsocial.ofactory.impl;
 
 import org.gabsocial.ofactory.BaseOFactoryChild;
+import org.gabsocial.ofactory.OFactoryChildType;
 
 /**
  * 
@@ -27,6 +28,7 @@ import org.gabsocial.ofactory.BaseOFactoryChild;
  * 
  * @author Gregory Brown (sysdevone)
  */
+@OFactoryChildType(aliases = { "mock" })
 public class MockOFactoryChildImpl extends BaseOFactoryChild
 {
     // void for now.
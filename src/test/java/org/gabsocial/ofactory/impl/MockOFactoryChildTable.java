@@ -0,0 +1,45 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory.impl;
+
+import org.gabsocial.ofactory.OFactoryChild;
+import org.gabsocial.ofactory.OFactoryChildTable;
+
+/**
+ * 
+ * A Mock child table for testing the OFactory, written the way the
+ * ofactory-processor generates them.
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public final class MockOFactoryChildTable implements OFactoryChildTable
+{
+    @Override
+    public OFactoryChild newChild(final String className)
+    {
+        switch (className)
+        {
+            case "org.gabsocial.ofactory.impl.MockTabledOFactoryChildImpl":
+                return (new MockTabledOFactoryChildImpl());
+            default:
+                return (null);
+        }
+    }
+}
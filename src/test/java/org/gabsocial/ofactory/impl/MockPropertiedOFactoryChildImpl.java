@@ -19,7 +19,10 @@
 
 package org.gabsocial.ofactory.impl;
 
+import java.util.Properties;
+
 import org.gabsocial.ofactory.BasePropertiedOFactoryChild;
+import org.gabsocial.ofactory.OFactoryChildType;
 
 /**
  * 
@@ -27,6 +30,7 @@ import org.gabsocial.ofactory.BasePropertiedOFactoryChild;
  * 
  * @author Gregory Brown (sysdevone)
  */
+@OFactoryChildType(aliases = { "propertied", "settings-mock" }, settings = Properties.class)
 public class MockPropertiedOFactoryChildImpl extends
         BasePropertiedOFactoryChild
 {
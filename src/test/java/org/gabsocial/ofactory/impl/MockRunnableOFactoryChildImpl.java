@@ -0,0 +1,39 @@
+/*****************************************************************************************
+ * 
+ * Copyright 2014 Gregory Brown. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * 
+ ***************************************************************************************** 
+ */
+
+package org.gabsocial.ofactory.impl;
+
+import org.gabsocial.ofactory.BaseOFactoryChild;
+
+/**
+ * 
+ * A Mock object that implements an additional interface for testing the
+ * OFactory type index.
+ * 
+ * @author Gregory Brown (sysdevone)
+ */
+public class MockRunnableOFactoryChildImpl extends BaseOFactoryChild implements
+        Runnable
+{
+    @Override
+    public void run()
+    {
+        // void for now.
+    }
+}